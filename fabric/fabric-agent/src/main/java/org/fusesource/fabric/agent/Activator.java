@@ -16,6 +16,7 @@
  */
 package org.fusesource.fabric.agent;
 
+import org.fusesource.fabric.agent.download.PeerRepository;
 import org.fusesource.fabric.api.FabricService;
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
@@ -25,9 +26,11 @@ import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.cm.Configuration;
 import org.osgi.service.cm.ConfigurationAdmin;
 import org.osgi.service.cm.ManagedService;
+import org.osgi.service.http.HttpService;
 import org.osgi.service.packageadmin.PackageAdmin;
 import org.osgi.service.startlevel.StartLevel;
 import org.osgi.util.tracker.ServiceTracker;
+import org.osgi.util.tracker.ServiceTrackerCustomizer;
 import org.slf4j.LoggerFactory;
 
 import java.util.Dictionary;
@@ -43,6 +46,7 @@ public class Activator implements BundleActivator {
     private DeploymentAgent agent;
     private ServiceTracker<FabricService, FabricService> fabricService;
     private ServiceRegistration registration;
+    private ServiceTracker<HttpService, HttpService> httpService;
 
     public void start(BundleContext context) throws Exception {
         agent = new DeploymentAgent();
@@ -54,9 +58,17 @@ public class Activator implements BundleActivator {
         Hashtable<String, String> props = new Hashtable<String, String>();
         props.put(Constants.SERVICE_PID, AGENT_PID);
         registration = context.registerService(ManagedService.class.getName(), agent, props);
+        try {
+            httpService = trackHttpService(context);
+        } catch (NoClassDefFoundError e) {
+            LOGGER.info("Http service not available, artifacts will not be served to peers");
+        }
     }
 
     public void stop(BundleContext context) throws Exception {
+        if (httpService != null) {
+            httpService.close();
+        }
         registration.unregister();
         agent.stop();
         fabricService.close();
@@ -91,6 +103,40 @@ public class Activator implements BundleActivator {
         return null;
     }
 
+    /**
+     * Serves the artifacts of the peer cache on each available http service.
+     */
+    private ServiceTracker<HttpService, HttpService> trackHttpService(final BundleContext context) {
+        ServiceTracker<HttpService, HttpService> tracker = new ServiceTracker<HttpService, HttpService>(context, HttpService.class, new ServiceTrackerCustomizer<HttpService, HttpService>() {
+            @Override
+            public HttpService addingService(ServiceReference<HttpService> reference) {
+                HttpService service = context.getService(reference);
+                try {
+                    service.registerServlet(PeerRepository.PEER_PATH, new PeerCacheServlet(agent.getPeerCache()), null, null);
+                } catch (Exception e) {
+                    LOGGER.warn("Unable to register peer cache servlet", e);
+                }
+                return service;
+            }
+
+            @Override
+            public void modifiedService(ServiceReference<HttpService> reference, HttpService service) {
+            }
+
+            @Override
+            public void removedService(ServiceReference<HttpService> reference, HttpService service) {
+                try {
+                    service.unregister(PeerRepository.PEER_PATH);
+                } catch (Exception e) {
+                    // Ignore
+                }
+                context.ungetService(reference);
+            }
+        });
+        tracker.open();
+        return tracker;
+    }
+
     private ServiceTracker<FabricService, FabricService> getFabricService(BundleContext context) {
         fabricService = new ServiceTracker<FabricService, FabricService>(context, FabricService.class, null);
         fabricService.open();
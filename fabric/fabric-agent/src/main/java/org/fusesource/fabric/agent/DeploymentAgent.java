@@ -21,13 +21,19 @@ import org.apache.felix.utils.properties.Properties;
 import org.apache.felix.utils.version.VersionRange;
 import org.apache.karaf.features.Repository;
 import org.apache.karaf.features.internal.FeaturesServiceImpl;
+import org.fusesource.fabric.agent.download.DownloadFuture;
 import org.fusesource.fabric.agent.download.DownloadManager;
+import org.fusesource.fabric.agent.download.FutureListener;
+import org.fusesource.fabric.agent.download.PeerCache;
+import org.fusesource.fabric.agent.download.PeerRepository;
 import org.fusesource.fabric.agent.mvn.*;
 import org.fusesource.fabric.agent.repository.HttpMetadataProvider;
 import org.fusesource.fabric.agent.repository.MetadataRepository;
+import org.fusesource.fabric.agent.resolver.ResourceIndex;
 import org.fusesource.fabric.agent.sort.RequirementSort;
 import org.fusesource.fabric.agent.utils.MultiException;
 import org.fusesource.fabric.api.Container;
+import org.fusesource.fabric.api.DataStore;
 import org.fusesource.fabric.api.FabricService;
 import org.fusesource.fabric.fab.MavenResolver;
 import org.fusesource.fabric.fab.MavenResolverImpl;
@@ -41,6 +47,8 @@ import org.osgi.framework.namespace.PackageNamespace;
 import org.osgi.framework.wiring.BundleCapability;
 import org.osgi.framework.wiring.BundleRequirement;
 import org.osgi.framework.wiring.BundleRevision;
+import org.osgi.framework.wiring.BundleWire;
+import org.osgi.framework.wiring.BundleWiring;
 import org.osgi.framework.wiring.FrameworkWiring;
 import org.osgi.resource.Resource;
 import org.osgi.service.cm.ConfigurationException;
@@ -52,11 +60,15 @@ import org.slf4j.LoggerFactory;
 import java.io.*;
 import java.net.MalformedURLException;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 
 import static org.apache.felix.resolver.Util.getSymbolicName;
@@ -74,6 +86,9 @@ public class DeploymentAgent implements ManagedService {
     private static final String SNAPSHOT = "SNAPSHOT";
     private static final String BLUEPRINT_PREFIX = "blueprint:";
     private static final String SPRING_PREFIX = "spring:";
+    private static final long DOWNLOAD_STATUS_INTERVAL = 2000;
+    private static final String PEER_CACHE = "peer.cache";
+    private static final String START_PARALLELISM = "start.parallelism";
     private static final Pattern SNAPSHOT_PATTERN = Pattern.compile(".*-SNAPSHOT((\\.\\w{3})?|\\$.*|\\?.*|\\#.*|\\&.*)");
 
 
@@ -93,6 +108,13 @@ public class DeploymentAgent implements ManagedService {
 	private final RequirementSort requirementSort = new RequirementSort();
 
     private Properties checksums;
+    private ResolutionCache resolutionCache;
+    private ResourceIndex resourceIndex;
+    private PeerCache peerCache;
+    private final PeerRepository.Locations peerLocations = new PeerRepository.Locations();
+    private volatile boolean peerCacheEnabled;
+    private volatile int startParallelism = 1;
+    private String advertisedArtifacts;
 
     public DeploymentAgent() throws MalformedURLException {
         final MavenConfigurationImpl config = new MavenConfigurationImpl(
@@ -110,6 +132,10 @@ public class DeploymentAgent implements ManagedService {
         return fabricService;
     }
 
+    public PeerCache getPeerCache() {
+        return peerCache;
+    }
+
     public void setBundleContext(BundleContext bundleContext) {
         this.bundleContext = bundleContext;
     }
@@ -129,6 +155,7 @@ public class DeploymentAgent implements ManagedService {
     public void start() throws IOException {
         LOGGER.info("Starting DeploymentAgent");
         systemBundleContext = bundleContext.getBundle(0).getBundleContext();
+        peerCache = new PeerCache(new File(System.getProperty("karaf.data") + File.separator + "maven" + File.separator + "agent"));
         if (checksums == null) {
             File file = bundleContext.getDataFile("checksums.properties");
             checksums = new Properties(file);
@@ -189,6 +216,9 @@ public class DeploymentAgent implements ManagedService {
                     result = e;
                     LOGGER.error("Unable to update agent", e);
                 }
+                if (success) {
+                    advertiseArtifacts();
+                }
                 // This update is critical, so
                 if (success || result != null) {
                     updateStatus(success ? Container.PROVISION_SUCCESS : Container.PROVISION_ERROR, result, null, true);
@@ -197,6 +227,67 @@ public class DeploymentAgent implements ManagedService {
         });
     }
 
+    /**
+     * Advertises the artifacts of the agent repository to the other containers when the peer cache is enabled.
+     */
+    private void advertiseArtifacts() {
+        try {
+            FabricService fs = fabricService.getService();
+            if (fs == null) {
+                return;
+            }
+            advertisedArtifacts = advertise(fs.getDataStore(), fs.getCurrentContainerName(), peerCache, peerCacheEnabled, advertisedArtifacts);
+        } catch (Throwable e) {
+            LOGGER.warn("Unable to advertise artifacts to peers", e);
+        }
+    }
+
+    /**
+     * Updates the advertisement of the given container and returns what is now advertised, an empty string once the
+     * advertisement has been removed.
+     *
+     * @param advertised what was advertised by this run of the agent, or null if nothing was since it started
+     */
+    static String advertise(DataStore dataStore, String container, PeerCache peerCache, boolean enabled, String advertised) {
+        if (enabled) {
+            String artifacts = peerCache.advertise();
+            if (!artifacts.equals(advertised)) {
+                dataStore.setContainerAttribute(container, DataStore.ContainerAttribute.ProvisionArtifacts, artifacts);
+            }
+            return artifacts;
+        }
+        peerCache.clear();
+        // the advertisement may have been left by a previous run of the agent, so it is removed
+        // once after startup even though nothing was advertised since
+        if (advertised == null || advertised.length() > 0) {
+            dataStore.setContainerAttribute(container, DataStore.ContainerAttribute.ProvisionArtifacts, null);
+        }
+        return "";
+    }
+
+    /**
+     * Applies the settings which do not depend on the deployment, so that they are set even when the deployment is
+     * up to date, for instance after a restart.
+     */
+    void configure(Map<String, String> properties) {
+        peerCacheEnabled = Boolean.parseBoolean(properties.get(PEER_CACHE));
+        String parallelism = properties.get(START_PARALLELISM);
+        try {
+            startParallelism = parallelism != null ? Integer.parseInt(parallelism.trim()) : 1;
+        } catch (NumberFormatException e) {
+            LOGGER.warn("Invalid value for " + START_PARALLELISM + ": " + parallelism);
+            startParallelism = 1;
+        }
+    }
+
+    boolean isPeerCacheEnabled() {
+        return peerCacheEnabled;
+    }
+
+    int getStartParallelism() {
+        return startParallelism;
+    }
+
     private void updateStatus(String status, Throwable result) {
         updateStatus(status, result, null, false);
     }
@@ -258,7 +349,22 @@ public class DeploymentAgent implements ManagedService {
                 "org.ops4j.pax.url.mvn"
         );
         config.setSettings(new MavenSettingsImpl(config.getSettingsFileUrl(), config.useFallbackRepositories()));
+        DownloadManager previous = manager;
         manager = new DownloadManager(config, getDownloadExecutor());
+        previous.shutdown();
+        final DownloadManager downloads = manager;
+        final AtomicLong lastStatus = new AtomicLong();
+        manager.setListener(new FutureListener<DownloadFuture>() {
+            @Override
+            public void operationComplete(DownloadFuture future) {
+                // report download progress, but don't flood the registry with status updates
+                long now = System.currentTimeMillis();
+                long last = lastStatus.get();
+                if (now - last >= DOWNLOAD_STATUS_INTERVAL && lastStatus.compareAndSet(last, now)) {
+                    updateStatus("downloading (" + downloads.getStatistics() + ")", null);
+                }
+            }
+        });
         Map<String, String> properties = new HashMap<String, String>();
         for (Enumeration e = props.keys(); e.hasMoreElements(); ) {
             Object key = e.nextElement();
@@ -267,6 +373,7 @@ public class DeploymentAgent implements ManagedService {
                 properties.put(key.toString(), val.toString());
             }
         }
+        configure(properties);
         // Update framework, system and config props
         boolean restart = false;
         Properties configProps = new Properties(new File(System.getProperty("karaf.base") + File.separator + "etc" + File.separator + "config.properties"));
@@ -300,6 +407,20 @@ public class DeploymentAgent implements ManagedService {
             return false;
         }
 
+        // Skip the deployment if nothing changed since the last one. Fabs and metadata repositories
+        // are resolved against remote content which can change at any time, so they are never skipped.
+        if (resolutionCache == null) {
+            resolutionCache = new ResolutionCache(bundleContext.getDataFile("resolution.properties"));
+        }
+        String inputs = ResolutionCache.getInputs(properties, resolveOptionalImports);
+        boolean cacheable = getPrefixedProperties(properties, "fab.").isEmpty()
+                && getPrefixedProperties(properties, "resources.").isEmpty();
+        if (cacheable && isDeployed(inputs)) {
+            LOGGER.info("Deployment is up to date, skipping resolution");
+            return true;
+        }
+        resolutionCache.clear();
+
         // Compute deployment
         final Map<String, Repository> repositories =
                 loadRepositories(manager, getPrefixedProperties(properties, "repository."));
@@ -320,6 +441,19 @@ public class DeploymentAgent implements ManagedService {
                 fabResolverFactory,
                 repositories.values()
         );
+        builder.setResolutionCache(resolutionCache);
+        if (resourceIndex == null) {
+            resourceIndex = new ResourceIndex(bundleContext.getDataFile("resources.idx"));
+        }
+        builder.setResourceIndex(resourceIndex);
+        manager.setPeerRepository(null);
+        if (peerCacheEnabled && fabricService.getService() != null) {
+            try {
+                manager.setPeerRepository(PeerRepository.load(fabricService.getService(), peerLocations, PeerRepository.DEFAULT_MAX_PEERS));
+            } catch (Exception e) {
+                LOGGER.warn("Unable to retrieve artifacts of peers", e);
+            }
+        }
         updateStatus("downloading", null);
         builder.download(
                 getPrefixedProperties(properties, "feature."),
@@ -330,6 +464,14 @@ public class DeploymentAgent implements ManagedService {
                 getPrefixedProperties(properties, "optional.")
         );
 
+        LOGGER.info("Downloaded " + manager.getStatistics());
+
+        try {
+            resourceIndex.save();
+        } catch (IOException e) {
+            LOGGER.warn("Unable to save the resource index", e);
+        }
+
         // TODO: handle default range policy on feature requirements
         // TODO: handle default range policy on feature dependencies requirements
 
@@ -343,10 +485,68 @@ public class DeploymentAgent implements ManagedService {
         Collection<Resource> allResources = builder.resolve(systemBundle, resolveOptionalImports);
 
         Map<String, StreamProvider> providers = builder.getProviders();
-        install(allResources, providers);
+        resolutionCache.retainResources(providers.keySet());
+        if (install(allResources, providers) && cacheable) {
+            saveDeployment(inputs, allResources, providers, repositories.keySet());
+        }
         return true;
     }
 
+    /**
+     * Returns true if the last successful deployment had the same inputs, its bundles are still the installed ones
+     * and none of its snapshot artifacts changed since.
+     */
+    private boolean isDeployed(String inputs) {
+        if (!resolutionCache.isResolved(inputs)) {
+            return false;
+        }
+        try {
+            Set<String> installed = new HashSet<String>();
+            for (Bundle bundle : systemBundleContext.getBundles()) {
+                if (bundle.getSymbolicName() != null && bundle.getBundleId() != 0) {
+                    installed.add(bundle.getSymbolicName() + "/" + bundle.getVersion());
+                }
+            }
+            if (!installed.equals(new HashSet<String>(resolutionCache.getResources().values()))) {
+                LOGGER.debug("Installed bundles differ from the last deployment");
+                return false;
+            }
+            for (Map.Entry<String, Long> entry : resolutionCache.getChecksums().entrySet()) {
+                File file = manager.download(entry.getKey()).await().getFile();
+                if (ChecksumUtils.checksum(new FileInputStream(file)) != entry.getValue()) {
+                    LOGGER.debug("New snapshot available for " + entry.getKey());
+                    return false;
+                }
+            }
+            return true;
+        } catch (Exception e) {
+            LOGGER.debug("Unable to check the last deployment", e);
+            return false;
+        }
+    }
+
+    private void saveDeployment(String inputs, Collection<Resource> allResources, Map<String, StreamProvider> providers,
+                                Collection<String> repositories) {
+        try {
+            Map<String, Long> snapshots = new HashMap<String, Long>();
+            for (Resource resource : allResources) {
+                if (isUpdateable(resource)) {
+                    snapshots.put(getUri(resource), ChecksumUtils.checksum(getBundleInputStream(resource, providers)));
+                }
+            }
+            for (String repository : repositories) {
+                if (SNAPSHOT_PATTERN.matcher(repository).matches()) {
+                    File file = manager.download(repository).await().getFile();
+                    snapshots.put(repository, ChecksumUtils.checksum(new FileInputStream(file)));
+                }
+            }
+            resolutionCache.save(inputs, allResources, snapshots);
+        } catch (Exception e) {
+            LOGGER.warn("Unable to save the resolution cache", e);
+            resolutionCache.clear();
+        }
+    }
+
     private Set<String> getPrefixedProperties(Map<String, String> properties, String prefix) {
         Set<String> result = new HashSet<String>();
         for (String key : properties.keySet()) {
@@ -363,8 +563,11 @@ public class DeploymentAgent implements ManagedService {
         return result;
     }
 
-    private void install(Collection<Resource> allResources,
-                         Map<String, StreamProvider> providers) throws Exception {
+    /**
+     * Installs the resolved resources, returning false if the agent updated itself instead
+     */
+    private boolean install(Collection<Resource> allResources,
+                            Map<String, StreamProvider> providers) throws Exception {
 
         updateStatus("installing", null, allResources, false);
         Map<Resource, Bundle> resToBnd = new HashMap<Resource, Bundle>();
@@ -378,9 +581,10 @@ public class DeploymentAgent implements ManagedService {
 
         Map<String, String> newCheckums = new HashMap<String, String>();
         List<Resource> toDeploy = new ArrayList<Resource>(allResources);
-        List<Resource> toInstall = new ArrayList<Resource>();
-        List<Bundle> toDelete = new ArrayList<Bundle>();
-        Map<Bundle, Resource> toUpdate = new HashMap<Bundle, Resource>();
+        DeploymentPlan plan = new DeploymentPlan();
+        List<Resource> toInstall = plan.getToInstall();
+        List<Bundle> toDelete = plan.getToDelete();
+        Map<Bundle, Resource> toUpdate = plan.getToUpdate();
 
         // First pass: go through all installed bundles and mark them
         // as either to ignore or delete
@@ -463,31 +667,39 @@ public class DeploymentAgent implements ManagedService {
             }
             checksums.save(); // Force the needed classes to be loaded
             bundle.update(is);
-            return;
+            return false;
         }
 
-        // Display
-        LOGGER.info("Changes to perform:");
-        LOGGER.info("  Bundles to uninstall:");
-        for (Bundle bundle : toDelete) {
-            LOGGER.info("    " + bundle.getSymbolicName() + " / " + bundle.getVersion());
-        }
-        LOGGER.info("  Bundles to update:");
-        for (Map.Entry<Bundle, Resource> entry : toUpdate.entrySet()) {
-            LOGGER.info("    " + entry.getKey().getSymbolicName() + " / " + entry.getKey().getVersion() + " with " + getUri(entry.getValue()));
+        // Only the bundles wired to an updated or uninstalled bundle need to be restarted, so compute
+        // them against the current wiring and report the plan before applying anything
+        FrameworkWiring fw = systemBundleContext.getBundle().adapt(FrameworkWiring.class);
+        Set<Bundle> changed = new HashSet<Bundle>(toUpdate.keySet());
+        changed.addAll(toDelete);
+        if (!changed.isEmpty()) {
+            for (Bundle bundle : fw.getDependencyClosure(changed)) {
+                if (!changed.contains(bundle) && isStarted(bundle)) {
+                    plan.getToRestart().add(bundle);
+                }
+            }
         }
-        LOGGER.info("  Bundles to install:");
-        for (Resource resource : toInstall) {
-            LOGGER.info("    " + getUri(resource));
+
+        // Display
+        LOGGER.info(plan.toString());
+        if (!plan.isEmpty()) {
+            updateStatus("installing (" + plan.getSummary() + ")", null);
         }
 
         Set<Bundle> toRefresh = new HashSet<Bundle>();
+        Set<Bundle> installed = new HashSet<Bundle>();
 
         // Execute
+        // The bundles to restart are stopped along with the updated ones, so that they are stopped in
+        // dependency order before their dependencies go away instead of being stopped by the refresh
         LOGGER.info("Stopping bundles:");
         List<Bundle> toStop = new ArrayList<Bundle>();
         toStop.addAll(toUpdate.keySet());
         toStop.addAll(toDelete);
+        toStop.addAll(plan.getToRestart());
         while (!toStop.isEmpty()) {
             List<Bundle> bs = getBundlesToDestroy(toStop);
             for (Bundle bundle : bs) {
@@ -519,7 +731,7 @@ public class DeploymentAgent implements ManagedService {
             LOGGER.info("  " + getUri(resource));
             InputStream is = getBundleInputStream(resource, providers);
             Bundle bundle = systemBundleContext.installBundle(getUri(resource), is);
-            toRefresh.add(bundle);
+            installed.add(bundle);
             resToBnd.put(resource, bundle);
             // save a checksum of installed snapshot bundle
             if (bundle.getVersion().getQualifier().endsWith(SNAPSHOT) && !newCheckums.containsKey(bundle.getLocation())) {
@@ -534,8 +746,12 @@ public class DeploymentAgent implements ManagedService {
             checksums.save();
         }
 
+        // Newly installed bundles are not resolved yet, so they don't need a refresh, but they may provide
+        // optional packages or fragments to bundles which are already resolved
+        toRefresh.addAll(installed);
         findBundlesWithOptionalPackagesToRefresh(toRefresh);
         findBundlesWithFragmentsToRefresh(toRefresh);
+        toRefresh.removeAll(installed);
 
         updateStatus("finalizing", null);
         LOGGER.info("Refreshing bundles:");
@@ -552,13 +768,20 @@ public class DeploymentAgent implements ManagedService {
         // are given back by the resolution, meaning that all root bundles (i.e. those that were
         // not flagged as dependencies in features) are started before the others.   This should
         // make sure those important bundles are started first and minimize the problem.
-        List<Throwable> exceptions = new ArrayList<Throwable>();
-        LOGGER.info("Starting bundles:");
-        // TODO: use wiring here instead of sorting
+        List<Bundle> toStart = new ArrayList<Bundle>();
         for (Resource resource : requirementSort.sort(allResources)) {
             Bundle bundle = resToBnd.get(resource);
             String hostHeader = bundle.getHeaders().get(Constants.FRAGMENT_HOST);
             if (hostHeader == null && bundle.getState() != Bundle.ACTIVE) {
+                toStart.add(bundle);
+            }
+        }
+        List<Throwable> exceptions = new ArrayList<Throwable>();
+        LOGGER.info("Starting bundles:");
+        if (startParallelism > 1 && toStart.size() > 1) {
+            startBundles(fw, toStart, exceptions);
+        } else {
+            for (Bundle bundle : toStart) {
                 LOGGER.info("  " + bundle.getSymbolicName() + " / " + bundle.getVersion());
                 try {
                     bundle.start();
@@ -572,6 +795,58 @@ public class DeploymentAgent implements ManagedService {
         }
 
         LOGGER.info("Done.");
+        return true;
+    }
+
+    /**
+     * Resolves the given bundles and starts them in batches following their wiring, the bundles of a batch
+     * being started in parallel as none of them is wired to another one of the batch
+     */
+    private void startBundles(FrameworkWiring fw, List<Bundle> toStart, List<Throwable> exceptions) throws InterruptedException {
+        fw.resolveBundles(toStart);
+        Map<Bundle, List<Bundle>> dependencies = new HashMap<Bundle, List<Bundle>>();
+        for (Bundle bundle : toStart) {
+            List<Bundle> providers = new ArrayList<Bundle>();
+            BundleWiring wiring = bundle.adapt(BundleWiring.class);
+            if (wiring != null) {
+                for (BundleWire wire : wiring.getRequiredWires(null)) {
+                    if (!BundleRevision.HOST_NAMESPACE.equals(wire.getCapability().getNamespace())) {
+                        providers.add(wire.getProviderWiring().getBundle());
+                    }
+                }
+            }
+            dependencies.put(bundle, providers);
+        }
+        List<List<Bundle>> batches = DeploymentPlan.getBatches(toStart, dependencies);
+        ExecutorService starter = Executors.newFixedThreadPool(startParallelism, new NamedThreadFactory("fabric-agent-start"));
+        try {
+            for (List<Bundle> batch : batches) {
+                List<Future<Object>> futures = new ArrayList<Future<Object>>();
+                for (final Bundle bundle : batch) {
+                    LOGGER.info("  " + bundle.getSymbolicName() + " / " + bundle.getVersion());
+                    futures.add(starter.submit(new Callable<Object>() {
+                        public Object call() throws Exception {
+                            bundle.start();
+                            return null;
+                        }
+                    }));
+                }
+                for (Future<Object> future : futures) {
+                    try {
+                        future.get();
+                    } catch (ExecutionException e) {
+                        exceptions.add(e.getCause());
+                    }
+                }
+            }
+        } finally {
+            starter.shutdown();
+        }
+    }
+
+    private static boolean isStarted(Bundle bundle) {
+        return bundle.getHeaders().get(Constants.FRAGMENT_HOST) == null
+                && (bundle.getState() == Bundle.ACTIVE || bundle.getState() == Bundle.STARTING);
     }
 
     protected InputStream getBundleInputStream(Resource resource,
@@ -697,17 +972,23 @@ public class DeploymentAgent implements ManagedService {
         if (bundles.isEmpty()) {
             return;
         }
-        // Second pass: for each bundle, check if there is any unresolved optional package that could be resolved
+        // Second pass: for each resolved bundle, check if there is any unwired optional package that could be resolved
         for (Bundle bundle : bundles) {
             BundleRevision rev = bundle.adapt(BundleRevision.class);
+            BundleWiring wiring = bundle.adapt(BundleWiring.class);
             boolean matches = false;
-            if (rev != null) {
+            if (rev != null && wiring != null) {
+                List<BundleWire> wires = wiring.getRequiredWires(PackageNamespace.PACKAGE_NAMESPACE);
                 for (BundleRequirement req : rev.getDeclaredRequirements(null)) {
                     if (PackageNamespace.PACKAGE_NAMESPACE.equals(req.getNamespace())
                             && PackageNamespace.RESOLUTION_OPTIONAL.equals(
-                                req.getDirectives().get(PackageNamespace.REQUIREMENT_RESOLUTION_DIRECTIVE))) {
+                                req.getDirectives().get(PackageNamespace.REQUIREMENT_RESOLUTION_DIRECTIVE))
+                            && !isWired(req, wires)) {
                         // This requirement is an optional import package
                         for (Bundle provider : toRefresh) {
+                            if (provider.getState() == Bundle.UNINSTALLED) {
+                                continue;
+                            }
                             BundleRevision providerRev = provider.adapt(BundleRevision.class);
                             if (providerRev != null) {
                                 for (BundleCapability cap : providerRev.getDeclaredCapabilities(null)) {
@@ -733,6 +1014,17 @@ public class DeploymentAgent implements ManagedService {
         }
     }
 
+    private static boolean isWired(BundleRequirement req, List<BundleWire> wires) {
+        if (wires != null) {
+            for (BundleWire wire : wires) {
+                if (req.matches(wire.getCapability())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     protected boolean updateFramework(Properties properties, String url) throws Exception {
         if (!url.startsWith("mvn:")) {
             throw new IllegalArgumentException("Framework url must use the mvn: protocol");
@@ -34,6 +34,7 @@ import org.fusesource.fabric.agent.resolver.RequirementImpl;
 import org.fusesource.fabric.agent.resolver.ResolveContextImpl;
 import org.fusesource.fabric.agent.resolver.ResourceBuilder;
 import org.fusesource.fabric.agent.resolver.ResourceImpl;
+import org.fusesource.fabric.agent.resolver.ResourceIndex;
 import org.fusesource.fabric.agent.resolver.Slf4jResolverLog;
 import org.fusesource.fabric.agent.utils.AgentUtils;
 import org.fusesource.fabric.agent.utils.MultiException;
@@ -92,6 +93,9 @@ public class DeploymentBuilder {
 
     private final List<org.osgi.service.repository.Repository> resourceRepos;
 
+    private ResolutionCache resolutionCache;
+    private ResourceIndex resourceIndex;
+
     String featureRange = "${version;==}";
 
     AgentUtils.FileDownloader downloader;
@@ -114,6 +118,20 @@ public class DeploymentBuilder {
         resourceRepos.add(repository);
     }
 
+    /**
+     * Sets the cache used to reuse the resources built for the bundles of previous deployments
+     */
+    public void setResolutionCache(ResolutionCache resolutionCache) {
+        this.resolutionCache = resolutionCache;
+    }
+
+    /**
+     * Sets the persistent index used to avoid reading the manifest of the bundles seen before
+     */
+    public void setResourceIndex(ResourceIndex resourceIndex) {
+        this.resourceIndex = resourceIndex;
+    }
+
     public Map<String, StreamProvider> getProviders() {
         return providers;
     }
@@ -328,9 +346,9 @@ public class DeploymentBuilder {
                     }
                     for (DependencyTree dep : fabInfo.getBundles()) {
                         File depFile = dep.getJarFile();
-                        Attributes attrs = getAttributes(dep.getJarURL().toString(), depFile);
-                        if (attrs.getValue(Constants.BUNDLE_SYMBOLICNAME) != null) {
-                            manageResource(getMvnUrl(dep), attrs, new StreamProvider.File(depFile));
+                        Map<String, String> headers = getHeaders(dep.getJarURL().toString(), depFile);
+                        if (headers.get(Constants.BUNDLE_SYMBOLICNAME) != null) {
+                            manageResource(getMvnUrl(dep), headers, new StreamProvider.File(depFile));
                         }
                     }
                 }
@@ -382,27 +400,36 @@ public class DeploymentBuilder {
     private Resource manageResource(String location, File file) throws Exception {
         Resource resource = resources.get(location);
         if (resource == null) {
-            Attributes attributes = getAttributes(location, file);
-            resource = manageResource(location, attributes, new StreamProvider.File(file));
+            resource = resolutionCache != null ? resolutionCache.getResource(location, file) : null;
+            if (resource != null) {
+                resources.put(location, resource);
+                providers.put(location, new StreamProvider.File(file));
+            } else {
+                Map<String, String> headers = getHeaders(location, file);
+                resource = manageResource(location, headers, new StreamProvider.File(file));
+                if (resolutionCache != null) {
+                    resolutionCache.putResource(location, file, resource);
+                }
+            }
         }
         return resource;
     }
 
     private Resource manageResource(String location, Attributes attributes, StreamProvider provider) throws Exception {
+        return manageResource(location, toHeaders(attributes), provider);
+    }
+
+    private Resource manageResource(String location, Map<String, String> headers, StreamProvider provider) throws Exception {
         Resource resource = resources.get(location);
         if (resource == null) {
-            resource = createResource(location, attributes);
+            resource = createResource(location, headers);
             resources.put(location, resource);
             providers.put(location, provider);
         }
         return resource;
     }
 
-    private Resource createResource(String uri, Attributes attributes) throws Exception {
-        Map<String, String> headers = new HashMap<String, String>();
-        for (Map.Entry attr : attributes.entrySet()) {
-            headers.put(attr.getKey().toString(), attr.getValue().toString());
-        }
+    private Resource createResource(String uri, Map<String, String> headers) throws Exception {
         try {
             return ResourceBuilder.build(uri, headers);
         } catch (BundleException e) {
@@ -410,6 +437,28 @@ public class DeploymentBuilder {
         }
     }
 
+    /**
+     * Returns the manifest headers of the artifact, from the resource index if it has been seen before
+     */
+    protected Map<String, String> getHeaders(String uri, File file) throws Exception {
+        Map<String, String> headers = resourceIndex != null ? resourceIndex.getHeaders(uri, file) : null;
+        if (headers == null) {
+            headers = toHeaders(getAttributes(uri, file));
+            if (resourceIndex != null) {
+                resourceIndex.putHeaders(uri, file, headers);
+            }
+        }
+        return headers;
+    }
+
+    private static Map<String, String> toHeaders(Attributes attributes) {
+        Map<String, String> headers = new HashMap<String, String>();
+        for (Map.Entry attr : attributes.entrySet()) {
+            headers.put(attr.getKey().toString(), attr.getValue().toString());
+        }
+        return headers;
+    }
+
     protected Attributes getAttributes(String uri, File file) throws Exception {
         Manifest man = Manifests.getManifest(file);
         if (man == null) {
@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.fabric.agent;
+
+import org.osgi.framework.Bundle;
+import org.osgi.resource.Resource;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.fusesource.fabric.agent.resolver.UriNamespace.getUri;
+
+/**
+ * The changes a deployment will perform on the framework: the bundles to install, update and uninstall, and the
+ * active bundles which will be restarted because they are wired to an updated or uninstalled bundle.
+ * <p/>
+ * The plan is computed before anything is applied so that it can be reported, and so that an update which only
+ * touches a few bundles is known to interrupt only those bundles and their dependents.
+ */
+public class DeploymentPlan {
+
+    private final List<Resource> toInstall = new ArrayList<Resource>();
+    private final Map<Bundle, Resource> toUpdate = new LinkedHashMap<Bundle, Resource>();
+    private final List<Bundle> toDelete = new ArrayList<Bundle>();
+    private final Set<Bundle> toRestart = new LinkedHashSet<Bundle>();
+
+    public List<Resource> getToInstall() {
+        return toInstall;
+    }
+
+    public Map<Bundle, Resource> getToUpdate() {
+        return toUpdate;
+    }
+
+    public List<Bundle> getToDelete() {
+        return toDelete;
+    }
+
+    /**
+     * Returns the active bundles, other than the updated and uninstalled ones, which are stopped and restarted
+     * because they depend on an updated or uninstalled bundle
+     */
+    public Set<Bundle> getToRestart() {
+        return toRestart;
+    }
+
+    public boolean isEmpty() {
+        return toInstall.isEmpty() && toUpdate.isEmpty() && toDelete.isEmpty();
+    }
+
+    /**
+     * Returns a one line summary of the plan, suitable for the provisioning status
+     */
+    public String getSummary() {
+        return toInstall.size() + " to install, " + toUpdate.size() + " to update, "
+                + toDelete.size() + " to uninstall, " + toRestart.size() + " to restart";
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Changes to perform (").append(getSummary()).append("):\n");
+        sb.append("  Bundles to uninstall:\n");
+        for (Bundle bundle : toDelete) {
+            sb.append("    ").append(bundle.getSymbolicName()).append(" / ").append(bundle.getVersion()).append("\n");
+        }
+        sb.append("  Bundles to update:\n");
+        for (Map.Entry<Bundle, Resource> entry : toUpdate.entrySet()) {
+            sb.append("    ").append(entry.getKey().getSymbolicName()).append(" / ").append(entry.getKey().getVersion())
+                    .append(" with ").append(getUri(entry.getValue())).append("\n");
+        }
+        sb.append("  Bundles to install:\n");
+        for (Resource resource : toInstall) {
+            sb.append("    ").append(getUri(resource)).append("\n");
+        }
+        sb.append("  Bundles to restart:\n");
+        for (Bundle bundle : toRestart) {
+            sb.append("    ").append(bundle.getSymbolicName()).append(" / ").append(bundle.getVersion()).append("\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Splits the given items into batches which can be processed one after the other, the items of a batch being
+     * independent from each other.  An item is placed in the batch following the last batch holding one of its
+     * dependencies, and the order of the given items is kept within a batch.  Dependencies on items which are not
+     * part of the list, or which come later in it (i.e. cycles), are ignored.
+     *
+     * @param items        the items, sorted so that dependencies come first
+     * @param dependencies the dependencies of each item
+     * @return the batches
+     */
+    public static <T> List<List<T>> getBatches(List<T> items, Map<T, ? extends Collection<T>> dependencies) {
+        Map<T, Integer> levels = new HashMap<T, Integer>();
+        List<List<T>> batches = new ArrayList<List<T>>();
+        for (T item : items) {
+            int level = 0;
+            Collection<T> deps = dependencies.get(item);
+            if (deps != null) {
+                for (T dep : deps) {
+                    Integer l = levels.get(dep);
+                    if (l != null && l + 1 > level) {
+                        level = l + 1;
+                    }
+                }
+            }
+            levels.put(item, level);
+            while (batches.size() <= level) {
+                batches.add(new ArrayList<T>());
+            }
+            batches.get(level).add(item);
+        }
+        return batches;
+    }
+
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.fabric.agent;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.fusesource.fabric.agent.download.PeerCache;
+
+/**
+ * Serves the artifacts advertised by the {@link PeerCache} to the other containers of the fabric.
+ * Only advertised artifacts are served, and a single open ended range is supported so that
+ * interrupted downloads can be resumed.
+ */
+public class PeerCacheServlet extends HttpServlet {
+
+    private final PeerCache peerCache;
+
+    public PeerCacheServlet(PeerCache peerCache) {
+        this.peerCache = peerCache;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        String path = req.getPathInfo();
+        if (path != null && path.startsWith("/")) {
+            path = path.substring(1);
+        }
+        File file = path != null && !path.contains("..") ? peerCache.getFile(path) : null;
+        if (file == null) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        long length = file.length();
+        long start = 0;
+        String range = req.getHeader("Range");
+        if (range != null && range.startsWith("bytes=") && range.endsWith("-")) {
+            try {
+                start = Long.parseLong(range.substring("bytes=".length(), range.length() - 1));
+            } catch (NumberFormatException e) {
+                start = 0;
+            }
+            if (start < 0 || start >= length) {
+                resp.setHeader("Content-Range", "bytes */" + length);
+                resp.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+        }
+        resp.setContentType("application/octet-stream");
+        if (start > 0) {
+            resp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            resp.setHeader("Content-Range", "bytes " + start + "-" + (length - 1) + "/" + length);
+        }
+        resp.setHeader("Content-Length", Long.toString(length - start));
+        InputStream is = new FileInputStream(file);
+        try {
+            if (start > 0 && is.skip(start) != start) {
+                throw new IOException("Unable to skip to offset " + start + " of " + file);
+            }
+            OutputStream os = resp.getOutputStream();
+            byte[] buffer = new byte[8192];
+            int len;
+            while ((len = is.read(buffer)) > 0) {
+                os.write(buffer, 0, len);
+            }
+            os.flush();
+        } finally {
+            is.close();
+        }
+    }
+
+}
@@ -0,0 +1,200 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.fabric.agent;
+
+import org.apache.felix.utils.properties.Properties;
+import org.osgi.resource.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static org.apache.felix.resolver.Util.getSymbolicName;
+import static org.apache.felix.resolver.Util.getVersion;
+import static org.fusesource.fabric.agent.resolver.UriNamespace.getUri;
+
+/**
+ * Remembers the outcome of the last successful deployment, so that an update whose inputs didn't change can skip
+ * the downloads, the resolution and the installation altogether, and keeps the metadata built from the manifest
+ * of each bundle so that it is reused across updates.
+ * <p/>
+ * The inputs of a deployment are the agent configuration, except for its last modified time which changes with any
+ * configuration of the profiles, and the content of the snapshot artifacts, whose checksums are recorded too.
+ * The outcome is persisted so that it survives restarts of the agent.
+ */
+public class ResolutionCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResolutionCache.class);
+
+    /**
+     * The property of the agent configuration holding the last modification time of the profiles
+     */
+    public static final String LAST_MODIFIED = "lastModified";
+
+    private static final String INPUTS = "inputs";
+    private static final String RESOURCE_PREFIX = "resource.";
+    private static final String CHECKSUM_PREFIX = "checksum.";
+
+    private final Properties properties;
+    private final ConcurrentMap<String, CachedResource> resources = new ConcurrentHashMap<String, CachedResource>();
+
+    public ResolutionCache(File file) throws IOException {
+        this.properties = new Properties(file);
+    }
+
+    /**
+     * Returns a hash of the agent configuration identifying the inputs of the deployment
+     */
+    public static String getInputs(Map<String, String> configuration, boolean resolveOptionalImports) {
+        SortedMap<String, String> sorted = new TreeMap<String, String>(configuration);
+        sorted.remove(LAST_MODIFIED);
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            for (Map.Entry<String, String> entry : sorted.entrySet()) {
+                digest.update(entry.getKey().getBytes("UTF-8"));
+                digest.update((byte) '=');
+                digest.update(String.valueOf(entry.getValue()).getBytes("UTF-8"));
+                digest.update((byte) '\n');
+            }
+            digest.update(Boolean.toString(resolveOptionalImports).getBytes("UTF-8"));
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest.digest()) {
+                sb.append(String.format("%02x", b & 0xff));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns true if the last successful deployment had the same inputs
+     */
+    public synchronized boolean isResolved(String inputs) {
+        return inputs.equals(properties.get(INPUTS));
+    }
+
+    /**
+     * Returns the symbolic name and version of the resources of the last successful deployment, keyed by uri
+     */
+    public synchronized Map<String, String> getResources() {
+        return getPrefixed(RESOURCE_PREFIX);
+    }
+
+    /**
+     * Returns the checksums of the snapshot artifacts of the last successful deployment, keyed by uri
+     */
+    public synchronized Map<String, Long> getChecksums() {
+        Map<String, Long> checksums = new HashMap<String, Long>();
+        for (Map.Entry<String, String> entry : getPrefixed(CHECKSUM_PREFIX).entrySet()) {
+            checksums.put(entry.getKey(), Long.parseLong(entry.getValue()));
+        }
+        return checksums;
+    }
+
+    private Map<String, String> getPrefixed(String prefix) {
+        Map<String, String> answer = new HashMap<String, String>();
+        for (Map.Entry<String, String> entry : properties.entrySet()) {
+            if (entry.getKey().startsWith(prefix)) {
+                answer.put(entry.getKey().substring(prefix.length()), entry.getValue());
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Records a successful deployment
+     */
+    public synchronized void save(String inputs, Collection<Resource> resolved, Map<String, Long> checksums) throws IOException {
+        properties.clear();
+        for (Resource resource : resolved) {
+            properties.put(RESOURCE_PREFIX + getUri(resource), getSymbolicName(resource) + "/" + getVersion(resource));
+        }
+        for (Map.Entry<String, Long> entry : checksums.entrySet()) {
+            properties.put(CHECKSUM_PREFIX + entry.getKey(), Long.toString(entry.getValue()));
+        }
+        properties.put(INPUTS, inputs);
+        properties.save();
+    }
+
+    /**
+     * Forgets the last deployment, which is done before deploying anything else
+     */
+    public synchronized void clear() {
+        if (properties.containsKey(INPUTS)) {
+            properties.clear();
+            try {
+                properties.save();
+            } catch (IOException e) {
+                LOGGER.warn("Unable to clear the resolution cache", e);
+            }
+        }
+    }
+
+    /**
+     * Returns the resource built for the given artifact, provided the file didn't change since
+     */
+    public Resource getResource(String uri, File file) {
+        CachedResource cached = resources.get(uri);
+        if (cached != null && cached.matches(file)) {
+            return cached.resource;
+        }
+        return null;
+    }
+
+    public void putResource(String uri, File file, Resource resource) {
+        resources.put(uri, new CachedResource(file, resource));
+    }
+
+    /**
+     * Drops the resources of the artifacts which are not in the given collection anymore
+     */
+    public void retainResources(Collection<String> uris) {
+        resources.keySet().retainAll(uris);
+    }
+
+    private static class CachedResource {
+        final String path;
+        final long length;
+        final long lastModified;
+        final Resource resource;
+
+        CachedResource(File file, Resource resource) {
+            this.path = file.getAbsolutePath();
+            this.length = file.length();
+            this.lastModified = file.lastModified();
+            this.resource = resource;
+        }
+
+        boolean matches(File file) {
+            return path.equals(file.getAbsolutePath()) && length == file.length() && lastModified == file.lastModified();
+        }
+    }
+}
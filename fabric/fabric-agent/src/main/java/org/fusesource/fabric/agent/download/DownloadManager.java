@@ -19,7 +19,14 @@ package org.fusesource.fabric.agent.download;
 import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.fusesource.fabric.agent.mvn.MavenConfiguration;
 import org.fusesource.fabric.agent.mvn.MavenRepositoryURL;
@@ -42,6 +49,27 @@ public class DownloadManager {
 
     private final MavenRepositoryURL system;
 
+    /**
+     * Downloads in flight, keyed by url, so that identical requests share a single download
+     */
+    private final ConcurrentMap<String, DownloadFuture> downloads = new ConcurrentHashMap<String, DownloadFuture>();
+
+    /**
+     * Permits limiting the number of concurrent downloads from each repository host
+     */
+    private final ConcurrentMap<String, Semaphore> permits = new ConcurrentHashMap<String, Semaphore>();
+
+    private final DownloadStatistics statistics = new DownloadStatistics();
+
+    /**
+     * Thread pool used to connect to several repositories concurrently, created lazily
+     */
+    private ExecutorService connectExecutor;
+
+    private volatile FutureListener<DownloadFuture> listener;
+
+    private volatile PeerRepository peerRepository;
+
     public DownloadManager(MavenConfiguration configuration) throws MalformedURLException {
         this(configuration, null);
     }
@@ -57,17 +85,124 @@ public class DownloadManager {
         return executor;
     }
 
+    public DownloadStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Sets a listener notified each time a requested download completes.
+     */
+    public void setListener(FutureListener<DownloadFuture> listener) {
+        this.listener = listener;
+    }
+
+    public PeerRepository getPeerRepository() {
+        return peerRepository;
+    }
+
+    /**
+     * Sets the peers released artifacts are downloaded from before trying the repositories,
+     * or null to only use the repositories.
+     */
+    public void setPeerRepository(PeerRepository peerRepository) {
+        this.peerRepository = peerRepository;
+    }
+
     public void shutdown() {
-        // noop
+        synchronized (this) {
+            if (connectExecutor != null) {
+                connectExecutor.shutdownNow();
+                connectExecutor = null;
+            }
+        }
+    }
+
+    /**
+     * Returns the permits guarding downloads from the host of the given url,
+     * or <code>null</code> if downloads from this url are not limited.
+     */
+    Semaphore getPermits(URL url) {
+        if ("file".equals(url.getProtocol())) {
+            return null;
+        }
+        String key = url.getProtocol() + "://" + url.getHost() + ":" + url.getPort();
+        Semaphore semaphore = permits.get(key);
+        if (semaphore == null) {
+            Integer max = configuration.getMaxConcurrentDownloads();
+            semaphore = new Semaphore(max != null && max > 0 ? max : Integer.MAX_VALUE, true);
+            Semaphore existing = permits.putIfAbsent(key, semaphore);
+            if (existing != null) {
+                semaphore = existing;
+            }
+        }
+        return semaphore;
+    }
+
+    synchronized ExecutorService getConnectExecutor() {
+        if (connectExecutor == null) {
+            connectExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "fabric-agent-connect-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return connectExecutor;
     }
 
     public DownloadFuture download(final String url) throws MalformedURLException {
+        return download(url, true);
+    }
+
+    private DownloadFuture download(final String url, final boolean requested) throws MalformedURLException {
+        if (requested) {
+            statistics.requested();
+        }
+        DownloadFuture future;
+        synchronized (downloads) {
+            future = downloads.get(url);
+            if (future != null) {
+                if (requested) {
+                    statistics.deduplicated();
+                }
+                return future;
+            }
+            future = doDownload(url);
+            downloads.put(url, future);
+        }
+        future.addListener(new FutureListener<DownloadFuture>() {
+            @Override
+            public void operationComplete(DownloadFuture future) {
+                downloads.remove(url, future);
+                if (!requested) {
+                    return;
+                }
+                boolean success;
+                try {
+                    success = future.getFile() != null;
+                } catch (IOException e) {
+                    success = false;
+                }
+                statistics.completed(success);
+                FutureListener<DownloadFuture> l = listener;
+                if (l != null) {
+                    l.operationComplete(future);
+                }
+            }
+        });
+        return future;
+    }
+
+    protected DownloadFuture doDownload(final String url) throws MalformedURLException {
         String mvnUrl = stripUrl(url);
 
         if (mvnUrl.startsWith("mvn:")) {
-            MavenDownloadTask task = new MavenDownloadTask(mvnUrl, cache, system, configuration, executor);
-            executor.submit(task);
             if (!mvnUrl.equals(url)) {
+                DownloadFuture task = download(mvnUrl, false);
                 final DummyDownloadTask download = new DummyDownloadTask(url, executor);
                 task.addListener(new FutureListener<DownloadFuture>() {
                     @Override
@@ -95,6 +230,8 @@ public class DownloadManager {
                 });
                 return download;
             } else {
+                MavenDownloadTask task = new MavenDownloadTask(mvnUrl, cache, system, configuration, executor, this);
+                executor.submit(task);
                 return task;
             }
         } else {
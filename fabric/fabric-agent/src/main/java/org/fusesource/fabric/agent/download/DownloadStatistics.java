@@ -0,0 +1,155 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.fabric.agent.download;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Download counters of a {@link DownloadManager}, used to report the download progress
+ * and throughput in the provisioning status of the agent.
+ */
+public class DownloadStatistics {
+
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicLong deduplicated = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong transferred = new AtomicLong();
+    private final AtomicLong resumed = new AtomicLong();
+    private final AtomicLong fromPeers = new AtomicLong();
+    private final AtomicLong firstTransfer = new AtomicLong();
+    private final AtomicLong lastTransfer = new AtomicLong();
+
+    void requested() {
+        requested.incrementAndGet();
+    }
+
+    void deduplicated() {
+        deduplicated.incrementAndGet();
+    }
+
+    void completed(boolean success) {
+        if (success) {
+            completed.incrementAndGet();
+        } else {
+            failed.incrementAndGet();
+        }
+    }
+
+    void fromPeer() {
+        fromPeers.incrementAndGet();
+    }
+
+    void transferred(long bytes) {
+        long now = System.currentTimeMillis();
+        firstTransfer.compareAndSet(0, now);
+        lastTransfer.set(now);
+        transferred.addAndGet(bytes);
+    }
+
+    void resumed(long bytes) {
+        resumed.addAndGet(bytes);
+    }
+
+    /**
+     * Number of downloads requested from the manager, including deduplicated ones.
+     */
+    public long getRequested() {
+        return requested.get();
+    }
+
+    /**
+     * Number of requests which joined an identical download already in flight.
+     */
+    public long getDeduplicated() {
+        return deduplicated.get();
+    }
+
+    /**
+     * Number of artifacts downloaded from peer containers rather than from repositories.
+     */
+    public long getFromPeers() {
+        return fromPeers.get();
+    }
+
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * Number of bytes actually transferred from remote repositories.
+     */
+    public long getTransferredBytes() {
+        return transferred.get();
+    }
+
+    /**
+     * Number of bytes which did not have to be transferred again thanks to resumed downloads.
+     */
+    public long getResumedBytes() {
+        return resumed.get();
+    }
+
+    /**
+     * Average throughput in bytes per second between the first and the last transfer.
+     */
+    public long getThroughput() {
+        long first = firstTransfer.get();
+        long elapsed = lastTransfer.get() - first;
+        if (first == 0) {
+            return 0;
+        }
+        return transferred.get() * 1000 / Math.max(elapsed, 100);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(completed.get()).append("/").append(requested.get() - deduplicated.get()).append(" artifacts");
+        if (deduplicated.get() > 0) {
+            sb.append(", ").append(deduplicated.get()).append(" deduplicated");
+        }
+        if (fromPeers.get() > 0) {
+            sb.append(", ").append(fromPeers.get()).append(" from peers");
+        }
+        if (failed.get() > 0) {
+            sb.append(", ").append(failed.get()).append(" failed");
+        }
+        sb.append(", ").append(toSize(transferred.get()));
+        if (resumed.get() > 0) {
+            sb.append(" (").append(toSize(resumed.get())).append(" resumed)");
+        }
+        sb.append(" at ").append(toSize(getThroughput())).append("/s");
+        return sb.toString();
+    }
+
+    static String toSize(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        } else if (bytes < 1024 * 1024) {
+            return (bytes / 1024) + " kB";
+        } else {
+            return String.format(Locale.ENGLISH, "%.1f MB", bytes / (1024.0 * 1024.0));
+        }
+    }
+
+}
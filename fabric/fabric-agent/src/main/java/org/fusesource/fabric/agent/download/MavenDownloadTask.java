@@ -17,14 +17,26 @@
 package org.fusesource.fabric.agent.download;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.xml.parsers.ParserConfigurationException;
 
 import org.fusesource.fabric.agent.mvn.DownloadableArtifact;
@@ -56,15 +68,38 @@ public class MavenDownloadTask extends AbstractDownloadTask implements Runnable
      */
     private static final String Ix4 = "    ";
 
+    /**
+     * Suffix of partially downloaded artifacts, kept across retries so that downloads can be resumed.
+     */
+    static final String PART_SUFFIX = ".part";
+
+    /**
+     * Partial files currently being written, so that two tasks never append to the same file.
+     */
+    private static final Set<String> PARTS = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * Repository each partial file is being downloaded from, as a partial file is only resumed from the
+     * repository which produced it. Partial files left by a previous run can be resumed from any repository
+     * since resumed downloads are checked against the published checksum.
+     */
+    private static final Map<String, String> PART_ORIGINS = new ConcurrentHashMap<String, String>();
+
     private final MavenRepositoryURL cache;
     private final MavenRepositoryURL system;
     private final MavenConfiguration configuration;
+    private final DownloadManager manager;
 
     public MavenDownloadTask(String url, MavenRepositoryURL cache, MavenRepositoryURL system, MavenConfiguration configuration, ExecutorService executor) {
+        this(url, cache, system, configuration, executor, null);
+    }
+
+    public MavenDownloadTask(String url, MavenRepositoryURL cache, MavenRepositoryURL system, MavenConfiguration configuration, ExecutorService executor, DownloadManager manager) {
         super(url, executor);
         this.cache = cache;
         this.system = system;
         this.configuration = configuration;
+        this.manager = manager;
     }
 
     protected File download() throws Exception {
@@ -87,40 +122,424 @@ public class MavenDownloadTask extends AbstractDownloadTask implements Runnable
                 LOG.trace("  " + artifact);
             }
         }
-        for (DownloadableArtifact artifact : downloadables) {
-            LOG.trace("Downloading [" + artifact + "]");
+        String repository = cache.getFile().getAbsolutePath();
+        if (!repository.endsWith(Parser.FILE_SEPARATOR)) {
+            repository = repository + Parser.FILE_SEPARATOR;
+        }
+        File file = new File(repository + parser.getArtifactPath());
+        // Artifacts are tried by descending version: local repositories first, then all
+        // remote repositories providing the same version are raced and the first one to respond wins
+        List<DownloadableArtifact> artifacts = new ArrayList<DownloadableArtifact>(downloadables);
+        int index = 0;
+        while (index < artifacts.size()) {
+            Version version = artifacts.get(index).getVersion();
+            List<DownloadableArtifact> remotes = new ArrayList<DownloadableArtifact>();
+            for (; index < artifacts.size() && artifacts.get(index).getVersion().equals(version); index++) {
+                DownloadableArtifact artifact = artifacts.get(index);
+                if (!"file".equals(artifact.getArtifactURL().getProtocol())) {
+                    remotes.add(artifact);
+                    continue;
+                }
+                LOG.trace("Downloading [" + artifact + "]");
+                try {
+                    Connection connection = connect(artifact, 0);
+                    return transfer(connection, file, null, null);
+                } catch (IOException ignore) {
+                    // go on with next repository
+                    LOG.debug(Ix2 + "Could not download [" + artifact + "]");
+                    LOG.trace(Ix2 + "Reason [" + ignore.getClass().getName() + ": " + ignore.getMessage() + "]");
+                }
+            }
+            if (!remotes.isEmpty()) {
+                // only resume released artifacts stored under their own version
+                boolean resumable = version.toString().equals(parser.getVersion()) && !version.toString().endsWith("SNAPSHOT");
+                if (resumable) {
+                    // released artifacts can be fetched from the closest peers, falling back to the repositories
+                    File downloaded = downloadFromPeers(version, parser.getArtifactPath(), file);
+                    if (downloaded != null) {
+                        return downloaded;
+                    }
+                }
+                File downloaded = download(remotes, file, resumable);
+                if (downloaded != null) {
+                    return downloaded;
+                }
+            }
+        }
+        // no artifact found
+        throw new IOException("URL [" + url + "] could not be resolved.");
+    }
+
+    /**
+     * Downloads the artifact from the closest peer advertising it, checking its content
+     * against the checksum advertised by the peer.
+     *
+     * @return the downloaded file or <code>null</code> if no peer could provide the artifact
+     */
+    private File downloadFromPeers(Version version, String path, File file) throws InterruptedException {
+        PeerRepository peers = manager != null ? manager.getPeerRepository() : null;
+        if (peers == null) {
+            return null;
+        }
+        for (PeerRepository.Peer peer : peers.getPeers(path)) {
+            DownloadableArtifact artifact;
             try {
-                configuration.enableProxy(artifact.getArtifactURL());
-                String repository = cache.getFile().getAbsolutePath();
-                if (!repository.endsWith(Parser.FILE_SEPARATOR)) {
-                    repository = repository + Parser.FILE_SEPARATOR;
+                artifact = new DownloadableArtifact(version.toString(), 0, new URL(peer.getUrl()), path, false, configuration.getCertificateCheck());
+            } catch (IOException e) {
+                continue;
+            }
+            LOG.trace("Downloading [" + artifact + "] from peer " + peer.getContainer());
+            Semaphore permits = manager.getPermits(artifact.getArtifactURL());
+            if (permits != null) {
+                permits.acquire();
+            }
+            try {
+                Connection connection = connect(artifact, 0);
+                connection.permits = permits;
+                permits = null;
+                File downloaded = transfer(connection, file, null, peer.getChecksum());
+                manager.getStatistics().fromPeer();
+                return downloaded;
+            } catch (IOException e) {
+                LOG.debug(Ix2 + "Could not download [" + artifact + "] from peer " + peer.getContainer());
+                LOG.trace(Ix2 + "Reason [" + e.getClass().getName() + ": " + e.getMessage() + "]");
+            } finally {
+                if (permits != null) {
+                    permits.release();
                 }
-                InputStream is = artifact.getInputStream();
-                File file = new File(repository + parser.getArtifactPath());
-                file.getParentFile().mkdirs();
-                if (!file.getParentFile().isDirectory()) {
-                    throw new IOException("Unable to create directory " + file.getParentFile().toString());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Downloads the artifact from the first of the given remote repositories to respond, going on with the
+     * other repositories if the transfer fails.
+     *
+     * @param artifacts the candidate artifacts, all with the same version
+     * @param file      the target file
+     * @param resumable whether a partial download left by a previous attempt can be resumed
+     * @return the downloaded file or <code>null</code> if no repository could provide the artifact
+     */
+    private File download(List<DownloadableArtifact> artifacts, File file, boolean resumable) throws InterruptedException {
+        File part = new File(file.getPath() + PART_SUFFIX);
+        if (!PARTS.add(part.getPath())) {
+            // someone else is already writing this artifact, do not share the partial file
+            resumable = false;
+            part = null;
+        }
+        try {
+            File resumed = resumable ? part : null;
+            List<DownloadableArtifact> candidates = new ArrayList<DownloadableArtifact>(artifacts);
+            while (!candidates.isEmpty()) {
+                Connection connection;
+                if (candidates.size() == 1 || manager == null) {
+                    connection = connectSequentially(candidates, resumed);
+                } else {
+                    connection = race(candidates, resumed);
                 }
-                File tmp = File.createTempFile("fabric-agent-", null, file.getParentFile());
-                OutputStream os = new FileOutputStream(tmp);
-                copy(is, os);
-                is.close();
-                os.close();
-                if (file.exists() && !file.delete()) {
-                    throw new IOException("Unable to delete file: " + file.toString());
+                if (connection == null) {
+                    return null;
+                }
+                // artifacts are equal when their versions are, so the repository is removed by identity
+                for (Iterator<DownloadableArtifact> it = candidates.iterator(); it.hasNext();) {
+                    if (it.next() == connection.artifact) {
+                        it.remove();
+                        break;
+                    }
+                }
+                if (part != null) {
+                    PART_ORIGINS.put(part.getPath(), getOrigin(connection.artifact));
                 }
-                if (!tmp.renameTo(file)) {
-                    throw new IOException("Unable to rename file " + tmp.toString() + " to " + file.toString());
+                try {
+                    File downloaded = transfer(connection, file, part, null);
+                    if (part != null) {
+                        PART_ORIGINS.remove(part.getPath());
+                    }
+                    return downloaded;
+                } catch (IOException e) {
+                    // go on with next repository
+                    LOG.debug(Ix2 + "Could not download [" + connection.artifact + "]");
+                    LOG.trace(Ix2 + "Reason [" + e.getClass().getName() + ": " + e.getMessage() + "]");
                 }
-                return file;
+            }
+            return null;
+        } finally {
+            if (part != null) {
+                PARTS.remove(part.getPath());
+            }
+        }
+    }
+
+    /**
+     * Returns the offset to resume the download of the artifact at: the length of the partial file if it
+     * was produced by the same repository, or 0 to download the whole artifact again.
+     */
+    private static long getOffset(DownloadableArtifact artifact, File part) {
+        if (part == null || !part.isFile()) {
+            return 0;
+        }
+        String origin = PART_ORIGINS.get(part.getPath());
+        return origin == null || origin.equals(getOrigin(artifact)) ? part.length() : 0;
+    }
+
+    private static String getOrigin(DownloadableArtifact artifact) {
+        return artifact.getArtifactURL().toExternalForm();
+    }
+
+    /**
+     * Connects to the first repository to respond, trying them in order. The repositories which could not
+     * be connected to are removed from the list.
+     */
+    private Connection connectSequentially(List<DownloadableArtifact> artifacts, File part) throws InterruptedException {
+        for (Iterator<DownloadableArtifact> it = artifacts.iterator(); it.hasNext();) {
+            DownloadableArtifact artifact = it.next();
+            LOG.trace("Downloading [" + artifact + "]");
+            Semaphore permits = manager != null ? manager.getPermits(artifact.getArtifactURL()) : null;
+            if (permits != null) {
+                permits.acquire();
+            }
+            try {
+                Connection connection = connect(artifact, getOffset(artifact, part));
+                connection.permits = permits;
+                permits = null;
+                return connection;
             } catch (IOException ignore) {
                 // go on with next repository
+                it.remove();
                 LOG.debug(Ix2 + "Could not download [" + artifact + "]");
                 LOG.trace(Ix2 + "Reason [" + ignore.getClass().getName() + ": " + ignore.getMessage() + "]");
+            } finally {
+                if (permits != null) {
+                    permits.release();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Connects to all the repositories concurrently and returns the first successful connection.
+     * Connections established after the race has been won are closed right away.
+     */
+    private Connection race(List<DownloadableArtifact> artifacts, final File part) throws InterruptedException {
+        final AtomicBoolean won = new AtomicBoolean();
+        CompletionService<Connection> completion = new ExecutorCompletionService<Connection>(manager.getConnectExecutor());
+        List<java.util.concurrent.Future<Connection>> futures = new ArrayList<java.util.concurrent.Future<Connection>>();
+        for (final DownloadableArtifact artifact : artifacts) {
+            futures.add(completion.submit(new Callable<Connection>() {
+                @Override
+                public Connection call() throws Exception {
+                    Semaphore permits = manager.getPermits(artifact.getArtifactURL());
+                    if (permits != null) {
+                        permits.acquire();
+                    }
+                    try {
+                        if (won.get()) {
+                            return null;
+                        }
+                        LOG.trace("Downloading [" + artifact + "]");
+                        Connection connection = connect(artifact, getOffset(artifact, part));
+                        if (!won.compareAndSet(false, true)) {
+                            connection.close();
+                            return null;
+                        }
+                        connection.permits = permits;
+                        permits = null;
+                        return connection;
+                    } finally {
+                        if (permits != null) {
+                            permits.release();
+                        }
+                    }
+                }
+            }));
+        }
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    Connection connection = completion.take().get();
+                    if (connection != null) {
+                        LOG.debug(Ix2 + "Repository [" + connection.artifact.getArtifactURL() + "] won the race");
+                        return connection;
+                    }
+                } catch (ExecutionException e) {
+                    LOG.debug(Ix2 + "Could not download artifact: " + e.getCause().getMessage());
+                }
+            }
+            return null;
+        } finally {
+            // losers still waiting for a permit or a response won't be needed anymore
+            won.set(true);
+        }
+    }
+
+    /**
+     * Opens a connection to the artifact, asking for the content after the given offset if possible.
+     */
+    private Connection connect(DownloadableArtifact artifact, long offset) throws IOException {
+        URL artifactUrl = artifact.getArtifactURL();
+        configuration.enableProxy(artifactUrl);
+        URLConnection conn = URLUtils.prepareConnection(artifactUrl, !configuration.getCertificateCheck());
+        if (offset > 0 && conn instanceof HttpURLConnection) {
+            conn.setRequestProperty("Range", "bytes=" + offset + "-");
+        }
+        long start = 0;
+        if (conn instanceof HttpURLConnection) {
+            HttpURLConnection http = (HttpURLConnection) conn;
+            int code = http.getResponseCode();
+            if (code == HttpURLConnection.HTTP_PARTIAL) {
+                String range = http.getHeaderField("Content-Range");
+                if (range != null && range.startsWith("bytes " + offset + "-")) {
+                    start = offset;
+                } else {
+                    http.disconnect();
+                    throw new IOException("Unexpected content range [" + range + "] for " + artifactUrl);
+                }
+            } else if (code != HttpURLConnection.HTTP_OK) {
+                http.disconnect();
+                throw new IOException("Server returned HTTP response code " + code + " for " + artifactUrl);
+            }
+        }
+        return new Connection(artifact, conn, conn.getInputStream(), start);
+    }
+
+    /**
+     * Copies the content of the connection to the file, going through the partial file if one is given.
+     * If a checksum is given, the content must match it.
+     */
+    private File transfer(Connection connection, File file, File part, String checksum) throws IOException {
+        try {
+            file.getParentFile().mkdirs();
+            if (!file.getParentFile().isDirectory()) {
+                throw new IOException("Unable to create directory " + file.getParentFile().toString());
+            }
+            File tmp = part != null ? part : File.createTempFile("fabric-agent-", null, file.getParentFile());
+            if (connection.start > 0) {
+                LOG.debug(Ix2 + "Resuming download of [" + connection.artifact + "] at " + connection.start);
+                if (manager != null) {
+                    manager.getStatistics().resumed(connection.start);
+                }
+            }
+            OutputStream os = new FileOutputStream(tmp, connection.start > 0);
+            try {
+                copy(connection, os);
+            } finally {
+                os.close();
+            }
+            long length = connection.connection.getContentLength();
+            if (length >= 0 && tmp.length() != connection.start + length) {
+                throw new IOException("Incomplete download of [" + connection.artifact + "]");
+            }
+            if (checksum != null) {
+                if (!checksum.equalsIgnoreCase(sha1(tmp))) {
+                    tmp.delete();
+                    throw new IOException("Checksum mismatch for [" + connection.artifact + "]");
+                }
+            } else if (connection.start > 0) {
+                verifyChecksum(connection.artifact, tmp);
+            }
+            if (file.exists() && !file.delete()) {
+                throw new IOException("Unable to delete file: " + file.toString());
+            }
+            if (!tmp.renameTo(file)) {
+                throw new IOException("Unable to rename file " + tmp.toString() + " to " + file.toString());
+            }
+            return file;
+        } finally {
+            connection.close();
+        }
+    }
+
+    private void copy(Connection connection, OutputStream os) throws IOException {
+        byte[] buffer = new byte[8192];
+        int len;
+        while ((len = connection.input.read(buffer)) > 0) {
+            os.write(buffer, 0, len);
+            if (manager != null && connection.connection instanceof HttpURLConnection) {
+                manager.getStatistics().transferred(len);
+            }
+        }
+    }
+
+    /**
+     * Resumed downloads stitch two transfers together, so check the result against the
+     * sha1 checksum published by the repository, if any. On mismatch the partial file
+     * is discarded so that the next attempt downloads the whole artifact again.
+     */
+    private void verifyChecksum(DownloadableArtifact artifact, File file) throws IOException {
+        String expected;
+        try {
+            URL sha1Url = new URL(artifact.getArtifactURL().toExternalForm() + ".sha1");
+            InputStream is = URLUtils.prepareInputStream(sha1Url, !configuration.getCertificateCheck());
+            try {
+                Scanner scanner = new Scanner(is, "UTF-8");
+                expected = scanner.hasNext() ? scanner.next().trim().toLowerCase() : null;
+            } finally {
+                is.close();
+            }
+        } catch (IOException e) {
+            LOG.trace(Ix2 + "No checksum available for [" + artifact + "]");
+            return;
+        }
+        if (expected != null && !expected.equals(sha1(file))) {
+            file.delete();
+            throw new IOException("Checksum mismatch for resumed download of [" + artifact + "]");
+        }
+    }
+
+    static String sha1(File file) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            InputStream is = new FileInputStream(file);
+            try {
+                byte[] buffer = new byte[8192];
+                int len;
+                while ((len = is.read(buffer)) > 0) {
+                    digest.update(buffer, 0, len);
+                }
+            } finally {
+                is.close();
+            }
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest.digest()) {
+                sb.append(String.format("%02x", b & 0xff));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw initIOException("Unable to compute checksum", e);
+        }
+    }
+
+    /**
+     * An open connection to an artifact, holding the repository permit until closed.
+     */
+    private static class Connection {
+        final DownloadableArtifact artifact;
+        final URLConnection connection;
+        final InputStream input;
+        final long start;
+        Semaphore permits;
+
+        Connection(DownloadableArtifact artifact, URLConnection connection, InputStream input, long start) {
+            this.artifact = artifact;
+            this.connection = connection;
+            this.input = input;
+            this.start = start;
+        }
+
+        void close() {
+            try {
+                input.close();
+            } catch (IOException e) {
+                // Ignore
+            } finally {
+                if (permits != null) {
+                    permits.release();
+                    permits = null;
+                }
             }
         }
-        // no artifact found
-        throw new IOException("URL [" + url + "] could not be resolved.");
     }
 
     /**
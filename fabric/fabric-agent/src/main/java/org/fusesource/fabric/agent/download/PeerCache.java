@@ -0,0 +1,168 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.fabric.agent.download;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The artifacts of the local agent repository that this container offers to its peers.
+ * <p/>
+ * Only released artifacts are advertised, as they never change once deployed. The advertisement
+ * lists one artifact per line, as its path relative to the repository followed by its sha1 checksum.
+ */
+public class PeerCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PeerCache.class);
+
+    /**
+     * Maximum number of advertised artifacts, keeping the registry entry well below the zookeeper node size limit
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 4096;
+
+    private final File repository;
+    private final int maxEntries;
+
+    /**
+     * Checksums computed so far, keyed by path
+     */
+    private final Map<String, Entry> checksums = new HashMap<String, Entry>();
+
+    /**
+     * Currently advertised artifacts and their checksums
+     */
+    private volatile Map<String, String> advertised = Collections.emptyMap();
+
+    public PeerCache(File repository) {
+        this(repository, DEFAULT_MAX_ENTRIES);
+    }
+
+    public PeerCache(File repository, int maxEntries) {
+        this.repository = repository;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Scans the repository and returns the advertisement of its released artifacts,
+     * most recently downloaded first.
+     */
+    public synchronized String advertise() {
+        List<Entry> entries = new ArrayList<Entry>();
+        scan(repository, "", entries);
+        Collections.sort(entries, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry e1, Entry e2) {
+                return e1.lastModified > e2.lastModified ? -1 : e1.lastModified < e2.lastModified ? 1 : 0;
+            }
+        });
+        Map<String, String> artifacts = new HashMap<String, String>();
+        Map<String, Entry> retained = new HashMap<String, Entry>();
+        StringBuilder sb = new StringBuilder();
+        for (Entry entry : entries) {
+            if (artifacts.size() >= maxEntries) {
+                break;
+            }
+            try {
+                Entry cached = checksums.get(entry.path);
+                if (cached == null || cached.length != entry.length || cached.lastModified != entry.lastModified) {
+                    entry.sha1 = MavenDownloadTask.sha1(new File(repository, entry.path));
+                    cached = entry;
+                }
+                retained.put(cached.path, cached);
+                artifacts.put(cached.path, cached.sha1);
+                sb.append(cached.path).append(" ").append(cached.sha1).append("\n");
+            } catch (IOException e) {
+                LOGGER.debug("Unable to compute checksum of " + entry.path, e);
+            }
+        }
+        checksums.clear();
+        checksums.putAll(retained);
+        advertised = Collections.unmodifiableMap(artifacts);
+        return sb.toString();
+    }
+
+    /**
+     * Stops advertising artifacts.
+     */
+    public synchronized void clear() {
+        checksums.clear();
+        advertised = Collections.emptyMap();
+    }
+
+    /**
+     * Returns the file of the given advertised artifact, or <code>null</code> if it is not advertised anymore.
+     */
+    public File getFile(String path) {
+        if (path == null || !advertised.containsKey(path)) {
+            return null;
+        }
+        File file = new File(repository, path);
+        return file.isFile() ? file : null;
+    }
+
+    public Map<String, String> getAdvertised() {
+        return advertised;
+    }
+
+    private void scan(File dir, String prefix, List<Entry> entries) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (file.isDirectory()) {
+                if (!name.endsWith("SNAPSHOT")) {
+                    scan(file, prefix + name + "/", entries);
+                }
+            } else if (isArtifact(name)) {
+                entries.add(new Entry(prefix + name, file.length(), file.lastModified()));
+            }
+        }
+    }
+
+    static boolean isArtifact(String name) {
+        return !name.endsWith(MavenDownloadTask.PART_SUFFIX)
+                && !name.endsWith(".tmp")
+                && !name.startsWith("maven-metadata")
+                && !name.endsWith(".sha1")
+                && !name.endsWith(".md5");
+    }
+
+    static class Entry {
+        final String path;
+        final long length;
+        final long lastModified;
+        String sha1;
+
+        Entry(String path, long length, long lastModified) {
+            this.path = path;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+    }
+
+}
@@ -0,0 +1,234 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.fabric.agent.download;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.fusesource.fabric.api.DataStore;
+import org.fusesource.fabric.api.FabricService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The artifacts advertised by the peers closest to this container, see {@link PeerCache}.
+ * <p/>
+ * Peers running on the same host come first, then peers sorted by the distance between their
+ * geographical locations, and finally the peers whose location is unknown. Only the advertisements
+ * of the closest peers are read, so that provisioning does not scan the whole fabric.
+ */
+public class PeerRepository {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PeerRepository.class);
+
+    /**
+     * Servlet path under which containers serve their advertised artifacts
+     */
+    public static final String PEER_PATH = "/maven/peer";
+
+    public static final int DEFAULT_MAX_PEERS = 5;
+
+    private static final double EARTH_RADIUS = 6371.0;
+
+    private final Map<String, List<Peer>> peers;
+
+    PeerRepository(Map<String, List<Peer>> peers) {
+        this.peers = peers;
+    }
+
+    /**
+     * Returns the peers offering the given artifact, closest first.
+     */
+    public List<Peer> getPeers(String path) {
+        List<Peer> list = peers.get(path);
+        return list != null ? list : Collections.<Peer>emptyList();
+    }
+
+    /**
+     * Reads the advertisements of the closest alive peers of the current container.
+     *
+     * @param locations the locations of the containers read by the previous loads
+     */
+    public static PeerRepository load(FabricService fabricService, Locations locations, int maxPeers) {
+        DataStore dataStore = fabricService.getDataStore();
+        String current = fabricService.getCurrentContainerName();
+        String[] location = locations.get(dataStore, current);
+        final Map<String, Double> distances = new HashMap<String, Double>();
+        Set<String> alive = new HashSet<String>();
+        alive.add(current);
+        for (String id : dataStore.getContainers()) {
+            if (id.equals(current) || !dataStore.isContainerAlive(id)) {
+                continue;
+            }
+            alive.add(id);
+            String[] peerLocation = locations.get(dataStore, id);
+            double distance;
+            if (location[0].length() > 0 && location[0].equals(peerLocation[0])) {
+                distance = 0;
+            } else {
+                distance = distance(location[1], peerLocation[1]);
+            }
+            distances.put(id, distance);
+        }
+        locations.retain(alive);
+        List<String> ids = new ArrayList<String>(distances.keySet());
+        Collections.sort(ids, new Comparator<String>() {
+            @Override
+            public int compare(String id1, String id2) {
+                return Double.compare(distances.get(id1), distances.get(id2));
+            }
+        });
+
+        Map<String, List<Peer>> peers = new HashMap<String, List<Peer>>();
+        int count = 0;
+        for (String id : ids) {
+            if (count >= maxPeers) {
+                break;
+            }
+            String artifacts = getAttribute(dataStore, id, DataStore.ContainerAttribute.ProvisionArtifacts, false);
+            String httpUrl = getAttribute(dataStore, id, DataStore.ContainerAttribute.HttpUrl, true);
+            if (artifacts.length() == 0 || httpUrl.length() == 0) {
+                continue;
+            }
+            count++;
+            String url = httpUrl + PEER_PATH + "/";
+            for (String line : artifacts.split("\n")) {
+                int idx = line.lastIndexOf(' ');
+                if (idx > 0) {
+                    String path = line.substring(0, idx);
+                    List<Peer> list = peers.get(path);
+                    if (list == null) {
+                        list = new ArrayList<Peer>();
+                        peers.put(path, list);
+                    }
+                    list.add(new Peer(id, url, line.substring(idx + 1).trim()));
+                }
+            }
+            LOGGER.debug("Using artifacts of peer " + id + " at " + url);
+        }
+        return new PeerRepository(peers);
+    }
+
+    private static String getAttribute(DataStore dataStore, String id, DataStore.ContainerAttribute attribute, boolean substituted) {
+        try {
+            String value = dataStore.getContainerAttribute(id, attribute, "", false, substituted);
+            return value != null ? value.trim() : "";
+        } catch (Exception e) {
+            return "";
+        }
+    }
+
+    /**
+     * Returns the distance in kilometers between two geographical locations given as
+     * <code>latitude,longitude</code>, as published by the containers, or
+     * {@link Double#MAX_VALUE} if any of them is unknown.
+     */
+    static double distance(String from, String to) {
+        double[] a = parseGeoLocation(from);
+        double[] b = parseGeoLocation(to);
+        if (a == null || b == null) {
+            return Double.MAX_VALUE;
+        }
+        double dLat = Math.toRadians(b[0] - a[0]);
+        double dLon = Math.toRadians(b[1] - a[1]);
+        double h = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(a[0])) * Math.cos(Math.toRadians(b[0])) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS * Math.atan2(Math.sqrt(h), Math.sqrt(1 - h));
+    }
+
+    private static double[] parseGeoLocation(String geoLocation) {
+        if (geoLocation == null) {
+            return null;
+        }
+        String[] parts = geoLocation.split(",");
+        if (parts.length != 2) {
+            return null;
+        }
+        try {
+            return new double[] { Double.parseDouble(parts[0].trim()), Double.parseDouble(parts[1].trim()) };
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The published ip and geographical location of the containers. They only change when a container
+     * is restarted, so they are read once and kept for as long as the container is seen alive.
+     */
+    public static class Locations {
+        private final Map<String, String[]> locations = new HashMap<String, String[]>();
+
+        synchronized String[] get(DataStore dataStore, String id) {
+            String[] location = locations.get(id);
+            if (location == null) {
+                location = new String[] {
+                        getAttribute(dataStore, id, DataStore.ContainerAttribute.Ip, true),
+                        getAttribute(dataStore, id, DataStore.ContainerAttribute.GeoLocation, false)
+                };
+                // the ip is not published yet, so it is read again next time
+                if (location[0].length() > 0) {
+                    locations.put(id, location);
+                }
+            }
+            return location;
+        }
+
+        synchronized void retain(Set<String> ids) {
+            locations.keySet().retainAll(ids);
+        }
+    }
+
+    /**
+     * A peer offering an artifact.
+     */
+    public static class Peer {
+        private final String container;
+        private final String url;
+        private final String checksum;
+
+        Peer(String container, String url, String checksum) {
+            this.container = container;
+            this.url = url;
+            this.checksum = checksum;
+        }
+
+        public String getContainer() {
+            return container;
+        }
+
+        /**
+         * The url of the repository served by the peer
+         */
+        public String getUrl() {
+            return url;
+        }
+
+        /**
+         * The sha1 checksum of the artifact advertised by the peer
+         */
+        public String getChecksum() {
+            return checksum;
+        }
+    }
+
+}
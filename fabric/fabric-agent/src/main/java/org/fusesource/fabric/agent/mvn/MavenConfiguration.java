@@ -84,4 +84,11 @@ public interface MavenConfiguration {
      * @return true if aether should be disabled
      */
     Boolean isAetherDisabled();
+
+    /**
+     * Returns the maximum number of artifacts downloaded concurrently from a single repository host.
+     *
+     * @return the maximum number of concurrent downloads per repository
+     */
+    Integer getMaxConcurrentDownloads();
 }
@@ -54,6 +54,10 @@ public class MavenConfigurationImpl
      * Repositories separator.
      */
     private final static String REPOSITORIES_SEPARATOR = ",";
+    /**
+     * Default maximum number of concurrent downloads per repository host.
+     */
+    private final static int DEFAULT_MAX_CONCURRENT_DOWNLOADS = 4;
 
     /**
      * Maven settings abstraction. Can be null.
@@ -330,4 +334,28 @@ public class MavenConfigurationImpl
         return get(m_pid + MavenConstants.PROPERTY_DISABLE_AETHER);
     }
 
+    /**
+     * Returns the maximum number of concurrent downloads per repository host. Defaults to
+     * {@link #DEFAULT_MAX_CONCURRENT_DOWNLOADS} if not set or not a positive number.
+     *
+     * @see MavenConfiguration#getMaxConcurrentDownloads()
+     */
+    public Integer getMaxConcurrentDownloads() {
+        if (!contains(m_pid + MavenConstants.PROPERTY_MAX_CONCURRENT_DOWNLOADS)) {
+            int max = DEFAULT_MAX_CONCURRENT_DOWNLOADS;
+            final String value = m_propertyResolver.get(m_pid + MavenConstants.PROPERTY_MAX_CONCURRENT_DOWNLOADS);
+            if (value != null && value.trim().length() > 0) {
+                try {
+                    max = Integer.parseInt(value.trim());
+                } catch (NumberFormatException e) {
+                    LOGGER.warn("Invalid value [" + value + "] for " + m_pid + MavenConstants.PROPERTY_MAX_CONCURRENT_DOWNLOADS);
+                }
+            }
+            return set(m_pid + MavenConstants.PROPERTY_MAX_CONCURRENT_DOWNLOADS,
+                    max > 0 ? max : DEFAULT_MAX_CONCURRENT_DOWNLOADS
+            );
+        }
+        return get(m_pid + MavenConstants.PROPERTY_MAX_CONCURRENT_DOWNLOADS);
+    }
+
 }
@@ -56,6 +56,10 @@ public interface MavenConstants {
      * Use fallback repositories switch configuration property name.
      */
     static final String PROPERTY_DISABLE_AETHER = ".disableAether";
+    /**
+     * Maximum number of concurrent downloads from a single repository host configuration property name.
+     */
+    static final String PROPERTY_MAX_CONCURRENT_DOWNLOADS = ".maxConcurrentDownloads";
     /**
      * Option to mark repository as allowing snapshots.
      */
@@ -0,0 +1,212 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.fabric.agent.resolver;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A persistent index of the manifest headers of the bundles, from which {@link ResourceBuilder} builds their
+ * capabilities and requirements, so that bundles don't need to be opened again after a restart or an upgrade.
+ * <p/>
+ * Entries are keyed by the artifact uri and are only used as long as the downloaded file has the same path, length
+ * and last modification time. The index is read lazily on the first lookup, holds at most a given number of entries,
+ * evicting the least recently used ones, and is only written back by {@link #save()} if it changed.
+ */
+public class ResourceIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResourceIndex.class);
+
+    public static final int DEFAULT_MAX_ENTRIES = 4096;
+
+    private static final int FORMAT_VERSION = 1;
+    private static final int MAX_STRING_LENGTH = 16 * 1024 * 1024;
+
+    private final File file;
+    private final int maxEntries;
+    private Map<String, Entry> entries;
+    private boolean dirty;
+
+    public ResourceIndex(File file) {
+        this(file, DEFAULT_MAX_ENTRIES);
+    }
+
+    public ResourceIndex(File file, int maxEntries) {
+        this.file = file;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Returns the headers of the artifact or null if they're not indexed or the artifact changed since
+     */
+    public synchronized Map<String, String> getHeaders(String uri, File artifact) {
+        Entry entry = getEntries().get(uri);
+        if (entry != null && entry.matches(artifact)) {
+            return entry.headers;
+        }
+        return null;
+    }
+
+    public synchronized void putHeaders(String uri, File artifact, Map<String, String> headers) {
+        getEntries().put(uri, new Entry(artifact, Collections.unmodifiableMap(new HashMap<String, String>(headers))));
+        dirty = true;
+    }
+
+    public synchronized int size() {
+        return getEntries().size();
+    }
+
+    /**
+     * Writes the index if it changed since it was read
+     */
+    public synchronized void save() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                Entry entry = e.getValue();
+                writeString(out, e.getKey());
+                writeString(out, entry.path);
+                out.writeLong(entry.length);
+                out.writeLong(entry.lastModified);
+                out.writeInt(entry.headers.size());
+                for (Map.Entry<String, String> header : entry.headers.entrySet()) {
+                    writeString(out, header.getKey());
+                    writeString(out, header.getValue());
+                }
+            }
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            file.delete();
+            if (!temp.renameTo(file)) {
+                throw new IOException("Unable to write " + file);
+            }
+        }
+        dirty = false;
+    }
+
+    private Map<String, Entry> getEntries() {
+        if (entries == null) {
+            entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                    return size() > maxEntries;
+                }
+            };
+            if (file.exists()) {
+                try {
+                    load();
+                } catch (IOException e) {
+                    LOGGER.warn("Unable to read the resource index " + file + ", ignoring it", e);
+                    entries.clear();
+                    dirty = true;
+                }
+            }
+        }
+        return entries;
+    }
+
+    private void load() throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != FORMAT_VERSION) {
+                throw new IOException("Unsupported format");
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String uri = readString(in);
+                String path = readString(in);
+                long length = in.readLong();
+                long lastModified = in.readLong();
+                int size = in.readInt();
+                Map<String, String> headers = new HashMap<String, String>();
+                for (int j = 0; j < size; j++) {
+                    headers.put(readString(in), readString(in));
+                }
+                entries.put(uri, new Entry(path, length, lastModified, Collections.unmodifiableMap(headers)));
+            }
+        } catch (EOFException e) {
+            throw new IOException("Truncated index", e);
+        } finally {
+            in.close();
+        }
+    }
+
+    // Manifest headers such as Import-Package can go beyond the 64k limit of writeUTF
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_STRING_LENGTH) {
+            throw new IOException("Corrupted index");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private static class Entry {
+        final String path;
+        final long length;
+        final long lastModified;
+        final Map<String, String> headers;
+
+        Entry(File artifact, Map<String, String> headers) {
+            this(artifact.getAbsolutePath(), artifact.length(), artifact.lastModified(), headers);
+        }
+
+        Entry(String path, long length, long lastModified, Map<String, String> headers) {
+            this.path = path;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.headers = headers;
+        }
+
+        boolean matches(File artifact) {
+            return path.equals(artifact.getAbsolutePath()) && length == artifact.length() && lastModified == artifact.lastModified();
+        }
+    }
+}
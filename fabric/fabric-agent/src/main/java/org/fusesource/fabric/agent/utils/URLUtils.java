@@ -143,12 +143,26 @@ public class URLUtils {
      */
     public static InputStream prepareInputStream(final URL url, final boolean acceptAnyCertificate)
             throws IOException {
+        return prepareConnection(url, acceptAnyCertificate).getInputStream();
+    }
+
+    /**
+     * Prepare url for authentication and ssl if necessary and returns the unconnected url connection,
+     * so that callers can add request headers before reading from it.
+     *
+     * @param url                  url to prepare
+     * @param acceptAnyCertificate true if the certicate check should be skipped
+     * @return prepared url connection
+     * @throws IOException re-thrown
+     */
+    public static URLConnection prepareConnection(final URL url, final boolean acceptAnyCertificate)
+            throws IOException {
         final URLConnection conn = url.openConnection();
         prepareForAuthentication(conn);
         if (acceptAnyCertificate) {
             prepareForSSL(conn);
         }
-        return conn.getInputStream();
+        return conn;
     }
 
 }
@@ -0,0 +1,119 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.fabric.agent;
+
+import org.fusesource.fabric.agent.download.PeerCache;
+import org.fusesource.fabric.api.DataStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DeploymentAgentTest {
+
+    private final List<String> advertisements = new ArrayList<String>();
+    private DataStore dataStore;
+    private File repository;
+
+    @Before
+    public void setUp() throws Exception {
+        dataStore = (DataStore) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {DataStore.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("setContainerAttribute") && args[1] == DataStore.ContainerAttribute.ProvisionArtifacts) {
+                    advertisements.add((String) args[2]);
+                }
+                return null;
+            }
+        });
+        repository = File.createTempFile("repository", "");
+        repository.delete();
+        File artifact = new File(repository, "org/foo/foo/1.0/foo-1.0.jar");
+        artifact.getParentFile().mkdirs();
+        FileOutputStream os = new FileOutputStream(artifact);
+        try {
+            os.write("foo".getBytes("UTF-8"));
+        } finally {
+            os.close();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        delete(repository);
+    }
+
+    @Test
+    public void testPeerCacheAdvertisedAfterRestart() throws Exception {
+        Map<String, String> config = new HashMap<String, String>();
+        config.put("peer.cache", "true");
+        config.put("start.parallelism", "4");
+
+        // after a restart with an unchanged configuration the deployment is up to date and only the settings are applied
+        DeploymentAgent agent = new DeploymentAgent();
+        agent.configure(config);
+        assertTrue(agent.isPeerCacheEnabled());
+        assertEquals(4, agent.getStartParallelism());
+
+        String advertised = DeploymentAgent.advertise(dataStore, "root", new PeerCache(repository), agent.isPeerCacheEnabled(), null);
+        assertEquals(1, advertisements.size());
+        assertTrue(advertisements.get(0).startsWith("org/foo/foo/1.0/foo-1.0.jar "));
+
+        // an unchanged advertisement is not written again
+        DeploymentAgent.advertise(dataStore, "root", new PeerCache(repository), true, advertised);
+        assertEquals(1, advertisements.size());
+    }
+
+    @Test
+    public void testAdvertisementRemovedOnceWhenDisabled() throws Exception {
+        DeploymentAgent agent = new DeploymentAgent();
+        agent.configure(new HashMap<String, String>());
+        assertFalse(agent.isPeerCacheEnabled());
+        assertEquals(1, agent.getStartParallelism());
+
+        String advertised = DeploymentAgent.advertise(dataStore, "root", new PeerCache(repository), agent.isPeerCacheEnabled(), null);
+        assertEquals(1, advertisements.size());
+        assertNull(advertisements.get(0));
+
+        DeploymentAgent.advertise(dataStore, "root", new PeerCache(repository), false, advertised);
+        assertEquals(1, advertisements.size());
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.fabric.agent;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class DeploymentPlanTest {
+
+    @Test
+    public void testBatches() {
+        Map<String, List<String>> dependencies = new HashMap<String, List<String>>();
+        dependencies.put("api", Arrays.<String>asList());
+        dependencies.put("impl", Arrays.asList("api", "util"));
+        dependencies.put("client", Arrays.asList("api"));
+        dependencies.put("web", Arrays.asList("impl", "client", "servlet"));
+        List<List<String>> batches = DeploymentPlan.getBatches(
+                Arrays.asList("api", "util", "impl", "client", "web"), dependencies);
+        assertEquals(3, batches.size());
+        assertEquals(Arrays.asList("api", "util"), batches.get(0));
+        assertEquals(Arrays.asList("impl", "client"), batches.get(1));
+        assertEquals(Arrays.asList("web"), batches.get(2));
+    }
+
+    @Test
+    public void testBatchesWithCycle() {
+        Map<String, List<String>> dependencies = new HashMap<String, List<String>>();
+        dependencies.put("a", Arrays.asList("b"));
+        dependencies.put("b", Arrays.asList("a"));
+        List<List<String>> batches = DeploymentPlan.getBatches(Arrays.asList("a", "b"), dependencies);
+        assertEquals(2, batches.size());
+        assertEquals(Arrays.asList("a"), batches.get(0));
+        assertEquals(Arrays.asList("b"), batches.get(1));
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.fabric.agent;
+
+import org.fusesource.fabric.agent.resolver.ResourceBuilder;
+import org.junit.Test;
+import org.osgi.resource.Resource;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ResolutionCacheTest {
+
+    @Test
+    public void testInputsIgnoreLastModified() {
+        Map<String, String> config = new HashMap<String, String>();
+        config.put("feature.karaf", "karaf");
+        config.put("repository.karaf", "mvn:org.apache.karaf.assemblies.features/standard/2.3.0/xml/features");
+        config.put(ResolutionCache.LAST_MODIFIED, "1");
+        String inputs = ResolutionCache.getInputs(config, false);
+
+        config.put(ResolutionCache.LAST_MODIFIED, "2");
+        assertEquals(inputs, ResolutionCache.getInputs(config, false));
+        assertFalse(inputs.equals(ResolutionCache.getInputs(config, true)));
+
+        config.put("bundle.foo", "mvn:foo/foo/1.0");
+        assertFalse(inputs.equals(ResolutionCache.getInputs(config, false)));
+    }
+
+    @Test
+    public void testSaveAndReload() throws Exception {
+        File file = File.createTempFile("resolution", ".properties");
+        file.delete();
+        try {
+            ResolutionCache cache = new ResolutionCache(file);
+            assertFalse(cache.isResolved("abc"));
+
+            Resource resource = createResource("mvn:foo/foo/1.0-SNAPSHOT", "foo", "1.0.0.SNAPSHOT");
+            cache.save("abc", Collections.singleton(resource), Collections.singletonMap("mvn:foo/foo/1.0-SNAPSHOT", 42L));
+
+            cache = new ResolutionCache(file);
+            assertTrue(cache.isResolved("abc"));
+            assertFalse(cache.isResolved("def"));
+            assertEquals(Collections.singletonMap("mvn:foo/foo/1.0-SNAPSHOT", "foo/1.0.0.SNAPSHOT"), cache.getResources());
+            assertEquals(Collections.singletonMap("mvn:foo/foo/1.0-SNAPSHOT", 42L), cache.getChecksums());
+
+            cache.clear();
+            assertFalse(new ResolutionCache(file).isResolved("abc"));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testResourceReuse() throws Exception {
+        File file = File.createTempFile("bundle", ".jar");
+        try {
+            ResolutionCache cache = new ResolutionCache(new File(file.getParentFile(), file.getName() + ".properties"));
+            Resource resource = createResource("mvn:foo/foo/1.0", "foo", "1.0");
+            cache.putResource("mvn:foo/foo/1.0", file, resource);
+            assertSame(resource, cache.getResource("mvn:foo/foo/1.0", file));
+            assertNull(cache.getResource("mvn:foo/foo/1.1", file));
+
+            FileOutputStream fos = new FileOutputStream(file);
+            fos.write(new byte[16]);
+            fos.close();
+            assertNull(cache.getResource("mvn:foo/foo/1.0", file));
+
+            Resource other = createResource("mvn:foo/foo/1.0", "foo", "1.0");
+            cache.putResource("mvn:foo/foo/1.0", file, other);
+            cache.retainResources(Collections.singleton("mvn:bar/bar/1.0"));
+            assertNull(cache.getResource("mvn:foo/foo/1.0", file));
+        } finally {
+            file.delete();
+        }
+    }
+
+    private Resource createResource(String uri, String symbolicName, String version) throws Exception {
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("Bundle-ManifestVersion", "2");
+        headers.put("Bundle-SymbolicName", symbolicName);
+        headers.put("Bundle-Version", version);
+        return ResourceBuilder.build(uri, headers);
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.fabric.agent.download;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DownloadStatisticsTest {
+
+    @Test
+    public void testCounters() {
+        DownloadStatistics statistics = new DownloadStatistics();
+        statistics.requested();
+        statistics.requested();
+        statistics.requested();
+        statistics.deduplicated();
+        statistics.transferred(2048);
+        statistics.resumed(1024);
+        statistics.completed(true);
+        statistics.completed(false);
+
+        assertEquals(3, statistics.getRequested());
+        assertEquals(1, statistics.getDeduplicated());
+        assertEquals(1, statistics.getCompleted());
+        assertEquals(1, statistics.getFailed());
+        assertEquals(2048, statistics.getTransferredBytes());
+        assertEquals(1024, statistics.getResumedBytes());
+        assertTrue(statistics.getThroughput() > 0);
+        assertTrue(statistics.toString().startsWith("1/2 artifacts, 1 deduplicated, 1 failed, 2 kB (1 kB resumed) at "));
+    }
+
+    @Test
+    public void testNoTransfer() {
+        DownloadStatistics statistics = new DownloadStatistics();
+        assertEquals(0, statistics.getThroughput());
+        assertEquals("0/0 artifacts, 0 B at 0 B/s", statistics.toString());
+    }
+
+    @Test
+    public void testSizes() {
+        assertEquals("512 B", DownloadStatistics.toSize(512));
+        assertEquals("2 kB", DownloadStatistics.toSize(2048));
+        assertEquals("1.5 MB", DownloadStatistics.toSize(1536 * 1024));
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.fabric.agent.download;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PeerCacheTest {
+
+    @Test
+    public void testAdvertise() throws Exception {
+        File repository = File.createTempFile("repository", "");
+        repository.delete();
+        try {
+            write(new File(repository, "org/foo/foo/1.0/foo-1.0.jar"), "foo");
+            write(new File(repository, "org/foo/foo/1.1/foo-1.1.jar" + MavenDownloadTask.PART_SUFFIX), "partial");
+            write(new File(repository, "org/foo/foo/1.2-SNAPSHOT/foo-1.2-SNAPSHOT.jar"), "snapshot");
+            write(new File(repository, "org/foo/foo/maven-metadata-local.xml"), "<metadata/>");
+
+            PeerCache cache = new PeerCache(repository);
+            assertNull(cache.getFile("org/foo/foo/1.0/foo-1.0.jar"));
+
+            String advertisement = cache.advertise();
+            // sha1 of "foo"
+            assertEquals("org/foo/foo/1.0/foo-1.0.jar 0beec7b5ea3f0fdbc95d0dd47f3c5bc275da8a33\n", advertisement);
+            assertNotNull(cache.getFile("org/foo/foo/1.0/foo-1.0.jar"));
+            assertNull(cache.getFile("org/foo/foo/1.2-SNAPSHOT/foo-1.2-SNAPSHOT.jar"));
+
+            cache.clear();
+            assertTrue(cache.getAdvertised().isEmpty());
+            assertNull(cache.getFile("org/foo/foo/1.0/foo-1.0.jar"));
+        } finally {
+            delete(repository);
+        }
+    }
+
+    @Test
+    public void testMaxEntries() throws Exception {
+        File repository = File.createTempFile("repository", "");
+        repository.delete();
+        try {
+            File older = new File(repository, "org/foo/foo/1.0/foo-1.0.jar");
+            write(older, "foo");
+            older.setLastModified(System.currentTimeMillis() - 60000);
+            write(new File(repository, "org/foo/foo/1.1/foo-1.1.jar"), "foo");
+
+            PeerCache cache = new PeerCache(repository, 1);
+            cache.advertise();
+            assertEquals(1, cache.getAdvertised().size());
+            assertTrue(cache.getAdvertised().containsKey("org/foo/foo/1.1/foo-1.1.jar"));
+        } finally {
+            delete(repository);
+        }
+    }
+
+    @Test
+    public void testIsArtifact() throws Exception {
+        assertTrue(PeerCache.isArtifact("fabric-agent-7.2.0.jar"));
+        assertFalse(PeerCache.isArtifact("fabric-agent-4242.tmp"));
+        assertFalse(PeerCache.isArtifact("foo-1.0.jar" + MavenDownloadTask.PART_SUFFIX));
+        assertFalse(PeerCache.isArtifact("foo-1.0.jar.sha1"));
+    }
+
+    private static void write(File file, String content) throws IOException {
+        file.getParentFile().mkdirs();
+        FileOutputStream os = new FileOutputStream(file);
+        try {
+            os.write(content.getBytes("UTF-8"));
+        } finally {
+            os.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
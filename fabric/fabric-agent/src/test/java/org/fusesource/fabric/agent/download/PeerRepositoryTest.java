@@ -0,0 +1,35 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.fabric.agent.download;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PeerRepositoryTest {
+
+    @Test
+    public void testDistance() {
+        assertEquals(Double.MAX_VALUE, PeerRepository.distance("", "48.85,2.35"), 0.0);
+        assertEquals(Double.MAX_VALUE, PeerRepository.distance("48.85,2.35", "unknown"), 0.0);
+        assertEquals(0.0, PeerRepository.distance("48.85,2.35", "48.85,2.35"), 0.001);
+        // Paris - London
+        double distance = PeerRepository.distance("48.8567,2.3508", "51.5072,-0.1275");
+        assertTrue(distance > 330 && distance < 360);
+    }
+}
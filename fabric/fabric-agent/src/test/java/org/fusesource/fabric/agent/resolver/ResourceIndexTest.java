@@ -0,0 +1,110 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.fabric.agent.resolver;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class ResourceIndexTest {
+
+    private File index;
+    private File artifact;
+
+    @Before
+    public void setUp() throws IOException {
+        index = File.createTempFile("resources", ".idx");
+        index.delete();
+        artifact = File.createTempFile("bundle", ".jar");
+    }
+
+    @After
+    public void tearDown() {
+        index.delete();
+        artifact.delete();
+    }
+
+    @Test
+    public void testSaveAndReload() throws Exception {
+        ResourceIndex resourceIndex = new ResourceIndex(index);
+        assertNull(resourceIndex.getHeaders("mvn:foo/foo/1.0", artifact));
+        resourceIndex.putHeaders("mvn:foo/foo/1.0", artifact, headers("foo"));
+        resourceIndex.save();
+
+        resourceIndex = new ResourceIndex(index);
+        assertEquals(headers("foo"), resourceIndex.getHeaders("mvn:foo/foo/1.0", artifact));
+        assertNull(resourceIndex.getHeaders("mvn:foo/foo/1.1", artifact));
+    }
+
+    @Test
+    public void testChangedArtifact() throws Exception {
+        ResourceIndex resourceIndex = new ResourceIndex(index);
+        resourceIndex.putHeaders("mvn:foo/foo/1.0", artifact, headers("foo"));
+        write(artifact, 16);
+        assertNull(resourceIndex.getHeaders("mvn:foo/foo/1.0", artifact));
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        ResourceIndex resourceIndex = new ResourceIndex(index, 2);
+        resourceIndex.putHeaders("mvn:foo/foo/1.0", artifact, headers("foo"));
+        resourceIndex.putHeaders("mvn:bar/bar/1.0", artifact, headers("bar"));
+        // the most recently used entries are kept
+        assertNotNull(resourceIndex.getHeaders("mvn:foo/foo/1.0", artifact));
+        resourceIndex.putHeaders("mvn:baz/baz/1.0", artifact, headers("baz"));
+        assertEquals(2, resourceIndex.size());
+        assertNull(resourceIndex.getHeaders("mvn:bar/bar/1.0", artifact));
+        assertNotNull(resourceIndex.getHeaders("mvn:foo/foo/1.0", artifact));
+    }
+
+    @Test
+    public void testCorruptedIndex() throws Exception {
+        write(index, 10);
+        ResourceIndex resourceIndex = new ResourceIndex(index);
+        assertNull(resourceIndex.getHeaders("mvn:foo/foo/1.0", artifact));
+        resourceIndex.putHeaders("mvn:foo/foo/1.0", artifact, headers("foo"));
+        resourceIndex.save();
+        assertEquals(headers("foo"), new ResourceIndex(index).getHeaders("mvn:foo/foo/1.0", artifact));
+    }
+
+    private static Map<String, String> headers(String symbolicName) {
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("Bundle-ManifestVersion", "2");
+        headers.put("Bundle-SymbolicName", symbolicName);
+        headers.put("Bundle-Version", "1.0");
+        return headers;
+    }
+
+    private static void write(File file, int length) throws IOException {
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            fos.write(new byte[length]);
+        } finally {
+            fos.close();
+        }
+    }
+}
@@ -81,6 +81,16 @@ public interface DataStore {
 
     void setContainerProfiles(String containerId, List<String> profileIds);
 
+    /**
+     * Returns the ids of the containers which use the given version.
+     */
+    List<String> getVersionContainers(String versionId);
+
+    /**
+     * Returns the ids of the containers which use the given version and have the given profile.
+     */
+    List<String> getProfileContainers(String versionId, String profileId);
+
     boolean isContainerAlive(String id);
 
 
@@ -90,6 +100,7 @@ public interface DataStore {
         ProvisionStatus,
         ProvisionException,
         ProvisionList,
+        ProvisionArtifacts,
         Location,
         GeoLocation,
         Resolver,
@@ -0,0 +1,32 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.fabric.api;
+
+/**
+ * A configuration tracking callback which is told what changed.
+ * <p/>
+ * When tracked with {@link DataStore#trackConfiguration(Runnable)}, the data store calls {@link #run(DataStoreChangeSet)}
+ * instead of {@link #run()}, so that the callback can skip the changes which don't concern it.
+ */
+public interface DataStoreCallback extends Runnable {
+
+    /**
+     * Called once the data store changed.
+     * @param changes The changes since the previous call, coalesced if there were several of them.
+     */
+    void run(DataStoreChangeSet changes);
+}
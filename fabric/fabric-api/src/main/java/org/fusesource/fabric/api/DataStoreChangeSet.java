@@ -0,0 +1,204 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.fabric.api;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Describes which versions, profiles and containers changed in a {@link DataStore}.
+ * <p/>
+ * A change set is either full, when the data store can't tell what changed so that everything must be considered
+ * changed, or lists the changed profiles of each version, the versions which changed as a whole and the containers
+ * whose configuration changed.
+ */
+public final class DataStoreChangeSet {
+
+    private static final DataStoreChangeSet ALL = new DataStoreChangeSet(true, Collections.<String>emptySet(), Collections.<String, Set<String>>emptyMap(), Collections.<String>emptySet());
+    private static final DataStoreChangeSet NONE = new DataStoreChangeSet(false, Collections.<String>emptySet(), Collections.<String, Set<String>>emptyMap(), Collections.<String>emptySet());
+
+    private final boolean full;
+    private final Set<String> versions;
+    private final Map<String, Set<String>> profiles;
+    private final Set<String> containers;
+
+    private DataStoreChangeSet(boolean full, Set<String> versions, Map<String, Set<String>> profiles, Set<String> containers) {
+        this.full = full;
+        this.versions = versions;
+        this.profiles = profiles;
+        this.containers = containers;
+    }
+
+    /**
+     * Returns a change set for which everything has changed
+     */
+    public static DataStoreChangeSet all() {
+        return ALL;
+    }
+
+    public static DataStoreChangeSet none() {
+        return NONE;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public boolean isFull() {
+        return full;
+    }
+
+    public boolean isEmpty() {
+        return !full && versions.isEmpty() && profiles.isEmpty() && containers.isEmpty();
+    }
+
+    /**
+     * Returns the versions which changed as a whole, not counting the ones for which only some profiles changed
+     */
+    public Set<String> getVersions() {
+        return versions;
+    }
+
+    /**
+     * Returns the changed profiles of the version, not counting the ones of a version which changed as a whole
+     */
+    public Set<String> getProfiles(String version) {
+        Set<String> answer = profiles.get(version);
+        return answer != null ? answer : Collections.<String>emptySet();
+    }
+
+    public Set<String> getContainers() {
+        return containers;
+    }
+
+    /**
+     * Returns true if the version or any of its profiles may have changed
+     */
+    public boolean affectsVersion(String version) {
+        return full || versions.contains(version) || profiles.containsKey(version);
+    }
+
+    /**
+     * Returns true if the profile may have changed
+     */
+    public boolean affectsProfile(String version, String profile) {
+        return full || versions.contains(version) || getProfiles(version).contains(profile);
+    }
+
+    /**
+     * Returns true if any profile of any version may have changed
+     */
+    public boolean affectsProfiles() {
+        return full || !versions.isEmpty() || !profiles.isEmpty();
+    }
+
+    /**
+     * Returns true if the configuration of the container, like its version or its profiles, may have changed
+     */
+    public boolean affectsContainer(String container) {
+        return full || containers.contains(container);
+    }
+
+    @Override
+    public String toString() {
+        if (full) {
+            return "DataStoreChangeSet{all}";
+        }
+        return "DataStoreChangeSet{" +
+                "versions=" + versions +
+                ", profiles=" + profiles +
+                ", containers=" + containers +
+                '}';
+    }
+
+    /**
+     * Collects changes into a {@link DataStoreChangeSet}. Not thread safe.
+     */
+    public static final class Builder {
+
+        private boolean full;
+        private final Set<String> versions = new HashSet<String>();
+        private final Map<String, Set<String>> profiles = new HashMap<String, Set<String>>();
+        private final Set<String> containers = new HashSet<String>();
+
+        public Builder all() {
+            full = true;
+            return this;
+        }
+
+        public Builder version(String version) {
+            versions.add(version);
+            return this;
+        }
+
+        public Builder profile(String version, String profile) {
+            Set<String> ids = profiles.get(version);
+            if (ids == null) {
+                ids = new HashSet<String>();
+                profiles.put(version, ids);
+            }
+            ids.add(profile);
+            return this;
+        }
+
+        public Builder container(String container) {
+            containers.add(container);
+            return this;
+        }
+
+        /**
+         * Adds all the changes of the given change set
+         */
+        public Builder merge(DataStoreChangeSet changes) {
+            if (changes.full) {
+                full = true;
+            }
+            versions.addAll(changes.versions);
+            for (Map.Entry<String, Set<String>> entry : changes.profiles.entrySet()) {
+                for (String profile : entry.getValue()) {
+                    profile(entry.getKey(), profile);
+                }
+            }
+            containers.addAll(changes.containers);
+            return this;
+        }
+
+        public boolean isEmpty() {
+            return !full && versions.isEmpty() && profiles.isEmpty() && containers.isEmpty();
+        }
+
+        public DataStoreChangeSet build() {
+            if (full) {
+                return ALL;
+            }
+            Map<String, Set<String>> profileSets = new HashMap<String, Set<String>>();
+            for (Map.Entry<String, Set<String>> entry : profiles.entrySet()) {
+                // profiles of a version which changed as a whole are implied
+                if (!versions.contains(entry.getKey())) {
+                    profileSets.put(entry.getKey(), Collections.unmodifiableSet(new HashSet<String>(entry.getValue())));
+                }
+            }
+            return new DataStoreChangeSet(false,
+                    Collections.unmodifiableSet(new HashSet<String>(versions)),
+                    Collections.unmodifiableMap(profileSets),
+                    Collections.unmodifiableSet(new HashSet<String>(containers)));
+        }
+    }
+}
@@ -29,7 +29,8 @@ public interface FabricService {
     String getEnvironment();
 
     /**
-     * Track configuration changes.
+     * Track configuration changes. Changes in quick succession are coalesced into a single call, and a
+     * {@link DataStoreCallback} is also told which versions, profiles and containers changed.
      * @param callback The Callback to call when a configuration change is detected.
      */
     void trackConfiguration(Runnable callback);
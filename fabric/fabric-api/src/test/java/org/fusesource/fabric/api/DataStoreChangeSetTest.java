@@ -0,0 +1,68 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.fabric.api;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class DataStoreChangeSetTest {
+
+    @Test
+    public void testProfileChanges() {
+        DataStoreChangeSet changes = DataStoreChangeSet.builder().profile("1.0", "karaf").build();
+        Assert.assertFalse(changes.isFull());
+        Assert.assertTrue(changes.affectsProfiles());
+        Assert.assertTrue(changes.affectsVersion("1.0"));
+        Assert.assertFalse(changes.affectsVersion("1.1"));
+        Assert.assertTrue(changes.affectsProfile("1.0", "karaf"));
+        Assert.assertFalse(changes.affectsProfile("1.0", "default"));
+        Assert.assertFalse(changes.affectsContainer("root"));
+    }
+
+    @Test
+    public void testContainerChanges() {
+        DataStoreChangeSet changes = DataStoreChangeSet.builder().container("root").build();
+        Assert.assertFalse(changes.affectsProfiles());
+        Assert.assertFalse(changes.affectsVersion("1.0"));
+        Assert.assertTrue(changes.affectsContainer("root"));
+        Assert.assertFalse(changes.affectsContainer("child"));
+    }
+
+    @Test
+    public void testMerge() {
+        DataStoreChangeSet first = DataStoreChangeSet.builder().profile("1.0", "karaf").profile("1.1", "karaf").build();
+        DataStoreChangeSet second = DataStoreChangeSet.builder().version("1.0").container("root").build();
+        DataStoreChangeSet changes = DataStoreChangeSet.builder().merge(first).merge(second).build();
+        Assert.assertTrue(changes.affectsProfile("1.0", "default"));
+        Assert.assertTrue(changes.getProfiles("1.0").isEmpty());
+        Assert.assertEquals(1, changes.getProfiles("1.1").size());
+        Assert.assertTrue(changes.affectsContainer("root"));
+
+        changes = DataStoreChangeSet.builder().merge(changes).merge(DataStoreChangeSet.all()).build();
+        Assert.assertTrue(changes.isFull());
+        Assert.assertTrue(changes.affectsProfile("1.2", "default"));
+        Assert.assertTrue(changes.affectsContainer("child"));
+    }
+
+    @Test
+    public void testEmpty() {
+        Assert.assertTrue(DataStoreChangeSet.none().isEmpty());
+        Assert.assertTrue(DataStoreChangeSet.builder().build().isEmpty());
+        Assert.assertFalse(DataStoreChangeSet.all().isEmpty());
+    }
+}
@@ -0,0 +1,147 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.fabric.camel;
+
+import org.apache.camel.Endpoint;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.Producer;
+import org.apache.camel.impl.ProducerCache;
+import org.apache.camel.util.ServiceHelper;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends exchanges to a resolved fabric endpoint and keeps track of the number of
+ * in-flight exchanges and of a moving average of their latency, so that load
+ * balancers can favour the least loaded or fastest endpoints.
+ * <p/>
+ * Singleton producers are created once and reused for every exchange; other
+ * producers are still acquired from the component {@link ProducerCache}.
+ */
+public class EndpointProcessor implements Processor {
+    private static final transient Log LOG = LogFactory.getLog(EndpointProcessor.class);
+
+    /**
+     * Weight of the latest sample in the moving average of the latency.
+     */
+    static final double SMOOTHING_FACTOR = 0.3;
+
+    /**
+     * Minimum latency recorded for a failed exchange, so that an endpoint failing fast
+     * is not mistaken for a fast endpoint.
+     */
+    static final long FAILURE_PENALTY = TimeUnit.SECONDS.toNanos(1);
+
+    private final Endpoint endpoint;
+    private final ProducerCache producerCache;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile Producer producer;
+    private volatile double averageLatency = -1;
+
+    public EndpointProcessor(Endpoint endpoint, ProducerCache producerCache) {
+        this.endpoint = endpoint;
+        this.producerCache = producerCache;
+    }
+
+    public void start() throws Exception {
+        Producer p = endpoint.createProducer();
+        if (p.isSingleton()) {
+            ServiceHelper.startService(p);
+            producer = p;
+        }
+    }
+
+    public void stop() {
+        Producer p = producer;
+        producer = null;
+        if (p != null) {
+            try {
+                ServiceHelper.stopService(p);
+            } catch (Exception e) {
+                LOG.debug("Error stopping producer for " + endpoint, e);
+            }
+        }
+    }
+
+    public void process(Exchange exchange) throws Exception {
+        inFlight.incrementAndGet();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Producer p = producer;
+            if (p != null) {
+                p.process(exchange);
+            } else {
+                p = producerCache.acquireProducer(endpoint);
+                try {
+                    p.process(exchange);
+                } finally {
+                    producerCache.releaseProducer(endpoint, p);
+                }
+            }
+            failed = exchange.getException() != null;
+        } finally {
+            inFlight.decrementAndGet();
+            if (failed) {
+                recordFailure(System.nanoTime() - start);
+            } else {
+                recordLatency(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * Records a failed exchange as at least twice as slow as the current average and
+     * never faster than {@link #FAILURE_PENALTY}.
+     */
+    void recordFailure(long nanos) {
+        recordLatency((long) Math.max(Math.max(nanos, FAILURE_PENALTY), 2 * averageLatency));
+    }
+
+    void recordLatency(long nanos) {
+        double average = averageLatency;
+        // racy updates may drop a sample, which does not matter for an estimate
+        averageLatency = average < 0 ? nanos : average + SMOOTHING_FACTOR * (nanos - average);
+    }
+
+    public Endpoint getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * Returns the number of exchanges currently being sent to this endpoint.
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Returns the moving average of the latency in nanoseconds, or -1 if no exchange has completed yet.
+     */
+    public double getAverageLatency() {
+        return averageLatency;
+    }
+
+    @Override
+    public String toString() {
+        return "Producer for " + endpoint;
+    }
+}
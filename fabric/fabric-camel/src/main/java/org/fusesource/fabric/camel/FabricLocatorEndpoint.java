@@ -23,7 +23,6 @@ import org.apache.camel.Processor;
 import org.apache.camel.Producer;
 import org.apache.camel.impl.DefaultEndpoint;
 import org.apache.camel.impl.DefaultProducer;
-import org.apache.camel.impl.ProducerCache;
 import org.apache.camel.processor.loadbalancer.LoadBalancer;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -31,15 +30,20 @@ import org.fusesource.fabric.groups.GroupListener;
 import org.fusesource.fabric.groups.Group;
 import org.fusesource.fabric.zookeeper.utils.ZooKeeperUtils;
 
-import java.net.URISyntaxException;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * Creates an endpoint which uses FABRIC to map a logical name to physical endpoint names
+ * Creates an endpoint which uses FABRIC to map a logical name to physical endpoint names.
+ * <p/>
+ * Exchanges are routed against an immutable snapshot of the resolved endpoints and its
+ * load balancer. Group events only schedule a refresh: the endpoint uris are substituted
+ * and resolved on a dedicated thread, and the new snapshot is swapped in atomically.
  */
 public class FabricLocatorEndpoint extends DefaultEndpoint implements GroupListener<CamelNodeState> {
     private static final transient Log LOG = LogFactory.getLog(FabricLocatorEndpoint.class);
@@ -48,8 +52,9 @@ public class FabricLocatorEndpoint extends DefaultEndpoint implements GroupListe
     private final Group<CamelNodeState> group;
 
     private LoadBalancerFactory loadBalancerFactory;
-    private LoadBalancer loadBalancer;
-    private final Map<String, Processor> processors = new HashMap<String, Processor>();
+    private volatile Snapshot snapshot;
+    private ExecutorService executor;
+    private final AtomicBoolean refreshScheduled = new AtomicBoolean();
 
 
     public FabricLocatorEndpoint(String uri, FabricComponent component, String singletonId) {
@@ -62,41 +67,67 @@ public class FabricLocatorEndpoint extends DefaultEndpoint implements GroupListe
     }
 
     @Override
-    public synchronized void groupEvent(Group<CamelNodeState> group, GroupEvent event) {
+    public void groupEvent(Group<CamelNodeState> group, GroupEvent event) {
+        ExecutorService executor = this.executor;
+        if (executor == null || !refreshScheduled.compareAndSet(false, true)) {
+            // either not started yet, or a pending refresh will pick up the latest members
+            return;
+        }
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    refreshScheduled.set(false);
+                    refresh();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshScheduled.set(false);
+            LOG.debug("Ignoring group event " + event + " as the endpoint " + getEndpointUri() + " is stopping");
+        }
+    }
+
+    /**
+     * Builds a new snapshot from the current group members, reusing the processors
+     * of the members that are still present, and swaps it in.
+     */
+    protected synchronized void refresh() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            return;
+        }
         Map<String, CamelNodeState> members;
-        if (event == GroupEvent.DISCONNECTED || !isStarted()) {
+        if (!isStarted() || !group.isConnected()) {
             members = Collections.emptyMap();
         } else {
             members = group.members();
         }
-        //Find what has been removed.
-        Set<String> removed = new LinkedHashSet<String>();
 
-        for (Map.Entry<String, Processor> entry : processors.entrySet()) {
+        Map<String, EndpointProcessor> processors = new LinkedHashMap<String, EndpointProcessor>();
+        for (Map.Entry<String, CamelNodeState> entry : members.entrySet()) {
             String key = entry.getKey();
-            if (!members.containsKey(key)) {
-                removed.add(key);
+            EndpointProcessor p = current.processors.get(key);
+            if (p == null) {
+                try {
+                    p = getProcessor(entry.getValue().consumer);
+                } catch (Exception e) {
+                    LOG.warn("Unable to add endpoint " + entry.getValue().consumer, e);
+                    continue;
+                }
             }
+            processors.put(key, p);
         }
 
-        //Add existing processors
-        for (Map.Entry<String, CamelNodeState> entry : members.entrySet()) {
-            try {
-                String key = entry.getKey();
-                if (!processors.containsKey(key)) {
-                    Processor p = getProcessor(entry.getValue().consumer);
-                    processors.put(key, p);
-                    loadBalancer.addProcessor(p);
-                }
-            } catch (URISyntaxException e) {
-                LOG.warn("Unable to add endpoint " + entry.getValue().consumer, e);
-            }
+        LoadBalancer lb = createLoadBalancer();
+        for (EndpointProcessor p : processors.values()) {
+            lb.addProcessor(p);
         }
+        snapshot = new Snapshot(processors, lb);
 
-        //Update the list by removing old and adding new.
-        for (String key : removed) {
-            Processor p = processors.remove(key);
-            loadBalancer.removeProcessor(p);
+        //Stop the processors of the members which have left.
+        for (Map.Entry<String, EndpointProcessor> entry : current.processors.entrySet()) {
+            if (!processors.containsKey(entry.getKey())) {
+                entry.getValue().stop();
+            }
         }
     }
 
@@ -105,7 +136,11 @@ public class FabricLocatorEndpoint extends DefaultEndpoint implements GroupListe
         final FabricLocatorEndpoint endpoint = this;
         return new DefaultProducer(endpoint) {
             public void process(Exchange exchange) throws Exception {
-                loadBalancer.process(exchange);
+                Snapshot s = snapshot;
+                if (s == null) {
+                    throw new IllegalStateException("Endpoint " + getEndpointUri() + " is not started.");
+                }
+                s.loadBalancer.process(exchange);
             }
         };
     }
@@ -121,8 +156,11 @@ public class FabricLocatorEndpoint extends DefaultEndpoint implements GroupListe
     @Override
     public void start() throws Exception {
         super.start();
-        if (loadBalancer == null) {
-            loadBalancer = createLoadBalancer();
+        if (snapshot == null) {
+            snapshot = new Snapshot(Collections.<String, EndpointProcessor>emptyMap(), createLoadBalancer());
+        }
+        if (executor == null) {
+            executor = getCamelContext().getExecutorServiceManager().newSingleThreadExecutor(this, "FabricLocator");
         }
         group.start();
     }
@@ -131,29 +169,40 @@ public class FabricLocatorEndpoint extends DefaultEndpoint implements GroupListe
     public void stop() throws Exception {
         super.stop();
         group.close();
+        if (executor != null) {
+            getCamelContext().getExecutorServiceManager().shutdownNow(executor);
+            executor = null;
+        }
+        synchronized (this) {
+            Snapshot s = snapshot;
+            snapshot = null;
+            if (s != null) {
+                for (EndpointProcessor p : s.processors.values()) {
+                    p.stop();
+                }
+            }
+        }
     }
 
-    public Processor getProcessor(String uri) throws URISyntaxException {
+    /**
+     * Resolves the given (possibly substituted) uri to a started processor
+     * which tracks its in-flight exchanges and latency.
+     */
+    public EndpointProcessor getProcessor(String uri) throws Exception {
         uri = ZooKeeperUtils.getSubstitutedData(component.getCurator(), uri);
         LOG.info("Creating endpoint for " + uri);
         final Endpoint endpoint = getCamelContext().getEndpoint(uri);
-        return new Processor() {
-
-            public void process(Exchange exchange) throws Exception {
-                ProducerCache producerCache = component.getProducerCache();
-                Producer producer = producerCache.acquireProducer(endpoint);
-                try {
-                    producer.process(exchange);
-                } finally {
-                    producerCache.releaseProducer(endpoint, producer);
-                }
-            }
+        EndpointProcessor processor = new EndpointProcessor(endpoint, component.getProducerCache());
+        processor.start();
+        return processor;
+    }
 
-            @Override
-            public String toString() {
-                return "Producer for " + endpoint;
-            }
-        };
+    /**
+     * Returns the processors of the current snapshot.
+     */
+    public Collection<EndpointProcessor> getProcessors() {
+        Snapshot s = snapshot;
+        return s != null ? s.processors.values() : Collections.<EndpointProcessor>emptyList();
     }
 
     // Properties
@@ -178,4 +227,17 @@ public class FabricLocatorEndpoint extends DefaultEndpoint implements GroupListe
     public LoadBalancer createLoadBalancer() {
         return getLoadBalancerFactory().createLoadBalancer();
     }
+
+    /**
+     * An immutable view of the resolved endpoints and the load balancer routing to them.
+     */
+    static class Snapshot {
+        final Map<String, EndpointProcessor> processors;
+        final LoadBalancer loadBalancer;
+
+        Snapshot(Map<String, EndpointProcessor> processors, LoadBalancer loadBalancer) {
+            this.processors = Collections.unmodifiableMap(processors);
+            this.loadBalancer = loadBalancer;
+        }
+    }
 }
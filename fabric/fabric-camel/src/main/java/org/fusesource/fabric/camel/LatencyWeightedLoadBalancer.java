@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.fabric.camel;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+
+import java.util.List;
+
+/**
+ * Randomly sends exchanges to the endpoints with a probability inversely proportional
+ * to their average latency multiplied by their number of in-flight exchanges.
+ * <p/>
+ * Endpoints without any completed exchange are weighted as the fastest known endpoint
+ * so that new members quickly get a latency estimate.
+ */
+public class LatencyWeightedLoadBalancer extends StatisticsLoadBalancerSupport {
+
+    @Override
+    protected Processor chooseProcessor(List<Processor> processors, Exchange exchange) {
+        int size = processors.size();
+        if (size == 1) {
+            return processors.get(0);
+        }
+        double fastest = Double.MAX_VALUE;
+        double[] latencies = new double[size];
+        for (int i = 0; i < size; i++) {
+            latencies[i] = getAverageLatency(processors.get(i));
+            if (latencies[i] >= 0 && latencies[i] < fastest) {
+                fastest = latencies[i];
+            }
+        }
+        if (fastest == Double.MAX_VALUE) {
+            fastest = 0;
+        }
+        double total = 0;
+        double[] weights = new double[size];
+        for (int i = 0; i < size; i++) {
+            double latency = latencies[i] >= 0 ? latencies[i] : fastest;
+            // add one microsecond so that very fast endpoints do not get an infinite weight
+            weights[i] = 1.0 / ((latency + 1000.0) * (getInFlight(processors.get(i)) + 1));
+            total += weights[i];
+        }
+        double r = RANDOM.nextDouble() * total;
+        for (int i = 0; i < size; i++) {
+            r -= weights[i];
+            if (r < 0) {
+                return processors.get(i);
+            }
+        }
+        return processors.get(size - 1);
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyWeightedLoadBalancer";
+    }
+}
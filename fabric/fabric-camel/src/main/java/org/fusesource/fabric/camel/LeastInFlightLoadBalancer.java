@@ -0,0 +1,52 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.fabric.camel;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+
+import java.util.List;
+
+/**
+ * Sends each exchange to the endpoint with the fewest in-flight exchanges,
+ * choosing randomly between equally loaded endpoints.
+ */
+public class LeastInFlightLoadBalancer extends StatisticsLoadBalancerSupport {
+
+    @Override
+    protected Processor chooseProcessor(List<Processor> processors, Exchange exchange) {
+        Processor chosen = null;
+        int min = Integer.MAX_VALUE;
+        int ties = 0;
+        for (Processor processor : processors) {
+            int inFlight = getInFlight(processor);
+            if (inFlight < min) {
+                min = inFlight;
+                chosen = processor;
+                ties = 1;
+            } else if (inFlight == min && RANDOM.nextInt(++ties) == 0) {
+                chosen = processor;
+            }
+        }
+        return chosen;
+    }
+
+    @Override
+    public String toString() {
+        return "LeastInFlightLoadBalancer";
+    }
+}
@@ -20,6 +20,10 @@ import org.apache.camel.processor.loadbalancer.LoadBalancer;
 
 /**
  * Creates a LoadBalancer object
+ * <p/>
+ * Besides the default random load balancer, {@link LeastInFlightLoadBalancerFactory}
+ * and {@link LatencyWeightedLoadBalancerFactory} balance using the statistics of the
+ * {@link EndpointProcessor}s.
  */
 public interface LoadBalancerFactory {
 
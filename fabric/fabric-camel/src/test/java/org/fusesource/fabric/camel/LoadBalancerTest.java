@@ -0,0 +1,116 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.fabric.camel;
+
+import org.apache.camel.Processor;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LoadBalancerTest {
+
+    @Test
+    public void testLeastInFlight() throws Exception {
+        EndpointProcessor busy = processor(3);
+        EndpointProcessor idle = processor(1);
+        List<Processor> processors = Arrays.<Processor>asList(busy, idle, processor(2));
+
+        LeastInFlightLoadBalancer lb = new LeastInFlightLoadBalancer();
+        for (int i = 0; i < 100; i++) {
+            assertSame(idle, lb.chooseProcessor(processors, null));
+        }
+    }
+
+    @Test
+    public void testLeastInFlightTies() throws Exception {
+        EndpointProcessor p1 = processor(0);
+        EndpointProcessor p2 = processor(0);
+        List<Processor> processors = Arrays.<Processor>asList(p1, p2);
+
+        LeastInFlightLoadBalancer lb = new LeastInFlightLoadBalancer();
+        int first = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (lb.chooseProcessor(processors, null) == p1) {
+                first++;
+            }
+        }
+        assertTrue("Ties should be broken randomly: " + first, first > 300 && first < 700);
+    }
+
+    @Test
+    public void testLatencyWeighted() throws Exception {
+        EndpointProcessor fast = processor(0);
+        EndpointProcessor slow = processor(0);
+        fast.recordLatency(1000000L);
+        slow.recordLatency(10000000L);
+        List<Processor> processors = Arrays.<Processor>asList(fast, slow);
+
+        LatencyWeightedLoadBalancer lb = new LatencyWeightedLoadBalancer();
+        int fastCount = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (lb.chooseProcessor(processors, null) == fast) {
+                fastCount++;
+            }
+        }
+        assertTrue("Fast endpoint should be preferred: " + fastCount, fastCount > 800);
+    }
+
+    @Test
+    public void testLatencyAverage() throws Exception {
+        EndpointProcessor p = processor(0);
+        assertEquals(-1, p.getAverageLatency(), 0);
+        p.recordLatency(1000);
+        assertEquals(1000, p.getAverageLatency(), 0);
+        p.recordLatency(2000);
+        assertEquals(1300, p.getAverageLatency(), 0.001);
+    }
+
+    @Test
+    public void testFailuresArePenalized() throws Exception {
+        EndpointProcessor failing = processor(0);
+        EndpointProcessor slow = processor(0);
+        failing.recordFailure(1000L);
+        assertEquals(EndpointProcessor.FAILURE_PENALTY, failing.getAverageLatency(), 0);
+        failing.recordFailure(1000L);
+        assertTrue(failing.getAverageLatency() > EndpointProcessor.FAILURE_PENALTY);
+        slow.recordLatency(10000000L);
+        List<Processor> processors = Arrays.<Processor>asList(failing, slow);
+
+        LatencyWeightedLoadBalancer lb = new LatencyWeightedLoadBalancer();
+        int slowCount = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (lb.chooseProcessor(processors, null) == slow) {
+                slowCount++;
+            }
+        }
+        assertTrue("Failing endpoint should be avoided: " + slowCount, slowCount > 900);
+    }
+
+    private static EndpointProcessor processor(final int inFlight) {
+        return new EndpointProcessor(null, null) {
+            @Override
+            public int getInFlight() {
+                return inFlight;
+            }
+        };
+    }
+}
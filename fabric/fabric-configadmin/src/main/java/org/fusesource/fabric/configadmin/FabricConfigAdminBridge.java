@@ -20,7 +20,10 @@ import org.apache.felix.scr.annotations.Activate;
 import org.apache.felix.scr.annotations.Component;
 import org.apache.felix.scr.annotations.Deactivate;
 import org.apache.felix.scr.annotations.Reference;
+import org.fusesource.fabric.api.Container;
 import org.fusesource.fabric.api.ContainerRegistration;
+import org.fusesource.fabric.api.DataStoreCallback;
+import org.fusesource.fabric.api.DataStoreChangeSet;
 import org.fusesource.fabric.api.FabricService;
 import org.fusesource.fabric.api.Profile;
 import org.fusesource.fabric.api.jcip.ThreadSafe;
@@ -33,12 +36,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Dictionary;
 import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
@@ -47,7 +54,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 @ThreadSafe
 @Component(name = "org.fusesource.fabric.configadmin.bridge", description = "Fabric Config Admin Bridge")
-public final class FabricConfigAdminBridge extends AbstractComponent implements Runnable {
+public final class FabricConfigAdminBridge extends AbstractComponent implements DataStoreCallback {
 
     public static final String FABRIC_ZOOKEEPER_PID = "fabric.zookeeper.pid";
     public static final String AGENT_PID = "org.fusesource.fabric.agent";
@@ -91,6 +98,50 @@ public final class FabricConfigAdminBridge extends AbstractComponent implements
         }
     }
 
+    @Override
+    public void run(DataStoreChangeSet changes) {
+        if (isValid() && affectsCurrentContainer(changes)) {
+            submitUpdateJob();
+        } else {
+            LOGGER.debug("Ignoring {} which doesn't affect the current container", changes);
+        }
+    }
+
+    /**
+     * Returns true if the changes may affect the configurations of the current container, which are the ones
+     * of its profiles and their ancestors in its version
+     */
+    private boolean affectsCurrentContainer(DataStoreChangeSet changes) {
+        if (changes.isFull()) {
+            return true;
+        }
+        try {
+            Container container = fabricService.get().getCurrentContainer();
+            if (changes.affectsContainer(container.getId())) {
+                return true;
+            }
+            String version = container.getVersion().getId();
+            if (!changes.affectsVersion(version)) {
+                return false;
+            }
+            Set<String> visited = new HashSet<String>();
+            LinkedList<Profile> profiles = new LinkedList<Profile>(Arrays.asList(container.getProfiles()));
+            while (!profiles.isEmpty()) {
+                Profile profile = profiles.removeFirst();
+                if (visited.add(profile.getId())) {
+                    if (changes.affectsProfile(version, profile.getId())) {
+                        return true;
+                    }
+                    profiles.addAll(Arrays.asList(profile.getParents()));
+                }
+            }
+            return false;
+        } catch (Throwable e) {
+            LOGGER.debug("Failed to check the changes against the current container, updating anyway.", e);
+            return true;
+        }
+    }
+
     private void submitUpdateJob() {
         executor.submit(new Runnable() {
             @Override
@@ -517,8 +517,10 @@ public class FabricManager implements FabricManagerMBean {
         Version version = getFabricService().getVersion(versionId);
         List<Map<String, Object>> answer = new ArrayList<Map<String, Object>>();
         if (version != null) {
-            for (Container c : getFabricService().getContainers()) {
-                if (c.getVersion().equals(version)) {
+            List<String> existing = getFabricService().getDataStore().getContainers();
+            for (String containerId : getFabricService().getDataStore().getVersionContainers(versionId)) {
+                if (existing.contains(containerId)) {
+                    Container c = getFabricService().getContainer(containerId);
                     answer.add(BeanUtils.convertContainerToMap(getFabricService(), c, fields));
                 }
             }
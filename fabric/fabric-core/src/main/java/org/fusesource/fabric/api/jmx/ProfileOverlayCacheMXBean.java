@@ -0,0 +1,63 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.fabric.api.jmx;
+
+/**
+ * JMX MBean API for the statistics of the shared profile overlay cache
+ */
+public interface ProfileOverlayCacheMXBean {
+
+    /**
+     * Returns the number of overlays currently cached
+     */
+    int getSize();
+
+    /**
+     * Returns the number of lookups answered from the cache without reading any profile
+     */
+    long getHits();
+
+    /**
+     * Returns the number of lookups which had to read the profiles, including the revalidations of stale entries
+     */
+    long getMisses();
+
+    /**
+     * Returns the number of stale entries which were found to be unchanged after a configuration change
+     */
+    long getRevalidations();
+
+    /**
+     * Returns the number of configuration changes which invalidated cached entries
+     */
+    long getInvalidations();
+
+    /**
+     * Returns the ratio of hits to lookups
+     */
+    double getHitRatio();
+
+    /**
+     * Removes all cached overlays
+     */
+    void clear();
+
+    /**
+     * Resets the statistics
+     */
+    void resetStatistics();
+}
@@ -32,11 +32,20 @@ public class ProfileImpl implements Profile {
     private final String id;
     private final String version;
     private final FabricService service;
+    private final ProfileOverlayCache overlayCache;
 
     public ProfileImpl(String id, String version, FabricService service) {
+        this(id, version, service, null);
+    }
+
+    /**
+     * @param overlayCache the cache shared by the overlays of the profiles or null to compute them every time
+     */
+    public ProfileImpl(String id, String version, FabricService service, ProfileOverlayCache overlayCache) {
         this.id = id;
         this.version = version;
         this.service = service;
+        this.overlayCache = overlayCache;
     }
 
     public String getId() {
@@ -55,6 +64,7 @@ public class ProfileImpl implements Profile {
     @Override
     public void setAttribute(String key, String value) {
         service.getDataStore().setProfileAttribute(version, id, key, value);
+        invalidateOverlays();
     }
 
     public FabricService getService() {
@@ -214,19 +224,17 @@ public class ProfileImpl implements Profile {
     public Container[] getAssociatedContainers() {
         try {
             ArrayList<Container> rc = new ArrayList<Container>();
-            Container[] containers = service.getContainers();
-            for (Container container : containers) {
-                if (!container.getVersion().getId().equals(getVersion())) {
-                    continue;
-                }
-                for (Profile p : container.getProfiles()) {
-                    if (this.equals(p)) {
-                        rc.add(container);
-                        break;
+            List<String> containerIds = service.getDataStore().getProfileContainers(version, id);
+            if (!containerIds.isEmpty()) {
+                // the index follows the configuration tree cache so it may still have a container which was just deleted
+                List<String> existing = service.getDataStore().getContainers();
+                for (String containerId : containerIds) {
+                    if (existing.contains(containerId)) {
+                        rc.add(service.getContainer(containerId));
                     }
                 }
             }
-            return rc.toArray(new Container[0]);
+            return rc.toArray(new Container[rc.size()]);
         } catch (Exception e) {
             throw FabricException.launderThrowable(e);
         }
@@ -237,11 +245,25 @@ public class ProfileImpl implements Profile {
     }
 
     public Profile getOverlay() {
-        return new ProfileOverlayImpl(this, getService().getEnvironment());
+        return new ProfileOverlayImpl(this, false, null, getService().getEnvironment(), getOverlayCache());
     }
 
     public Profile getOverlay(boolean substitute) {
-        return new ProfileOverlayImpl(this, substitute, getService().getDataStore(), getService().getEnvironment());
+        return new ProfileOverlayImpl(this, substitute, getService().getDataStore(), getService().getEnvironment(), getOverlayCache());
+    }
+
+    protected ProfileOverlayCache getOverlayCache() {
+        return overlayCache;
+    }
+
+    /**
+     * Drops the cached overlays of this profile and its descendants straight away rather than waiting for the
+     * change notification of the data store, so that an overlay read after a write sees the write.
+     */
+    protected void invalidateOverlays() {
+        if (overlayCache != null) {
+            overlayCache.invalidate(version, id);
+        }
     }
 
     @Override
@@ -258,6 +280,7 @@ public class ProfileImpl implements Profile {
     public void setFileConfigurations(Map<String, byte[]> configurations) {
         assertNotLocked();
         getService().getDataStore().setFileConfigurations(version, id, configurations);
+        invalidateOverlays();
     }
 
     public Map<String, Map<String, String>> getConfigurations() {
@@ -281,12 +304,14 @@ public class ProfileImpl implements Profile {
     public void setConfigurations(Map<String, Map<String, String>> configurations) {
         assertNotLocked();
         getService().getDataStore().setConfigurations(version, id, configurations);
+        invalidateOverlays();
     }
 
     @Override
     public void setConfiguration(String pid, Map<String, String> configuration) {
         assertNotLocked();
         getService().getDataStore().setConfiguration(version, id, pid, configuration);
+        invalidateOverlays();
     }
 
     public void delete() {
@@ -313,6 +338,7 @@ public class ProfileImpl implements Profile {
             sb.append(". Use force option to also remove the profile from the containers.");
             throw new FabricException(sb.toString());
         }
+        invalidateOverlays();
 
         // lets remove any pending requirements on this profile
         FabricRequirements requirements = service.getRequirements();
@@ -351,7 +377,7 @@ public class ProfileImpl implements Profile {
      * @return
      */
     public boolean agentConfigurationEquals(Profile other) {
-        ProfileOverlayImpl selfOverlay = new ProfileOverlayImpl(this, getService().getEnvironment());
+        ProfileOverlayImpl selfOverlay = new ProfileOverlayImpl(this, false, null, getService().getEnvironment(), getOverlayCache());
         return selfOverlay.agentConfigurationEquals(other);
     }
 
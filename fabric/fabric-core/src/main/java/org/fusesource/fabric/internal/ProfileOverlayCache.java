@@ -0,0 +1,460 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.fabric.internal;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import org.apache.felix.scr.annotations.Activate;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Deactivate;
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.Service;
+import org.fusesource.fabric.api.DataStore;
+import org.fusesource.fabric.api.DataStoreCallback;
+import org.fusesource.fabric.api.DataStoreChangeSet;
+import org.fusesource.fabric.api.Profile;
+import org.fusesource.fabric.api.jcip.ThreadSafe;
+import org.fusesource.fabric.api.jmx.ProfileOverlayCacheMXBean;
+import org.fusesource.fabric.api.scr.AbstractComponent;
+import org.fusesource.fabric.api.scr.ValidatingReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Caches the aggregated configurations of profile overlays, keyed by version, profile and environment.
+ * <p/>
+ * The configuration change notifications of the {@link DataStore} drop the overlays which inherit from a changed
+ * profile. When the data store can only tell that a whole version, or everything, may have changed the affected
+ * entries are marked as stale instead, and a stale entry is revalidated on its next lookup by comparing a digest of the
+ * raw configurations of each profile in its hierarchy with the one of the configurations it was built from.
+ * The number of entries is bounded, see {@link #MAXIMUM_SIZE}.
+ * Placeholder substitution is always applied to a copy of the cached configurations, as the values of
+ * placeholders can change without any change to the profiles.
+ */
+@ThreadSafe
+@Component(name = "org.fusesource.fabric.profile.overlay.cache", description = "Fabric Profile Overlay Cache", immediate = true)
+@Service(ProfileOverlayCache.class)
+public final class ProfileOverlayCache extends AbstractComponent implements ProfileOverlayCacheMXBean {
+
+    private static final transient Logger LOG = LoggerFactory.getLogger(ProfileOverlayCache.class);
+
+    /**
+     * The configuration property for the maximum number of cached overlays
+     */
+    public static final String MAXIMUM_SIZE = "maximumSize";
+    public static final long DEFAULT_MAXIMUM_SIZE = 1000;
+
+    @Reference(referenceInterface = DataStore.class)
+    private final ValidatingReference<DataStore> dataStore = new ValidatingReference<DataStore>();
+
+    private volatile Cache<Key, Entry> entries;
+    /**
+     * Counts the invalidations, entries built before the last invalidation of their version or of everything are stale
+     */
+    private final AtomicLong generation = new AtomicLong();
+    private volatile long staleBefore;
+    private final ConcurrentMap<String, Long> versionsStaleBefore = new ConcurrentHashMap<String, Long>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final DataStoreCallback callback = new DataStoreCallback() {
+        @Override
+        public void run() {
+            run(DataStoreChangeSet.all());
+        }
+
+        @Override
+        public void run(DataStoreChangeSet changes) {
+            invalidate(changes);
+        }
+    };
+
+    private ObjectName objectName;
+
+    public ProfileOverlayCache() {
+        this(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    ProfileOverlayCache(long maximumSize) {
+        this.entries = createCache(maximumSize);
+    }
+
+    @Activate
+    void activate(Map<String, ?> configuration) {
+        Object value = configuration != null ? configuration.get(MAXIMUM_SIZE) : null;
+        if (value != null) {
+            entries = createCache(Long.parseLong(value.toString().trim()));
+        }
+        dataStore.get().trackConfiguration(callback);
+        activateComponent();
+    }
+
+    @Deactivate
+    void deactivate() {
+        deactivateComponent();
+        dataStore.get().untrackConfiguration(callback);
+        entries.invalidateAll();
+    }
+
+    private static Cache<Key, Entry> createCache(long maximumSize) {
+        return CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+    }
+
+    /**
+     * Marks all the cached overlays as stale, so they are revalidated on their next lookup
+     */
+    public void invalidate() {
+        invalidations.incrementAndGet();
+        staleBefore = generation.incrementAndGet();
+    }
+
+    /**
+     * Drops the cached overlays of the profile and of all the profiles which inherit from it
+     */
+    public void invalidate(String version, String profile) {
+        invalidations.incrementAndGet();
+        generation.incrementAndGet();
+        removeInheriting(version, Collections.singleton(profile));
+    }
+
+    /**
+     * Applies a change notification of the data store. Changes to containers alone don't affect any overlay.
+     */
+    public void invalidate(DataStoreChangeSet changes) {
+        if (changes.isFull()) {
+            invalidate();
+            removeDeletedVersions();
+            return;
+        }
+        if (!changes.affectsProfiles()) {
+            return;
+        }
+        invalidations.incrementAndGet();
+        long current = generation.incrementAndGet();
+        for (String version : changes.getVersions()) {
+            versionsStaleBefore.put(version, current);
+        }
+        for (Map.Entry<Key, Entry> entry : entries.asMap().entrySet()) {
+            String version = entry.getKey().version;
+            Set<String> profiles = changes.getProfiles(version);
+            if (!profiles.isEmpty() && entry.getValue().inheritsFrom(entry.getKey().profile, profiles)) {
+                entries.asMap().remove(entry.getKey(), entry.getValue());
+            }
+        }
+        if (!changes.getVersions().isEmpty()) {
+            removeDeletedVersions();
+        }
+    }
+
+    private void removeInheriting(String version, Set<String> profiles) {
+        for (Map.Entry<Key, Entry> entry : entries.asMap().entrySet()) {
+            if (entry.getKey().version.equals(version) && entry.getValue().inheritsFrom(entry.getKey().profile, profiles)) {
+                entries.asMap().remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    protected void removeDeletedVersions() {
+        DataStore store = dataStore.getOptional();
+        if (store == null) {
+            return;
+        }
+        try {
+            List<String> versions = store.getVersions();
+            for (Iterator<Key> iterator = entries.asMap().keySet().iterator(); iterator.hasNext(); ) {
+                if (!versions.contains(iterator.next().version)) {
+                    iterator.remove();
+                }
+            }
+            versionsStaleBefore.keySet().retainAll(versions);
+        } catch (Exception e) {
+            LOG.debug("Failed to remove the overlays of deleted versions: " + e, e);
+        }
+    }
+
+    private boolean isStale(Key key, Entry entry) {
+        if (entry.generation < staleBefore) {
+            return true;
+        }
+        Long versionStaleBefore = versionsStaleBefore.get(key.version);
+        return versionStaleBefore != null && entry.generation < versionStaleBefore;
+    }
+
+    /**
+     * Returns the aggregated configurations of the overlay, computing them if they're not cached or have changed
+     */
+    Entry get(ProfileOverlayImpl overlay) throws Exception {
+        Key key = new Key(overlay.getVersion(), overlay.getId(), overlay.getEnvironment());
+        long current = generation.get();
+        Entry entry = entries.getIfPresent(key);
+        if (entry != null && !isStale(key, entry)) {
+            hits.incrementAndGet();
+            return entry;
+        }
+
+        // revalidating reads the raw configurations of the whole hierarchy again, so it counts as a miss
+        misses.incrementAndGet();
+        List<Profile> profiles = overlay.getInheritedProfiles();
+        Map<String, Map<String, byte[]>> sources = overlay.getSources(profiles);
+        byte[] digest = Entry.digest(sources);
+        Entry computed;
+        if (entry != null && entry.hasSources(sources.keySet(), digest)) {
+            revalidations.incrementAndGet();
+            computed = new Entry(current, entry.profiles, entry.digest, entry.files, entry.configurations);
+        } else {
+            Map<String, ProfileOverlayImpl.SupplementControl> aggregate = overlay.aggregate(profiles, sources);
+            computed = new Entry(current, new ArrayList<String>(sources.keySet()), digest,
+                    ProfileOverlayImpl.toFileConfigurations(aggregate), ProfileOverlayImpl.toConfigurations(aggregate));
+        }
+        // an invalidation while the profiles were read may not have seen the entry yet, so it isn't cached then
+        if (generation.get() == current) {
+            if (entry != null) {
+                entries.asMap().replace(key, entry, computed);
+            } else {
+                entries.asMap().putIfAbsent(key, computed);
+            }
+        }
+        return computed;
+    }
+
+    public ObjectName getObjectName() throws MalformedObjectNameException {
+        if (objectName == null) {
+            objectName = new ObjectName("org.fusesource.fabric:type=ProfileOverlayCache");
+        }
+        return objectName;
+    }
+
+    public void setObjectName(ObjectName objectName) {
+        this.objectName = objectName;
+    }
+
+    public void registerMBeanServer(MBeanServer mbeanServer) {
+        try {
+            ObjectName name = getObjectName();
+            if (!mbeanServer.isRegistered(name)) {
+                mbeanServer.registerMBean(this, name);
+            }
+        } catch (Exception e) {
+            LOG.warn("An error occured during mbean server registration: " + e, e);
+        }
+    }
+
+    public void unregisterMBeanServer(MBeanServer mbeanServer) {
+        if (mbeanServer != null) {
+            try {
+                ObjectName name = getObjectName();
+                if (mbeanServer.isRegistered(name)) {
+                    mbeanServer.unregisterMBean(name);
+                }
+            } catch (Exception e) {
+                LOG.warn("An error occured during mbean server unregistration: " + e, e);
+            }
+        }
+    }
+
+    // Management API
+    //-------------------------------------------------------------------------
+    @Override
+    public int getSize() {
+        return (int) entries.size();
+    }
+
+    @Override
+    public long getHits() {
+        return hits.get();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public long getRevalidations() {
+        return revalidations.get();
+    }
+
+    @Override
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    @Override
+    public double getHitRatio() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total > 0 ? (double) h / total : 0.0;
+    }
+
+    @Override
+    public void clear() {
+        entries.invalidateAll();
+    }
+
+    @Override
+    public void resetStatistics() {
+        hits.set(0);
+        misses.set(0);
+        revalidations.set(0);
+        invalidations.set(0);
+    }
+
+    void bindDataStore(DataStore dataStore) {
+        this.dataStore.bind(dataStore);
+    }
+
+    void unbindDataStore(DataStore dataStore) {
+        this.dataStore.unbind(dataStore);
+    }
+
+    private static class Key {
+        final String version;
+        final String profile;
+        final String environment;
+
+        Key(String version, String profile, String environment) {
+            this.version = version;
+            this.profile = profile;
+            this.environment = environment;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            if (!version.equals(key.version)) return false;
+            if (!profile.equals(key.profile)) return false;
+            if (environment != null ? !environment.equals(key.environment) : key.environment != null) return false;
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = version.hashCode();
+            result = 31 * result + profile.hashCode();
+            result = 31 * result + (environment != null ? environment.hashCode() : 0);
+            return result;
+        }
+    }
+
+    /**
+     * The aggregated configurations of an overlay along with the ids of the profiles they were built from and a
+     * digest of their raw configurations, which is all it takes to tell whether they are still up to date.
+     * The maps are never modified once the entry is created, so callers must copy them before handing them out.
+     */
+    static class Entry {
+        final long generation;
+        final List<String> profiles;
+        final byte[] digest;
+        final Map<String, byte[]> files;
+        final Map<String, Map<String, String>> configurations;
+
+        Entry(long generation, List<String> profiles, byte[] digest, Map<String, byte[]> files, Map<String, Map<String, String>> configurations) {
+            this.generation = generation;
+            this.profiles = profiles;
+            this.digest = digest;
+            this.files = files;
+            this.configurations = configurations;
+        }
+
+        Map<String, byte[]> copyFileConfigurations() {
+            return new HashMap<String, byte[]>(files);
+        }
+
+        /**
+         * Returns true if the overlay of the given profile is built from any of the given profiles
+         */
+        boolean inheritsFrom(String profile, Set<String> profiles) {
+            if (profiles.contains(profile)) {
+                return true;
+            }
+            for (String source : this.profiles) {
+                if (profiles.contains(source)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        Map<String, Map<String, String>> copyConfigurations() {
+            Map<String, Map<String, String>> rc = new HashMap<String, Map<String, String>>();
+            for (Map.Entry<String, Map<String, String>> entry : configurations.entrySet()) {
+                rc.put(entry.getKey(), new HashMap<String, String>(entry.getValue()));
+            }
+            return rc;
+        }
+
+        /**
+         * Checks that the given profiles, in the same order, have the raw configurations of the given digest
+         */
+        boolean hasSources(Set<String> profiles, byte[] digest) {
+            return this.profiles.equals(new ArrayList<String>(profiles)) && Arrays.equals(this.digest, digest);
+        }
+
+        /**
+         * Returns a digest of the raw configurations of each profile, in the order of the profiles
+         */
+        static byte[] digest(Map<String, Map<String, byte[]>> sources) {
+            MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+            for (Map.Entry<String, Map<String, byte[]>> source : sources.entrySet()) {
+                update(digest, source.getKey().getBytes());
+                // the files of a profile come in no particular order
+                for (Map.Entry<String, byte[]> file : new TreeMap<String, byte[]>(source.getValue()).entrySet()) {
+                    update(digest, file.getKey().getBytes());
+                    update(digest, file.getValue());
+                }
+            }
+            return digest.digest();
+        }
+
+        private static void update(MessageDigest digest, byte[] value) {
+            // the length prefix keeps the boundaries of the values, so that different splits don't collide
+            int length = value != null ? value.length : -1;
+            digest.update(new byte[]{(byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8), (byte) length});
+            if (value != null) {
+                digest.update(value);
+            }
+        }
+    }
+}
@@ -24,6 +24,7 @@ import org.fusesource.fabric.api.Profiles;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -38,6 +39,7 @@ public class ProfileOverlayImpl implements Profile {
     private final boolean substitute;
     private final DataStore dataStore;
     private final String environment;
+    private final ProfileOverlayCache cache;
 
     public ProfileOverlayImpl(Profile self, String environment) {
         this(self, false, null, environment);
@@ -48,10 +50,19 @@ public class ProfileOverlayImpl implements Profile {
     }
 
     public ProfileOverlayImpl(Profile self, boolean substitute, DataStore dataStore, String environment) {
+        this(self, substitute, dataStore, environment, null);
+    }
+
+    /**
+     * Creates an overlay which shares its aggregated configurations through the given cache. The cache is only used
+     * for the overlays of stored profiles, as it relies on their id and version to identify them.
+     */
+    public ProfileOverlayImpl(Profile self, boolean substitute, DataStore dataStore, String environment, ProfileOverlayCache cache) {
         this.self = self;
         this.substitute = substitute;
         this.dataStore = dataStore;
         this.environment = environment;
+        this.cache = self instanceof ProfileImpl ? cache : null;
     }
 
     @Override
@@ -69,6 +80,10 @@ public class ProfileOverlayImpl implements Profile {
         return self.getAttributes();
     }
 
+    public String getEnvironment() {
+        return environment;
+    }
+
     @Override
     public void setAttribute(String key, String value) {
         throw new UnsupportedOperationException("Overlay profiles are read-only.");
@@ -174,15 +189,13 @@ public class ProfileOverlayImpl implements Profile {
      */
     @Override
     public boolean agentConfigurationEquals(Profile other) {
-        ProfileOverlayImpl otherOverlay = new ProfileOverlayImpl(other, environment);
-        if (!getConfigurations().containsKey(AGENT_PID) && !otherOverlay.getConfigurations().containsKey(AGENT_PID)) {
-            return true;
-        } else if (getConfigurations().containsKey(AGENT_PID) != otherOverlay.getConfigurations().containsKey(AGENT_PID)) {
-            return false;
-        } else if (getConfigurations().containsKey(AGENT_PID) && !getConfigurations().get(AGENT_PID).equals(otherOverlay.getConfigurations().get(AGENT_PID))) {
-            return false;
+        ProfileOverlayImpl otherOverlay = new ProfileOverlayImpl(other, false, null, environment, cache);
+        Map<String, String> agentConfiguration = getConfigurations().get(AGENT_PID);
+        Map<String, String> otherAgentConfiguration = otherOverlay.getConfigurations().get(AGENT_PID);
+        if (agentConfiguration == null) {
+            return otherAgentConfiguration == null;
         } else {
-            return true;
+            return agentConfiguration.equals(otherAgentConfiguration);
         }
     }
 
@@ -207,7 +220,7 @@ public class ProfileOverlayImpl implements Profile {
 
     @Override
     public Profile getOverlay(boolean substitute) {
-        return new ProfileOverlayImpl(this.self, substitute, environment);
+        return new ProfileOverlayImpl(this.self, substitute, null, environment, cache);
     }
 
     @Override
@@ -220,12 +233,12 @@ public class ProfileOverlayImpl implements Profile {
         return self.compareTo(profile);
     }
 
-    private static class SupplementControl {
+    static class SupplementControl {
         byte[] data;
         Properties props;
     }
 
-    private List<Profile> getInheritedProfiles() {
+    List<Profile> getInheritedProfiles() {
         List<Profile> profiles = new ArrayList<Profile>();
         fillParentProfiles(self, profiles);
         return profiles;
@@ -240,15 +253,35 @@ public class ProfileOverlayImpl implements Profile {
         }
     }
 
-    private void supplement(Profile profile, Map<String, SupplementControl> aggregate) throws Exception {
-        // TODO fix this, should this every happen???
-        if (profile instanceof ProfileOverlayImpl) {
-            if (((ProfileOverlayImpl) profile).self.equals(self)) {
-                return;
+    /**
+     * Returns the raw file configurations of each of the given profiles, keyed by profile id
+     */
+    Map<String, Map<String, byte[]>> getSources(List<Profile> profiles) {
+        Map<String, Map<String, byte[]>> sources = new LinkedHashMap<String, Map<String, byte[]>>();
+        for (Profile profile : profiles) {
+            // TODO fix this, should this every happen???
+            if (profile instanceof ProfileOverlayImpl) {
+                if (((ProfileOverlayImpl) profile).self.equals(self)) {
+                    continue;
+                }
             }
+            sources.put(profile.getId(), profile.getFileConfigurations());
         }
+        return sources;
+    }
 
-        Map<String, byte[]> configs = profile.getFileConfigurations();
+    Map<String, SupplementControl> aggregate(List<Profile> profiles, Map<String, Map<String, byte[]>> sources) throws Exception {
+        Map<String, SupplementControl> aggregate = new HashMap<String, SupplementControl>();
+        for (Profile profile : profiles) {
+            Map<String, byte[]> configs = sources.get(profile.getId());
+            if (configs != null) {
+                supplement(configs, aggregate);
+            }
+        }
+        return aggregate;
+    }
+
+    private void supplement(Map<String, byte[]> configs, Map<String, SupplementControl> aggregate) throws Exception {
         for (String key : configs.keySet()) {
             // Ignore environment specific configs
             if (key.contains("#")) {
@@ -304,20 +337,11 @@ public class ProfileOverlayImpl implements Profile {
     @Override
     public Map<String, byte[]> getFileConfigurations() {
         try {
-            Map<String, SupplementControl> aggregate = new HashMap<String, SupplementControl>();
-            for (Profile profile : getInheritedProfiles()) {
-                supplement(profile, aggregate);
-            }
-
-            Map<String, byte[]> rc = new HashMap<String, byte[]>();
-            for (Map.Entry<String, SupplementControl> entry : aggregate.entrySet()) {
-                SupplementControl ctrl = entry.getValue();
-                if (ctrl.props != null) {
-                    ctrl.data = DataStoreHelpers.toBytes(ctrl.props);
-                }
-                rc.put(entry.getKey(), ctrl.data);
+            if (cache != null) {
+                return cache.get(this).copyFileConfigurations();
             }
-            return rc;
+            List<Profile> profiles = getInheritedProfiles();
+            return toFileConfigurations(aggregate(profiles, getSources(profiles)));
         } catch (Exception e) {
             throw FabricException.launderThrowable(e);
         }
@@ -326,17 +350,12 @@ public class ProfileOverlayImpl implements Profile {
     @Override
     public Map<String, Map<String, String>> getConfigurations() {
         try {
-            Map<String, SupplementControl> aggregate = new HashMap<String, SupplementControl>();
-            for (Profile profile : getInheritedProfiles()) {
-                supplement(profile, aggregate);
-            }
-
-            Map<String, Map<String, String>> rc = new HashMap<String, Map<String, String>>();
-            for (Map.Entry<String, SupplementControl> entry : aggregate.entrySet()) {
-                SupplementControl ctrl = entry.getValue();
-                if (ctrl.props != null) {
-                    rc.put(DataStoreHelpers.stripSuffix(entry.getKey(), ".properties"), DataStoreHelpers.toMap(ctrl.props));
-                }
+            Map<String, Map<String, String>> rc;
+            if (cache != null) {
+                rc = cache.get(this).copyConfigurations();
+            } else {
+                List<Profile> profiles = getInheritedProfiles();
+                rc = toConfigurations(aggregate(profiles, getSources(profiles)));
             }
             if (substitute && dataStore != null) {
                 dataStore.substituteConfigurations(rc);
@@ -347,6 +366,29 @@ public class ProfileOverlayImpl implements Profile {
         }
     }
 
+    static Map<String, byte[]> toFileConfigurations(Map<String, SupplementControl> aggregate) throws Exception {
+        Map<String, byte[]> rc = new HashMap<String, byte[]>();
+        for (Map.Entry<String, SupplementControl> entry : aggregate.entrySet()) {
+            SupplementControl ctrl = entry.getValue();
+            if (ctrl.props != null) {
+                ctrl.data = DataStoreHelpers.toBytes(ctrl.props);
+            }
+            rc.put(entry.getKey(), ctrl.data);
+        }
+        return rc;
+    }
+
+    static Map<String, Map<String, String>> toConfigurations(Map<String, SupplementControl> aggregate) throws Exception {
+        Map<String, Map<String, String>> rc = new HashMap<String, Map<String, String>>();
+        for (Map.Entry<String, SupplementControl> entry : aggregate.entrySet()) {
+            SupplementControl ctrl = entry.getValue();
+            if (ctrl.props != null) {
+                rc.put(DataStoreHelpers.stripSuffix(entry.getKey(), ".properties"), DataStoreHelpers.toMap(ctrl.props));
+            }
+        }
+        return rc;
+    }
+
     @Override
     public Map<String, String> getConfiguration(String pid) {
         return getConfigurations().get(pid);
@@ -26,11 +26,17 @@ public class VersionImpl implements Version {
     private final String id;
     private final FabricService service;
     private final VersionSequence sequence;
+    private final ProfileOverlayCache overlayCache;
 
     public VersionImpl(String id, FabricService service) {
+        this(id, service, null);
+    }
+
+    public VersionImpl(String id, FabricService service, ProfileOverlayCache overlayCache) {
         this.id = id;
         this.service = service;
         this.sequence = new VersionSequence(id);
+        this.overlayCache = overlayCache;
     }
 
     @Override
@@ -91,7 +97,7 @@ public class VersionImpl implements Version {
         List<String> names = service.getDataStore().getProfiles(id);
         List<Profile> profiles = new ArrayList<Profile>();
         for (String name : names) {
-            profiles.add(new ProfileImpl(name, id, service));
+            profiles.add(new ProfileImpl(name, id, service, overlayCache));
         }
         return profiles.toArray(new Profile[profiles.size()]);
     }
@@ -99,7 +105,7 @@ public class VersionImpl implements Version {
     @Override
     public Profile getProfile(String profileId) {
         if (service.getDataStore().hasProfile(id, profileId)) {
-            return new ProfileImpl(profileId, id, service);
+            return new ProfileImpl(profileId, id, service, overlayCache);
         }
         throw new FabricException("Profile '" + profileId + "' does not exist in version '" + id + "'.");
     }
@@ -107,7 +113,7 @@ public class VersionImpl implements Version {
     @Override
     public Profile createProfile(String profileId) {
         service.getDataStore().createProfile(id, profileId);
-        return new ProfileImpl(profileId, id, service);
+        return new ProfileImpl(profileId, id, service, overlayCache);
     }
 
     @Override
@@ -44,6 +44,9 @@ import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
@@ -53,11 +56,14 @@ import org.apache.zookeeper.KeeperException;
 import org.fusesource.fabric.api.CreateContainerMetadata;
 import org.fusesource.fabric.api.CreateContainerOptions;
 import org.fusesource.fabric.api.DataStore;
+import org.fusesource.fabric.api.DataStoreCallback;
+import org.fusesource.fabric.api.DataStoreChangeSet;
 import org.fusesource.fabric.api.DataStoreRegistrationHandler;
 import org.fusesource.fabric.api.DataStoreTemplate;
 import org.fusesource.fabric.api.DynamicReference;
 import org.fusesource.fabric.api.FabricException;
 import org.fusesource.fabric.api.PlaceholderResolver;
+import org.fusesource.fabric.api.jcip.GuardedBy;
 import org.fusesource.fabric.api.jcip.ThreadSafe;
 import org.fusesource.fabric.api.scr.AbstractComponent;
 import org.fusesource.fabric.api.scr.ValidatingReference;
@@ -65,6 +71,7 @@ import org.fusesource.fabric.internal.DataStoreHelpers;
 import org.fusesource.fabric.utils.Base64Encoder;
 import org.fusesource.fabric.utils.Closeables;
 import org.fusesource.fabric.utils.ObjectUtils;
+import org.fusesource.fabric.utils.PropertiesHelper;
 import org.fusesource.fabric.zookeeper.ZkDefs;
 import org.fusesource.fabric.zookeeper.ZkPath;
 import org.fusesource.fabric.zookeeper.utils.InterpolationHelper;
@@ -84,15 +91,35 @@ public abstract class AbstractDataStore<T extends DataStore> extends AbstractCom
 
     private final ValidatingReference<CuratorFramework> curator = new ValidatingReference<CuratorFramework>();
 
-    private final ExecutorService callbacksExecutor = Executors.newSingleThreadExecutor();
+    /**
+     * The data store property for the time in milliseconds without any change to wait for before running the callbacks
+     */
+    public static final String CALLBACK_QUIET_PERIOD = "callbackQuietPeriod";
+    /**
+     * The data store property for the maximum time in milliseconds the callbacks can be delayed by further changes
+     */
+    public static final String CALLBACK_MAX_DELAY = "callbackMaxDelay";
+    public static final long DEFAULT_CALLBACK_QUIET_PERIOD = 100;
+    public static final long DEFAULT_CALLBACK_MAX_DELAY = 1000;
+
+    private final ScheduledExecutorService callbacksExecutor = Executors.newSingleThreadScheduledExecutor();
     private final ExecutorService cacheExecutor = Executors.newSingleThreadExecutor();
     private final ExecutorService placeholderExecutor = Executors.newCachedThreadPool();
 
     private final ConcurrentMap<String, DynamicReference<PlaceholderResolver>> placeholderResolvers = new ConcurrentHashMap<String, DynamicReference<PlaceholderResolver>>();
     private final ValidatingReference<DataStoreRegistrationHandler> registrationHandler = new ValidatingReference<DataStoreRegistrationHandler>();
     private final CopyOnWriteArrayList<Runnable> callbacks = new CopyOnWriteArrayList<Runnable>();
+    private final Object pendingChangesLock = new Object();
+    @GuardedBy("pendingChangesLock") private DataStoreChangeSet.Builder pendingChanges = DataStoreChangeSet.builder();
+    @GuardedBy("pendingChangesLock") private int pendingNotifications;
+    @GuardedBy("pendingChangesLock") private long firstChangeTime;
+    @GuardedBy("pendingChangesLock") private long lastChangeTime;
+    @GuardedBy("pendingChangesLock") private boolean flushScheduled;
+    private volatile long callbackQuietPeriod = DEFAULT_CALLBACK_QUIET_PERIOD;
+    private volatile long callbackMaxDelay = DEFAULT_CALLBACK_MAX_DELAY;
     private Map<String, String> dataStoreProperties;
     private TreeCache treeCache;
+    private ProfileContainerIndex containerIndex;
 
     @Override
     public abstract void importFromFileSystem(String from);
@@ -128,7 +155,10 @@ public abstract class AbstractDataStore<T extends DataStore> extends AbstractCom
 
     protected void activateInternal() throws Exception {
         LOG.info("Starting up DataStore " + this);
+        callbackQuietPeriod = PropertiesHelper.getLongValue(dataStoreProperties, CALLBACK_QUIET_PERIOD, DEFAULT_CALLBACK_QUIET_PERIOD);
+        callbackMaxDelay = PropertiesHelper.getLongValue(dataStoreProperties, CALLBACK_MAX_DELAY, DEFAULT_CALLBACK_MAX_DELAY);
         treeCache = new TreeCache(getCurator(), ZkPath.CONFIGS.getPath(), true, false, true, cacheExecutor);
+        containerIndex = new ProfileContainerIndex(treeCache);
         treeCache.start(TreeCache.StartMode.NORMAL);
         treeCache.getListenable().addListener(this);
 
@@ -167,46 +197,116 @@ public abstract class AbstractDataStore<T extends DataStore> extends AbstractCom
                 case CHILD_REMOVED:
                 case CHILD_UPDATED:
                 case INITIALIZED:
-                    if (shouldRunCallbacks(event.getData().getPath())) {
-                        runCallbacks();
+                    if (event.getData() == null) {
+                        break;
                     }
+                    containerIndex.childEvent(event);
+                    runCallbacks(getChangeSet(event.getData().getPath()));
                     break;
             }
         }
     }
 
     /**
-     * Checks if the container should react to a change in the specified path.
+     * Returns the changes a change in the specified path means for the container, which are none if the
+     * container should not react to it.
      * @param path  The path that has been updated.
      * @return
      */
-    private boolean shouldRunCallbacks(String path) {
+    private DataStoreChangeSet getChangeSet(String path) {
         String currentVersion = getContainerVersion(NAME);
-        return path.equals(ZkPath.CONFIG_ENSEMBLES.getPath()) ||
+        if (path.equals(ZkPath.CONFIG_ENSEMBLES.getPath()) ||
             path.equals(ZkPath.CONFIG_ENSEMBLE_URL.getPath()) ||
-            path.equals(ZkPath.CONFIG_ENSEMBLE_PASSWORD.getPath()) ||
-            path.equals(ZkPath.CONFIG_CONTAINER.getPath(NAME)) ||
-                (currentVersion != null && path.equals(ZkPath.CONFIG_VERSIONS_CONTAINER.getPath(currentVersion, NAME)));
-
+            path.equals(ZkPath.CONFIG_ENSEMBLE_PASSWORD.getPath())) {
+            return DataStoreChangeSet.all();
+        } else if (path.equals(ZkPath.CONFIG_CONTAINER.getPath(NAME)) ||
+                (currentVersion != null && path.equals(ZkPath.CONFIG_VERSIONS_CONTAINER.getPath(currentVersion, NAME)))) {
+            return DataStoreChangeSet.builder().container(NAME).build();
+        }
+        return DataStoreChangeSet.none();
     }
 
+    /**
+     * Notifies the callbacks that anything may have changed
+     */
     protected void runCallbacks() {
-        callbacksExecutor.submit(new Runnable() {
-            @Override
-            public void run() {
-                doRunCallbacks();
+        runCallbacks(DataStoreChangeSet.all());
+    }
+
+    /**
+     * Notifies the callbacks of the given changes once no other change happened for the quiet period,
+     * or at most after the maximum delay, so that a burst of changes only runs them once.
+     */
+    protected void runCallbacks(DataStoreChangeSet changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        synchronized (pendingChangesLock) {
+            pendingChanges.merge(changes);
+            pendingNotifications++;
+            long now = System.currentTimeMillis();
+            lastChangeTime = now;
+            if (firstChangeTime == 0) {
+                firstChangeTime = now;
             }
-        });
+            if (!flushScheduled) {
+                flushScheduled = true;
+                scheduleFlush(callbackQuietPeriod);
+            }
+        }
+    }
+
+    private void scheduleFlush(long delay) {
+        try {
+            callbacksExecutor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    flushCallbacks();
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // the data store is being deactivated
+            flushScheduled = false;
+        }
     }
 
-    protected void doRunCallbacks() {
+    private void flushCallbacks() {
+        DataStoreChangeSet changes;
+        int notifications;
+        synchronized (pendingChangesLock) {
+            long now = System.currentTimeMillis();
+            long due = Math.min(lastChangeTime + callbackQuietPeriod, firstChangeTime + callbackMaxDelay);
+            if (now < due) {
+                scheduleFlush(due - now);
+                return;
+            }
+            changes = pendingChanges.build();
+            notifications = pendingNotifications;
+            pendingChanges = DataStoreChangeSet.builder();
+            pendingNotifications = 0;
+            firstChangeTime = 0;
+            flushScheduled = false;
+        }
+        if (isValid()) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Running callbacks for " + notifications + " coalesced notifications of " + changes);
+            }
+            doRunCallbacks(changes);
+        }
+    }
+
+    protected void doRunCallbacks(DataStoreChangeSet changes) {
         assertValid();
         for (Runnable callback : callbacks) {
             try {
                 if (LOG.isDebugEnabled()) {
                     LOG.debug("Running callback " + callback);
                 }
-                callback.run();
+                if (callback instanceof DataStoreCallback) {
+                    ((DataStoreCallback) callback).run(changes);
+                } else {
+                    callback.run();
+                }
             } catch (Throwable e) {
                 LOG.warn("Caught: " + e, e);
             }
@@ -483,6 +583,18 @@ public abstract class AbstractDataStore<T extends DataStore> extends AbstractCom
         }
     }
 
+    @Override
+    public List<String> getVersionContainers(String versionId) {
+        assertValid();
+        return containerIndex.getVersionContainers(versionId);
+    }
+
+    @Override
+    public List<String> getProfileContainers(String versionId, String profileId) {
+        assertValid();
+        return containerIndex.getProfileContainers(versionId, profileId);
+    }
+
     @Override
     public void setContainerProfiles(String containerId, List<String> profileIds) {
         assertValid();
@@ -562,6 +674,13 @@ public abstract class AbstractDataStore<T extends DataStore> extends AbstractCom
             } catch (Exception e) {
                 throw FabricException.launderThrowable(e);
             }
+        } else if (attribute == ContainerAttribute.ProvisionArtifacts && value == null) {
+            // an empty advertisement would still be read by every peer, so it is removed instead
+            try {
+                deleteSafe(getCurator(), getAttributePath(containerId, attribute));
+            } catch (Exception e) {
+                throw FabricException.launderThrowable(e);
+            }
         } else {
             try {
                 //                if (value == null) {
@@ -630,6 +749,8 @@ public abstract class AbstractDataStore<T extends DataStore> extends AbstractCom
             return ZkPath.CONTAINER_PROVISION_EXCEPTION.getPath(containerId);
         case ProvisionList:
             return ZkPath.CONTAINER_PROVISION_LIST.getPath(containerId);
+        case ProvisionArtifacts:
+            return ZkPath.CONTAINER_PROVISION_ARTIFACTS.getPath(containerId);
         case Location:
             return ZkPath.CONTAINER_LOCATION.getPath(containerId);
         case GeoLocation:
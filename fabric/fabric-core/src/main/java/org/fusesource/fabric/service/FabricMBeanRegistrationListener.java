@@ -35,6 +35,7 @@ import org.fusesource.fabric.api.jmx.HealthCheck;
 import org.fusesource.fabric.api.jmx.ZooKeeperFacade;
 import org.fusesource.fabric.api.scr.AbstractComponent;
 import org.fusesource.fabric.api.scr.ValidatingReference;
+import org.fusesource.fabric.internal.ProfileOverlayCache;
 import org.fusesource.fabric.utils.SystemProperties;
 import org.fusesource.fabric.zookeeper.ZkPath;
 import org.osgi.service.component.ComponentContext;
@@ -73,6 +74,8 @@ public final class FabricMBeanRegistrationListener extends AbstractComponent imp
     private final ValidatingReference<CuratorFramework> curator = new ValidatingReference<CuratorFramework>();
     @Reference(referenceInterface = MBeanServer.class, bind = "bindMBeanServer", unbind = "unbindMBeanServer")
     private final ValidatingReference<MBeanServer> mbeanServer = new ValidatingReference<MBeanServer>();
+    @Reference(referenceInterface = ProfileOverlayCache.class)
+    private final ValidatingReference<ProfileOverlayCache> profileOverlayCache = new ValidatingReference<ProfileOverlayCache>();
 
     @GuardedBy("this") private final Set<String> domains = new HashSet<String>();
     @GuardedBy("this") private HealthCheck healthCheck;
@@ -172,6 +175,14 @@ public final class FabricMBeanRegistrationListener extends AbstractComponent imp
         this.curator.unbind(curator);
     }
 
+    void bindProfileOverlayCache(ProfileOverlayCache profileOverlayCache) {
+        this.profileOverlayCache.bind(profileOverlayCache);
+    }
+
+    void unbindProfileOverlayCache(ProfileOverlayCache profileOverlayCache) {
+        this.profileOverlayCache.unbind(profileOverlayCache);
+    }
+
     void bindMBeanServer(MBeanServer mbeanServer) {
         this.mbeanServer.bind(mbeanServer);
     }
@@ -217,6 +228,7 @@ public final class FabricMBeanRegistrationListener extends AbstractComponent imp
         this.fileSystemMBean = new FileSystem();
         healthCheck.registerMBeanServer(mbeanServer.get());
         managerMBean.registerMBeanServer(mbeanServer.get());
+        profileOverlayCache.get().registerMBeanServer(mbeanServer.get());
         fileSystemMBean.registerMBeanServer(mbeanServer.get());
         zooKeeperMBean.registerMBeanServer(mbeanServer.get());
     }
@@ -224,6 +236,7 @@ public final class FabricMBeanRegistrationListener extends AbstractComponent imp
     private synchronized void unregisterFabricMBeans() {
         zooKeeperMBean.unregisterMBeanServer(mbeanServer.get());
         fileSystemMBean.unregisterMBeanServer(mbeanServer.get());
+        profileOverlayCache.get().unregisterMBeanServer(mbeanServer.get());
         managerMBean.unregisterMBeanServer(mbeanServer.get());
         healthCheck.unregisterMBeanServer(mbeanServer.get());
     }
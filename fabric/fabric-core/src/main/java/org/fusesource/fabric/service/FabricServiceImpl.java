@@ -72,6 +72,7 @@ import org.fusesource.fabric.api.scr.ValidatingReference;
 import org.fusesource.fabric.internal.ContainerImpl;
 import org.fusesource.fabric.internal.DataStoreHelpers;
 import org.fusesource.fabric.internal.ProfileImpl;
+import org.fusesource.fabric.internal.ProfileOverlayCache;
 import org.fusesource.fabric.internal.VersionImpl;
 import org.fusesource.fabric.utils.Constants;
 import org.fusesource.fabric.utils.SystemProperties;
@@ -104,6 +105,8 @@ public final class FabricServiceImpl extends AbstractComponent implements Fabric
     private final ValidatingReference<CuratorFramework> curator = new ValidatingReference<CuratorFramework>();
     @Reference(referenceInterface = DataStore.class)
     private final ValidatingReference<DataStore> dataStore = new ValidatingReference<DataStore>();
+    @Reference(referenceInterface = ProfileOverlayCache.class)
+    private final ValidatingReference<ProfileOverlayCache> profileOverlayCache = new ValidatingReference<ProfileOverlayCache>();
     @Reference(referenceInterface = PortService.class)
     private final ValidatingReference<PortService> portService = new ValidatingReference<PortService>();
     @Reference(referenceInterface = ConfigurationAdmin.class)
@@ -673,7 +676,7 @@ public final class FabricServiceImpl extends AbstractComponent implements Fabric
     @Override
     public Version getDefaultVersion() {
         assertValid();
-        return new VersionImpl(getDataStore().getDefaultVersion(), this);
+        return new VersionImpl(getDataStore().getDefaultVersion(), this, profileOverlayCache.get());
     }
 
     @Override
@@ -691,7 +694,7 @@ public final class FabricServiceImpl extends AbstractComponent implements Fabric
     public Version createVersion(String version) {
         assertValid();
         getDataStore().createVersion(version);
-        return new VersionImpl(version, this);
+        return new VersionImpl(version, this, profileOverlayCache.get());
     }
 
     @Override
@@ -704,7 +707,7 @@ public final class FabricServiceImpl extends AbstractComponent implements Fabric
     public Version createVersion(String parentVersionId, String toVersion) {
         assertValid();
         getDataStore().createVersion(parentVersionId, toVersion);
-        return new VersionImpl(toVersion, this);
+        return new VersionImpl(toVersion, this, profileOverlayCache.get());
     }
 
     // FIXME public access on the impl
@@ -719,7 +722,7 @@ public final class FabricServiceImpl extends AbstractComponent implements Fabric
         List<Version> versions = new ArrayList<Version>();
         List<String> children = getDataStore().getVersions();
         for (String child : children) {
-            versions.add(new VersionImpl(child, this));
+            versions.add(new VersionImpl(child, this, profileOverlayCache.get()));
         }
         Collections.sort(versions);
         return versions.toArray(new Version[versions.size()]);
@@ -729,7 +732,7 @@ public final class FabricServiceImpl extends AbstractComponent implements Fabric
     public Version getVersion(String name) {
         assertValid();
         if (getDataStore().hasVersion(name)) {
-            return new VersionImpl(name, this);
+            return new VersionImpl(name, this, profileOverlayCache.get());
         }
         throw new FabricException("Version '" + name + "' does not exist");
     }
@@ -922,6 +925,14 @@ public final class FabricServiceImpl extends AbstractComponent implements Fabric
         this.dataStore.unbind(dataStore);
     }
 
+    void bindProfileOverlayCache(ProfileOverlayCache profileOverlayCache) {
+        this.profileOverlayCache.bind(profileOverlayCache);
+    }
+
+    void unbindProfileOverlayCache(ProfileOverlayCache profileOverlayCache) {
+        this.profileOverlayCache.unbind(profileOverlayCache);
+    }
+
     void bindPortService(PortService portService) {
         this.portService.bind(portService);
     }
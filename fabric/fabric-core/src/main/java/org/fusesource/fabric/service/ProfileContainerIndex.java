@@ -0,0 +1,203 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.fabric.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
+import org.apache.curator.framework.recipes.cache.TreeCache;
+import org.fusesource.fabric.api.jcip.GuardedBy;
+import org.fusesource.fabric.api.jcip.ThreadSafe;
+import org.fusesource.fabric.zookeeper.ZkDefs;
+import org.fusesource.fabric.zookeeper.ZkPath;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.fusesource.fabric.zookeeper.utils.ZooKeeperUtils.getStringData;
+
+/**
+ * An index of the containers using each version and each profile, kept up to date from the events of the
+ * configuration {@link TreeCache}.
+ * <p/>
+ * An event only tells us which container changed, its version and profiles are then read again from the
+ * tree cache, so events may be applied in any order. Containers without profiles are indexed under the
+ * default profile, like {@link org.fusesource.fabric.internal.ContainerImpl#getProfiles()} does.
+ */
+@ThreadSafe
+public class ProfileContainerIndex {
+
+    private static final transient Logger LOG = LoggerFactory.getLogger(ProfileContainerIndex.class);
+
+    private static final String CONTAINERS_PREFIX = ZkPath.CONFIGS_CONTAINERS.getPath() + "/";
+    private static final String VERSIONS_PREFIX = ZkPath.CONFIG_VERSIONS.getPath() + "/";
+    private static final String CONTAINERS_NODE = "containers";
+
+    private final TreeCache treeCache;
+
+    @GuardedBy("this") private final Map<String, Set<String>> versionContainers = new HashMap<String, Set<String>>();
+    @GuardedBy("this") private final Map<String, Map<String, Set<String>>> profileContainers = new HashMap<String, Map<String, Set<String>>>();
+    @GuardedBy("this") private final Map<String, Assignment> assignments = new HashMap<String, Assignment>();
+    @GuardedBy("this") private boolean loaded;
+
+    public ProfileContainerIndex(TreeCache treeCache) {
+        this.treeCache = treeCache;
+    }
+
+    /**
+     * Updates the index for the container which the event refers to, if any
+     */
+    public void childEvent(PathChildrenCacheEvent event) {
+        ChildData data = event.getData();
+        if (data == null) {
+            return;
+        }
+        String containerId = getContainerId(data.getPath());
+        if (containerId != null) {
+            synchronized (this) {
+                refresh(containerId);
+            }
+        }
+    }
+
+    /**
+     * Returns the ids of the containers which use the given version
+     */
+    public synchronized List<String> getVersionContainers(String version) {
+        load();
+        Set<String> containers = versionContainers.get(version);
+        return containers != null ? new ArrayList<String>(containers) : Collections.<String>emptyList();
+    }
+
+    /**
+     * Returns the ids of the containers which use the given version and have the given profile
+     */
+    public synchronized List<String> getProfileContainers(String version, String profile) {
+        load();
+        Map<String, Set<String>> profiles = profileContainers.get(version);
+        Set<String> containers = profiles != null ? profiles.get(profile) : null;
+        return containers != null ? new ArrayList<String>(containers) : Collections.<String>emptyList();
+    }
+
+    /**
+     * Returns the id of the container of a container version or container profiles path
+     */
+    static String getContainerId(String path) {
+        if (path.startsWith(CONTAINERS_PREFIX)) {
+            String containerId = path.substring(CONTAINERS_PREFIX.length());
+            return containerId.indexOf('/') < 0 ? containerId : null;
+        } else if (path.startsWith(VERSIONS_PREFIX)) {
+            // versions/{version}/containers/{container}
+            String[] parts = path.substring(VERSIONS_PREFIX.length()).split("/");
+            return parts.length == 3 && CONTAINERS_NODE.equals(parts[1]) ? parts[2] : null;
+        }
+        return null;
+    }
+
+    /**
+     * Indexes the containers already in the tree cache the first time the index is used.
+     */
+    @GuardedBy("this")
+    private void load() {
+        if (!loaded) {
+            loaded = true;
+            List<String> containers = treeCache.getChildrenNames(ZkPath.CONFIGS_CONTAINERS.getPath());
+            if (containers != null) {
+                for (String containerId : containers) {
+                    refresh(containerId);
+                }
+            }
+        }
+    }
+
+    @GuardedBy("this")
+    private void refresh(String containerId) {
+        Assignment assignment = null;
+        try {
+            String version = getStringData(treeCache, ZkPath.CONFIG_CONTAINER.getPath(containerId));
+            if (version != null) {
+                version = version.trim();
+                String str = getStringData(treeCache, ZkPath.CONFIG_VERSIONS_CONTAINER.getPath(version, containerId));
+                List<String> profiles = str == null || str.trim().isEmpty()
+                        ? Collections.singletonList(ZkDefs.DEFAULT_PROFILE)
+                        : Arrays.asList(str.trim().split(" +"));
+                assignment = new Assignment(version, profiles);
+            }
+        } catch (Exception e) {
+            LOG.debug("Failed to read the profiles of container " + containerId + ". " + e, e);
+        }
+
+        Assignment previous = assignment != null ? assignments.put(containerId, assignment) : assignments.remove(containerId);
+        if (previous != null) {
+            remove(versionContainers, previous.version, containerId);
+            Map<String, Set<String>> profiles = profileContainers.get(previous.version);
+            for (String profile : previous.profiles) {
+                remove(profiles, profile, containerId);
+            }
+            if (profiles != null && profiles.isEmpty()) {
+                profileContainers.remove(previous.version);
+            }
+        }
+        if (assignment != null) {
+            add(versionContainers, assignment.version, containerId);
+            Map<String, Set<String>> profiles = profileContainers.get(assignment.version);
+            if (profiles == null) {
+                profiles = new HashMap<String, Set<String>>();
+                profileContainers.put(assignment.version, profiles);
+            }
+            for (String profile : assignment.profiles) {
+                add(profiles, profile, containerId);
+            }
+        }
+    }
+
+    private static void add(Map<String, Set<String>> map, String key, String containerId) {
+        Set<String> containers = map.get(key);
+        if (containers == null) {
+            containers = new LinkedHashSet<String>();
+            map.put(key, containers);
+        }
+        containers.add(containerId);
+    }
+
+    private static void remove(Map<String, Set<String>> map, String key, String containerId) {
+        Set<String> containers = map != null ? map.get(key) : null;
+        if (containers != null) {
+            containers.remove(containerId);
+            if (containers.isEmpty()) {
+                map.remove(key);
+            }
+        }
+    }
+
+    private static class Assignment {
+        final String version;
+        final List<String> profiles;
+
+        Assignment(String version, List<String> profiles) {
+            this.version = version;
+            this.profiles = profiles;
+        }
+    }
+}
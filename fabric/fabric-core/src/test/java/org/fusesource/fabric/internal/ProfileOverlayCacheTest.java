@@ -0,0 +1,178 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.fabric.internal;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.fusesource.fabric.api.DataStore;
+import org.fusesource.fabric.api.DataStoreChangeSet;
+import org.fusesource.fabric.api.FabricService;
+import org.fusesource.fabric.api.Profile;
+import org.fusesource.fabric.api.Version;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ProfileOverlayCacheTest {
+
+    private static final String VERSION = "1.0";
+
+    private final Map<String, Map<String, byte[]>> files = new HashMap<String, Map<String, byte[]>>();
+    private ProfileOverlayCache cache;
+    private Profile child;
+
+    @Before
+    public void setUp() throws Exception {
+        final FabricService service = createNiceMock(FabricService.class);
+        DataStore dataStore = createNiceMock(DataStore.class);
+        Version version = createNiceMock(Version.class);
+
+        expect(service.getDataStore()).andReturn(dataStore).anyTimes();
+        expect(service.getVersion(VERSION)).andReturn(version).anyTimes();
+        expect(version.getProfile(EasyMock.<String>anyObject())).andAnswer(new IAnswer<Profile>() {
+            @Override
+            public Profile answer() throws Throwable {
+                return new ProfileImpl((String) EasyMock.getCurrentArguments()[0], VERSION, service);
+            }
+        }).anyTimes();
+        expect(dataStore.getProfileAttributes(VERSION, "child")).andReturn(Collections.singletonMap(Profile.PARENTS, "parent")).anyTimes();
+        expect(dataStore.getProfileAttributes(VERSION, "parent")).andReturn(Collections.<String, String>emptyMap()).anyTimes();
+        expect(dataStore.getFileConfigurations(eq(VERSION), (String) anyObject())).andAnswer(new IAnswer<Map<String, byte[]>>() {
+            @Override
+            public Map<String, byte[]> answer() throws Throwable {
+                return new HashMap<String, byte[]>(files.get(EasyMock.getCurrentArguments()[1]));
+            }
+        }).anyTimes();
+        replay(service, dataStore, version);
+
+        setProperties("parent", "a=parent\nb=parent\n");
+        setProperties("child", "b=child\n");
+        cache = new ProfileOverlayCache();
+        child = new ProfileImpl("child", VERSION, service);
+    }
+
+    private void setProperties(String profile, String properties) {
+        files.put(profile, Collections.singletonMap("test.properties", properties.getBytes()));
+    }
+
+    private Map<String, String> getTestConfiguration() {
+        return new ProfileOverlayImpl(child, false, null, null, cache).getConfiguration("test");
+    }
+
+    @Test
+    public void testCachedUntilInvalidated() throws Exception {
+        assertEquals("parent", getTestConfiguration().get("a"));
+        assertEquals("child", getTestConfiguration().get("b"));
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getSize());
+
+        // changes are not seen until the data store notifies us
+        setProperties("parent", "a=changed\n");
+        assertEquals("parent", getTestConfiguration().get("a"));
+
+        cache.invalidate();
+        assertEquals("changed", getTestConfiguration().get("a"));
+        assertEquals(2, cache.getMisses());
+        assertEquals(1, cache.getInvalidations());
+    }
+
+    @Test
+    public void testUnchangedEntriesAreRevalidated() throws Exception {
+        getTestConfiguration();
+        cache.invalidate();
+        assertEquals("child", getTestConfiguration().get("b"));
+        // the profiles had to be read again to revalidate the entry
+        assertEquals(2, cache.getMisses());
+        assertEquals(1, cache.getRevalidations());
+
+        // once revalidated the entry is served without reading the profiles again
+        getTestConfiguration();
+        assertEquals(1, cache.getRevalidations());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void testChangedAncestorDropsDescendants() throws Exception {
+        getTestConfiguration();
+        setProperties("parent", "a=changed\n");
+        cache.invalidate(DataStoreChangeSet.builder().profile(VERSION, "parent").build());
+        assertEquals(0, cache.getSize());
+        assertEquals("changed", getTestConfiguration().get("a"));
+        assertEquals(2, cache.getMisses());
+        assertEquals(0, cache.getRevalidations());
+    }
+
+    @Test
+    public void testUnrelatedChangesKeepEntries() throws Exception {
+        getTestConfiguration();
+        cache.invalidate(DataStoreChangeSet.builder().profile(VERSION, "other").build());
+        cache.invalidate(DataStoreChangeSet.builder().profile("1.1", "parent").build());
+        cache.invalidate(DataStoreChangeSet.builder().container("root").build());
+        getTestConfiguration();
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void testVersionChangeRevalidatesItsEntries() throws Exception {
+        getTestConfiguration();
+        cache.invalidate(DataStoreChangeSet.builder().version(VERSION).build());
+        assertEquals(1, cache.getSize());
+        getTestConfiguration();
+        assertEquals(2, cache.getMisses());
+        assertEquals(1, cache.getRevalidations());
+
+        getTestConfiguration();
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void testSizeIsBounded() throws Exception {
+        cache = new ProfileOverlayCache(1);
+        getTestConfiguration();
+        new ProfileOverlayImpl(child, false, null, "prod", cache).getConfiguration("test");
+        assertEquals(1, cache.getSize());
+    }
+
+    @Test
+    public void testReturnedConfigurationsAreCopies() throws Exception {
+        getTestConfiguration().remove("a");
+        assertEquals("parent", getTestConfiguration().get("a"));
+    }
+
+    @Test
+    public void testEnvironmentsAreCachedSeparately() throws Exception {
+        files.put("child", new HashMap<String, byte[]>(files.get("child")));
+        files.get("child").put("test.properties#prod", "b=prod\n".getBytes());
+        assertEquals("child", getTestConfiguration().get("b"));
+        assertEquals("prod", new ProfileOverlayImpl(child, false, null, "prod", cache).getConfiguration("test").get("b"));
+        assertEquals(2, cache.getSize());
+        assertNull(new ProfileOverlayImpl(child, false, null, "prod", cache).getConfiguration("missing"));
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.fabric.service;
+
+import static org.easymock.EasyMock.expect;
+import static org.easymock.classextension.EasyMock.createMock;
+import static org.easymock.classextension.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
+import org.apache.curator.framework.recipes.cache.TreeCache;
+import org.apache.curator.framework.recipes.cache.TreeData;
+import org.apache.zookeeper.data.Stat;
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.fusesource.fabric.zookeeper.ZkPath;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ProfileContainerIndexTest {
+
+    private final Map<String, String> nodes = new HashMap<String, String>();
+    private ProfileContainerIndex index;
+
+    @Before
+    public void setUp() throws Exception {
+        TreeCache treeCache = createMock(TreeCache.class);
+        expect(treeCache.getCurrentData(EasyMock.<String>anyObject())).andAnswer(new IAnswer<TreeData>() {
+            @Override
+            public TreeData answer() throws Throwable {
+                String path = (String) EasyMock.getCurrentArguments()[0];
+                String value = nodes.get(path);
+                return value != null ? new TreeData(path, new Stat(), value.getBytes("UTF-8")) : null;
+            }
+        }).anyTimes();
+        expect(treeCache.getChildrenNames(ZkPath.CONFIGS_CONTAINERS.getPath())).andAnswer(new IAnswer<List<String>>() {
+            @Override
+            public List<String> answer() throws Throwable {
+                List<String> children = new ArrayList<String>();
+                for (String path : nodes.keySet()) {
+                    if (path.startsWith(ZkPath.CONFIGS_CONTAINERS.getPath() + "/")) {
+                        children.add(path.substring(path.lastIndexOf('/') + 1));
+                    }
+                }
+                return children;
+            }
+        }).anyTimes();
+        replay(treeCache);
+        index = new ProfileContainerIndex(treeCache);
+    }
+
+    private void setContainer(String container, String version, String profiles) {
+        nodes.put(ZkPath.CONFIG_CONTAINER.getPath(container), version);
+        nodes.put(ZkPath.CONFIG_VERSIONS_CONTAINER.getPath(version, container), profiles);
+    }
+
+    private void fireEvent(PathChildrenCacheEvent.Type type, String path) {
+        index.childEvent(new PathChildrenCacheEvent(type, new ChildData(path, new Stat(), null)));
+    }
+
+    @Test
+    public void testGetContainerId() throws Exception {
+        assertEquals("c1", ProfileContainerIndex.getContainerId("/fabric/configs/containers/c1"));
+        assertEquals("c1", ProfileContainerIndex.getContainerId("/fabric/configs/versions/1.0/containers/c1"));
+        assertNull(ProfileContainerIndex.getContainerId("/fabric/configs/versions/1.0/profiles/c1"));
+        assertNull(ProfileContainerIndex.getContainerId("/fabric/configs/versions/1.0"));
+        assertNull(ProfileContainerIndex.getContainerId("/fabric/configs/ensemble/url"));
+    }
+
+    @Test
+    public void testLoadsExistingContainers() throws Exception {
+        setContainer("c1", "1.0", "a b");
+        setContainer("c2", "1.0", "b");
+        setContainer("c3", "1.1", "");
+
+        assertEquals(Arrays.asList("c1"), index.getProfileContainers("1.0", "a"));
+        assertEquals(2, index.getProfileContainers("1.0", "b").size());
+        assertEquals(2, index.getVersionContainers("1.0").size());
+        assertEquals("containers without profiles use the default profile", Arrays.asList("c3"), index.getProfileContainers("1.1", "default"));
+        assertEquals(Collections.<String>emptyList(), index.getProfileContainers("1.1", "a"));
+    }
+
+    @Test
+    public void testUpdatesFromEvents() throws Exception {
+        setContainer("c1", "1.0", "a");
+        assertEquals(Arrays.asList("c1"), index.getProfileContainers("1.0", "a"));
+
+        // change the profiles
+        setContainer("c1", "1.0", "b");
+        fireEvent(PathChildrenCacheEvent.Type.CHILD_UPDATED, ZkPath.CONFIG_VERSIONS_CONTAINER.getPath("1.0", "c1"));
+        assertEquals(Collections.<String>emptyList(), index.getProfileContainers("1.0", "a"));
+        assertEquals(Arrays.asList("c1"), index.getProfileContainers("1.0", "b"));
+
+        // upgrade the container
+        setContainer("c1", "1.1", "b");
+        fireEvent(PathChildrenCacheEvent.Type.CHILD_UPDATED, ZkPath.CONFIG_CONTAINER.getPath("c1"));
+        assertEquals(Collections.<String>emptyList(), index.getVersionContainers("1.0"));
+        assertEquals(Arrays.asList("c1"), index.getProfileContainers("1.1", "b"));
+
+        // delete the container
+        nodes.remove(ZkPath.CONFIG_CONTAINER.getPath("c1"));
+        fireEvent(PathChildrenCacheEvent.Type.CHILD_REMOVED, ZkPath.CONFIG_CONTAINER.getPath("c1"));
+        assertEquals(Collections.<String>emptyList(), index.getVersionContainers("1.1"));
+        assertEquals(Collections.<String>emptyList(), index.getProfileContainers("1.1", "b"));
+    }
+}
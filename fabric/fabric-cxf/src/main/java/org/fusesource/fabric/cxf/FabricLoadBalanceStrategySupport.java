@@ -28,26 +28,43 @@ import java.util.concurrent.CopyOnWriteArrayList;
 public abstract class FabricLoadBalanceStrategySupport implements LoadBalanceStrategy {
     private static final transient Log LOG = LogFactory.getLog(FabricLoadBalanceStrategySupport.class);
     protected Group<CxfNodeState> group;
-    protected List<String> alternateAddressList = new CopyOnWriteArrayList<String>();
+    protected volatile List<String> alternateAddressList = new CopyOnWriteArrayList<String>();
 
     public void setGroup(final Group<CxfNodeState> group) {
         this.group = group;
         group.add(new GroupListener<CxfNodeState>() {
             @Override
             public void groupEvent(Group<CxfNodeState> group, GroupEvent event) {
-                alternateAddressList.clear();
-                for (CxfNodeState node : group.members().values()) {
-                    if (node.services != null) {
-                        for (String url : node.services) {
-                            if (LOG.isDebugEnabled()) {
-                                LOG.debug("Added the CXF endpoint address " + url);
-                            }
-                            alternateAddressList.add(url);
-                        }
+                List<String> addresses = getAddresses(group);
+                // swap the whole list so that a concurrent selection never sees it half built
+                alternateAddressList = new CopyOnWriteArrayList<String>(addresses);
+                addressesChanged(addresses);
+            }
+        });
+    }
+
+    /**
+     * Called once the addresses of the group have changed, so that the state kept per address can be released
+     */
+    protected void addressesChanged(List<String> addresses) {
+    }
+
+    /**
+     * Returns the addresses of the CXF endpoints registered in the group
+     */
+    static List<String> getAddresses(Group<CxfNodeState> group) {
+        List<String> addresses = new ArrayList<String>();
+        for (CxfNodeState node : group.members().values()) {
+            if (node.services != null) {
+                for (String url : node.services) {
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("Added the CXF endpoint address " + url);
                     }
+                    addresses.add(url);
                 }
             }
-        });
+        }
+        return addresses;
     }
     
     public Group<CxfNodeState> getGroup() {
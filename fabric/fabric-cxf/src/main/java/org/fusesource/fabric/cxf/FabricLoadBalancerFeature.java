@@ -34,6 +34,9 @@ import org.apache.cxf.interceptor.InterceptorProvider;
 import org.fusesource.fabric.groups.Group;
 import org.fusesource.fabric.groups.internal.ZooKeeperGroup;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 
 public class FabricLoadBalancerFeature extends AbstractFeature implements BusLifeCycleListener {
     private static final transient Log LOG = LogFactory.getLog(FabricLoadBalancerFeature.class);
@@ -51,6 +54,9 @@ public class FabricLoadBalancerFeature extends AbstractFeature implements BusLif
     private int maximumConnectionTimeout = 10 * 1000;
     private volatile Group group;
     private LoadBalanceStrategy loadBalanceStrategy;
+    private int maxIdleConduits = LoadBalanceTargetSelector.DEFAULT_MAX_IDLE_CONDUITS;
+    // the selectors created by this feature, whose pooled conduits are closed on destroy
+    private final List<LoadBalanceTargetSelector> selectors = new CopyOnWriteArrayList<LoadBalanceTargetSelector>();
 
     private ServerAddressResolver addressResolver;
 
@@ -68,7 +74,7 @@ public class FabricLoadBalancerFeature extends AbstractFeature implements BusLif
             ConduitSelectorHolder holder = (ConduitSelectorHolder) interceptorProvider;
             // get the endpoint of the original ConduitSelector
             ConduitSelector oldSelector = holder.getConduitSelector();
-            LoadBalanceTargetSelector selector = getDefaultLoadBalanceTargetSelector();
+            LoadBalanceTargetSelector selector = createLoadBalanceTargetSelector();
             selector.setEndpoint(oldSelector.getEndpoint());
             try {
                 selector.setLoadBalanceStrategy(getLoadBalanceStrategy());
@@ -111,7 +117,7 @@ public class FabricLoadBalancerFeature extends AbstractFeature implements BusLif
 
     protected void setupClientConduitSelector(Client client) {
         //TODO do we need to check if the ConduitSelector is replaced
-        LoadBalanceTargetSelector selector = getDefaultLoadBalanceTargetSelector();
+        LoadBalanceTargetSelector selector = createLoadBalanceTargetSelector();
         selector.setEndpoint(client.getEndpoint());
         try {
             selector.setLoadBalanceStrategy(getLoadBalanceStrategy());
@@ -128,6 +134,13 @@ public class FabricLoadBalancerFeature extends AbstractFeature implements BusLif
     protected LoadBalanceTargetSelector getDefaultLoadBalanceTargetSelector() {
         return new LoadBalanceTargetSelector();
     }
+
+    LoadBalanceTargetSelector createLoadBalanceTargetSelector() {
+        LoadBalanceTargetSelector selector = getDefaultLoadBalanceTargetSelector();
+        selector.setMaxIdleConduits(maxIdleConduits);
+        selectors.add(selector);
+        return selector;
+    }
     
     public synchronized Group getGroup() throws Exception {
          if (group == null) {
@@ -138,6 +151,10 @@ public class FabricLoadBalancerFeature extends AbstractFeature implements BusLif
     }
 
     public void destroy() throws Exception {
+        for (LoadBalanceTargetSelector selector : selectors) {
+            selector.close();
+        }
+        selectors.clear();
         if (group != null) {
             group.close();
         }
@@ -203,6 +220,17 @@ public class FabricLoadBalancerFeature extends AbstractFeature implements BusLif
         this.loadBalanceStrategy = strategy;
     }
     
+    public int getMaxIdleConduits() {
+        return maxIdleConduits;
+    }
+
+    /**
+     * Sets the number of idle conduits the selectors created by this feature pool per address
+     */
+    public void setMaxIdleConduits(int maxIdleConduits) {
+        this.maxIdleConduits = maxIdleConduits;
+    }
+
     public void setShouldCloseZkClient(boolean closeZkClient) {
          this.shouldCloseZkClient = closeZkClient;
     }
@@ -68,7 +68,7 @@ public class FailOverTargetSelector extends LoadBalanceTargetSelector {
         return LOG;
     }
 
-    public synchronized void prepare(Message message) {
+    public void prepare(Message message) {
         Exchange exchange = message.getExchange();
         InvocationKey key = new InvocationKey(exchange);
         if (!inProgress.containsKey(key)) {
@@ -97,8 +97,7 @@ public class FailOverTargetSelector extends LoadBalanceTargetSelector {
             Endpoint failOverTarget = getFailOverTarget(exchange, invocation);
             if (failOverTarget != null) {
                 setEndpoint(failOverTarget);
-                selectedConduit.close();
-                selectedConduit = null;
+                discardSelectedConduit(exchange);
                 Exception prevExchangeFault =
                     (Exception)exchange.remove(Exception.class.getName());
                 Message outMessage = exchange.getOutMessage();
@@ -0,0 +1,38 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.fabric.cxf;
+
+/**
+ * A {@link LoadBalanceStrategy} which is told about the invocations sent to the addresses it selected, so that it
+ * can take their outcome into account for the next selections
+ */
+public interface InvocationAwareLoadBalanceStrategy extends LoadBalanceStrategy {
+
+    /**
+     * Called when an invocation is about to be sent to the given address
+     */
+    void invocationStarted(String address);
+
+    /**
+     * Called when an invocation sent to the given address completed
+     *
+     * @param address  the address
+     * @param duration the duration of the invocation in nanoseconds
+     * @param failed   true if the invocation failed
+     */
+    void invocationCompleted(String address, long duration, boolean failed);
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.fabric.cxf;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Picks the address with the lowest expected latency, that is its average response time weighted by the number of
+ * invocations in progress on it.  The average is exponentially weighted so that it follows the recent behaviour of
+ * each address, a failure counts as twice the slower of its duration and the average, and the addresses which
+ * haven't been used yet are picked first.
+ */
+public class LeastLatencyLoadBalanceStrategy extends FabricLoadBalanceStrategySupport implements InvocationAwareLoadBalanceStrategy {
+    private final ConcurrentMap<String, AddressStatistics> statistics = new ConcurrentHashMap<String, AddressStatistics>();
+    private final Random random = new Random();
+    private double smoothingFactor = 0.3;
+
+    public String getNextAlternateAddress() {
+        List<String> addresses = alternateAddressList;
+        if (addresses.isEmpty()) {
+            throw new IllegalArgumentException("The AlternateAddressList is empty, please fresh the list shortly.");
+        }
+        String best = null;
+        double bestScore = 0;
+        int ties = 0;
+        for (String address : addresses) {
+            double score = getScore(address);
+            if (best == null || score < bestScore) {
+                best = address;
+                bestScore = score;
+                ties = 1;
+            } else if (score == bestScore && random.nextInt(++ties) == 0) {
+                // spread the load evenly among the addresses with the same score
+                best = address;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the expected latency of the given address in nanoseconds
+     */
+    public double getScore(String address) {
+        AddressStatistics stats = statistics.get(address);
+        if (stats == null) {
+            return 0;
+        }
+        int inFlight = stats.inFlight.get();
+        // the in flight invocations are added so that the addresses with no latency yet don't get all the load
+        return stats.getLatency() * (inFlight + 1) + inFlight;
+    }
+
+    public void invocationStarted(String address) {
+        getStatistics(address).inFlight.incrementAndGet();
+    }
+
+    public void invocationCompleted(String address, long duration, boolean failed) {
+        AddressStatistics stats = statistics.get(address);
+        if (stats == null) {
+            // the address has left the group while the invocation was in progress
+            return;
+        }
+        stats.inFlight.decrementAndGet();
+        stats.update(failed ? 2 * Math.max(duration, stats.getLatency()) : duration, smoothingFactor);
+    }
+
+    @Override
+    protected void addressesChanged(List<String> addresses) {
+        // forget the addresses which have left the group so that the statistics don't grow forever
+        statistics.keySet().retainAll(addresses);
+    }
+
+    private AddressStatistics getStatistics(String address) {
+        AddressStatistics stats = statistics.get(address);
+        if (stats == null) {
+            stats = new AddressStatistics();
+            AddressStatistics existing = statistics.putIfAbsent(address, stats);
+            if (existing != null) {
+                stats = existing;
+            }
+        }
+        return stats;
+    }
+
+    public double getSmoothingFactor() {
+        return smoothingFactor;
+    }
+
+    /**
+     * Sets the weight, between 0 and 1, of the latest response time in the average
+     */
+    public void setSmoothingFactor(double smoothingFactor) {
+        this.smoothingFactor = smoothingFactor;
+    }
+
+    private static class AddressStatistics {
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private double latency = -1;
+
+        synchronized double getLatency() {
+            return Math.max(latency, 0);
+        }
+
+        synchronized void update(double sample, double smoothingFactor) {
+            latency = latency < 0 ? sample : latency + smoothingFactor * (sample - latency);
+        }
+    }
+}
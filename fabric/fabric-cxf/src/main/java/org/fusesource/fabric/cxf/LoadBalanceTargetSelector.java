@@ -28,15 +28,44 @@ import org.apache.cxf.transport.ConduitInitiatorManager;
 import org.apache.cxf.transport.MessageObserver;
 import org.apache.cxf.ws.addressing.AttributedURIType;
 import org.apache.cxf.ws.addressing.EndpointReferenceType;
+import org.fusesource.fabric.groups.Group;
+import org.fusesource.fabric.groups.GroupListener;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Logger;
 
+/**
+ * Selects the conduit of each exchange through the {@link LoadBalanceStrategy}.  The selected conduit is kept in
+ * the exchange, so that concurrent invocations don't share it, and the conduits are pooled per address so that
+ * they are reused by the following invocations instead of being created for each of them.  The conduits of the
+ * addresses which leave the group of the strategy are closed.
+ */
 public class LoadBalanceTargetSelector extends AbstractConduitSelector {
-    protected volatile Conduit selectedConduit;
     protected LoadBalanceStrategy loadBalanceStrategy;
-    
+    protected final ConcurrentMap<String, Queue<Conduit>> idleConduits = new ConcurrentHashMap<String, Queue<Conduit>>();
+    protected int maxIdleConduits = DEFAULT_MAX_IDLE_CONDUITS;
+    // the addresses of the group, null until the group has sent its first event
+    private volatile Set<String> addresses;
+    private final GroupListener<CxfNodeState> groupListener = new GroupListener<CxfNodeState>() {
+        @Override
+        public void groupEvent(Group<CxfNodeState> group, GroupEvent event) {
+            retainAddresses(FabricLoadBalanceStrategySupport.getAddresses(group));
+        }
+    };
+
     public static final String OVERRIDE_ADDRESS = LoadBalanceTargetSelector.class.getName() + ".OVERRIDE_ADDRESS";
+    public static final int DEFAULT_MAX_IDLE_CONDUITS = 8;
+
+    private static final String SELECTED_CONDUIT = LoadBalanceTargetSelector.class.getName() + ".SELECTED_CONDUIT";
 
     private static final Logger LOG =
             LogUtils.getL7dLogger(FailOverTargetSelector.class);
@@ -65,15 +94,75 @@ public class LoadBalanceTargetSelector extends AbstractConduitSelector {
 
     public void complete(Exchange exchange) {
         super.complete(exchange);
-        // here we just reset the selectConduit for next around connection
-        selectedConduit = null;
+        // here we just give the conduit of the exchange back to the pool for next around connection
+        SelectedConduit selected = (SelectedConduit) exchange.remove(SELECTED_CONDUIT);
+        if (selected != null) {
+            boolean failed = isFailed(exchange);
+            invocationCompleted(selected, failed);
+            if (failed) {
+                selected.conduit.close();
+            } else {
+                release(selected);
+            }
+        }
+    }
+
+    /**
+     * Closes the conduit selected for the exchange instead of giving it back to the pool, so that the next
+     * invocation of the exchange selects a new one
+     */
+    protected void discardSelectedConduit(Exchange exchange) {
+        SelectedConduit selected = (SelectedConduit) exchange.remove(SELECTED_CONDUIT);
+        if (selected != null) {
+            invocationCompleted(selected, true);
+            selected.conduit.close();
+        }
+    }
+
+    /**
+     * Closes the pooled conduits and stops listening to the group of the strategy
+     */
+    public void close() {
+        if (loadBalanceStrategy != null && loadBalanceStrategy.getGroup() != null) {
+            loadBalanceStrategy.getGroup().remove(groupListener);
+        }
+        for (Queue<Conduit> conduits : idleConduits.values()) {
+            close(conduits);
+        }
+    }
+
+    /**
+     * Closes the pooled conduits of the addresses which are not in the given ones
+     */
+    void retainAddresses(Collection<String> addresses) {
+        this.addresses = new HashSet<String>(addresses);
+        for (Iterator<Map.Entry<String, Queue<Conduit>>> iterator = idleConduits.entrySet().iterator(); iterator.hasNext();) {
+            Map.Entry<String, Queue<Conduit>> entry = iterator.next();
+            if (!addresses.contains(entry.getKey())) {
+                iterator.remove();
+                close(entry.getValue());
+            }
+        }
     }
 
-    protected synchronized Conduit getSelectedConduit(Message message) {
-        if (selectedConduit == null) {
-            selectedConduit = getNextConduit(message);
+    private static void close(Queue<Conduit> conduits) {
+        Conduit conduit;
+        while ((conduit = conduits.poll()) != null) {
+            conduit.close();
         }
-        return selectedConduit;
+    }
+
+    protected Conduit getSelectedConduit(Message message) {
+        Exchange exchange = message.getExchange();
+        SelectedConduit selected = (SelectedConduit) exchange.get(SELECTED_CONDUIT);
+        if (selected == null) {
+            selected = getNextConduit(message);
+            if (selected == null) {
+                return null;
+            }
+            exchange.put(SELECTED_CONDUIT, selected);
+        }
+        return selected.conduit;
     }
     
     protected boolean overrideAddress(Message message) {
@@ -86,7 +175,7 @@ public class LoadBalanceTargetSelector extends AbstractConduitSelector {
         }
     }
 
-    protected Conduit getNextConduit(Message message) {
+    protected SelectedConduit getNextConduit(Message message) {
         Conduit answer = null;
         Exchange exchange = message.getExchange();
         EndpointInfo ei = endpoint.getEndpointInfo();
@@ -95,37 +184,101 @@ public class LoadBalanceTargetSelector extends AbstractConduitSelector {
             // We need to override the Endpoint Address here
             message.put(Message.ENDPOINT_ADDRESS, address);
         }
+        Queue<Conduit> conduits = idleConduits.get(address);
+        if (conduits != null) {
+            answer = conduits.poll();
+        }
         try {
-            ConduitInitiatorManager conduitInitiatorMgr = exchange.getBus()
-                    .getExtension(ConduitInitiatorManager.class);
-            if (conduitInitiatorMgr != null) {
-                ConduitInitiator conduitInitiator =
-                        conduitInitiatorMgr.getConduitInitiatorForUri(address);
-                if (conduitInitiator != null) {
-                    EndpointReferenceType epr = new EndpointReferenceType();
-                    AttributedURIType ad = new AttributedURIType();
-                    ad.setValue(address);
-                    epr.setAddress(ad);
-                    answer = conduitInitiator.getConduit(ei, epr);
-
-                    MessageObserver observer =
-                            exchange.get(MessageObserver.class);
-                    if (observer != null) {
-                        answer.setMessageObserver(observer);
-                    } else {
-                        getLogger().warning("MessageObserver not found");
-                    }
+            if (answer == null) {
+                answer = createConduit(exchange, ei, address);
+            }
+            if (answer != null) {
+                MessageObserver observer =
+                        exchange.get(MessageObserver.class);
+                if (observer != null) {
+                    answer.setMessageObserver(observer);
                 } else {
-                    getLogger().warning("ConduitInitiator not found: "
-                            + ei.getAddress());
+                    getLogger().warning("MessageObserver not found");
                 }
-            } else {
-                getLogger().warning("ConduitInitiatorManager not found");
             }
         } catch (IOException ex) {
             throw new Fault(ex);
         }
-        return answer;
+        if (answer == null) {
+            return null;
+        }
+        if (loadBalanceStrategy instanceof InvocationAwareLoadBalanceStrategy) {
+            ((InvocationAwareLoadBalanceStrategy) loadBalanceStrategy).invocationStarted(address);
+        }
+        return new SelectedConduit(address, answer, System.nanoTime());
+    }
+
+    protected Conduit createConduit(Exchange exchange, EndpointInfo ei, String address) throws IOException {
+        ConduitInitiatorManager conduitInitiatorMgr = exchange.getBus()
+                .getExtension(ConduitInitiatorManager.class);
+        if (conduitInitiatorMgr != null) {
+            ConduitInitiator conduitInitiator =
+                    conduitInitiatorMgr.getConduitInitiatorForUri(address);
+            if (conduitInitiator != null) {
+                EndpointReferenceType epr = new EndpointReferenceType();
+                AttributedURIType ad = new AttributedURIType();
+                ad.setValue(address);
+                epr.setAddress(ad);
+                return conduitInitiator.getConduit(ei, epr);
+            } else {
+                getLogger().warning("ConduitInitiator not found: "
+                        + ei.getAddress());
+            }
+        } else {
+            getLogger().warning("ConduitInitiatorManager not found");
+        }
+        return null;
+    }
+
+    private void release(SelectedConduit selected) {
+        if (!isActive(selected.address)) {
+            selected.conduit.close();
+            return;
+        }
+        Queue<Conduit> conduits = idleConduits.get(selected.address);
+        if (conduits == null) {
+            conduits = new ConcurrentLinkedQueue<Conduit>();
+            Queue<Conduit> existing = idleConduits.putIfAbsent(selected.address, conduits);
+            if (existing != null) {
+                conduits = existing;
+            }
+        }
+        // the size of a concurrent queue is only an estimate, which is good enough to bound the pool
+        if (conduits.size() < maxIdleConduits) {
+            conduits.offer(selected.conduit);
+            if (!isActive(selected.address)) {
+                // the address has left the group while the conduit was given back
+                idleConduits.remove(selected.address, conduits);
+                close(conduits);
+            }
+        } else {
+            selected.conduit.close();
+        }
+    }
+
+    private boolean isActive(String address) {
+        Set<String> current = addresses;
+        return current == null || current.contains(address);
+    }
+
+    private void invocationCompleted(SelectedConduit selected, boolean failed) {
+        if (loadBalanceStrategy instanceof InvocationAwareLoadBalanceStrategy) {
+            ((InvocationAwareLoadBalanceStrategy) loadBalanceStrategy).invocationCompleted(
+                    selected.address, System.nanoTime() - selected.start, failed);
+        }
+    }
+
+    private static boolean isFailed(Exchange exchange) {
+        if (exchange.get(Exception.class) != null) {
+            return true;
+        }
+        Message outMessage = exchange.getOutMessage();
+        return outMessage != null && outMessage.getContent(Exception.class) != null;
     }
 
     public LoadBalanceStrategy getLoadBalanceStrategy() {
@@ -133,6 +286,44 @@ public class LoadBalanceTargetSelector extends AbstractConduitSelector {
     }
 
     public void setLoadBalanceStrategy(LoadBalanceStrategy loadBalanceStrategy) {
+        if (this.loadBalanceStrategy != null && this.loadBalanceStrategy.getGroup() != null) {
+            this.loadBalanceStrategy.getGroup().remove(groupListener);
+        }
         this.loadBalanceStrategy = loadBalanceStrategy;
+        this.addresses = null;
+        if (loadBalanceStrategy != null && loadBalanceStrategy.getGroup() != null) {
+            loadBalanceStrategy.getGroup().add(groupListener);
+        }
+    }
+
+    public int getMaxIdleConduits() {
+        return maxIdleConduits;
+    }
+
+    public void setMaxIdleConduits(int maxIdleConduits) {
+        this.maxIdleConduits = maxIdleConduits;
+    }
+
+    /**
+     * The conduit selected for an exchange, along with the address it was selected for
+     */
+    protected static class SelectedConduit {
+        private final String address;
+        private final Conduit conduit;
+        private final long start;
+
+        SelectedConduit(String address, Conduit conduit, long start) {
+            this.address = address;
+            this.conduit = conduit;
+            this.start = start;
+        }
+
+        public String getAddress() {
+            return address;
+        }
+
+        public Conduit getConduit() {
+            return conduit;
+        }
     }
 }
@@ -0,0 +1,80 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.fabric.cxf;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Picks a random address, each address being picked in proportion to its weight.  The addresses with no configured
+ * weight get the default weight, and those with a weight of zero are never picked unless all weights are zero.
+ */
+public class WeightedLoadBalanceStrategy extends FabricLoadBalanceStrategySupport {
+    private final Random random = new Random();
+    private volatile Map<String, Integer> weights = Collections.emptyMap();
+    private volatile int defaultWeight = 1;
+
+    public String getNextAlternateAddress() {
+        List<String> addresses = alternateAddressList;
+        if (addresses.isEmpty()) {
+            throw new IllegalArgumentException("The AlternateAddressList is empty, please fresh the list shortly.");
+        }
+        Map<String, Integer> weights = this.weights;
+        long total = 0;
+        for (String address : addresses) {
+            total += getWeight(weights, address);
+        }
+        if (total <= 0) {
+            return addresses.get(random.nextInt(addresses.size()));
+        }
+        long value = (long) (random.nextDouble() * total);
+        for (String address : addresses) {
+            value -= getWeight(weights, address);
+            if (value < 0) {
+                return address;
+            }
+        }
+        return addresses.get(addresses.size() - 1);
+    }
+
+    private int getWeight(Map<String, Integer> weights, String address) {
+        Integer weight = weights.get(address);
+        return Math.max(0, weight != null ? weight : defaultWeight);
+    }
+
+    public Map<String, Integer> getWeights() {
+        return weights;
+    }
+
+    /**
+     * Sets the weights of the addresses, keyed by address
+     */
+    public void setWeights(Map<String, Integer> weights) {
+        this.weights = Collections.unmodifiableMap(new HashMap<String, Integer>(weights));
+    }
+
+    public int getDefaultWeight() {
+        return defaultWeight;
+    }
+
+    public void setDefaultWeight(int defaultWeight) {
+        this.defaultWeight = defaultWeight;
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.fabric.cxf;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class LoadBalanceStrategyTest extends Assert {
+
+    @Test
+    public void testWeighted() throws Exception {
+        WeightedLoadBalanceStrategy strategy = new WeightedLoadBalanceStrategy();
+        strategy.alternateAddressList = new CopyOnWriteArrayList<String>(Arrays.asList("http://a", "http://b", "http://c"));
+        Map<String, Integer> weights = new HashMap<String, Integer>();
+        weights.put("http://a", 3);
+        weights.put("http://c", 0);
+        strategy.setWeights(weights);
+
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (int i = 0; i < 4000; i++) {
+            String address = strategy.getNextAlternateAddress();
+            Integer count = counts.get(address);
+            counts.put(address, count != null ? count + 1 : 1);
+        }
+        assertNull("The address with a zero weight should not be picked", counts.get("http://c"));
+        // http://a has three times the default weight of http://b
+        assertTrue(counts.get("http://a") > 2500 && counts.get("http://a") < 3500);
+    }
+
+    @Test
+    public void testLeastLatency() throws Exception {
+        LeastLatencyLoadBalanceStrategy strategy = new LeastLatencyLoadBalanceStrategy();
+        strategy.alternateAddressList = new CopyOnWriteArrayList<String>(Arrays.asList("http://a", "http://b"));
+
+        strategy.invocationStarted("http://a");
+        strategy.invocationCompleted("http://a", 1000000, false);
+        // http://b has not been used yet
+        assertEquals("http://b", strategy.getNextAlternateAddress());
+
+        strategy.invocationStarted("http://b");
+        strategy.invocationCompleted("http://b", 5000000, false);
+        assertEquals("http://a", strategy.getNextAlternateAddress());
+
+        // the invocations in progress on http://a make it slower than http://b
+        for (int i = 0; i < 5; i++) {
+            strategy.invocationStarted("http://a");
+        }
+        assertEquals("http://b", strategy.getNextAlternateAddress());
+        for (int i = 0; i < 5; i++) {
+            strategy.invocationCompleted("http://a", 1000000, false);
+        }
+        assertEquals("http://a", strategy.getNextAlternateAddress());
+
+        // failures are penalized
+        for (int i = 0; i < 5; i++) {
+            strategy.invocationStarted("http://a");
+            strategy.invocationCompleted("http://a", 4000000, true);
+        }
+        assertEquals("http://b", strategy.getNextAlternateAddress());
+    }
+
+    @Test
+    public void testLeastLatencyForgetsDepartedAddresses() throws Exception {
+        LeastLatencyLoadBalanceStrategy strategy = new LeastLatencyLoadBalanceStrategy();
+        strategy.alternateAddressList = new CopyOnWriteArrayList<String>(Arrays.asList("http://a", "http://b"));
+        strategy.invocationStarted("http://a");
+        strategy.invocationStarted("http://b");
+        strategy.invocationCompleted("http://b", 1000000, false);
+
+        strategy.addressesChanged(Arrays.asList("http://b"));
+        assertEquals(0.0, strategy.getScore("http://a"), 0.0);
+        assertTrue(strategy.getScore("http://b") > 0);
+        // an invocation completing on a departed address doesn't bring its statistics back
+        strategy.invocationCompleted("http://a", 1000000, false);
+        assertEquals(0.0, strategy.getScore("http://a"), 0.0);
+    }
+}
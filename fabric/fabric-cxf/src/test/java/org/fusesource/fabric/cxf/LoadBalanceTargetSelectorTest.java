@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.fabric.cxf;
+
+import org.apache.cxf.transport.Conduit;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+public class LoadBalanceTargetSelectorTest extends Assert {
+    private final Set<Conduit> closed = new HashSet<Conduit>();
+
+    @Test
+    public void testDepartedAddressesAreClosed() throws Exception {
+        LoadBalanceTargetSelector selector = new LoadBalanceTargetSelector();
+        Conduit a = pool(selector, "http://a");
+        Conduit b = pool(selector, "http://b");
+
+        selector.retainAddresses(Arrays.asList("http://a", "http://c"));
+        assertTrue(selector.idleConduits.containsKey("http://a"));
+        assertFalse("The conduits of a departed address should be dropped", selector.idleConduits.containsKey("http://b"));
+        assertFalse(closed.contains(a));
+        assertTrue(closed.contains(b));
+    }
+
+    @Test
+    public void testFeatureClosesItsSelectors() throws Exception {
+        FabricLoadBalancerFeature feature = new FabricLoadBalancerFeature();
+        feature.setMaxIdleConduits(2);
+        LoadBalanceTargetSelector selector = feature.createLoadBalanceTargetSelector();
+        assertEquals(2, selector.getMaxIdleConduits());
+        Conduit a = pool(selector, "http://a");
+
+        feature.destroy();
+        assertTrue("The pooled conduits should be closed with the feature", closed.contains(a));
+    }
+
+    private Conduit pool(LoadBalanceTargetSelector selector, String address) {
+        Conduit conduit = (Conduit) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{Conduit.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("close")) {
+                    closed.add((Conduit) proxy);
+                } else if (method.getName().equals("hashCode")) {
+                    return System.identityHashCode(proxy);
+                } else if (method.getName().equals("equals")) {
+                    return proxy == args[0];
+                }
+                return null;
+            }
+        });
+        Queue<Conduit> conduits = new ConcurrentLinkedQueue<Conduit>();
+        conduits.offer(conduit);
+        selector.idleConduits.put(address, conduits);
+        return conduit;
+    }
+}
@@ -23,6 +23,7 @@ import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.state.ConnectionState;
 import org.apache.curator.framework.state.ConnectionStateListener;
 import org.fusesource.fabric.dosgi.impl.Manager;
+import org.fusesource.fabric.dosgi.tcp.TransportPool;
 import org.osgi.framework.BundleContext;
 
 public class Activator implements ConnectionStateListener {
@@ -32,6 +33,8 @@ public class Activator implements ConnectionStateListener {
     private String uri;
     private String exportedAddress;
     private long timeout = TimeUnit.MINUTES.toMillis(5);
+    private int poolSize = TransportPool.DEFAULT_POOL_SIZE;
+    private int maxInflight = TransportPool.DEFAULT_MAX_INFLIGHT;
     private CuratorFramework curator;
 
     public void setBundleContext(BundleContext bundleContext) {
@@ -50,6 +53,14 @@ public class Activator implements ConnectionStateListener {
         this.timeout = timeout;
     }
 
+    public void setPoolSize(int poolSize) {
+        this.poolSize = poolSize;
+    }
+
+    public void setMaxInflight(int maxInflight) {
+        this.maxInflight = maxInflight;
+    }
+
     public void destroy() {
         destroyManager();
         curator = null;
@@ -84,6 +95,8 @@ public class Activator implements ConnectionStateListener {
         destroyManager();
         try {
             manager = new Manager(this.bundleContext, curator, uri, exportedAddress, timeout);
+            manager.setPoolSize(poolSize);
+            manager.setMaxInflight(maxInflight);
             manager.init();
         } catch (Exception e) {
             throw new RuntimeException("Unable to start DOSGi service: " + e.getMessage(), e);
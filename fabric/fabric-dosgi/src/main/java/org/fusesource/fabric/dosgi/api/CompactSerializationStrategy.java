@@ -0,0 +1,103 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.fabric.dosgi.api;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.fusesource.fabric.dosgi.util.CompactObjectInput;
+import org.fusesource.fabric.dosgi.util.CompactObjectOutput;
+import org.fusesource.hawtbuf.DataByteArrayInputStream;
+import org.fusesource.hawtbuf.DataByteArrayOutputStream;
+
+/**
+ * <p>
+ * A serialization strategy which writes the fields of objects using cached reflection data rather than
+ * java serialization class descriptors. Class names are only written the first time a class is used in each
+ * request or response, and not at all for registered classes, so both sides must register the same classes in
+ * the same order. A hash of the field layout of each class is written with it, so a peer with a different
+ * version of a class fails with an {@link java.io.InvalidClassException} rather than reading garbage. Objects
+ * which have custom serialization methods or no no argument constructor fall back to java serialization.
+ * </p>
+ * <p>
+ * Select it with <code>@Serialization("compact")</code> on a service method.
+ * </p>
+ */
+public class CompactSerializationStrategy implements SerializationStrategy {
+
+    public static final CompactSerializationStrategy INSTANCE = new CompactSerializationStrategy();
+
+    private final String name;
+    private final List<Class<?>> registeredClasses;
+
+    public CompactSerializationStrategy() {
+        this("compact");
+    }
+
+    /**
+     * Creates a strategy with the given name which writes the registered classes as an index rather than a name
+     */
+    public CompactSerializationStrategy(String name, Class<?>... registeredClasses) {
+        this.name = name;
+        this.registeredClasses = Collections.unmodifiableList(new ArrayList<Class<?>>(Arrays.asList(registeredClasses)));
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public List<Class<?>> getRegisteredClasses() {
+        return registeredClasses;
+    }
+
+    public void encodeRequest(ClassLoader loader, Class<?>[] types, Object[] args, DataByteArrayOutputStream target) throws IOException {
+        CompactObjectOutput out = new CompactObjectOutput(target, registeredClasses);
+        int length = args != null ? args.length : 0;
+        target.writeVarInt(length);
+        for (int i = 0; i < length; i++) {
+            out.writeObject(args[i]);
+        }
+    }
+
+    public void decodeRequest(ClassLoader loader, Class<?>[] types, DataByteArrayInputStream source, Object[] target) throws IOException, ClassNotFoundException {
+        CompactObjectInput in = new CompactObjectInput(source, loader, registeredClasses);
+        int length = source.readVarInt();
+        for (int i = 0; i < length; i++) {
+            target[i] = in.readObject();
+        }
+    }
+
+    public void encodeResponse(ClassLoader loader, Class<?> type, Object value, Throwable error, DataByteArrayOutputStream target) throws IOException {
+        CompactObjectOutput out = new CompactObjectOutput(target, registeredClasses);
+        out.writeObject(error);
+        out.writeObject(value);
+    }
+
+    public void decodeResponse(ClassLoader loader, Class<?> type, DataByteArrayInputStream source, AsyncCallback result) throws IOException, ClassNotFoundException {
+        CompactObjectInput in = new CompactObjectInput(source, loader, registeredClasses);
+        Throwable error = (Throwable) in.readObject();
+        Object value = in.readObject();
+        if (error != null) {
+            result.onFailure(error);
+        } else {
+            result.onSuccess(value);
+        }
+    }
+}
@@ -22,7 +22,9 @@ import org.apache.curator.framework.recipes.cache.PathChildrenCacheListener;
 import org.apache.curator.framework.recipes.cache.TreeCache;
 import org.apache.zookeeper.CreateMode;
 import org.apache.zookeeper.KeeperException;
+import org.fusesource.fabric.dosgi.api.CompactSerializationStrategy;
 import org.fusesource.fabric.dosgi.api.Dispatched;
+import org.fusesource.fabric.dosgi.api.ProtobufSerializationStrategy;
 import org.fusesource.fabric.dosgi.api.SerializationStrategy;
 import org.fusesource.fabric.dosgi.capset.CapabilitySet;
 import org.fusesource.fabric.dosgi.capset.SimpleFilter;
@@ -30,6 +32,7 @@ import org.fusesource.fabric.dosgi.io.ClientInvoker;
 import org.fusesource.fabric.dosgi.io.ServerInvoker;
 import org.fusesource.fabric.dosgi.tcp.ClientInvokerImpl;
 import org.fusesource.fabric.dosgi.tcp.ServerInvokerImpl;
+import org.fusesource.fabric.dosgi.tcp.TransportPool;
 import org.fusesource.fabric.dosgi.util.AriesFrameworkUtil;
 import org.fusesource.fabric.dosgi.util.Utils;
 import org.fusesource.fabric.dosgi.util.UuidGenerator;
@@ -122,6 +125,10 @@ public class Manager implements ServiceListener, ListenerHook, EventHook, FindHo
 
     private final long timeout;
 
+    private int poolSize = TransportPool.DEFAULT_POOL_SIZE;
+
+    private int maxInflight = TransportPool.DEFAULT_MAX_INFLIGHT;
+
     private ClientInvoker client;
 
     private ServerInvoker server;
@@ -136,6 +143,8 @@ public class Manager implements ServiceListener, ListenerHook, EventHook, FindHo
         this.exportedServices = new ConcurrentHashMap<ServiceReference, ExportRegistration>();
         this.listeners = new ConcurrentHashMap<ListenerInfo, SimpleFilter>();
         this.serializationStrategies = new ConcurrentHashMap<String, SerializationStrategy>();
+        this.serializationStrategies.put(ProtobufSerializationStrategy.INSTANCE.name(), ProtobufSerializationStrategy.INSTANCE);
+        this.serializationStrategies.put(CompactSerializationStrategy.INSTANCE.name(), CompactSerializationStrategy.INSTANCE);
         this.remoteEndpoints = new CapabilitySet<EndpointDescription>(
                 Arrays.asList(Constants.OBJECTCLASS, ENDPOINT_FRAMEWORK_UUID), false);
         this.bundleContext = context;
@@ -145,9 +154,20 @@ public class Manager implements ServiceListener, ListenerHook, EventHook, FindHo
         this.timeout = timeout;
     }
 
+    public void setPoolSize(int poolSize) {
+        this.poolSize = poolSize;
+    }
+
+    public void setMaxInflight(int maxInflight) {
+        this.maxInflight = maxInflight;
+    }
+
     public void init() throws Exception {
         // Create client and server
-        this.client = new ClientInvokerImpl(queue, timeout, serializationStrategies);
+        ClientInvokerImpl clientInvoker = new ClientInvokerImpl(queue, timeout, serializationStrategies);
+        clientInvoker.setPoolSize(poolSize);
+        clientInvoker.setMaxInflight(maxInflight);
+        this.client = clientInvoker;
         this.server = new ServerInvokerImpl(uri, queue, serializationStrategies);
         this.client.start();
         this.server.start();
@@ -19,10 +19,15 @@ package org.fusesource.fabric.dosgi.tcp;
 import java.io.IOException;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -39,6 +44,7 @@ import org.fusesource.hawtbuf.BufferEditor;
 import org.fusesource.hawtbuf.DataByteArrayInputStream;
 import org.fusesource.hawtbuf.DataByteArrayOutputStream;
 import org.fusesource.hawtbuf.UTF8Buffer;
+import org.fusesource.hawtdispatch.Dispatch;
 import org.fusesource.hawtdispatch.DispatchQueue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -62,13 +68,20 @@ public class ClientInvokerImpl implements ClientInvoker, Dispatched {
         CLASS_TO_PRIMITIVE.put(double.class,"D");
     }
 
+    private static final Runnable NO_OP = new Runnable() {
+        public void run() {
+        }
+    };
+
     protected final AtomicLong correlationGenerator = new AtomicLong();
     protected final DispatchQueue queue;
-    protected final Map<String, TransportPool> transports = new HashMap<String, TransportPool>();
+    protected final ConcurrentMap<String, TransportPool> transports = new ConcurrentHashMap<String, TransportPool>();
     protected final AtomicBoolean running = new AtomicBoolean(false);
-    protected final Map<Long, ResponseFuture> requests = new HashMap<Long, ResponseFuture>();
+    protected final ConcurrentMap<Long, ResponseFuture> requests = new ConcurrentHashMap<Long, ResponseFuture>();
     protected final long timeout;
     protected final Map<String, SerializationStrategy> serializationStrategies;
+    protected int poolSize = TransportPool.DEFAULT_POOL_SIZE;
+    protected int maxInflight = TransportPool.DEFAULT_MAX_INFLIGHT;
 
     public ClientInvokerImpl(DispatchQueue queue, Map<String, SerializationStrategy> serializationStrategies) {
         this(queue, DEFAULT_TIMEOUT, serializationStrategies);
@@ -103,7 +116,20 @@ public class ClientInvokerImpl implements ClientInvoker, Dispatched {
         if (running.compareAndSet(true, false)) {
             queue().execute(new Runnable() {
                 public void run() {
-                    final AtomicInteger latch = new AtomicInteger(transports.size());
+                    // a pool is stopped by whoever removes it, here or in getTransportPool() if it was created late
+                    List<TransportPool> pools = new ArrayList<TransportPool>();
+                    for (Map.Entry<String, TransportPool> entry : transports.entrySet()) {
+                        if (transports.remove(entry.getKey(), entry.getValue())) {
+                            pools.add(entry.getValue());
+                        }
+                    }
+                    if (pools.isEmpty()) {
+                        if (onComplete != null) {
+                            onComplete.run();
+                        }
+                        return;
+                    }
+                    final AtomicInteger latch = new AtomicInteger(pools.size());
                     final Runnable countDown = new Runnable() {
                         public void run() {
                             if (latch.decrementAndGet() == 0) {
@@ -113,7 +139,7 @@ public class ClientInvokerImpl implements ClientInvoker, Dispatched {
                             }
                         }
                     };
-                    for (TransportPool pool : transports.values()) {
+                    for (TransportPool pool : pools) {
                         pool.stop(countDown);
                     }
                 }
@@ -252,26 +278,80 @@ public class ClientInvokerImpl implements ClientInvoker, Dispatched {
         editor.writeInt(command.length);
         handler.lastRequestSize = command.length;
 
-        queue().execute(new Runnable() {
-            public void run() {
-                try {
-                    TransportPool pool = transports.get(address);
-                    if (pool == null) {
-                        pool = new InvokerTransportPool(address, queue());
-                        transports.put(address, pool);
-                        pool.start();
-                    }
-                    requests.put(correlation, future);
-                    pool.offer(command, correlation);
-                } catch (Exception e) {
-                    LOGGER.info("Error while sending request", e);
-                    future.fail(e);
-                }
-            }
-        });
+        // The request is registered and handed straight to the pool of the endpoint from the
+        // calling thread, so requests to different endpoints are not serialized on one queue.
+        requests.put(correlation, future);
+        TransportPool pool = null;
+        try {
+            pool = getTransportPool(address);
+            pool.offer(command, correlation);
+        } catch (Exception e) {
+            LOGGER.info("Error while sending request", e);
+            requests.remove(correlation);
+            future.fail(e);
+        }
 
         // TODO: make that configurable, that's only for tests
-        return future.get(timeout, TimeUnit.MILLISECONDS);
+        try {
+            return future.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            requests.remove(correlation);
+            // the server may never reply so the request must not keep holding an in-flight slot
+            // nor be sent later if it is still waiting for one
+            if (pool != null) {
+                pool.cancel(correlation);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the pool of transports to the given address; each pool has its own dispatch queue
+     */
+    protected TransportPool getTransportPool(String address) throws Exception {
+        TransportPool pool = transports.get(address);
+        if (pool == null) {
+            TransportPool newPool = new InvokerTransportPool(address, Dispatch.createQueue("dosgi client " + address));
+            newPool.start();
+            pool = transports.putIfAbsent(address, newPool);
+            if (pool == null) {
+                pool = newPool;
+            } else {
+                // another thread created the pool first
+                newPool.stop(NO_OP);
+            }
+        }
+        if (!running.get()) {
+            // the client has been stopped meanwhile and may not have seen the pool
+            if (transports.remove(address, pool)) {
+                pool.stop(NO_OP);
+            }
+            throw new IllegalStateException("DOSGi Client stopped");
+        }
+        return pool;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * Sets the maximum number of transports to each endpoint
+     */
+    public void setPoolSize(int poolSize) {
+        this.poolSize = poolSize;
+    }
+
+    public int getMaxInflight() {
+        return maxInflight;
+    }
+
+    /**
+     * Sets the maximum number of requests awaiting a response on each transport, or 0 for no limit;
+     * requests beyond the limit of every transport in a full pool wait until a response arrives
+     */
+    public void setMaxInflight(int maxInflight) {
+        this.maxInflight = maxInflight;
     }
 
     private void writeBuffer(DataByteArrayOutputStream baos, Buffer value) throws IOException {
@@ -301,7 +381,7 @@ public class ClientInvokerImpl implements ClientInvoker, Dispatched {
     protected class InvokerTransportPool extends TransportPool {
 
         public InvokerTransportPool(String uri, DispatchQueue queue) {
-            super(uri, queue, TransportPool.DEFAULT_POOL_SIZE, timeout << 1);
+            super(uri, queue, ClientInvokerImpl.this.poolSize, ClientInvokerImpl.this.maxInflight, timeout << 1);
         }
 
         @Override
@@ -19,6 +19,7 @@ package org.fusesource.fabric.dosgi.tcp;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.Set;
@@ -40,15 +41,19 @@ public abstract class TransportPool implements Service {
 
     public static final int DEFAULT_POOL_SIZE = 2;
 
+    public static final int DEFAULT_MAX_INFLIGHT = 0;
+
     public static final long DEFAULT_EVICTION_DELAY = TimeUnit.MINUTES.toMillis(5);
 
     protected final String uri;
     protected final DispatchQueue queue;
     protected final LinkedList<Pair> pending = new LinkedList<Pair>();
     protected final Map<Transport, TransportState> transports = new HashMap<Transport, TransportState>();
+    protected final Map<Object, TransportState> inflight = new HashMap<Object, TransportState>();
     protected AtomicBoolean running = new AtomicBoolean(false);
 
     protected int poolSize;
+    protected int maxInflight;
     protected long evictionDelay;
 
     public TransportPool(String uri, DispatchQueue queue) {
@@ -56,9 +61,17 @@ public abstract class TransportPool implements Service {
     }
 
     public TransportPool(String uri, DispatchQueue queue, int poolSize, long evictionDelay) {
+        this(uri, queue, poolSize, DEFAULT_MAX_INFLIGHT, evictionDelay);
+    }
+
+    /**
+     * @param maxInflight the maximum number of requests awaiting a response on each transport or 0 for no limit
+     */
+    public TransportPool(String uri, DispatchQueue queue, int poolSize, int maxInflight, long evictionDelay) {
         this.uri = uri;
         this.queue = queue;
         this.poolSize = poolSize;
+        this.maxInflight = maxInflight;
         this.evictionDelay = evictionDelay;
     }
 
@@ -71,13 +84,34 @@ public abstract class TransportPool implements Service {
     protected abstract void onFailure(Object id, Throwable throwable);
 
     protected void onDone(Object id) {
-        for (TransportState state : transports.values()) {
-            if (state.inflight.remove(id)) {
-                break;
+        TransportState state = inflight.remove(id);
+        if (state != null) {
+            state.inflight.remove(id);
+            // the transport may have been at its in-flight limit so lets send any pending requests
+            if (!pending.isEmpty() && transports.get(state.transport) == state) {
+                sendPending(state.transport);
             }
         }
     }
 
+    /**
+     * Abandons a request the caller is no longer waiting for: it is dropped if it is still pending,
+     * otherwise the in-flight slot it holds on its transport is released
+     */
+    public void cancel(final Object id) {
+        queue.execute(new Runnable() {
+            public void run() {
+                for (Iterator<Pair> it = pending.iterator(); it.hasNext();) {
+                    if (it.next().id.equals(id)) {
+                        it.remove();
+                        return;
+                    }
+                }
+                onDone(id);
+            }
+        });
+    }
+
     public void offer(final Object data, final Object id) {
         if (!running.get()) {
             throw new IllegalStateException("Transport pool stopped");
@@ -98,16 +132,28 @@ public abstract class TransportPool implements Service {
     }
 
     protected boolean doOffer(Transport transport, Object command, Object id) {
-        transports.get(transport).inflight.add(id);
+        TransportState state = transports.get(transport);
+        state.inflight.add(id);
+        inflight.put(id, state);
         return transport.offer(command);
     }
 
+    /**
+     * Returns the connected transport which is not full, is below the in-flight limit and has the
+     * fewest requests awaiting a response; starting a new transport if there is none and the pool is not full
+     */
     protected Transport getIdleTransport() {
-        for (Map.Entry<Transport, TransportState> entry : transports.entrySet()) {
-            if (entry.getValue().time > 0) {
-                return entry.getKey();
+        TransportState best = null;
+        for (TransportState state : transports.values()) {
+            if (state.time > 0 && !isAtInflightLimit(state)) {
+                if (best == null || state.inflight.size() < best.inflight.size()) {
+                    best = state;
+                }
             }
         }
+        if (best != null) {
+            return best.transport;
+        }
         if (transports.size() < poolSize) {
             try {
                 startNewTransport();
@@ -146,13 +192,17 @@ public abstract class TransportPool implements Service {
                             }
                         }
                     };
+                    if (transports.isEmpty()) {
+                        // no transport will count down so complete right away
+                        latch.incrementAndGet();
+                        coutDown.run();
+                        return;
+                    }
                     while (!transports.isEmpty()) {
                         Transport transport = transports.keySet().iterator().next();
                         TransportState state = transports.remove(transport);
                         if (state != null) {
-                            for (Object id : state.inflight) {
-                                onFailure(id, new IOException("Transport stopped"));
-                            }
+                            failInflight(state, new IOException("Transport stopped"));
                         }
                         transport.stop(coutDown);
                     }
@@ -163,16 +213,47 @@ public abstract class TransportPool implements Service {
         }
     }
 
+    protected boolean isAtInflightLimit(TransportState state) {
+        return maxInflight > 0 && state.inflight.size() >= maxInflight;
+    }
+
+    protected void sendPending(Transport transport) {
+        TransportState state = transports.get(transport);
+        if (state == null) {
+            return;
+        }
+        while (pending.size() > 0 && !transport.full() && !isAtInflightLimit(state)) {
+            Pair pair = pending.removeFirst();
+            boolean accepted = doOffer(transport, pair.command, pair.id);
+            assert accepted: "Should have been accepted since the transport was not full";
+        }
+    }
+
+    protected void failInflight(TransportState state, Throwable error) {
+        for (Object id : state.inflight) {
+            inflight.remove(id);
+            onFailure(id, error);
+        }
+    }
+
     protected void startNewTransport() throws Exception {
         LOGGER.debug("Creating new transport for: {}", this.uri);
         Transport transport = createTransport(this.uri);
         transport.setDispatchQueue(queue);
         transport.setProtocolCodec(createCodec());
         transport.setTransportListener(new Listener());
-        transports.put(transport, new TransportState());
+        transports.put(transport, new TransportState(transport));
         transport.start();
     }
 
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public int getMaxInflight() {
+        return maxInflight;
+    }
+
     protected static class Pair {
         Object command;
         Object id;
@@ -184,10 +265,12 @@ public abstract class TransportPool implements Service {
     }
 
     protected static class TransportState {
+        final Transport transport;
         long time;
         final Set<Object> inflight;
 
-        public TransportState() {
+        public TransportState(Transport transport) {
+            this.transport = transport;
             time = 0;
             inflight = new HashSet<Object>();
         }
@@ -200,11 +283,7 @@ public abstract class TransportPool implements Service {
         }
 
         public void onRefill(final Transport transport) {
-            while (pending.size() > 0 &&  !transport.full()) {
-                Pair pair = pending.removeFirst();
-                boolean accepted = doOffer(transport, pair.command, pair.id);
-                assert accepted: "Should have been accepted since the transport was not full";
-            }
+            sendPending(transport);
 
             if( transport.full() ) {
                 transports.get(transport).time = 0L;
@@ -215,7 +294,7 @@ public abstract class TransportPool implements Service {
                     queue.executeAfter(evictionDelay, TimeUnit.MILLISECONDS, new Runnable() {
                         public void run() {
                             TransportState state = transports.get(transport);
-                            if (state != null && state.time == time) {
+                            if (state != null && state.time == time && state.inflight.isEmpty()) {
                                 transports.remove(transport);
                                 transport.stop();
                             }
@@ -231,9 +310,7 @@ public abstract class TransportPool implements Service {
                 LOGGER.info("Transport failure", error);
                 TransportState state = transports.remove(transport);
                 if (state != null) {
-                    for (Object id : state.inflight) {
-                        onFailure(id, error);
-                    }
+                    failInflight(state, error);
                 }
                 transport.stop();
                 if (transports.isEmpty()) {
@@ -0,0 +1,206 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.fabric.dosgi.util;
+
+import java.io.Externalizable;
+import java.io.Serializable;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * The cached reflection data used by the compact serialization to write and read the fields of a class.
+ * <p/>
+ * Only serializable classes with a no argument constructor and no custom serialization methods are
+ * written field by field; the fields are ordered from the topmost superclass down and by name within a class
+ * so both sides agree on the layout without writing it; only a hash of the layout is written so a reader with a
+ * different version of the class fails instead of assigning the values to the wrong fields.
+ */
+public class CompactClassInfo {
+
+    public static final int OBJECT = 0;
+    public static final int BOOLEAN = 1;
+    public static final int BYTE = 2;
+    public static final int SHORT = 3;
+    public static final int CHAR = 4;
+    public static final int INT = 5;
+    public static final int LONG = 6;
+    public static final int FLOAT = 7;
+    public static final int DOUBLE = 8;
+
+    private static final Map<Class<?>, CompactClassInfo> CACHE = new WeakHashMap<Class<?>, CompactClassInfo>();
+
+    private final Class<?> type;
+    private final Field[] fields;
+    private final int[] kinds;
+    private final Constructor<?> constructor;
+    private final int layoutHash;
+
+    public static CompactClassInfo get(Class<?> type) {
+        synchronized (CACHE) {
+            CompactClassInfo answer = CACHE.get(type);
+            if (answer == null) {
+                answer = new CompactClassInfo(type);
+                CACHE.put(type, answer);
+            }
+            return answer;
+        }
+    }
+
+    protected CompactClassInfo(Class<?> type) {
+        this.type = type;
+        this.constructor = findConstructor(type);
+        if (constructor != null) {
+            List<Field> list = new ArrayList<Field>();
+            addFields(list, type);
+            this.fields = list.toArray(new Field[list.size()]);
+        } else {
+            this.fields = new Field[0];
+        }
+        this.kinds = new int[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            kinds[i] = kindOf(fields[i].getType());
+        }
+        this.layoutHash = layoutHash(fields);
+    }
+
+    /**
+     * Returns true if objects of this class can be written field by field
+     */
+    public boolean isCompact() {
+        return constructor != null;
+    }
+
+    public Object newInstance() throws Exception {
+        return constructor.newInstance();
+    }
+
+    public Class<?> getType() {
+        return type;
+    }
+
+    public Field[] getFields() {
+        return fields;
+    }
+
+    public int[] getKinds() {
+        return kinds;
+    }
+
+    /**
+     * Returns a hash of the names and types of the fields in the order they are written, so a reader
+     * can tell that the class it loaded does not have the layout the writer used
+     */
+    public int getLayoutHash() {
+        return layoutHash;
+    }
+
+    public static int kindOf(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return OBJECT;
+        } else if (type == boolean.class) {
+            return BOOLEAN;
+        } else if (type == byte.class) {
+            return BYTE;
+        } else if (type == short.class) {
+            return SHORT;
+        } else if (type == char.class) {
+            return CHAR;
+        } else if (type == int.class) {
+            return INT;
+        } else if (type == long.class) {
+            return LONG;
+        } else if (type == float.class) {
+            return FLOAT;
+        } else {
+            return DOUBLE;
+        }
+    }
+
+    private static int layoutHash(Field[] fields) {
+        StringBuilder layout = new StringBuilder();
+        for (Field field : fields) {
+            layout.append(field.getName()).append(':').append(field.getType().getName()).append(';');
+        }
+        // String.hashCode() is specified so both sides compute the same value
+        return layout.toString().hashCode();
+    }
+
+    private static Constructor<?> findConstructor(Class<?> type) {
+        if (!Serializable.class.isAssignableFrom(type) || Externalizable.class.isAssignableFrom(type)
+                || type.isArray() || type.isInterface() || Modifier.isAbstract(type.getModifiers())) {
+            return null;
+        }
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            if (hasCustomSerialization(c)) {
+                return null;
+            }
+        }
+        try {
+            Constructor<?> answer = type.getDeclaredConstructor();
+            answer.setAccessible(true);
+            return answer;
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (SecurityException e) {
+            return null;
+        }
+    }
+
+    private static boolean hasCustomSerialization(Class<?> c) {
+        for (Method method : c.getDeclaredMethods()) {
+            String name = method.getName();
+            if (name.equals("writeObject") || name.equals("readObject") || name.equals("readObjectNoData")
+                    || name.equals("writeReplace") || name.equals("readResolve")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void addFields(List<Field> list, Class<?> type) {
+        Class<?> superclass = type.getSuperclass();
+        if (superclass != null && superclass != Object.class) {
+            addFields(list, superclass);
+        }
+        if (!Serializable.class.isAssignableFrom(type)) {
+            // like java serialization the state of non serializable superclasses is not written
+            return;
+        }
+        List<Field> declared = new ArrayList<Field>();
+        for (Field field : type.getDeclaredFields()) {
+            int modifiers = field.getModifiers();
+            if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) {
+                field.setAccessible(true);
+                declared.add(field);
+            }
+        }
+        Collections.sort(declared, new Comparator<Field>() {
+            public int compare(Field f1, Field f2) {
+                return f1.getName().compareTo(f2.getName());
+            }
+        });
+        list.addAll(declared);
+    }
+}
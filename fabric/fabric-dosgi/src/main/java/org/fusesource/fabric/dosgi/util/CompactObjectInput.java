@@ -0,0 +1,331 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.fabric.dosgi.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.StreamCorruptedException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.fusesource.hawtbuf.DataByteArrayInputStream;
+
+/**
+ * Reads object graphs written by {@link CompactObjectOutput}
+ */
+public class CompactObjectInput {
+
+    private static final HashMap<String, Class<?>> PRIMITIVES = new HashMap<String, Class<?>>(16, 1.0F);
+
+    static {
+        PRIMITIVES.put("boolean", boolean.class);
+        PRIMITIVES.put("byte", byte.class);
+        PRIMITIVES.put("char", char.class);
+        PRIMITIVES.put("short", short.class);
+        PRIMITIVES.put("int", int.class);
+        PRIMITIVES.put("long", long.class);
+        PRIMITIVES.put("float", float.class);
+        PRIMITIVES.put("double", double.class);
+    }
+
+    private final DataByteArrayInputStream in;
+    private final ClassLoader classLoader;
+    private final List<Class<?>> classes;
+    private final List<Object> references = new ArrayList<Object>();
+    private final Set<Class<?>> described = new HashSet<Class<?>>();
+
+    public CompactObjectInput(DataByteArrayInputStream in, ClassLoader classLoader, List<Class<?>> registeredClasses) {
+        this.in = in;
+        this.classLoader = classLoader;
+        this.classes = new ArrayList<Class<?>>(registeredClasses);
+    }
+
+    @SuppressWarnings("unchecked")
+    public Object readObject() throws IOException, ClassNotFoundException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case CompactObjectOutput.NULL:
+                return null;
+            case CompactObjectOutput.TRUE:
+                return Boolean.TRUE;
+            case CompactObjectOutput.FALSE:
+                return Boolean.FALSE;
+            case CompactObjectOutput.BYTE:
+                return in.readByte();
+            case CompactObjectOutput.SHORT:
+                return in.readShort();
+            case CompactObjectOutput.CHAR:
+                return in.readChar();
+            case CompactObjectOutput.INT:
+                return readInt();
+            case CompactObjectOutput.LONG:
+                return readLong();
+            case CompactObjectOutput.FLOAT:
+                return in.readFloat();
+            case CompactObjectOutput.DOUBLE:
+                return in.readDouble();
+            case CompactObjectOutput.STRING:
+                return readString();
+            case CompactObjectOutput.ENUM: {
+                Class<?> type = readClass();
+                return type.getEnumConstants()[in.readVarInt()];
+            }
+            case CompactObjectOutput.REFERENCE: {
+                int index = in.readVarInt();
+                if (index >= references.size()) {
+                    throw new StreamCorruptedException("Invalid reference: " + index);
+                }
+                return references.get(index);
+            }
+            case CompactObjectOutput.BYTES: {
+                byte[] bytes = new byte[in.readVarInt()];
+                references.add(bytes);
+                in.readFully(bytes);
+                return bytes;
+            }
+            case CompactObjectOutput.DATE: {
+                Date date = new Date(readLong());
+                references.add(date);
+                return date;
+            }
+            case CompactObjectOutput.ARRAY:
+                return readArray();
+            case CompactObjectOutput.COLLECTION: {
+                Collection<Object> collection = (Collection<Object>) newInstance(readClass());
+                references.add(collection);
+                int size = in.readVarInt();
+                for (int i = 0; i < size; i++) {
+                    collection.add(readObject());
+                }
+                return collection;
+            }
+            case CompactObjectOutput.MAP: {
+                Map<Object, Object> map = (Map<Object, Object>) newInstance(readClass());
+                references.add(map);
+                int size = in.readVarInt();
+                for (int i = 0; i < size; i++) {
+                    Object key = readObject();
+                    map.put(key, readObject());
+                }
+                return map;
+            }
+            case CompactObjectOutput.OBJECT: {
+                CompactClassInfo info = CompactClassInfo.get(readClass());
+                if (!info.isCompact()) {
+                    throw new StreamCorruptedException("Class can not be read field by field: " + info.getType().getName());
+                }
+                if (described.add(info.getType())) {
+                    checkLayout(info, in.readInt());
+                }
+                Object value = newInstance(info);
+                references.add(value);
+                readFields(info, value);
+                return value;
+            }
+            case CompactObjectOutput.SERIALIZED:
+                return readSerialized();
+            default:
+                throw new StreamCorruptedException("Invalid tag: " + tag);
+        }
+    }
+
+    protected void checkLayout(CompactClassInfo info, int layoutHash) throws InvalidClassException {
+        if (layoutHash != info.getLayoutHash()) {
+            throw new InvalidClassException(info.getType().getName(),
+                    "local class fields do not match the fields it was written with (layout hash "
+                            + info.getLayoutHash() + " but was " + layoutHash + ")");
+        }
+    }
+
+    protected void readFields(CompactClassInfo info, Object value) throws IOException, ClassNotFoundException {
+        Field[] fields = info.getFields();
+        int[] kinds = info.getKinds();
+        try {
+            for (int i = 0; i < fields.length; i++) {
+                Field field = fields[i];
+                switch (kinds[i]) {
+                    case CompactClassInfo.BOOLEAN:
+                        field.setBoolean(value, in.readBoolean());
+                        break;
+                    case CompactClassInfo.BYTE:
+                        field.setByte(value, in.readByte());
+                        break;
+                    case CompactClassInfo.SHORT:
+                        field.setShort(value, in.readShort());
+                        break;
+                    case CompactClassInfo.CHAR:
+                        field.setChar(value, in.readChar());
+                        break;
+                    case CompactClassInfo.INT:
+                        field.setInt(value, readInt());
+                        break;
+                    case CompactClassInfo.LONG:
+                        field.setLong(value, readLong());
+                        break;
+                    case CompactClassInfo.FLOAT:
+                        field.setFloat(value, in.readFloat());
+                        break;
+                    case CompactClassInfo.DOUBLE:
+                        field.setDouble(value, in.readDouble());
+                        break;
+                    default:
+                        field.set(value, readObject());
+                }
+            }
+        } catch (IllegalAccessException e) {
+            throw IOExceptionSupport.create(e);
+        } catch (IllegalArgumentException e) {
+            throw IOExceptionSupport.create("Invalid value for a field of " + info.getType().getName(), e);
+        }
+    }
+
+    protected Object readArray() throws IOException, ClassNotFoundException {
+        Class<?> componentType = readClass();
+        int length = in.readVarInt();
+        Object array = Array.newInstance(componentType, length);
+        references.add(array);
+        switch (CompactClassInfo.kindOf(componentType)) {
+            case CompactClassInfo.BOOLEAN: {
+                boolean[] a = (boolean[]) array;
+                for (int i = 0; i < length; i++) {
+                    a[i] = in.readBoolean();
+                }
+                break;
+            }
+            case CompactClassInfo.SHORT: {
+                short[] a = (short[]) array;
+                for (int i = 0; i < length; i++) {
+                    a[i] = in.readShort();
+                }
+                break;
+            }
+            case CompactClassInfo.CHAR: {
+                char[] a = (char[]) array;
+                for (int i = 0; i < length; i++) {
+                    a[i] = in.readChar();
+                }
+                break;
+            }
+            case CompactClassInfo.INT: {
+                int[] a = (int[]) array;
+                for (int i = 0; i < length; i++) {
+                    a[i] = readInt();
+                }
+                break;
+            }
+            case CompactClassInfo.LONG: {
+                long[] a = (long[]) array;
+                for (int i = 0; i < length; i++) {
+                    a[i] = readLong();
+                }
+                break;
+            }
+            case CompactClassInfo.FLOAT: {
+                float[] a = (float[]) array;
+                for (int i = 0; i < length; i++) {
+                    a[i] = in.readFloat();
+                }
+                break;
+            }
+            case CompactClassInfo.DOUBLE: {
+                double[] a = (double[]) array;
+                for (int i = 0; i < length; i++) {
+                    a[i] = in.readDouble();
+                }
+                break;
+            }
+            default: {
+                Object[] a = (Object[]) array;
+                for (int i = 0; i < length; i++) {
+                    a[i] = readObject();
+                }
+            }
+        }
+        return array;
+    }
+
+    protected Object readSerialized() throws IOException, ClassNotFoundException {
+        // lets reserve the reference slot before reading as the writer did
+        int index = references.size();
+        references.add(null);
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        ClassLoaderObjectInputStream ois = new ClassLoaderObjectInputStream(new ByteArrayInputStream(bytes));
+        ois.setClassLoader(classLoader);
+        Object value = ois.readObject();
+        references.set(index, value);
+        return value;
+    }
+
+    protected Class<?> readClass() throws IOException, ClassNotFoundException {
+        int index = in.readVarInt();
+        if (index > 0) {
+            if (index > classes.size()) {
+                throw new StreamCorruptedException("Invalid class reference: " + index);
+            }
+            return classes.get(index - 1);
+        }
+        String name = readString();
+        Class<?> answer = PRIMITIVES.get(name);
+        if (answer == null) {
+            answer = Class.forName(name, false, classLoader);
+        }
+        classes.add(answer);
+        return answer;
+    }
+
+    protected Object newInstance(Class<?> type) throws IOException {
+        try {
+            return type.newInstance();
+        } catch (Exception e) {
+            throw IOExceptionSupport.create("Could not create " + type.getName(), e);
+        }
+    }
+
+    protected Object newInstance(CompactClassInfo info) throws IOException {
+        try {
+            return info.newInstance();
+        } catch (Exception e) {
+            throw IOExceptionSupport.create("Could not create " + info.getType().getName(), e);
+        }
+    }
+
+    protected String readString() throws IOException {
+        byte[] bytes = new byte[in.readVarInt()];
+        in.readFully(bytes);
+        return new String(bytes, CompactObjectOutput.UTF8);
+    }
+
+    protected int readInt() throws IOException {
+        int value = in.readVarInt();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    protected long readLong() throws IOException {
+        long value = in.readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
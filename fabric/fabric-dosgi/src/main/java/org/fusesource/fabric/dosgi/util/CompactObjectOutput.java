@@ -0,0 +1,331 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.fabric.dosgi.util;
+
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.fusesource.hawtbuf.DataByteArrayOutputStream;
+
+/**
+ * Writes object graphs in the compact format read by {@link CompactObjectInput}.
+ * <p/>
+ * Each value starts with a tag byte. Class names are written once per message and referred to by index after that,
+ * objects seen before are written as back references and the fields of objects are written in the order given by
+ * {@link CompactClassInfo} without any names, after the layout hash of the class the first time it is written.
+ * Serializable objects which can't be written field by field
+ * are written with java serialization.
+ */
+public class CompactObjectOutput {
+
+    public static final byte NULL = 0;
+    public static final byte TRUE = 1;
+    public static final byte FALSE = 2;
+    public static final byte BYTE = 3;
+    public static final byte SHORT = 4;
+    public static final byte CHAR = 5;
+    public static final byte INT = 6;
+    public static final byte LONG = 7;
+    public static final byte FLOAT = 8;
+    public static final byte DOUBLE = 9;
+    public static final byte STRING = 10;
+    public static final byte BYTES = 11;
+    public static final byte ARRAY = 12;
+    public static final byte COLLECTION = 13;
+    public static final byte MAP = 14;
+    public static final byte ENUM = 15;
+    public static final byte OBJECT = 16;
+    public static final byte REFERENCE = 17;
+    public static final byte SERIALIZED = 18;
+    public static final byte DATE = 19;
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * The collection classes which are written element by element
+     */
+    static final Set<Class<?>> COLLECTION_CLASSES = new HashSet<Class<?>>();
+    static final Set<Class<?>> MAP_CLASSES = new HashSet<Class<?>>();
+
+    static {
+        COLLECTION_CLASSES.add(ArrayList.class);
+        COLLECTION_CLASSES.add(LinkedList.class);
+        COLLECTION_CLASSES.add(Vector.class);
+        COLLECTION_CLASSES.add(HashSet.class);
+        COLLECTION_CLASSES.add(LinkedHashSet.class);
+        COLLECTION_CLASSES.add(TreeSet.class);
+        MAP_CLASSES.add(HashMap.class);
+        MAP_CLASSES.add(LinkedHashMap.class);
+        MAP_CLASSES.add(Hashtable.class);
+        MAP_CLASSES.add(TreeMap.class);
+        MAP_CLASSES.add(ConcurrentHashMap.class);
+    }
+
+    private final DataByteArrayOutputStream out;
+    private final Map<Class<?>, Integer> classes = new HashMap<Class<?>, Integer>();
+    private final Map<Object, Integer> references = new IdentityHashMap<Object, Integer>();
+    private final Set<Class<?>> described = new HashSet<Class<?>>();
+
+    public CompactObjectOutput(DataByteArrayOutputStream out, List<Class<?>> registeredClasses) {
+        this.out = out;
+        for (Class<?> type : registeredClasses) {
+            classes.put(type, classes.size());
+        }
+    }
+
+    public void writeObject(Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+            return;
+        }
+        Class<?> type = value.getClass();
+        if (type == String.class) {
+            out.writeByte(STRING);
+            writeString((String) value);
+        } else if (type == Integer.class) {
+            out.writeByte(INT);
+            writeInt((Integer) value);
+        } else if (type == Long.class) {
+            out.writeByte(LONG);
+            writeLong((Long) value);
+        } else if (type == Boolean.class) {
+            out.writeByte((Boolean) value ? TRUE : FALSE);
+        } else if (type == Double.class) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (type == Float.class) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) value);
+        } else if (type == Short.class) {
+            out.writeByte(SHORT);
+            out.writeShort((Short) value);
+        } else if (type == Byte.class) {
+            out.writeByte(BYTE);
+            out.writeByte((Byte) value);
+        } else if (type == Character.class) {
+            out.writeByte(CHAR);
+            out.writeChar((Character) value);
+        } else if (value instanceof Enum) {
+            out.writeByte(ENUM);
+            writeClass(((Enum<?>) value).getDeclaringClass());
+            out.writeVarInt(((Enum<?>) value).ordinal());
+        } else {
+            Integer reference = references.get(value);
+            if (reference != null) {
+                out.writeByte(REFERENCE);
+                out.writeVarInt(reference);
+                return;
+            }
+            references.put(value, references.size());
+            if (type == byte[].class) {
+                byte[] bytes = (byte[]) value;
+                out.writeByte(BYTES);
+                out.writeVarInt(bytes.length);
+                out.write(bytes);
+            } else if (type == Date.class) {
+                out.writeByte(DATE);
+                writeLong(((Date) value).getTime());
+            } else if (type.isArray()) {
+                out.writeByte(ARRAY);
+                writeArray(type.getComponentType(), value);
+            } else if (COLLECTION_CLASSES.contains(type) && !(value instanceof TreeSet && ((TreeSet<?>) value).comparator() != null)) {
+                Collection<?> collection = (Collection<?>) value;
+                out.writeByte(COLLECTION);
+                writeClass(type);
+                out.writeVarInt(collection.size());
+                for (Object element : collection) {
+                    writeObject(element);
+                }
+            } else if (MAP_CLASSES.contains(type) && !(value instanceof TreeMap && ((TreeMap<?, ?>) value).comparator() != null)) {
+                Map<?, ?> map = (Map<?, ?>) value;
+                out.writeByte(MAP);
+                writeClass(type);
+                out.writeVarInt(map.size());
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    writeObject(entry.getKey());
+                    writeObject(entry.getValue());
+                }
+            } else {
+                CompactClassInfo info = CompactClassInfo.get(type);
+                if (info.isCompact()) {
+                    out.writeByte(OBJECT);
+                    writeClass(type);
+                    if (described.add(type)) {
+                        out.writeInt(info.getLayoutHash());
+                    }
+                    writeFields(info, value);
+                } else if (value instanceof Serializable) {
+                    writeSerialized(value);
+                } else {
+                    throw new NotSerializableException(type.getName());
+                }
+            }
+        }
+    }
+
+    protected void writeFields(CompactClassInfo info, Object value) throws IOException {
+        Field[] fields = info.getFields();
+        int[] kinds = info.getKinds();
+        try {
+            for (int i = 0; i < fields.length; i++) {
+                Field field = fields[i];
+                switch (kinds[i]) {
+                    case CompactClassInfo.BOOLEAN:
+                        out.writeBoolean(field.getBoolean(value));
+                        break;
+                    case CompactClassInfo.BYTE:
+                        out.writeByte(field.getByte(value));
+                        break;
+                    case CompactClassInfo.SHORT:
+                        out.writeShort(field.getShort(value));
+                        break;
+                    case CompactClassInfo.CHAR:
+                        out.writeChar(field.getChar(value));
+                        break;
+                    case CompactClassInfo.INT:
+                        writeInt(field.getInt(value));
+                        break;
+                    case CompactClassInfo.LONG:
+                        writeLong(field.getLong(value));
+                        break;
+                    case CompactClassInfo.FLOAT:
+                        out.writeFloat(field.getFloat(value));
+                        break;
+                    case CompactClassInfo.DOUBLE:
+                        out.writeDouble(field.getDouble(value));
+                        break;
+                    default:
+                        writeObject(field.get(value));
+                }
+            }
+        } catch (IllegalAccessException e) {
+            throw IOExceptionSupport.create(e);
+        }
+    }
+
+    protected void writeArray(Class<?> componentType, Object array) throws IOException {
+        writeClass(componentType);
+        int length = Array.getLength(array);
+        out.writeVarInt(length);
+        switch (CompactClassInfo.kindOf(componentType)) {
+            case CompactClassInfo.BOOLEAN:
+                for (boolean b : (boolean[]) array) {
+                    out.writeBoolean(b);
+                }
+                break;
+            case CompactClassInfo.SHORT:
+                for (short s : (short[]) array) {
+                    out.writeShort(s);
+                }
+                break;
+            case CompactClassInfo.CHAR:
+                for (char c : (char[]) array) {
+                    out.writeChar(c);
+                }
+                break;
+            case CompactClassInfo.INT:
+                for (int i : (int[]) array) {
+                    writeInt(i);
+                }
+                break;
+            case CompactClassInfo.LONG:
+                for (long l : (long[]) array) {
+                    writeLong(l);
+                }
+                break;
+            case CompactClassInfo.FLOAT:
+                for (float f : (float[]) array) {
+                    out.writeFloat(f);
+                }
+                break;
+            case CompactClassInfo.DOUBLE:
+                for (double d : (double[]) array) {
+                    out.writeDouble(d);
+                }
+                break;
+            default:
+                for (Object element : (Object[]) array) {
+                    writeObject(element);
+                }
+        }
+    }
+
+    protected void writeSerialized(Object value) throws IOException {
+        out.writeByte(SERIALIZED);
+        // lets reserve space for the length then fill it in once we know it
+        int start = out.position();
+        out.writeInt(0);
+        ObjectOutputStream oos = new ObjectOutputStream(out);
+        oos.writeObject(value);
+        oos.flush();
+        int end = out.position();
+        out.position(start);
+        out.writeInt(end - start - 4);
+        out.position(end);
+    }
+
+    /**
+     * Writes the index of a class already written, or registered, plus one, or zero followed by the class name
+     */
+    protected void writeClass(Class<?> type) throws IOException {
+        Integer index = classes.get(type);
+        if (index != null) {
+            out.writeVarInt(index + 1);
+        } else {
+            classes.put(type, classes.size());
+            out.writeVarInt(0);
+            writeString(type.getName());
+        }
+    }
+
+    protected void writeString(String value) throws IOException {
+        byte[] bytes = value.getBytes(UTF8);
+        out.writeVarInt(bytes.length);
+        out.write(bytes);
+    }
+
+    protected void writeInt(int value) throws IOException {
+        // zig zag encoding so small negative numbers stay small
+        out.writeVarInt((value << 1) ^ (value >> 31));
+    }
+
+    protected void writeLong(long value) throws IOException {
+        out.writeVarLong((value << 1) ^ (value >> 63));
+    }
+}
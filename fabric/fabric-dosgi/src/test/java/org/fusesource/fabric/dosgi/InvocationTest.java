@@ -20,23 +20,28 @@ import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Proxy;
 import java.lang.reflect.UndeclaredThrowableException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.fusesource.fabric.dosgi.api.*;
 import org.fusesource.fabric.dosgi.io.ServerInvoker;
 import org.fusesource.fabric.dosgi.tcp.ClientInvokerImpl;
 import org.fusesource.fabric.dosgi.tcp.ServerInvokerImpl;
+import org.fusesource.fabric.dosgi.tcp.TransportPool;
 import org.fusesource.hawtdispatch.Dispatch;
 import org.fusesource.hawtdispatch.DispatchQueue;
 import org.junit.Test;
 
 import static org.fusesource.hawtdispatch.Dispatch.createQueue;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class InvocationTest {
     final static long MILLIS_IN_A_NANO = TimeUnit.MILLISECONDS.toNanos(1);
@@ -346,6 +351,140 @@ public class InvocationTest {
     }
 
 
+    @Test
+    public void testUnderLoadSyncObjectPooledVsDefault() throws Exception {
+        // the default pool of 2 transports with no in flight limit compared to more transports with a limit
+        benchmarkSyncObject("default", TransportPool.DEFAULT_POOL_SIZE, TransportPool.DEFAULT_MAX_INFLIGHT);
+        benchmarkSyncObject("pooled", 8, 32);
+    }
+
+    private void benchmarkSyncObject(String name, int poolSize, int maxInflight) throws Exception {
+        HashMap<String, SerializationStrategy> map = new HashMap<String, SerializationStrategy>();
+
+        DispatchQueue queue = Dispatch.createQueue();
+        ServerInvokerImpl server = new ServerInvokerImpl("tcp://localhost:0", queue, map);
+        server.start();
+        ClientInvokerImpl client = new ClientInvokerImpl(queue, map);
+        client.setPoolSize(poolSize);
+        client.setMaxInflight(maxInflight);
+        client.start();
+
+        try {
+            final HelloImpl helloImpl = new HelloImpl();
+            server.registerService("service-id", new ServerInvoker.ServiceFactory() {
+                public Object get() {
+                    return helloImpl;
+                }
+                public void unget() {
+                }
+            }, HelloImpl.class.getClassLoader());
+
+            InvocationHandler handler = client.getProxy(server.getConnectAddress(), "service-id", HelloImpl.class.getClassLoader());
+            final Hello hello  = (Hello) Proxy.newProxyInstance(HelloImpl.class.getClassLoader(), new Class[] { Hello.class }, handler);
+
+            assertEquals("Hello World!", hello.helloworld());
+
+            final AtomicInteger requests = new AtomicInteger(0);
+            final AtomicInteger failures = new AtomicInteger(0);
+            final long latencies[] = new long[BENCHMARK_CLIENTS * BENCHMARK_INVOCATIONS_PER_CLIENT];
+
+            final long start = System.nanoTime();
+            Thread[] threads = new Thread[BENCHMARK_CLIENTS];
+            for (int t = 0; t < BENCHMARK_CLIENTS; t++) {
+                final int thread_idx = t;
+                threads[t] = new Thread() {
+                    public void run() {
+                        for (int i = 0; i < BENCHMARK_INVOCATIONS_PER_CLIENT; i++) {
+                            try {
+                                requests.incrementAndGet();
+                                final long start = System.nanoTime();
+                                String response = hello.hello("Fabric");
+                                latencies[(thread_idx* BENCHMARK_INVOCATIONS_PER_CLIENT)+i] = System.nanoTime()-start;
+                                assertEquals("Hello Fabric!", response);
+                            } catch (Throwable t) {
+                                latencies[(thread_idx* BENCHMARK_INVOCATIONS_PER_CLIENT)+i] = -1;
+                                failures.incrementAndGet();
+                            }
+                        }
+                    }
+                };
+                threads[t].start();
+            }
+
+            for (int t = 0; t < BENCHMARK_CLIENTS; t++) {
+                threads[t].join();
+            }
+            final long end = System.nanoTime();
+
+            List<Long> sorted = new ArrayList<Long>();
+            long latency_sum = 0;
+            for (int t = 0; t < latencies.length; t++) {
+                if( latencies[t] != -1 ) {
+                    latency_sum += latencies[t];
+                    sorted.add(latencies[t]);
+                }
+            }
+            Collections.sort(sorted);
+            double latency_avg = ((latency_sum * 1.0d)/requests.get()) / MILLIS_IN_A_NANO;
+            double latency_p99 = sorted.isEmpty() ? 0 : (sorted.get((int) (sorted.size() * 0.99)) * 1.0d) / MILLIS_IN_A_NANO;
+            double request_rate = ((requests.get() * 1.0d)/(end-start)) * SECONDS_IN_A_NANO;
+
+            System.err.println(String.format("[%s poolSize=%d maxInflight=%d] Requests/Second: %,.2f", name, poolSize, maxInflight, request_rate));
+            System.err.println(String.format("[%s] Average request latency: %,.2f ms, 99th percentile: %,.2f ms", name, latency_avg, latency_p99));
+            System.err.println("[" + name + "] Error Ratio: " + failures.get() + " / " + requests.get());
+            assertEquals(0, failures.get());
+        }
+        finally {
+            server.stop();
+            client.stop();
+        }
+    }
+
+
+    @Test
+    public void testTimeoutReleasesInflightSlot() throws Exception {
+        HashMap<String, SerializationStrategy> map = new HashMap<String, SerializationStrategy>();
+
+        DispatchQueue queue = Dispatch.createQueue();
+        ServerInvokerImpl server = new ServerInvokerImpl("tcp://localhost:0", queue, map);
+        server.start();
+        // a single transport which only allows one request awaiting a response
+        ClientInvokerImpl client = new ClientInvokerImpl(queue, 500, map);
+        client.setPoolSize(1);
+        client.setMaxInflight(1);
+        client.start();
+
+        final CountDownLatch never = new CountDownLatch(1);
+        try {
+            server.registerService("service-id", new ServerInvoker.ServiceFactory() {
+                public Object get() {
+                    return new NeverReplyingHello(never);
+                }
+                public void unget() {
+                }
+            }, HelloImpl.class.getClassLoader());
+
+            InvocationHandler handler = client.getProxy(server.getConnectAddress(), "service-id", HelloImpl.class.getClassLoader());
+            Hello hello  = (Hello) Proxy.newProxyInstance(HelloImpl.class.getClassLoader(), new Class[] { Hello.class }, handler);
+
+            try {
+                hello.hello("never");
+                fail("Expected the request to time out");
+            } catch (UndeclaredThrowableException e) {
+                assertTrue(e.getCause() instanceof TimeoutException);
+            }
+
+            // the unanswered request must not keep holding the only in-flight slot
+            assertEquals("Hello Fabric!", hello.hello("Fabric"));
+            assertEquals("Hello World!", hello.helloworld());
+        }
+        finally {
+            never.countDown();
+            server.stop();
+            client.stop();
+        }
+    }
+
     class AsyncClient implements AsyncCallback<StringValue.Getter> {
 
         final int thread_idx;
@@ -503,6 +642,69 @@ public class InvocationTest {
         return rc;
     }
 
+    /**
+     * Not dispatched so it is invoked on the blocking executor of the server, where it never replies to "never"
+     */
+    public static class NeverReplyingHello implements Hello {
+
+        private final CountDownLatch never;
+
+        public NeverReplyingHello(CountDownLatch never) {
+            this.never = never;
+        }
+
+        public String hello(String name) {
+            if ("never".equals(name)) {
+                try {
+                    never.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return "Hello " + name + "!";
+        }
+
+        public void hello(String name, AsyncCallback<String> callback) {
+            callback.onSuccess(hello(name));
+        }
+
+        public String helloworld() {
+            return "Hello World!";
+        }
+
+        public char mix(int value) {
+            return 'a';
+        }
+
+        public char mix(int[] value) {
+            return 'b';
+        }
+
+        public char mix(Integer value) {
+            return 'c';
+        }
+
+        public char mix(Integer[] value) {
+            return 'd';
+        }
+
+        public char mix(int[][] value) {
+            return 'e';
+        }
+
+        public char mix(Integer[][] value) {
+            return 'f';
+        }
+
+        public StringValue.Getter protobuf(StringValue.Getter name) {
+            return stringValue(hello(name.getValue()));
+        }
+
+        public void protobuf(StringValue.Getter name, AsyncCallback<StringValue.Getter> callback) {
+            callback.onSuccess(protobuf(name));
+        }
+    }
+
     public static class HelloImpl implements Hello, Dispatched {
 
         DispatchQueue queue = Dispatch.createQueue();
@@ -0,0 +1,207 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.fabric.dosgi.api;
+
+import java.io.InvalidClassException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.fusesource.hawtbuf.DataByteArrayInputStream;
+import org.fusesource.hawtbuf.DataByteArrayOutputStream;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ */
+public class CompactSerializationStrategyTest {
+
+    public static enum Status {
+        ACTIVE, SUSPENDED
+    }
+
+    public static class Address implements Serializable {
+        String street;
+        int zip;
+    }
+
+    public static class Customer implements Serializable {
+        String name;
+        long id;
+        int age;
+        double balance;
+        boolean vip;
+        Status status;
+        Date created;
+        Address address;
+        Customer referrer;
+        int[] scores;
+        List<String> tags = new ArrayList<String>();
+        Map<String, Integer> orders = new HashMap<String, Integer>();
+    }
+
+    /**
+     * Another version of {@link Address} as seen by a reader which has not been upgraded
+     */
+    public static class OldAddress implements Serializable {
+        String street;
+        String zip;
+    }
+
+    static Customer createCustomer(int i) {
+        Customer customer = new Customer();
+        customer.name = "customer-" + i;
+        customer.id = Long.MAX_VALUE - i;
+        customer.age = -i;
+        customer.balance = i * 1.5;
+        customer.vip = i % 2 == 0;
+        customer.status = Status.SUSPENDED;
+        customer.created = new Date(1000L * i);
+        customer.address = new Address();
+        customer.address.street = "Main Street";
+        customer.address.zip = 10000 + i;
+        customer.referrer = customer;
+        customer.scores = new int[]{i, -i, 300};
+        customer.tags.add("gold");
+        customer.tags.add("east");
+        customer.orders.put("widgets", i);
+        return customer;
+    }
+
+    @Test
+    public void testRequestRoundTrip() throws Exception {
+        CompactSerializationStrategy strategy = new CompactSerializationStrategy("compact", Customer.class, Address.class);
+        Customer customer = createCustomer(7);
+        Customer other = createCustomer(8);
+        other.address = customer.address;
+
+        DataByteArrayOutputStream out = new DataByteArrayOutputStream();
+        Class<?>[] types = new Class<?>[]{Customer.class, Customer.class, String.class, Object.class};
+        strategy.encodeRequest(getClass().getClassLoader(), types, new Object[]{customer, other, null, 42}, out);
+
+        Object[] args = new Object[4];
+        strategy.decodeRequest(getClass().getClassLoader(), types, new DataByteArrayInputStream(out.toBuffer()), args);
+
+        Customer result = (Customer) args[0];
+        assertEquals("customer-7", result.name);
+        assertEquals(Long.MAX_VALUE - 7, result.id);
+        assertEquals(-7, result.age);
+        assertEquals(10.5, result.balance, 0);
+        assertFalse(result.vip);
+        assertSame(Status.SUSPENDED, result.status);
+        assertEquals(7000L, result.created.getTime());
+        assertEquals("Main Street", result.address.street);
+        assertEquals(10007, result.address.zip);
+        assertSame("cyclic reference should be restored", result, result.referrer);
+        assertTrue(Arrays.equals(new int[]{7, -7, 300}, result.scores));
+        assertEquals(Arrays.asList("gold", "east"), result.tags);
+        assertEquals(Integer.valueOf(7), result.orders.get("widgets"));
+        assertSame("shared reference should be restored", result.address, ((Customer) args[1]).address);
+        assertNull(args[2]);
+        assertEquals(42, args[3]);
+    }
+
+    @Test
+    public void testResponseRoundTrip() throws Exception {
+        ClassLoader loader = getClass().getClassLoader();
+        final Object[] holder = new Object[2];
+        AsyncCallback<Object> callback = new AsyncCallback<Object>() {
+            public void onSuccess(Object result) {
+                holder[0] = result;
+            }
+            public void onFailure(Throwable failure) {
+                holder[1] = failure;
+            }
+        };
+
+        DataByteArrayOutputStream out = new DataByteArrayOutputStream();
+        CompactSerializationStrategy.INSTANCE.encodeResponse(loader, Customer.class, createCustomer(1), null, out);
+        CompactSerializationStrategy.INSTANCE.decodeResponse(loader, Customer.class, new DataByteArrayInputStream(out.toBuffer()), callback);
+        assertEquals("customer-1", ((Customer) holder[0]).name);
+        assertNull(holder[1]);
+
+        holder[0] = null;
+        out = new DataByteArrayOutputStream();
+        CompactSerializationStrategy.INSTANCE.encodeResponse(loader, Customer.class, null, new IllegalStateException("boom"), out);
+        CompactSerializationStrategy.INSTANCE.decodeResponse(loader, Customer.class, new DataByteArrayInputStream(out.toBuffer()), callback);
+        assertNull(holder[0]);
+        assertTrue(holder[1] instanceof IllegalStateException);
+        assertEquals("boom", ((Throwable) holder[1]).getMessage());
+    }
+
+    @Test
+    public void testLayoutMismatchIsRejected() throws Exception {
+        // both sides register the class at the same index but the reader has a different version of it
+        CompactSerializationStrategy writer = new CompactSerializationStrategy("compact", Address.class);
+        CompactSerializationStrategy reader = new CompactSerializationStrategy("compact", OldAddress.class);
+        Class<?>[] types = new Class<?>[]{Object.class};
+
+        DataByteArrayOutputStream out = new DataByteArrayOutputStream();
+        writer.encodeRequest(getClass().getClassLoader(), types, new Object[]{createCustomer(1).address}, out);
+        try {
+            reader.decodeRequest(getClass().getClassLoader(), types, new DataByteArrayInputStream(out.toBuffer()), new Object[1]);
+            fail("Expected the layout mismatch to be detected");
+        } catch (InvalidClassException e) {
+            assertEquals(OldAddress.class.getName(), e.classname);
+        }
+    }
+
+    @Test
+    public void benchmarkObjectVsCompact() throws Exception {
+        List<Customer> customers = new ArrayList<Customer>();
+        for (int i = 0; i < 20; i++) {
+            customers.add(createCustomer(i));
+        }
+        Object[] args = new Object[]{customers};
+        Class<?>[] types = new Class<?>[]{List.class};
+
+        int javaSize = benchmark(ObjectSerializationStrategy.INSTANCE, types, args);
+        int compactSize = benchmark(new CompactSerializationStrategy("compact", Customer.class, Address.class), types, args);
+        assertTrue("compact encoding should be smaller than java serialization", compactSize < javaSize);
+    }
+
+    private int benchmark(SerializationStrategy strategy, Class<?>[] types, Object[] args) throws Exception {
+        ClassLoader loader = getClass().getClassLoader();
+        int size = 0;
+        int iterations = 2000;
+        // warm up
+        for (int i = 0; i < iterations; i++) {
+            size = roundTrip(strategy, loader, types, args);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            roundTrip(strategy, loader, types, args);
+        }
+        long end = System.nanoTime();
+        double opsPerSec = iterations / ((end - start) / 1000000000.0);
+        System.err.println("Strategy " + strategy.name() + ": " + size + " bytes, " + String.format("%.0f", opsPerSec) + " round trips/sec");
+        return size;
+    }
+
+    private int roundTrip(SerializationStrategy strategy, ClassLoader loader, Class<?>[] types, Object[] args) throws Exception {
+        DataByteArrayOutputStream out = new DataByteArrayOutputStream();
+        strategy.encodeRequest(loader, types, args, out);
+        Object[] target = new Object[args.length];
+        strategy.decodeRequest(loader, types, new DataByteArrayInputStream(out.toBuffer()), target);
+        return out.position();
+    }
+}
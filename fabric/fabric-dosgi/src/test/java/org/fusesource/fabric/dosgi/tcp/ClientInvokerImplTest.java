@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.fabric.dosgi.tcp;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.fusesource.fabric.dosgi.api.SerializationStrategy;
+import org.fusesource.hawtdispatch.Dispatch;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ClientInvokerImplTest {
+    private static final String ADDRESS = "tcp://localhost:1";
+
+    private ClientInvokerImpl invoker;
+
+    @Before
+    public void setUp() throws Exception {
+        invoker = new ClientInvokerImpl(Dispatch.createQueue("client"), new HashMap<String, SerializationStrategy>());
+        invoker.start();
+    }
+
+    @Test
+    public void testStopStopsThePools() throws Exception {
+        TransportPool pool = invoker.getTransportPool(ADDRESS);
+        assertSame(pool, invoker.getTransportPool(ADDRESS));
+
+        stop();
+        assertFalse(pool.running.get());
+        assertTrue(invoker.transports.isEmpty());
+    }
+
+    @Test
+    public void testNoPoolIsCreatedOnceStopped() throws Exception {
+        stop();
+        try {
+            invoker.getTransportPool(ADDRESS);
+            fail("Expected an IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertTrue(invoker.transports.isEmpty());
+    }
+
+    private void stop() throws InterruptedException {
+        final CountDownLatch stopped = new CountDownLatch(1);
+        invoker.stop(new Runnable() {
+            public void run() {
+                stopped.countDown();
+            }
+        });
+        assertTrue("The client should be stopped", stopped.await(5, TimeUnit.SECONDS));
+    }
+}
@@ -16,14 +16,19 @@
  */
 package org.fusesource.fabric.git.internal;
 
-import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.felix.scr.annotations.Activate;
@@ -35,6 +40,9 @@ import org.apache.felix.scr.annotations.ReferencePolicy;
 import org.apache.felix.scr.annotations.References;
 import org.apache.felix.scr.annotations.Service;
 import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
 import org.fusesource.fabric.api.DataStore;
 import org.fusesource.fabric.api.DataStoreRegistrationHandler;
 import org.fusesource.fabric.api.FabricException;
@@ -43,13 +51,20 @@ import org.fusesource.fabric.api.jcip.GuardedBy;
 import org.fusesource.fabric.api.jcip.ThreadSafe;
 import org.fusesource.fabric.git.GitService;
 import org.fusesource.fabric.internal.DataStoreHelpers;
+import org.fusesource.fabric.utils.PropertiesHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
+import com.google.common.cache.Weigher;
 
 /**
  * A Caching version of {@link GitDataStore} to minimise the use of git operations
- * and speed things up a little
+ * and speed things up a little.
+ * <p/>
+ * Profiles are read straight from the git objects. A new commit only causes the profiles whose tree changed to
+ * be reloaded, and their contents are kept in a cache bounded by size, see {@link #GIT_PROFILE_CACHE_SIZE}.
+ * The last modification time of a profile is only read from the history once it is asked for.
  */
 @ThreadSafe
 @Component(name = DataStore.DATASTORE_TYPE_PID, description = "Fabric Git Caching DataStore", immediate = true)
@@ -62,23 +77,28 @@ import com.google.common.cache.LoadingCache;
 )
 @Service(DataStore.class)
 public final class CachingGitDataStore extends GitDataStore {
+    private static final transient Logger LOG = LoggerFactory.getLogger(CachingGitDataStore.class);
 
     public static final String TYPE = "caching-git";
 
-    @GuardedBy("LoadingCache") private final LoadingCache<String, VersionData> cachedVersions = CacheBuilder.newBuilder()
-            .build(new CacheLoader<String, VersionData>() {
-                @Override
-                public VersionData load(final String version) throws Exception {
-                    return gitOperation(new GitOperation<VersionData>() {
-                        public VersionData call(Git git, GitContext context) throws Exception {
-                            VersionData data = new VersionData();
-                            pouplateVersionData(git, version, data);
-                            pouplateVersionData(git, "master", data);
-                            return data;
-                        }
-                    }, !hasVersion(version));
-                }
-            });
+    /**
+     * The default maximum size in bytes of the cached profile contents
+     */
+    public static final long DEFAULT_PROFILE_CACHE_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * The profile trees of each branch, as of its last known commit.
+     * Entries are never dropped, they are brought up to date by diffing their commit with the new one once stale.
+     */
+    private final ConcurrentMap<String, BranchData> cachedBranches = new ConcurrentHashMap<String, BranchData>();
+    private final AtomicLong generation = new AtomicLong();
+    private final Object refreshMonitor = new Object();
+
+    /**
+     * The contents of the profiles keyed by the id of their tree, so that they are shared by all the versions
+     * and only read again once the profile changes or the entry got evicted.
+     */
+    private volatile Cache<ObjectId, ProfileData> cachedProfiles = createProfileCache(DEFAULT_PROFILE_CACHE_SIZE);
 
     @Activate
     protected void activate(Map<String, ?> configuration) throws Exception {
@@ -90,130 +110,254 @@ public final class CachingGitDataStore extends GitDataStore {
         super.deactivate();
     }
 
-    protected VersionData getVersionData(String version) {
-        assertValid();
-        VersionData data = null;
-        try {
-            data = cachedVersions.get(version);
-        } catch (ExecutionException e) {
-            FabricException.launderThrowable(e);
+    @Override
+    protected void activateInternal() {
+        long cacheSize = PropertiesHelper.getLongValue(getDataStoreProperties(), GIT_PROFILE_CACHE_SIZE, DEFAULT_PROFILE_CACHE_SIZE);
+        if (cacheSize != DEFAULT_PROFILE_CACHE_SIZE) {
+            setProfileCacheSize(cacheSize);
         }
-        return data;
+        super.activateInternal();
     }
 
-    protected void pouplateVersionData(Git git, String branch, VersionData data) throws Exception {
-        assertValid();
-        checkoutVersion(git, branch);
-        File profilesDir = getProfilesDirectory(git);
-        if (profilesDir.exists()) {
-            File[] files = profilesDir.listFiles();
-            if (files != null) {
-                for (File file : files) {
-                    if (file.isDirectory()) {
-                        addProfileData(git, data, file, "");
+    void setProfileCacheSize(long maximumSize) {
+        cachedProfiles = createProfileCache(maximumSize);
+    }
+
+    private static Cache<ObjectId, ProfileData> createProfileCache(long maximumSize) {
+        return CacheBuilder.newBuilder()
+                .maximumWeight(maximumSize)
+                .weigher(new Weigher<ObjectId, ProfileData>() {
+                    @Override
+                    public int weigh(ObjectId key, ProfileData value) {
+                        return value.weight;
                     }
+                })
+                .build();
+    }
+
+    /**
+     * Returns the profiles of the branch, diffing the profile trees of the last commit seen with the current one
+     * if the cached entry is stale. Returns data without any profile if there is no such branch.
+     */
+    private BranchData getBranchData(String branch) {
+        assertValid();
+        BranchData data = cachedBranches.get(branch);
+        if (data != null && data.generation == generation.get()) {
+            return data;
+        }
+        if (data == null && !hasLocalBranch(branch)) {
+            // the branch may not have been fetched yet
+            gitOperation(new GitOperation<Void>() {
+                public Void call(Git git, GitContext context) throws Exception {
+                    return null;
                 }
+            }, true);
+        }
+        try {
+            return getBranchData(getGit().getRepository(), branch);
+        } catch (IOException e) {
+            throw FabricException.launderThrowable(e);
+        }
+    }
+
+    BranchData getBranchData(Repository repository, String branch) throws IOException {
+        synchronized (refreshMonitor) {
+            BranchData data = cachedBranches.get(branch);
+            long current = generation.get();
+            if (data == null || data.generation != current) {
+                data = refreshBranchData(repository, branch, data, current);
+                cachedBranches.put(branch, data);
+            }
+            return data;
+        }
+    }
+
+    private boolean hasLocalBranch(String branch) {
+        GitTreeReader reader = null;
+        try {
+            reader = new GitTreeReader(getGit().getRepository());
+            return reader.hasBranch(branch);
+        } catch (IOException e) {
+            throw FabricException.launderThrowable(e);
+        } finally {
+            if (reader != null) {
+                reader.release();
             }
         }
     }
 
-    private void addProfileData(Git git, VersionData data, File file, String prefix) throws IOException {
-        // TODO we could recursively scan for magic ".profile" files or something
-        // then we could put profiles into nicer tree structure?
-        String profile = file.getName();
-        if (useDirectoriesForProfiles) {
-            if (profile.endsWith(PROFILE_FOLDER_SUFFIX)) {
-                profile = prefix + profile.substring(0, profile.length() - PROFILE_FOLDER_SUFFIX.length());
-            } else {
-                // lets recurse all children
-                File[] files = file.listFiles();
-                if (files != null) {
-                    for (File child : files) {
-                        if (child.isDirectory()) {
-                            addProfileData(git, data, child, prefix + file.getName() + "-");
-                        }
+    @GuardedBy("refreshMonitor")
+    private BranchData refreshBranchData(Repository repository, String branch, BranchData data, long current) throws IOException {
+        GitTreeReader reader = new GitTreeReader(repository);
+        try {
+            RevCommit commit = reader.getCommit(branch);
+            ObjectId commitId = commit != null ? commit.copy() : null;
+            if (data != null && equal(commitId, data.commitId)) {
+                return new BranchData(current, data.commitId, data.profilesTreeId, data.profiles);
+            }
+            ObjectId profilesTreeId = commit != null ? reader.getObjectId(branch, PROFILES_PATH) : null;
+            ObjectId oldProfilesTreeId = data != null ? data.profilesTreeId : null;
+            Map<String, ProfileRef> profiles = data != null
+                    ? new HashMap<String, ProfileRef>(data.profiles)
+                    : new HashMap<String, ProfileRef>();
+            if (!equal(profilesTreeId, oldProfilesTreeId)) {
+                Map<String, ObjectId> changes = new HashMap<String, ObjectId>();
+                addProfileChanges(reader, oldProfilesTreeId, profilesTreeId, "", changes);
+                for (Map.Entry<String, ObjectId> entry : changes.entrySet()) {
+                    String profile = entry.getKey();
+                    ObjectId treeId = entry.getValue();
+                    if (treeId != null) {
+                        // the last modification time needs a walk through the history so it is only read when asked for
+                        profiles.put(profile, new ProfileRef(treeId, commitId));
+                    } else {
+                        profiles.remove(profile);
                     }
                 }
-                return;
+                LOG.debug("Reloaded {} changed profiles of branch {}", changes.size(), branch);
             }
+            return new BranchData(current, commitId, profilesTreeId, Collections.unmodifiableMap(profiles));
+        } finally {
+            reader.release();
         }
+    }
 
-        long lastModified = file.lastModified();
-        File metadataFile = new File(file, AGENT_METADATA_FILE);
-        if (metadataFile.exists()) {
-            long modified = metadataFile.lastModified();
-            lastModified = Math.max(lastModified, modified);
+    private static boolean equal(ObjectId a, ObjectId b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Returns the cached profile, looking into the master branch first for the non versioned profiles
+     */
+    private ProfileRef getProfileRef(String version, String profile) {
+        ProfileRef ref = getBranchData(MASTER_BRANCH).profiles.get(profile);
+        if (ref == null) {
+            ref = getBranchData(version).profiles.get(profile);
         }
-        Map<String, byte[]> configurations = doGetFileConfigurations(git, profile);
-        Map<String, Map<String, String>> substituted = new HashMap<String, Map<String, String>>();
-        for (Map.Entry<String, byte[]> entry : configurations.entrySet()) {
-            if (entry.getKey().endsWith(".properties")) {
-                String pid = DataStoreHelpers.stripSuffix(entry.getKey(), ".properties");
-                substituted.put(pid, DataStoreHelpers.toMap(DataStoreHelpers.toProperties(entry.getValue())));
+        return ref;
+    }
+
+    private ProfileData getProfileData(String version, String profile) {
+        ProfileRef ref = getProfileRef(version, profile);
+        return ref != null ? getProfileData(ref.treeId) : null;
+    }
+
+    private ProfileData getProfileData(ObjectId treeId) {
+        try {
+            return getProfileData(getGit().getRepository(), treeId);
+        } catch (IOException e) {
+            throw FabricException.launderThrowable(e);
+        }
+    }
+
+    ProfileData getProfileData(final Repository repository, final ObjectId treeId) {
+        try {
+            return cachedProfiles.get(treeId, new Callable<ProfileData>() {
+                @Override
+                public ProfileData call() throws Exception {
+                    GitTreeReader reader = new GitTreeReader(repository);
+                    try {
+                        return new ProfileData(reader.readTree(treeId));
+                    } finally {
+                        reader.release();
+                    }
+                }
+            });
+        } catch (ExecutionException e) {
+            throw FabricException.launderThrowable(e.getCause());
+        }
+    }
+
+    boolean isProfileDataCached(ObjectId treeId) {
+        return cachedProfiles.getIfPresent(treeId) != null;
+    }
+
+    /**
+     * Returns the time of the last commit which changed the profile, reading it from the commit the profile was
+     * last seen changed in the first time it is asked for
+     */
+    long getLastModified(Repository repository, ProfileRef ref, String profile) throws IOException {
+        long answer = ref.lastModified;
+        if (answer < 0) {
+            GitTreeReader reader = new GitTreeReader(repository);
+            try {
+                answer = reader.getLastModified(ref.commitId, getProfilePath(profile));
+            } finally {
+                reader.release();
             }
+            ref.lastModified = answer;
         }
-        ProfileData profileData = new ProfileData(lastModified, configurations, substituted);
-        data.profiles.put(profile, profileData);
+        return answer;
     }
 
     public List<String> getProfiles(String version) {
         assertValid();
-        VersionData v = getVersionData(version);
-        return v != null && v.profiles != null
-                ? new ArrayList<String>(v.profiles.keySet())
-                : new ArrayList<String>();
+        Set<String> answer = new LinkedHashSet<String>(getBranchData(version).profiles.keySet());
+        answer.addAll(getBranchData(MASTER_BRANCH).profiles.keySet());
+        return new ArrayList<String>(answer);
     }
 
     public boolean hasProfile(String version, String profile) {
         assertValid();
-        VersionData v = getVersionData(version);
-        ProfileData p = v != null && v.profiles != null ? v.profiles.get(profile) : null;
-        return p != null;
+        return getProfileRef(version, profile) != null;
     }
 
     @Override
     public long getLastModified(String version, String profile) {
         assertValid();
-        VersionData v = getVersionData(version);
-        ProfileData p = v != null && v.profiles != null ? v.profiles.get(profile) : null;
-        return p != null ? p.lastModified : 0;
+        ProfileRef ref = getProfileRef(version, profile);
+        if (ref == null) {
+            return 0;
+        }
+        try {
+            return getLastModified(getGit().getRepository(), ref, profile);
+        } catch (IOException e) {
+            throw FabricException.launderThrowable(e);
+        }
     }
 
     public byte[] getFileConfiguration(final String version, final String profile, final String fileName) {
         assertValid();
-        VersionData v = getVersionData(version);
-        ProfileData p = v != null && v.profiles != null ? v.profiles.get(profile) : null;
-        return p != null && p.files != null ? p.files.get(fileName) : null;
+        ProfileData p = getProfileData(version, profile);
+        return p != null ? p.files.get(fileName) : null;
     }
 
     public Map<String, byte[]> getFileConfigurations(String version, String profile) {
         assertValid();
-        VersionData v = getVersionData(version);
-        ProfileData p = v != null && v.profiles != null ? v.profiles.get(profile) : null;
-        return p != null ? p.files : Collections.<String, byte[]>emptyMap();
+        ProfileData p = getProfileData(version, profile);
+        return p != null ? new HashMap<String, byte[]>(p.files) : new HashMap<String, byte[]>();
     }
 
     public Map<String, Map<String, String>> getConfigurations(String version, String profile) {
         assertValid();
-        VersionData v = getVersionData(version);
-        ProfileData p = v != null && v.profiles != null ? v.profiles.get(profile) : null;
-        return p != null ? p.configs : Collections.<String, Map<String, String>>emptyMap();
+        Map<String, Map<String, String>> answer = new HashMap<String, Map<String, String>>();
+        ProfileData p = getProfileData(version, profile);
+        if (p != null) {
+            // the cached data is shared by all the profiles with the same content so hand out copies
+            for (Map.Entry<String, Map<String, String>> entry : p.configs.entrySet()) {
+                answer.put(entry.getKey(), new HashMap<String, String>(entry.getValue()));
+            }
+        }
+        return answer;
     }
 
     public Map<String, String> getConfiguration(String version, String profile, String pid) {
         assertValid();
-        Map<String, Map<String, String>> configs = getConfigurations(version, profile);
-        if (configs.containsKey(pid)) {
-            return configs.get(pid);
-        } else {
-            return new HashMap<String, String>();
-        }
+        ProfileData p = getProfileData(version, profile);
+        Map<String, String> config = p != null ? p.configs.get(pid) : null;
+        return config != null ? new HashMap<String, String>(config) : new HashMap<String, String>();
     }
 
+    /**
+     * Marks the cached branches as stale, only the profiles whose tree changed get reloaded on the next access
+     */
     @Override
     protected void clearCaches() {
         assertValid();
-        cachedVersions.invalidateAll();
+        invalidateBranches();
+    }
+
+    void invalidateBranches() {
+        generation.incrementAndGet();
     }
 
     @Override
@@ -221,18 +365,49 @@ public final class CachingGitDataStore extends GitDataStore {
         return TYPE;
     }
 
-    private static class VersionData {
-        final Map<String, ProfileData> profiles = new HashMap<String, ProfileData>();
+    static class BranchData {
+        final long generation;
+        final ObjectId commitId;
+        final ObjectId profilesTreeId;
+        final Map<String, ProfileRef> profiles;
+        BranchData(long generation, ObjectId commitId, ObjectId profilesTreeId, Map<String, ProfileRef> profiles) {
+            this.generation = generation;
+            this.commitId = commitId;
+            this.profilesTreeId = profilesTreeId;
+            this.profiles = profiles;
+        }
+    }
+
+    static class ProfileRef {
+        final ObjectId treeId;
+        final ObjectId commitId;
+        // -1 until it is read
+        volatile long lastModified = -1;
+        ProfileRef(ObjectId treeId, ObjectId commitId) {
+            this.treeId = treeId;
+            this.commitId = commitId;
+        }
     }
 
-    private static class ProfileData {
-        final long lastModified;
+    static class ProfileData {
         final Map<String, byte[]> files;
-        final Map<String, Map<String, String>> configs;
-        ProfileData(long lastModified, Map<String, byte[]> files, Map<String, Map<String, String>> configs) {
-            this.lastModified = lastModified;
+        final Map<String, Map<String, String>> configs = new HashMap<String, Map<String, String>>();
+        final int weight;
+        ProfileData(Map<String, byte[]> files) throws IOException {
             this.files = files;
-            this.configs = configs;
+            long size = 0;
+            for (Map.Entry<String, byte[]> entry : files.entrySet()) {
+                size += entry.getKey().length() * 2 + entry.getValue().length;
+                if (entry.getKey().endsWith(".properties")) {
+                    String pid = DataStoreHelpers.stripSuffix(entry.getKey(), ".properties");
+                    Map<String, String> config = DataStoreHelpers.toMap(DataStoreHelpers.toProperties(entry.getValue()));
+                    for (Map.Entry<String, String> property : config.entrySet()) {
+                        size += (property.getKey().length() + property.getValue().length()) * 2;
+                    }
+                    configs.put(pid, config);
+                }
+            }
+            this.weight = (int) Math.min(size, Integer.MAX_VALUE);
         }
     }
 }
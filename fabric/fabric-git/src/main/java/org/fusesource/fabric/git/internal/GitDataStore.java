@@ -51,6 +51,8 @@ import org.eclipse.jgit.api.MergeResult;
 import org.eclipse.jgit.api.errors.CannotDeleteCurrentBranchException;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.PersonIdent;
@@ -64,7 +66,9 @@ import org.eclipse.jgit.transport.PushResult;
 import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
 import org.eclipse.jgit.treewalk.AbstractTreeIterator;
 import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+import org.eclipse.jgit.treewalk.TreeWalk;
 import org.fusesource.fabric.api.DataStore;
+import org.fusesource.fabric.api.DataStoreChangeSet;
 import org.fusesource.fabric.api.FabricException;
 import org.fusesource.fabric.api.FabricRequirements;
 import org.fusesource.fabric.api.jcip.GuardedBy;
@@ -91,17 +95,20 @@ import org.slf4j.LoggerFactory;
 public class GitDataStore extends AbstractDataStore<GitDataStore> {
     private static final transient Logger LOG = LoggerFactory.getLogger(GitDataStore.class);
 
-    private static final String MASTER_BRANCH = "master";
+    protected static final String MASTER_BRANCH = "master";
     private static final String CONFIG_ROOT_DIR = "fabric";
 
     public static final String GIT_PULL_PERIOD = "gitPullPeriod";
     public static final String GIT_REMOTE_URL = "gitRemoteUrl";
     public static final String GIT_REMOTE_USER = "gitRemoteUser";
     public static final String GIT_REMOTE_PASSWORD = "gitRemotePassword";
-    public static final String[] SUPPORTED_CONFIGURATION = {DATASTORE_TYPE_PROPERTY, GIT_REMOTE_URL, GIT_REMOTE_USER, GIT_REMOTE_PASSWORD, GIT_PULL_PERIOD};
+    public static final String GIT_OBJECT_READS = "gitObjectReads";
+    public static final String GIT_PROFILE_CACHE_SIZE = "gitProfileCacheSize";
+    public static final String[] SUPPORTED_CONFIGURATION = {DATASTORE_TYPE_PROPERTY, GIT_REMOTE_URL, GIT_REMOTE_USER, GIT_REMOTE_PASSWORD, GIT_PULL_PERIOD, GIT_OBJECT_READS, GIT_PROFILE_CACHE_SIZE};
 
     public static final String CONFIGS = "/" + CONFIG_ROOT_DIR;
     public static final String CONFIGS_PROFILES = CONFIGS + "/profiles";
+    protected static final String PROFILES_PATH = CONFIG_ROOT_DIR + "/profiles";
     public static final String AGENT_METADATA_FILE = "org.fusesource.fabric.agent.properties";
     private static final String PROPERTIES_SUFFIX = ".properties";
     public static final String TYPE = "git";
@@ -118,6 +125,8 @@ public class GitDataStore extends AbstractDataStore<GitDataStore> {
     private final ScheduledExecutorService threadPool = Executors.newSingleThreadScheduledExecutor();
 
     private final Object gitOperationMonitor = new Object();
+    private final Object notifiedBranchesLock = new Object();
+    @GuardedBy("notifiedBranchesLock") private Map<String, ObjectId> notifiedBranches;
     private final Set<String> versions = new CopyOnWriteArraySet<String>();
 
     private final GitListener gitListener = new GitListener() {
@@ -163,6 +172,7 @@ public class GitDataStore extends AbstractDataStore<GitDataStore> {
 
     @GuardedBy("this") private String remoteUrl;
     @GuardedBy("this") private long pullPeriod = 1000;
+    private volatile boolean objectReads = true;
 
     @Override
     protected void activateInternal() {
@@ -171,6 +181,8 @@ public class GitDataStore extends AbstractDataStore<GitDataStore> {
             Map<String, String> configuration = getDataStoreProperties();
             this.pullPeriod = PropertiesHelper.getLongValue(configuration, GIT_PULL_PERIOD, this.pullPeriod);
             this.remoteUrl = configuration.get(GIT_REMOTE_URL);
+            String objectReadsValue = configuration.get(GIT_OBJECT_READS);
+            this.objectReads = objectReadsValue == null || Boolean.parseBoolean(objectReadsValue);
 
             // [FIXME] Why can we not rely on the injected GitService
             GitService optionalService = gitService.getOptional();
@@ -184,6 +196,8 @@ public class GitDataStore extends AbstractDataStore<GitDataStore> {
             }
 
             forceGetVersions();
+            // the changes are notified from now on
+            getChangesSinceLastNotification();
             LOG.info("starting to pull from remote repository every " + pullPeriod + " millis");
             threadPool.scheduleWithFixedDelay(new Runnable() {
                 @Override
@@ -377,7 +391,15 @@ public class GitDataStore extends AbstractDataStore<GitDataStore> {
     @Override
     public List<String> getProfiles(final String version) {
         assertValid();
-        return gitOperation(new GitOperation<List<String>>() {
+        return gitReadOperation(version, new GitReadOperation<List<String>>() {
+            public List<String> call(GitTreeReader reader) throws Exception {
+                List<String> answer = new ArrayList<String>();
+                //We are also checking the master branch for non versioned profiles (e.g. ensemble profiles).
+                doAddProfileNames(answer, reader, MASTER_BRANCH, PROFILES_PATH, "");
+                doAddProfileNames(answer, reader, version, PROFILES_PATH, "");
+                return answer;
+            }
+        }, new GitOperation<List<String>>() {
             public List<String> call(Git git, GitContext context) throws Exception {
                 List<String> answer = new ArrayList<String>();
                 File profilesDir = getProfilesDirectory(git);
@@ -395,6 +417,20 @@ public class GitDataStore extends AbstractDataStore<GitDataStore> {
         }, !hasVersion(version));
     }
 
+    private void doAddProfileNames(List<String> answer, GitTreeReader reader, String branch, String path, String prefix) throws IOException {
+        for (String name : reader.listDirectories(branch, path)) {
+            if (useDirectoriesForProfiles) {
+                if (name.endsWith(PROFILE_FOLDER_SUFFIX)) {
+                    answer.add(prefix + name.substring(0, name.length() - PROFILE_FOLDER_SUFFIX.length()));
+                } else {
+                    doAddProfileNames(answer, reader, branch, path + "/" + name, prefix + name + "-");
+                }
+            } else {
+                answer.add(name);
+            }
+        }
+    }
+
     private void doAddProfileNames(List<String> answer, File profilesDir, String prefix) {
         if (profilesDir.exists()) {
             File[] files = profilesDir.listFiles();
@@ -425,6 +461,13 @@ public class GitDataStore extends AbstractDataStore<GitDataStore> {
         return new File(GitHelpers.getRootGitDirectory(git), GitDataStore.CONFIGS_PROFILES);
     }
 
+    /**
+     * Returns the path of the profile directory relative to the root of the repository
+     */
+    protected String getProfilePath(String profile) {
+        return PROFILES_PATH + "/" + convertProfileIdToDirectory(profile);
+    }
+
     public File getProfileDirectory(Git git, String profile) {
         assertValid();
         File profilesDirectory = getProfilesDirectory(git);
@@ -507,7 +550,12 @@ public class GitDataStore extends AbstractDataStore<GitDataStore> {
     @Override
     public long getLastModified(final String version, final String profile) {
         assertValid();
-        Long answer = gitOperation(new GitOperation<Long>() {
+        final String branch = GitProfiles.getBranch(version, profile);
+        Long answer = gitReadOperation(branch, new GitReadOperation<Long>() {
+            public Long call(GitTreeReader reader) throws Exception {
+                return reader.getLastModified(branch, getProfilePath(profile));
+            }
+        }, new GitOperation<Long>() {
             public Long call(Git git, GitContext context) throws Exception {
                 checkoutVersion(git, GitProfiles.getBranch(version, profile));
                 File profileDirectory = getProfileDirectory(git, profile);
@@ -531,7 +579,17 @@ public class GitDataStore extends AbstractDataStore<GitDataStore> {
     @Override
     public Collection<String> listFiles(final String version, final Iterable<String> profiles, final String path) {
         assertValid();
-        return gitOperation(new GitOperation<Collection<String>>() {
+        return gitReadOperation(version, new GitReadOperation<Collection<String>>() {
+            public Collection<String> call(GitTreeReader reader) throws Exception {
+                SortedSet<String> answer = new TreeSet<String>();
+                for (String profile : profiles) {
+                    String profilePath = getProfilePath(profile);
+                    answer.addAll(reader.list(GitProfiles.getBranch(version, profile),
+                            Strings.isNotBlank(path) ? profilePath + "/" + path : profilePath));
+                }
+                return answer;
+            }
+        }, new GitOperation<Collection<String>>() {
             public Collection<String> call(Git git, GitContext context) throws Exception {
                 SortedSet<String> answer = new TreeSet<String>();
                 for (String profile : profiles) {
@@ -556,7 +614,12 @@ public class GitDataStore extends AbstractDataStore<GitDataStore> {
     @Override
     public Map<String, byte[]> getFileConfigurations(final String version, final String profile) {
         assertValid();
-        return gitOperation(new GitOperation<Map<String, byte[]>>() {
+        final String branch = GitProfiles.getBranch(version, profile);
+        return gitReadOperation(branch, new GitReadOperation<Map<String, byte[]>>() {
+            public Map<String, byte[]> call(GitTreeReader reader) throws Exception {
+                return reader.readFiles(branch, getProfilePath(profile));
+            }
+        }, new GitOperation<Map<String, byte[]>>() {
             public Map<String, byte[]> call(Git git, GitContext context) throws Exception {
                 checkoutVersion(git, GitProfiles.getBranch(version, profile));
                 return doGetFileConfigurations(git, profile);
@@ -609,7 +672,12 @@ public class GitDataStore extends AbstractDataStore<GitDataStore> {
     @Override
     public byte[] getFileConfiguration(final String version, final String profile, final String fileName) {
         assertValid();
-        return gitOperation(new GitOperation<byte[]>() {
+        final String branch = GitProfiles.getBranch(version, profile);
+        return gitReadOperation(branch, new GitReadOperation<byte[]>() {
+            public byte[] call(GitTreeReader reader) throws Exception {
+                return reader.readFile(branch, getProfilePath(profile) + "/" + fileName);
+            }
+        }, new GitOperation<byte[]>() {
             public byte[] call(Git git, GitContext context) throws Exception {
                 checkoutVersion(git, GitProfiles.getBranch(version, profile));
                 File profileDirectory = getProfileDirectory(git, profile);
@@ -716,7 +784,17 @@ public class GitDataStore extends AbstractDataStore<GitDataStore> {
     @Override
     public Map<String, String> getConfiguration(final String version, final String profile, final String pid) {
         assertValid();
-        return gitOperation(new GitOperation<Map<String, String>>() {
+        final String branch = GitProfiles.getBranch(version, profile);
+        return gitReadOperation(branch, new GitReadOperation<Map<String, String>>() {
+            public Map<String, String> call(GitTreeReader reader) throws Exception {
+                String path = getProfilePath(profile) + "/" + pid + PROPERTIES_SUFFIX;
+                if (reader.isFile(branch, path)) {
+                    return DataStoreHelpers.toMap(reader.readFile(branch, path));
+                } else {
+                    return new HashMap<String, String>();
+                }
+            }
+        }, new GitOperation<Map<String, String>>() {
             public Map<String, String> call(Git git, GitContext context) throws Exception {
                 checkoutVersion(git, GitProfiles.getBranch(version, profile));
                 File profileDirectory = getProfileDirectory(git, profile);
@@ -846,6 +924,46 @@ public class GitDataStore extends AbstractDataStore<GitDataStore> {
         return gitService.get().get();
     }
 
+    public boolean isObjectReads() {
+        return objectReads;
+    }
+
+    /**
+     * Sets whether reads come straight from the commits of the local branches rather than the working tree
+     */
+    public void setObjectReads(boolean objectReads) {
+        this.objectReads = objectReads;
+    }
+
+    /**
+     * Performs a read only operation on the local branches without checking them out or taking the lock of the
+     * working tree, so that reads can run concurrently and aren't blocked by pulls and writes.
+     * <p/>
+     * The read doesn't pull, so it sees the local branches as of the last pull, which runs every
+     * {@link #GIT_PULL_PERIOD} milliseconds, plus the local commits. The callers ask for a pull when the version is
+     * not known yet, in which case the given operation on the working tree is used after pulling. That operation is
+     * also used when object reads are disabled or when the branch is not available locally.
+     */
+    public <T> T gitReadOperation(String branch, GitReadOperation<T> operation, GitOperation<T> fallback, boolean pullFirst) {
+        assertValid();
+        if (objectReads && !pullFirst) {
+            GitTreeReader reader = null;
+            try {
+                reader = new GitTreeReader(getGit().getRepository());
+                if (reader.hasBranch(branch)) {
+                    return operation.call(reader);
+                }
+            } catch (Exception e) {
+                throw FabricException.launderThrowable(e);
+            } finally {
+                if (reader != null) {
+                    reader.release();
+                }
+            }
+        }
+        return gitOperation(fallback, pullFirst);
+    }
+
     /**
      * Performs a set of operations on the git repository & avoids concurrency issues
      */
@@ -922,7 +1040,144 @@ public class GitDataStore extends AbstractDataStore<GitDataStore> {
         assertValid();
         LOG.debug("Firing change notifications!");
         clearCaches();
-        runCallbacks();
+        runCallbacks(getChangesSinceLastNotification());
+    }
+
+    /**
+     * Returns the versions and profiles which changed since the previous notification, by diffing the trees of the
+     * local branches whose commit changed. Changes to the master branch apply to all the versions.
+     */
+    protected DataStoreChangeSet getChangesSinceLastNotification() {
+        synchronized (notifiedBranchesLock) {
+            GitTreeReader reader = null;
+            try {
+                Repository repository = getGit().getRepository();
+                reader = new GitTreeReader(repository);
+                Map<String, ObjectId> branches = new HashMap<String, ObjectId>();
+                for (Map.Entry<String, Ref> entry : repository.getRefDatabase().getRefs(Constants.R_HEADS).entrySet()) {
+                    branches.put(entry.getKey(), entry.getValue().getObjectId());
+                }
+                Map<String, ObjectId> previous = notifiedBranches;
+                notifiedBranches = branches;
+                if (previous == null) {
+                    return DataStoreChangeSet.all();
+                }
+                return getChanges(reader, previous, branches);
+            } catch (Exception e) {
+                LOG.warn("Failed to find what changed in the data store, notifying all the changes: " + e, e);
+                notifiedBranches = null;
+                return DataStoreChangeSet.all();
+            } finally {
+                if (reader != null) {
+                    reader.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the versions and profiles which changed between the two given commits of each local branch
+     */
+    DataStoreChangeSet getChanges(GitTreeReader reader, Map<String, ObjectId> previous, Map<String, ObjectId> branches) throws IOException {
+        Set<String> versions = new HashSet<String>(branches.keySet());
+        versions.addAll(previous.keySet());
+        versions.remove(MASTER_BRANCH);
+        DataStoreChangeSet.Builder changes = DataStoreChangeSet.builder();
+        Set<String> names = new HashSet<String>(versions);
+        names.add(MASTER_BRANCH);
+        for (String branch : names) {
+            ObjectId oldCommit = previous.get(branch);
+            ObjectId newCommit = branches.get(branch);
+            if (oldCommit == null ? newCommit == null : oldCommit.equals(newCommit)) {
+                continue;
+            }
+            if (oldCommit == null || newCommit == null) {
+                if (MASTER_BRANCH.equals(branch)) {
+                    changes.all();
+                } else {
+                    changes.version(branch);
+                }
+            } else {
+                addBranchChanges(reader, branch, oldCommit, newCommit, versions, changes);
+            }
+        }
+        return changes.build();
+    }
+
+    private void addBranchChanges(GitTreeReader reader, String branch, ObjectId oldCommit, ObjectId newCommit, Set<String> versions, DataStoreChangeSet.Builder changes) throws IOException {
+        ObjectId oldTree = reader.getTreeId(oldCommit);
+        ObjectId newTree = reader.getTreeId(newCommit);
+        boolean master = MASTER_BRANCH.equals(branch);
+
+        // any change outside of the profiles is considered a change of the whole version; the walk only
+        // enters the directories which differ and leaves the profiles to addProfileChanges
+        TreeWalk walk = reader.openDiff(oldTree, newTree);
+        try {
+            while (walk.next()) {
+                if (walk.isSubtree()) {
+                    if (!PROFILES_PATH.equals(walk.getPathString())) {
+                        walk.enterSubtree();
+                    }
+                } else {
+                    if (master) {
+                        changes.all();
+                    } else {
+                        changes.version(branch);
+                    }
+                    return;
+                }
+            }
+        } finally {
+            walk.release();
+        }
+
+        Map<String, ObjectId> profileChanges = new HashMap<String, ObjectId>();
+        addProfileChanges(reader, reader.getObjectId(oldTree, PROFILES_PATH), reader.getObjectId(newTree, PROFILES_PATH), "", profileChanges);
+        for (String profile : profileChanges.keySet()) {
+            if (master) {
+                for (String version : versions) {
+                    changes.profile(version, profile);
+                }
+            } else {
+                changes.profile(branch, profile);
+            }
+        }
+    }
+
+    /**
+     * Adds the profiles whose tree differs between the two given directories, with their new tree id or null if
+     * they have been removed. Directories which aren't profiles are only walked into if they differ.
+     */
+    protected void addProfileChanges(GitTreeReader reader, ObjectId oldTreeId, ObjectId newTreeId, String prefix, Map<String, ObjectId> changes) throws IOException {
+        List<ObjectId[]> children = new ArrayList<ObjectId[]>();
+        List<String> childPrefixes = new ArrayList<String>();
+        TreeWalk walk = reader.openDiff(oldTreeId, newTreeId);
+        try {
+            while (walk.next()) {
+                String name = walk.getNameString();
+                ObjectId oldId = walk.getFileMode(0) == FileMode.TREE ? walk.getObjectId(0) : null;
+                ObjectId newId = walk.getFileMode(1) == FileMode.TREE ? walk.getObjectId(1) : null;
+                if (oldId == null && newId == null) {
+                    continue;
+                }
+                if (useDirectoriesForProfiles) {
+                    if (name.endsWith(PROFILE_FOLDER_SUFFIX)) {
+                        changes.put(prefix + name.substring(0, name.length() - PROFILE_FOLDER_SUFFIX.length()), newId);
+                    } else {
+                        children.add(new ObjectId[]{oldId, newId});
+                        childPrefixes.add(prefix + name + "-");
+                    }
+                } else {
+                    changes.put(name, newId);
+                }
+            }
+        } finally {
+            walk.release();
+        }
+        for (int i = 0; i < children.size(); i++) {
+            ObjectId[] ids = children.get(i);
+            addProfileChanges(reader, ids[0], ids[1], childPrefixes.get(i), changes);
+        }
     }
 
     /**
@@ -0,0 +1,317 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.fabric.git.internal;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.AbstractTreeIterator;
+import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilter;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+/**
+ * Reads files and directories straight from the commits of local branches, without checking them out.
+ * <p/>
+ * Each branch is resolved once, the first time it is used, so all the reads of a reader see the same
+ * commit even if the branch is updated meanwhile. Git objects never change, so readers don't need to
+ * hold any lock and may run concurrently with each other and with operations on the working tree.
+ * A reader is not thread safe and must be released once it is no longer needed.
+ */
+public class GitTreeReader {
+
+    private final Repository repository;
+    private final ObjectReader reader;
+    private final RevWalk revWalk;
+    private final Map<String, RevCommit> commits = new HashMap<String, RevCommit>();
+
+    public GitTreeReader(Repository repository) {
+        this.repository = repository;
+        this.reader = repository.newObjectReader();
+        this.revWalk = new RevWalk(reader);
+    }
+
+    public void release() {
+        revWalk.release();
+        reader.release();
+    }
+
+    /**
+     * Returns the head commit of the local branch or null if there is no such branch
+     */
+    public RevCommit getCommit(String branch) throws IOException {
+        if (!commits.containsKey(branch)) {
+            Ref ref = repository.getRefDatabase().getRef(Constants.R_HEADS + branch);
+            RevCommit commit = null;
+            if (ref != null && ref.getObjectId() != null) {
+                commit = revWalk.parseCommit(ref.getObjectId());
+            }
+            commits.put(branch, commit);
+        }
+        return commits.get(branch);
+    }
+
+    public boolean hasBranch(String branch) throws IOException {
+        return getCommit(branch) != null;
+    }
+
+    /**
+     * Returns the id of the tree or blob at the given path of the branch, or null if there is none
+     */
+    public ObjectId getObjectId(String branch, String path) throws IOException {
+        TreeWalk walk = find(branch, path);
+        if (walk == null) {
+            return null;
+        }
+        try {
+            return walk.getObjectId(0);
+        } finally {
+            walk.release();
+        }
+    }
+
+    /**
+     * Returns the id of the root tree of the given commit
+     */
+    public ObjectId getTreeId(ObjectId commitId) throws IOException {
+        return revWalk.parseCommit(commitId).getTree().copy();
+    }
+
+    /**
+     * Returns the id of the tree or blob at the given path of the tree, or null if there is none
+     */
+    public ObjectId getObjectId(ObjectId treeId, String path) throws IOException {
+        TreeWalk walk = TreeWalk.forPath(reader, path, treeId);
+        if (walk == null) {
+            return null;
+        }
+        try {
+            return walk.getObjectId(0);
+        } finally {
+            walk.release();
+        }
+    }
+
+    public boolean exists(String branch, String path) throws IOException {
+        return getObjectId(branch, path) != null;
+    }
+
+    public boolean isFile(String branch, String path) throws IOException {
+        TreeWalk walk = find(branch, path);
+        if (walk == null) {
+            return false;
+        }
+        try {
+            return walk.getFileMode(0) != FileMode.TREE;
+        } finally {
+            walk.release();
+        }
+    }
+
+    /**
+     * Returns the names of the directories directly under the given path
+     */
+    public List<String> listDirectories(String branch, String path) throws IOException {
+        return list(branch, path, true);
+    }
+
+    /**
+     * Returns the names of the files and directories directly under the given path
+     */
+    public List<String> list(String branch, String path) throws IOException {
+        return list(branch, path, false);
+    }
+
+    private List<String> list(String branch, String path, boolean directoriesOnly) throws IOException {
+        List<String> answer = new ArrayList<String>();
+        TreeWalk walk = openDirectory(branch, path, false);
+        if (walk != null) {
+            try {
+                while (walk.next()) {
+                    if (!directoriesOnly || walk.isSubtree()) {
+                        answer.add(walk.getNameString());
+                    }
+                }
+            } finally {
+                walk.release();
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Returns the content of the file at the given path, or null if there is none. Like the data store does for
+     * files in the working tree, a directory is read as a "name = content" line per file in it.
+     */
+    public byte[] readFile(String branch, String path) throws IOException {
+        TreeWalk walk = find(branch, path);
+        if (walk == null) {
+            return null;
+        }
+        try {
+            if (walk.getFileMode(0) != FileMode.TREE) {
+                return readBlob(walk.getObjectId(0));
+            }
+        } finally {
+            walk.release();
+        }
+        StringBuilder buf = new StringBuilder();
+        walk = openDirectory(branch, path, false);
+        try {
+            while (walk.next()) {
+                if (!walk.isSubtree()) {
+                    String value = new String(readBlob(walk.getObjectId(0)));
+                    buf.append(String.format("%s = %s\n", walk.getNameString(), value));
+                }
+            }
+        } finally {
+            walk.release();
+        }
+        return buf.toString().getBytes();
+    }
+
+    /**
+     * Returns the content of all the files under the given directory keyed by their path relative to it
+     */
+    public Map<String, byte[]> readFiles(String branch, String path) throws IOException {
+        Map<String, byte[]> answer = new HashMap<String, byte[]>();
+        TreeWalk walk = openDirectory(branch, path, true);
+        if (walk != null) {
+            readFiles(walk, answer);
+        }
+        return answer;
+    }
+
+    /**
+     * Returns the content of all the files under the given tree keyed by their path relative to it
+     */
+    public Map<String, byte[]> readTree(ObjectId treeId) throws IOException {
+        Map<String, byte[]> answer = new HashMap<String, byte[]>();
+        TreeWalk walk = new TreeWalk(reader);
+        walk.addTree(treeId);
+        walk.setRecursive(true);
+        readFiles(walk, answer);
+        return answer;
+    }
+
+    private void readFiles(TreeWalk walk, Map<String, byte[]> answer) throws IOException {
+        try {
+            while (walk.next()) {
+                answer.put(walk.getPathString(), readBlob(walk.getObjectId(0)));
+            }
+        } finally {
+            walk.release();
+        }
+    }
+
+    /**
+     * Returns a walk over the entries directly under two trees which differ between them, the old tree being
+     * the first of the walk. Either tree may be null to stand for an empty tree, and entries missing from one of
+     * the trees have the {@link FileMode#MISSING} mode in it. Unchanged subtrees are skipped without being read.
+     */
+    public TreeWalk openDiff(ObjectId oldTreeId, ObjectId newTreeId) throws IOException {
+        TreeWalk walk = new TreeWalk(reader);
+        walk.addTree(treeIterator(oldTreeId));
+        walk.addTree(treeIterator(newTreeId));
+        walk.setFilter(TreeFilter.ANY_DIFF);
+        return walk;
+    }
+
+    private AbstractTreeIterator treeIterator(ObjectId treeId) throws IOException {
+        return treeId != null ? new CanonicalTreeParser(null, reader, treeId) : new EmptyTreeIterator();
+    }
+
+    /**
+     * Returns the time in milliseconds of the last commit of the branch which changed the given path, or 0 if the
+     * path doesn't exist
+     */
+    public long getLastModified(String branch, String path) throws IOException {
+        RevCommit commit = getCommit(branch);
+        return commit != null ? getLastModified(commit, path) : 0;
+    }
+
+    /**
+     * Returns the time in milliseconds of the last commit reachable from the given one which changed the given path,
+     * or 0 if the path doesn't exist in that commit
+     */
+    public long getLastModified(ObjectId commitId, String path) throws IOException {
+        if (getObjectId(getTreeId(commitId), path) == null) {
+            return 0;
+        }
+        RevWalk walk = new RevWalk(reader);
+        try {
+            walk.setTreeFilter(AndTreeFilter.create(PathFilter.create(path), TreeFilter.ANY_DIFF));
+            walk.markStart(walk.parseCommit(commitId));
+            RevCommit commit = walk.next();
+            return commit != null ? commit.getCommitTime() * 1000L : 0;
+        } finally {
+            walk.release();
+        }
+    }
+
+    protected byte[] readBlob(ObjectId id) throws IOException {
+        return reader.open(id, Constants.OBJ_BLOB).getBytes();
+    }
+
+    /**
+     * Returns a walk positioned on the given path or null if the branch or the path doesn't exist
+     */
+    protected TreeWalk find(String branch, String path) throws IOException {
+        RevCommit commit = getCommit(branch);
+        if (commit == null) {
+            return null;
+        }
+        return TreeWalk.forPath(reader, path, commit.getTree());
+    }
+
+    /**
+     * Returns a walk over the entries of the directory at the given path, or null if there is no such directory
+     */
+    protected TreeWalk openDirectory(String branch, String path, boolean recursive) throws IOException {
+        TreeWalk entry = find(branch, path);
+        if (entry == null) {
+            return null;
+        }
+        ObjectId id;
+        try {
+            if (entry.getFileMode(0) != FileMode.TREE) {
+                return null;
+            }
+            id = entry.getObjectId(0);
+        } finally {
+            entry.release();
+        }
+        TreeWalk walk = new TreeWalk(reader);
+        walk.addTree(id);
+        walk.setRecursive(recursive);
+        return walk;
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.fabric.git.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.util.FileUtils;
+import org.fusesource.fabric.git.internal.CachingGitDataStore.BranchData;
+import org.fusesource.fabric.git.internal.CachingGitDataStore.ProfileData;
+import org.fusesource.fabric.git.internal.CachingGitDataStore.ProfileRef;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CachingGitDataStoreTest {
+
+    private File root;
+    private Git git;
+    private CachingGitDataStore dataStore;
+
+    @Before
+    public void setUp() throws Exception {
+        String basedir = System.getProperty("basedir", ".");
+        root = new File(basedir + "/target/git-caching").getCanonicalFile();
+        FileUtils.delete(root, FileUtils.RECURSIVE | FileUtils.SKIP_MISSING);
+        root.mkdirs();
+        git = Git.init().setDirectory(root).call();
+
+        write("fabric/profiles/default.profile/org.fusesource.fabric.agent.properties", "repository.fabric=mvn:fabric");
+        write("fabric/profiles/mq.profile/org.fusesource.mq.fabric.server.properties", "standby.pool=default");
+        commit("First Commit");
+        git.checkout().setCreateBranch(true).setName("1.0").call();
+
+        dataStore = new CachingGitDataStore();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        git.getRepository().close();
+    }
+
+    @Test
+    public void testChangedProfileIsReloaded() throws Exception {
+        ProfileRef mq = getProfileRef("mq");
+        assertEquals("default", getProfileData(mq).configs.get("org.fusesource.mq.fabric.server").get("standby.pool"));
+
+        write("fabric/profiles/mq.profile/org.fusesource.mq.fabric.server.properties", "standby.pool=other");
+        commit("Change of the mq profile");
+        // the branch isn't read again until the caches are cleared
+        assertSame(mq, getProfileRef("mq"));
+
+        dataStore.invalidateBranches();
+        ProfileRef changed = getProfileRef("mq");
+        assertNotSame(mq, changed);
+        assertEquals("other", getProfileData(changed).configs.get("org.fusesource.mq.fabric.server").get("standby.pool"));
+    }
+
+    @Test
+    public void testUnchangedProfileKeepsItsCacheEntry() throws Exception {
+        ProfileRef ref = getProfileRef("default");
+        ProfileData data = getProfileData(ref);
+
+        write("fabric/profiles/mq.profile/org.fusesource.mq.fabric.server.properties", "standby.pool=other");
+        commit("Change of the mq profile");
+        dataStore.invalidateBranches();
+
+        assertSame(ref, getProfileRef("default"));
+        assertTrue(dataStore.isProfileDataCached(ref.treeId));
+        assertSame(data, getProfileData(ref));
+    }
+
+    @Test
+    public void testDeletedProfileAndBranch() throws Exception {
+        assertTrue(getBranchData().profiles.containsKey("mq"));
+
+        git.rm().addFilepattern("fabric/profiles/mq.profile").call();
+        commit("Removal of the mq profile");
+        dataStore.invalidateBranches();
+        assertFalse(getBranchData().profiles.containsKey("mq"));
+        assertTrue(getBranchData().profiles.containsKey("default"));
+
+        git.checkout().setName("master").call();
+        git.branchDelete().setBranchNames("1.0").setForce(true).call();
+        dataStore.invalidateBranches();
+        assertTrue(getBranchData().profiles.isEmpty());
+        assertEquals(null, getBranchData().commitId);
+    }
+
+    @Test
+    public void testProfileCacheSizeIsHonoured() throws Exception {
+        ProfileRef ref = getProfileRef("default");
+        getProfileData(ref);
+        assertTrue(dataStore.isProfileDataCached(ref.treeId));
+
+        // a profile bigger than the cache is read but not kept
+        dataStore.setProfileCacheSize(1);
+        ProfileData data = getProfileData(ref);
+        assertEquals("mvn:fabric", data.configs.get("org.fusesource.fabric.agent").get("repository.fabric"));
+        assertFalse(dataStore.isProfileDataCached(ref.treeId));
+    }
+
+    @Test
+    public void testLastModifiedIsReadOnDemand() throws Exception {
+        RevCommit first = git.log().call().iterator().next();
+        ProfileRef ref = getProfileRef("default");
+        assertEquals(-1, ref.lastModified);
+
+        assertEquals(first.getCommitTime() * 1000L, dataStore.getLastModified(git.getRepository(), ref, "default"));
+        assertEquals(first.getCommitTime() * 1000L, ref.lastModified);
+    }
+
+    private BranchData getBranchData() throws IOException {
+        return dataStore.getBranchData(git.getRepository(), "1.0");
+    }
+
+    private ProfileRef getProfileRef(String profile) throws IOException {
+        return getBranchData().profiles.get(profile);
+    }
+
+    private ProfileData getProfileData(ProfileRef ref) {
+        return dataStore.getProfileData(git.getRepository(), ref.treeId);
+    }
+
+    private void write(String path, String content) throws IOException {
+        File file = new File(root, path);
+        file.getParentFile().mkdirs();
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private void commit(String message) throws Exception {
+        git.add().addFilepattern("fabric").call();
+        git.commit().setMessage(message).setCommitter("fabric", "user@fabric").call();
+    }
+}
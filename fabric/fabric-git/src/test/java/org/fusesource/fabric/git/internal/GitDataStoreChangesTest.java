@@ -0,0 +1,123 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.fabric.git.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.util.FileUtils;
+import org.fusesource.fabric.api.DataStoreChangeSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GitDataStoreChangesTest {
+
+    private File root;
+    private Git git;
+    private GitDataStore dataStore;
+
+    @Before
+    public void setUp() throws Exception {
+        String basedir = System.getProperty("basedir", ".");
+        root = new File(basedir + "/target/git-changes").getCanonicalFile();
+        FileUtils.delete(root, FileUtils.RECURSIVE | FileUtils.SKIP_MISSING);
+        root.mkdirs();
+        git = Git.init().setDirectory(root).call();
+
+        write("fabric/profiles/default.profile/org.fusesource.fabric.agent.properties", "repository.fabric=mvn:fabric");
+        write("fabric/profiles/mq.profile/org.fusesource.mq.fabric.server.properties", "standby.pool=default");
+        commit("First Commit");
+        git.checkout().setCreateBranch(true).setName("1.0").call();
+
+        dataStore = new GitDataStore();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        git.getRepository().close();
+    }
+
+    @Test
+    public void testChangeOutsideOfProfilesChangesTheVersion() throws Exception {
+        Map<String, ObjectId> previous = getBranches();
+        write("fabric/configs/containers.properties", "root=1.0");
+        commit("Change outside of the profiles");
+
+        DataStoreChangeSet changes = getChanges(previous);
+        assertFalse(changes.isFull());
+        assertEquals(Collections.singleton("1.0"), changes.getVersions());
+    }
+
+    @Test
+    public void testProfileChangeOnlyChangesTheProfile() throws Exception {
+        Map<String, ObjectId> previous = getBranches();
+        write("fabric/profiles/mq.profile/org.fusesource.mq.fabric.server.properties", "standby.pool=other");
+        commit("Change of the mq profile");
+
+        DataStoreChangeSet changes = getChanges(previous);
+        assertTrue(changes.getVersions().isEmpty());
+        assertEquals(Collections.singleton("mq"), changes.getProfiles("1.0"));
+        assertTrue(changes.affectsProfile("1.0", "mq"));
+        assertFalse(changes.affectsProfile("1.0", "default"));
+    }
+
+    private DataStoreChangeSet getChanges(Map<String, ObjectId> previous) throws IOException {
+        GitTreeReader reader = new GitTreeReader(git.getRepository());
+        try {
+            return dataStore.getChanges(reader, previous, getBranches());
+        } finally {
+            reader.release();
+        }
+    }
+
+    private Map<String, ObjectId> getBranches() throws IOException {
+        Map<String, ObjectId> branches = new HashMap<String, ObjectId>();
+        for (Map.Entry<String, Ref> entry : git.getRepository().getRefDatabase().getRefs(Constants.R_HEADS).entrySet()) {
+            branches.put(entry.getKey(), entry.getValue().getObjectId());
+        }
+        return branches;
+    }
+
+    private void write(String path, String content) throws IOException {
+        File file = new File(root, path);
+        file.getParentFile().mkdirs();
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private void commit(String message) throws Exception {
+        git.add().addFilepattern("fabric").call();
+        git.commit().setMessage(message).setCommitter("fabric", "user@fabric").call();
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.fabric.git.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GitTreeReaderTest {
+
+    private File root;
+    private Git git;
+    private RevCommit first;
+    private GitTreeReader reader;
+
+    @Before
+    public void setUp() throws Exception {
+        String basedir = System.getProperty("basedir", ".");
+        root = new File(basedir + "/target/git-reader").getCanonicalFile();
+        FileUtils.delete(root, FileUtils.RECURSIVE | FileUtils.SKIP_MISSING);
+        root.mkdirs();
+        git = Git.init().setDirectory(root).call();
+
+        write("fabric/profiles/default.profile/org.fusesource.fabric.agent.properties", "repository.fabric=mvn:fabric");
+        write("fabric/profiles/mq.profile/org.fusesource.mq.fabric.server.properties", "standby.pool=default");
+        write("fabric/profiles/mq.profile/broker.xml", "<broker/>");
+        first = commit("First Commit");
+        git.checkout().setCreateBranch(true).setName("1.0").call();
+
+        reader = new GitTreeReader(git.getRepository());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        reader.release();
+        git.getRepository().close();
+    }
+
+    @Test
+    public void testReadProfile() throws Exception {
+        Map<String, byte[]> files = reader.readFiles("1.0", "fabric/profiles/mq.profile");
+        assertEquals(new HashSet<String>(Arrays.asList("org.fusesource.mq.fabric.server.properties", "broker.xml")), files.keySet());
+        assertEquals("<broker/>", new String(files.get("broker.xml")));
+        assertEquals("standby.pool=default", new String(reader.readFile("1.0", "fabric/profiles/mq.profile/org.fusesource.mq.fabric.server.properties")));
+        assertTrue(reader.isFile("1.0", "fabric/profiles/mq.profile/broker.xml"));
+        assertFalse(reader.isFile("1.0", "fabric/profiles/mq.profile"));
+    }
+
+    @Test
+    public void testListChildren() throws Exception {
+        assertEquals(Arrays.asList("default.profile", "mq.profile"), reader.listDirectories("1.0", "fabric/profiles"));
+        assertEquals(Arrays.asList("broker.xml", "org.fusesource.mq.fabric.server.properties"), reader.list("1.0", "fabric/profiles/mq.profile"));
+        assertEquals(Collections.<String>emptyList(), reader.listDirectories("1.0", "fabric/profiles/mq.profile"));
+    }
+
+    @Test
+    public void testMissingPaths() throws Exception {
+        assertFalse(reader.exists("1.0", "fabric/profiles/missing.profile"));
+        assertNull(reader.readFile("1.0", "fabric/profiles/missing.profile/broker.xml"));
+        assertTrue(reader.readFiles("1.0", "fabric/profiles/missing.profile").isEmpty());
+        assertTrue(reader.list("1.0", "fabric/profiles/missing.profile").isEmpty());
+        assertEquals(0, reader.getLastModified("1.0", "fabric/profiles/missing.profile"));
+
+        assertFalse(reader.hasBranch("2.0"));
+        assertNull(reader.readFile("2.0", "fabric/profiles/mq.profile/broker.xml"));
+        assertTrue(reader.list("2.0", "fabric/profiles").isEmpty());
+    }
+
+    @Test
+    public void testLastModified() throws Exception {
+        // make sure the second commit has a different time
+        Thread.sleep(1000);
+        write("fabric/profiles/mq.profile/broker.xml", "<broker useJmx=\"true\"/>");
+        RevCommit second = commit("Change of the mq profile");
+
+        GitTreeReader current = new GitTreeReader(git.getRepository());
+        try {
+            assertEquals(first.getCommitTime() * 1000L, current.getLastModified("1.0", "fabric/profiles/default.profile"));
+            assertEquals(second.getCommitTime() * 1000L, current.getLastModified("1.0", "fabric/profiles/mq.profile"));
+            assertEquals(first.getCommitTime() * 1000L, current.getLastModified(first, "fabric/profiles/mq.profile"));
+        } finally {
+            current.release();
+        }
+    }
+
+    @Test
+    public void testReaderSeesTheBranchAsOfItsFirstUse() throws Exception {
+        assertEquals("<broker/>", new String(reader.readFile("1.0", "fabric/profiles/mq.profile/broker.xml")));
+        write("fabric/profiles/mq.profile/broker.xml", "<broker useJmx=\"true\"/>");
+        commit("Change of the mq profile");
+        assertEquals("<broker/>", new String(reader.readFile("1.0", "fabric/profiles/mq.profile/broker.xml")));
+    }
+
+    private void write(String path, String content) throws IOException {
+        File file = new File(root, path);
+        file.getParentFile().mkdirs();
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private RevCommit commit(String message) throws Exception {
+        git.add().addFilepattern("fabric").call();
+        return git.commit().setMessage(message).setCommitter("fabric", "user@fabric").call();
+    }
+}
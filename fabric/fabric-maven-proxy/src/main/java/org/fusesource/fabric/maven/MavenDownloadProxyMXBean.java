@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) FuseSource, Inc.
+ *   http://fusesource.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.fusesource.fabric.maven;
+
+import java.util.Map;
+
+/**
+ * JMX MBean API for the statistics of the maven download proxy
+ */
+public interface MavenDownloadProxyMXBean {
+
+    /**
+     * Returns the number of artifact requests received
+     */
+    long getRequests();
+
+    /**
+     * Returns the number of requests answered from the resolution cache
+     */
+    long getCacheHits();
+
+    /**
+     * Returns the number of requests which joined the download of the same artifact already in progress
+     */
+    long getCoalescedRequests();
+
+    /**
+     * Returns the number of requests rejected because the download queue was full
+     */
+    long getRejectedRequests();
+
+    /**
+     * Returns the ratio of requests answered without a new resolution to all requests
+     */
+    double getHitRatio();
+
+    /**
+     * Returns the number of downloads currently running
+     */
+    int getInFlightDownloads();
+
+    /**
+     * Returns the number of downloads waiting for a worker
+     */
+    int getQueueDepth();
+
+    /**
+     * Returns the number of transfers currently running, keyed by remote repository url
+     */
+    Map<String, Integer> getRepositoryTransfers();
+
+    /**
+     * Returns the number of transfers waiting for their turn, keyed by remote repository url
+     */
+    Map<String, Integer> getRepositoryQueueDepths();
+
+    /**
+     * Returns the average duration in milliseconds of the transfers, keyed by remote repository url
+     */
+    Map<String, Long> getRepositoryLatencies();
+
+    /**
+     * Resets the statistics
+     */
+    void resetStatistics();
+}
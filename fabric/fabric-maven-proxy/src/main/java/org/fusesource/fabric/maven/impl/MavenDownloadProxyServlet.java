@@ -18,38 +18,179 @@
 package org.fusesource.fabric.maven.impl;
 
 import org.fusesource.fabric.internal.FabricConstants;
+import org.fusesource.fabric.maven.MavenDownloadProxyMXBean;
 import org.fusesource.fabric.utils.Closeables;
-import org.fusesource.fabric.utils.Files;
+import org.sonatype.aether.RepositorySystem;
+import org.sonatype.aether.RepositorySystemSession;
+import org.sonatype.aether.util.DefaultRepositorySystemSession;
 
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 
 
-public class MavenDownloadProxyServlet extends MavenProxyServletSupport {
+public class MavenDownloadProxyServlet extends MavenProxyServletSupport implements MavenDownloadProxyMXBean {
+
+    public static final int DEFAULT_MAX_DOWNLOADS = 16;
+    public static final int DEFAULT_MAX_DOWNLOADS_PER_REPOSITORY = 4;
+    public static final int DEFAULT_MAX_QUEUED_DOWNLOADS = 1000;
+    public static final long DEFAULT_NEGATIVE_CACHE_TIMEOUT = 30000L;
+
+    static final int MAX_CACHED_RESOLUTIONS = 10000;
+
+    private static final long[] UNSATISFIABLE_RANGE = new long[0];
 
     private ConcurrentMap<String, ArtifactDownloadFuture> requestMap = new ConcurrentHashMap<String, ArtifactDownloadFuture>();
-    private ExecutorService executorService = Executors.newCachedThreadPool();
+    private volatile ThreadPoolExecutor executorService;
+    private RepositoryTransferListener transferListener;
+    private int maxDownloads = DEFAULT_MAX_DOWNLOADS;
+    private int maxDownloadsPerRepository = DEFAULT_MAX_DOWNLOADS_PER_REPOSITORY;
+    private int maxQueuedDownloads = DEFAULT_MAX_QUEUED_DOWNLOADS;
+    private volatile long negativeCacheTimeout = DEFAULT_NEGATIVE_CACHE_TIMEOUT;
+    private ObjectName objectName;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong coalescedRequests = new AtomicLong();
+    private final AtomicLong rejectedRequests = new AtomicLong();
+    private final Map<String, CachedResolution> resolutions = new LinkedHashMap<String, CachedResolution>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedResolution> eldest) {
+            return size() > MAX_CACHED_RESOLUTIONS;
+        }
+    };
 
 
     public MavenDownloadProxyServlet(String localRepository, String remoteRepositories, boolean appendSystemRepos, String updatePolicy, String checksumPolicy, String proxyProtocol, String proxyHost, int proxyPort, String proxyUsername, String proxyPassword, String proxyNonProxyHosts) {
         super(localRepository, remoteRepositories, appendSystemRepos, updatePolicy, checksumPolicy, proxyProtocol, proxyHost, proxyPort, proxyUsername, proxyPassword, proxyNonProxyHosts);
     }
 
+    @Override
+    public synchronized void start() throws IOException {
+        if (transferListener == null) {
+            transferListener = new RepositoryTransferListener(maxDownloadsPerRepository);
+        }
+        super.start();
+        if (executorService == null) {
+            executorService = new ThreadPoolExecutor(maxDownloads, maxDownloads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(maxQueuedDownloads), new ThreadFactory() {
+                private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "fabric-maven-proxy-" + threadNumber.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executorService.allowCoreThreadTimeOut(true);
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        super.stop();
+        if (executorService != null) {
+            // The requests waiting for a download which never started are rejected rather than left hanging
+            for (Runnable download : executorService.shutdownNow()) {
+                ((Future<?>) download).cancel(false);
+            }
+            executorService = null;
+        }
+        synchronized (resolutions) {
+            resolutions.clear();
+        }
+    }
+
+    @Override
+    protected RepositorySystemSession newSession(RepositorySystem system, String localRepository) {
+        DefaultRepositorySystemSession session = (DefaultRepositorySystemSession) super.newSession(system, localRepository);
+        if (transferListener != null) {
+            session.setTransferListener(transferListener);
+        }
+        return session;
+    }
+
+    public int getMaxDownloads() {
+        return maxDownloads;
+    }
+
+    /**
+     * Sets the number of workers resolving artifacts, to be called before the proxy is started
+     */
+    public void setMaxDownloads(int maxDownloads) {
+        this.maxDownloads = maxDownloads;
+    }
+
+    public int getMaxDownloadsPerRepository() {
+        return maxDownloadsPerRepository;
+    }
+
+    /**
+     * Sets the number of concurrent transfers from each remote repository, to be called before the proxy is started
+     */
+    public void setMaxDownloadsPerRepository(int maxDownloadsPerRepository) {
+        this.maxDownloadsPerRepository = maxDownloadsPerRepository;
+    }
+
+    public int getMaxQueuedDownloads() {
+        return maxQueuedDownloads;
+    }
+
+    /**
+     * Sets the number of downloads waiting for a worker beyond which requests are rejected, to be called before
+     * the proxy is started
+     */
+    public void setMaxQueuedDownloads(int maxQueuedDownloads) {
+        this.maxQueuedDownloads = maxQueuedDownloads;
+    }
+
+    public long getNegativeCacheTimeout() {
+        return negativeCacheTimeout;
+    }
+
+    /**
+     * Sets how long, in milliseconds, a path that couldn't be resolved is remembered as missing, 0 to always resolve
+     * it again
+     */
+    public void setNegativeCacheTimeout(long negativeCacheTimeout) {
+        this.negativeCacheTimeout = negativeCacheTimeout;
+    }
+
+    /**
+     * Forgets the resolution of the given path, so that the next request for it goes through Aether again
+     */
+    public void evict(String path) {
+        synchronized (resolutions) {
+            resolutions.remove(path);
+        }
+    }
+
     @Override
     protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
         super.doPost(req, resp);
@@ -62,79 +203,393 @@ public class MavenDownloadProxyServlet extends MavenProxyServletSupport {
 
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-        InputStream is = null;
-        BufferedInputStream bis = null;
-        File artifactFile = null;
-        ArtifactDownloadFuture masterFuture = null;
-
         try {
             String path = req.getPathInfo();
             if (path != null && path.startsWith("/")) {
                 path = path.substring(1);
             }
 
+            File artifactFile = resolve(path);
+            if (artifactFile == null) {
+                resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+            LOGGER.log(Level.INFO, String.format("Writing response for file : %s", path));
+            send(req, resp, artifactFile);
+        } catch (RejectedExecutionException ex) {
+            LOGGER.warning("Rejecting request for:" + req.getPathInfo() + " (" + ex.getMessage() + ")");
+            resp.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            resp.setHeader("Retry-After", "10");
+        } catch (Exception ex) {
+            LOGGER.warning("Error while downloading artifact:" + ex.getMessage());
+            if (!resp.isCommitted()) {
+                // A download interrupted by stopping the proxy is not an error of the artifact
+                resp.setStatus(executorService == null ? HttpServletResponse.SC_SERVICE_UNAVAILABLE : HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            }
+        }
+    }
+
+    /**
+     * Resolves the file of the requested path, using the resolution cache when possible so that repeated requests
+     * for the same artifact don't go through Aether again
+     */
+    protected File resolve(String path) throws Exception {
+        requests.incrementAndGet();
+        CachedResolution cached = getCachedResolution(path);
+        if (cached != null) {
+            cacheHits.incrementAndGet();
+            return cached.file;
+        }
+
+        ThreadPoolExecutor executor = executorService;
+        if (executor == null) {
+            throw new RejectedExecutionException("The maven proxy is stopped");
+        }
+
+        // The download stays registered until the artifact is in the local repository and its resolution is
+        // cached, so that any request for the same path arriving meanwhile joins it
+        ArtifactDownloadFuture future = new ArtifactDownloadFuture(path);
+        ArtifactDownloadFuture masterFuture = requestMap.putIfAbsent(path, future);
+        if (masterFuture == null) {
+            masterFuture = future;
             try {
-                ArtifactDownloadFuture future = new ArtifactDownloadFuture(path);
-                masterFuture = requestMap.putIfAbsent(path, future);
-                if (masterFuture == null) {
-                    masterFuture = future;
-                    executorService.submit(future);
-                    artifactFile = masterFuture.get();
-                } else {
-                    artifactFile = masterFuture.get();
+                executor.execute(future);
+            } catch (RejectedExecutionException e) {
+                rejectedRequests.incrementAndGet();
+                future.cancel(false);
+                throw new RejectedExecutionException(executor.isShutdown() ? "The maven proxy is stopped" : "Too many pending downloads");
+            }
+        } else {
+            coalescedRequests.incrementAndGet();
+        }
+        try {
+            return masterFuture.get();
+        } catch (CancellationException e) {
+            throw new RejectedExecutionException("The download of " + path + " was rejected");
+        }
+    }
+
+    CachedResolution getCachedResolution(String path) {
+        CachedResolution cached;
+        synchronized (resolutions) {
+            cached = resolutions.get(path);
+        }
+        return cached != null && cached.isValid() ? cached : null;
+    }
+
+    void cacheResolution(String path, File artifactFile) {
+        CachedResolution cached = null;
+        if (artifactFile == null) {
+            long timeout = negativeCacheTimeout;
+            if (timeout > 0) {
+                cached = new CachedResolution(null, System.currentTimeMillis() + timeout);
+            }
+        } else if (isCacheable(path)) {
+            cached = new CachedResolution(artifactFile, Long.MAX_VALUE);
+        }
+        if (cached != null) {
+            synchronized (resolutions) {
+                resolutions.put(path, cached);
+            }
+        }
+    }
+
+    /**
+     * Only released artifacts are remembered once resolved, as snapshots and metadata have to be checked against
+     * the remote repositories according to the update policy
+     */
+    static boolean isCacheable(String path) {
+        return path != null
+                && !ARTIFACT_METADATA_URL_REGEX.matcher(path).matches()
+                && ARTIFACT_REQUEST_URL_REGEX.matcher(path).matches()
+                && !path.contains("SNAPSHOT");
+    }
+
+    /**
+     * Sends the given file straight from the repository, honouring conditional and range requests
+     */
+    protected void send(HttpServletRequest req, HttpServletResponse resp, File file) throws IOException {
+        FileInputStream is = new FileInputStream(file);
+        try {
+            FileChannel channel = is.getChannel();
+            long length = channel.size();
+            long lastModified = file.lastModified();
+            String etag = "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(length) + "\"";
+
+            resp.setDateHeader("Date", System.currentTimeMillis());
+            resp.setHeader("Server", "MavenProxy Proxy/" + FabricConstants.FABRIC_VERSION);
+            resp.setHeader("ETag", etag);
+            resp.setDateHeader("Last-Modified", lastModified);
+            resp.setHeader("Accept-Ranges", "bytes");
+            if (isNotModified(req, etag, lastModified)) {
+                resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+
+            long start = 0;
+            long end = length - 1;
+            long[] range = null;
+            if (req.getHeader("Range") != null && isRangeValid(req, etag, lastModified)) {
+                range = parseRange(req.getHeader("Range"), length);
+            }
+            if (range == UNSATISFIABLE_RANGE) {
+                resp.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                resp.setHeader("Content-Range", "bytes */" + length);
+                return;
+            } else if (range != null) {
+                start = range[0];
+                end = range[1];
+                resp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                resp.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + length);
+            } else {
+                resp.setStatus(HttpServletResponse.SC_OK);
+            }
+            resp.setContentType("application/octet-stream");
+            long count = end - start + 1;
+            if (count <= Integer.MAX_VALUE) {
+                resp.setContentLength((int) count);
+            } else {
+                resp.setHeader("Content-Length", Long.toString(count));
+            }
+            if ("HEAD".equals(req.getMethod())) {
+                return;
+            }
+
+            // Let the channel hand the file over to the connection instead of copying it through a buffer
+            WritableByteChannel out = Channels.newChannel(resp.getOutputStream());
+            while (count > 0) {
+                long transferred = channel.transferTo(start, count, out);
+                if (transferred <= 0) {
+                    throw new IOException("Unexpected end of file " + file);
                 }
+                start += transferred;
+                count -= transferred;
+            }
+            resp.getOutputStream().flush();
+        } finally {
+            Closeables.closeQuitely(is);
+        }
+    }
 
-                requestMap.remove(path);
-                if (artifactFile == null) {
-                    resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
-                    return;
+    static boolean isNotModified(HttpServletRequest req, String etag, long lastModified) {
+        String ifNoneMatch = req.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.equals("*") || tag.equals(etag) || tag.equals("W/" + etag)) {
+                    return true;
                 }
+            }
+            return false;
+        }
+        try {
+            long ifModifiedSince = req.getDateHeader("If-Modified-Since");
+            return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
 
-                is = new FileInputStream(artifactFile);
-                LOGGER.log(Level.INFO, String.format("Writing response for file : %s", path));
-                resp.setStatus(HttpServletResponse.SC_OK);
-                resp.setContentType("application/octet-stream");
-                resp.setDateHeader("Date", System.currentTimeMillis());
-                resp.setHeader("Connection", "close");
-                resp.setContentLength(is.available());
-                resp.setHeader("Server", "MavenProxy Proxy/" + FabricConstants.FABRIC_VERSION);
-                byte buffer[] = new byte[8192];
-                int length;
-                while ((length = is.read(buffer)) != -1) {
-                    resp.getOutputStream().write(buffer, 0, length);
+    /**
+     * Checks the If-Range header, which holds either an entity tag or a date
+     */
+    static boolean isRangeValid(HttpServletRequest req, String etag, long lastModified) {
+        String ifRange = req.getHeader("If-Range");
+        if (ifRange == null) {
+            return true;
+        }
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(etag);
+        }
+        try {
+            return req.getDateHeader("If-Range") / 1000 == lastModified / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Parses a Range header holding a single byte range.
+     *
+     * @param range  the value of the Range header
+     * @param length the length of the file
+     * @return the first and last positions of the range, null if the whole file has to be sent or an empty array
+     *         if the range can't be satisfied
+     */
+    static long[] parseRange(String range, long length) {
+        range = range.trim();
+        if (!range.startsWith("bytes=") || range.indexOf(',') >= 0) {
+            // Multiple ranges are not supported, send the whole file instead
+            return null;
+        }
+        range = range.substring("bytes=".length()).trim();
+        int dash = range.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            String first = range.substring(0, dash).trim();
+            String last = range.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (first.length() == 0) {
+                // Suffix range: the last bytes of the file
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0) {
+                    return UNSATISFIABLE_RANGE;
                 }
-                resp.getOutputStream().flush();
-            } catch (Exception ex) {
-                LOGGER.warning("Error while downloading artifact:" + ex.getMessage());
-            } finally {
-                Closeables.closeQuitely(is);
-                if (masterFuture != null && artifactFile != null) {
-                    masterFuture.release(artifactFile);
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = length - 1;
+                if (last.length() > 0) {
+                    long position = Long.parseLong(last);
+                    if (position < start) {
+                        // Syntactically invalid, the header is ignored
+                        return null;
+                    }
+                    end = Math.min(position, end);
                 }
             }
-        } catch (Exception ex) {
-            resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            if (start >= length) {
+                return UNSATISFIABLE_RANGE;
+            }
+            return new long[] {start, end};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    static class CachedResolution {
+
+        private final File file;
+        private final long expires;
+
+        private CachedResolution(File file, long expires) {
+            this.file = file;
+            this.expires = expires;
+        }
+
+        boolean isValid() {
+            return System.currentTimeMillis() < expires && (file == null || file.isFile());
+        }
+    }
+
+    public ObjectName getObjectName() throws MalformedObjectNameException {
+        if (objectName == null) {
+            objectName = new ObjectName("org.fusesource.fabric:type=MavenDownloadProxy");
+        }
+        return objectName;
+    }
+
+    public void setObjectName(ObjectName objectName) {
+        this.objectName = objectName;
+    }
+
+    public void registerMBeanServer(MBeanServer mbeanServer) {
+        try {
+            ObjectName name = getObjectName();
+            if (!mbeanServer.isRegistered(name)) {
+                mbeanServer.registerMBean(this, name);
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "An error occured during mbean server registration: " + e, e);
+        }
+    }
+
+    public void unregisterMBeanServer(MBeanServer mbeanServer) {
+        if (mbeanServer != null) {
+            try {
+                ObjectName name = getObjectName();
+                if (mbeanServer.isRegistered(name)) {
+                    mbeanServer.unregisterMBean(name);
+                }
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "An error occured during mbean server unregistration: " + e, e);
+            }
+        }
+    }
+
+    // Management API
+    //-------------------------------------------------------------------------
+    @Override
+    public long getRequests() {
+        return requests.get();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    @Override
+    public long getCoalescedRequests() {
+        return coalescedRequests.get();
+    }
+
+    @Override
+    public long getRejectedRequests() {
+        return rejectedRequests.get();
+    }
+
+    @Override
+    public double getHitRatio() {
+        long total = requests.get();
+        return total > 0 ? (double) (cacheHits.get() + coalescedRequests.get()) / total : 0.0;
+    }
+
+    @Override
+    public int getInFlightDownloads() {
+        ThreadPoolExecutor executor = executorService;
+        return executor != null ? executor.getActiveCount() : 0;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        ThreadPoolExecutor executor = executorService;
+        return executor != null ? executor.getQueue().size() : 0;
+    }
+
+    @Override
+    public Map<String, Integer> getRepositoryTransfers() {
+        return transferListener != null ? transferListener.getRunningTransfers() : new HashMap<String, Integer>();
+    }
+
+    @Override
+    public Map<String, Integer> getRepositoryQueueDepths() {
+        return transferListener != null ? transferListener.getWaitingTransfers() : new HashMap<String, Integer>();
+    }
+
+    @Override
+    public Map<String, Long> getRepositoryLatencies() {
+        return transferListener != null ? transferListener.getLatencies() : new HashMap<String, Long>();
+    }
+
+    @Override
+    public void resetStatistics() {
+        requests.set(0);
+        cacheHits.set(0);
+        coalescedRequests.set(0);
+        rejectedRequests.set(0);
+        if (transferListener != null) {
+            transferListener.resetStatistics();
         }
     }
 
     private class ArtifactDownloadFuture extends FutureTask<File> {
 
-        private final AtomicInteger paritcipans = new AtomicInteger();
+        private final String path;
 
         public ArtifactDownloadFuture(String path) {
             super(new ArtifactDownloadTask(path));
+            this.path = path;
         }
 
         @Override
-        public File get() throws InterruptedException, ExecutionException {
-            paritcipans.incrementAndGet();
-            return super.get();
-        }
-
-        public synchronized void release(File f) {
-            if (paritcipans.decrementAndGet() == 0) {
-                f.delete();
-            }
+        protected void done() {
+            requestMap.remove(path, this);
         }
     }
 
@@ -148,15 +603,14 @@ public class MavenDownloadProxyServlet extends MavenProxyServletSupport {
 
         @Override
         public File call() throws Exception {
-            File download = download(path);
-            if (download != null)  {
-            File tmpFile = Files.createTempFile();
-            Files.copy(download, tmpFile);
-            return tmpFile;
-            } else {
-                return null;
+            // The artifact may have been resolved by a download which completed in the meantime
+            CachedResolution cached = getCachedResolution(path);
+            if (cached != null) {
+                return cached.file;
             }
+            File artifactFile = download(path);
+            cacheResolution(path, artifactFile);
+            return artifactFile;
         }
     }
 }
-
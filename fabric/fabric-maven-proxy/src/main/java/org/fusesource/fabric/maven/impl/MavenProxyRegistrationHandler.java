@@ -24,6 +24,8 @@ import org.apache.felix.scr.annotations.Activate;
 import org.apache.felix.scr.annotations.Component;
 import org.apache.felix.scr.annotations.Deactivate;
 import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.ReferenceCardinality;
+import org.apache.felix.scr.annotations.ReferencePolicy;
 import org.apache.felix.scr.annotations.Service;
 import org.apache.zookeeper.CreateMode;
 import org.fusesource.fabric.api.jcip.GuardedBy;
@@ -40,6 +42,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonatype.aether.repository.RepositoryPolicy;
 
+import javax.management.MBeanServer;
 import java.io.File;
 import java.io.IOException;
 import java.util.Collections;
@@ -72,6 +75,10 @@ public final class MavenProxyRegistrationHandler extends AbstractComponent imple
     private static final String PROXY_USERNAME_PROPERTY = "proxy.username";
     private static final String PROXY_PASSWORD_PROPERTY = "proxy.password";
     private static final String NON_PROXY_HOSTS_PROPERTY = "proxy.nonProxyHosts";
+    private static final String MAX_DOWNLOADS_PROPERTY = "maxDownloads";
+    private static final String MAX_DOWNLOADS_PER_REPOSITORY_PROPERTY = "maxDownloadsPerRepository";
+    private static final String MAX_QUEUED_DOWNLOADS_PROPERTY = "maxQueuedDownloads";
+    private static final String NEGATIVE_CACHE_TIMEOUT_PROPERTY = "negativeCacheTimeout";
 
     private static final String REQUIRED_ROLE = "role";
     private static final String REQUIRED_REALM = "realm";
@@ -87,6 +94,8 @@ public final class MavenProxyRegistrationHandler extends AbstractComponent imple
     private final ValidatingReference<HttpService> httpService = new ValidatingReference<HttpService>();
     @Reference(referenceInterface = CuratorFramework.class)
     private final ValidatingReference<CuratorFramework> curator = new ValidatingReference<CuratorFramework>();
+    @Reference(referenceInterface = MBeanServer.class, cardinality = ReferenceCardinality.OPTIONAL_UNARY, policy = ReferencePolicy.DYNAMIC, bind = "bindMBeanServer", unbind = "unbindMBeanServer")
+    @GuardedBy("this") private MBeanServer mbeanServer;
 
     private final Map<String, Set<String>> registeredProxies;
 
@@ -122,8 +131,18 @@ public final class MavenProxyRegistrationHandler extends AbstractComponent imple
         this.role = readProperty(properties, REQUIRED_ROLE, DEFAULT_ROLE);
         this.realm = readProperty(properties, REQUIRED_REALM, DEFAULT_REALM);
         this.mavenDownloadProxyServlet = new MavenDownloadProxyServlet(localRepository, remoteRepositories, appendSystemRepos, updatePolicy, checksumPolicy, proxyProtocol, proxyHost, proxyPort, proxyUsername, proxyPassword, nonProxyHosts);
+        this.mavenDownloadProxyServlet.setMaxDownloads(Integer.parseInt(readProperty(properties, MAX_DOWNLOADS_PROPERTY, String.valueOf(MavenDownloadProxyServlet.DEFAULT_MAX_DOWNLOADS))));
+        this.mavenDownloadProxyServlet.setMaxDownloadsPerRepository(Integer.parseInt(readProperty(properties, MAX_DOWNLOADS_PER_REPOSITORY_PROPERTY, String.valueOf(MavenDownloadProxyServlet.DEFAULT_MAX_DOWNLOADS_PER_REPOSITORY))));
+        this.mavenDownloadProxyServlet.setMaxQueuedDownloads(Integer.parseInt(readProperty(properties, MAX_QUEUED_DOWNLOADS_PROPERTY, String.valueOf(MavenDownloadProxyServlet.DEFAULT_MAX_QUEUED_DOWNLOADS))));
+        this.mavenDownloadProxyServlet.setNegativeCacheTimeout(Long.parseLong(readProperty(properties, NEGATIVE_CACHE_TIMEOUT_PROPERTY, String.valueOf(MavenDownloadProxyServlet.DEFAULT_NEGATIVE_CACHE_TIMEOUT))));
         this.mavenDownloadProxyServlet.start();
+        synchronized (this) {
+            if (mbeanServer != null) {
+                mavenDownloadProxyServlet.registerMBeanServer(mbeanServer);
+            }
+        }
         this.mavenUploadProxyServlet = new MavenUploadProxyServlet(localRepository, remoteRepositories, appendSystemRepos, updatePolicy, checksumPolicy, proxyProtocol, proxyHost, proxyPort, proxyUsername, proxyPassword, nonProxyHosts);
+        this.mavenUploadProxyServlet.setDownloadProxyServlet(mavenDownloadProxyServlet);
         this.mavenUploadProxyServlet.start();
         try {
             HttpContext base = httpService.get().createDefaultHttpContext();
@@ -140,6 +159,7 @@ public final class MavenProxyRegistrationHandler extends AbstractComponent imple
     synchronized void deactivate() {
         deactivateComponent();
         if (mavenDownloadProxyServlet != null) {
+            mavenDownloadProxyServlet.unregisterMBeanServer(mbeanServer);
             mavenDownloadProxyServlet.stop();
         }
         if (mavenUploadProxyServlet != null) {
@@ -219,6 +239,22 @@ public final class MavenProxyRegistrationHandler extends AbstractComponent imple
         this.curator.unbind(curator);
     }
 
+    synchronized void bindMBeanServer(MBeanServer mbeanServer) {
+        this.mbeanServer = mbeanServer;
+        if (mavenDownloadProxyServlet != null) {
+            mavenDownloadProxyServlet.registerMBeanServer(mbeanServer);
+        }
+    }
+
+    synchronized void unbindMBeanServer(MBeanServer mbeanServer) {
+        if (mavenDownloadProxyServlet != null) {
+            mavenDownloadProxyServlet.unregisterMBeanServer(mbeanServer);
+        }
+        if (this.mbeanServer == mbeanServer) {
+            this.mbeanServer = null;
+        }
+    }
+
     void bindHttpService(HttpService service) {
         this.httpService.bind(service);
     }
@@ -25,10 +25,20 @@ import javax.servlet.http.HttpServletResponse;
 
 public class MavenUploadProxyServlet extends MavenDownloadProxyServlet {
 
+    private volatile MavenDownloadProxyServlet downloadProxyServlet;
+
     public MavenUploadProxyServlet(String localRepository, String remoteRepositories, boolean appendSystemRepos, String updatePolicy, String checksumPolicy, String proxyProtocol, String proxyHost, int proxyPort, String proxyUsername, String proxyPassword, String proxyNonProxyHosts) {
         super(localRepository, remoteRepositories, appendSystemRepos, updatePolicy, checksumPolicy, proxyProtocol, proxyHost, proxyPort, proxyUsername, proxyPassword, proxyNonProxyHosts);
     }
 
+    /**
+     * Sets the download proxy whose cached resolutions are evicted when an artifact is uploaded, so that an
+     * artifact remembered as missing can be downloaded as soon as it is uploaded
+     */
+    public void setDownloadProxyServlet(MavenDownloadProxyServlet downloadProxyServlet) {
+        this.downloadProxyServlet = downloadProxyServlet;
+    }
+
     @Override
     protected void doPut(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
 
@@ -44,6 +54,10 @@ public class MavenUploadProxyServlet extends MavenDownloadProxyServlet {
             }
 
             if (upload(req.getInputStream(), path)) {
+                MavenDownloadProxyServlet downloadProxy = downloadProxyServlet;
+                if (downloadProxy != null) {
+                    downloadProxy.evict(path);
+                }
                 resp.setStatus(HttpServletResponse.SC_ACCEPTED);
             } else {
                 resp.setStatus(HttpServletResponse.SC_NOT_ACCEPTABLE);
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) FuseSource, Inc.
+ *   http://fusesource.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.fusesource.fabric.maven.impl;
+
+import org.sonatype.aether.transfer.TransferCancelledException;
+import org.sonatype.aether.transfer.TransferEvent;
+import org.sonatype.aether.transfer.TransferListener;
+import org.sonatype.aether.transfer.TransferResource;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link TransferListener} which bounds the number of concurrent transfers from each remote repository, the
+ * other transfers waiting for their turn, and which keeps the transfer statistics of each repository.
+ * Transfers from file repositories are neither bounded nor measured.
+ */
+public class RepositoryTransferListener implements TransferListener {
+
+    private final int maxTransfersPerRepository;
+    private final ConcurrentMap<String, RepositoryStatistics> repositories = new ConcurrentHashMap<String, RepositoryStatistics>();
+    private final ConcurrentMap<TransferResource, Transfer> transfers = new ConcurrentHashMap<TransferResource, Transfer>();
+
+    public RepositoryTransferListener(int maxTransfersPerRepository) {
+        this.maxTransfersPerRepository = maxTransfersPerRepository;
+    }
+
+    @Override
+    public void transferInitiated(TransferEvent event) throws TransferCancelledException {
+        TransferResource resource = event.getResource();
+        String url = resource.getRepositoryUrl();
+        if (url == null || url.startsWith("file:")) {
+            return;
+        }
+        RepositoryStatistics statistics = repositories.get(url);
+        if (statistics == null) {
+            statistics = new RepositoryStatistics(maxTransfersPerRepository);
+            RepositoryStatistics existing = repositories.putIfAbsent(url, statistics);
+            if (existing != null) {
+                statistics = existing;
+            }
+        }
+        statistics.waiting.incrementAndGet();
+        try {
+            statistics.permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TransferCancelledException();
+        } finally {
+            statistics.waiting.decrementAndGet();
+        }
+        statistics.running.incrementAndGet();
+        transfers.put(resource, new Transfer(statistics, System.currentTimeMillis()));
+    }
+
+    @Override
+    public void transferStarted(TransferEvent event) {
+    }
+
+    @Override
+    public void transferProgressed(TransferEvent event) {
+    }
+
+    @Override
+    public void transferCorrupted(TransferEvent event) {
+    }
+
+    @Override
+    public void transferSucceeded(TransferEvent event) {
+        complete(event, true);
+    }
+
+    @Override
+    public void transferFailed(TransferEvent event) {
+        complete(event, false);
+    }
+
+    private void complete(TransferEvent event, boolean success) {
+        Transfer transfer = transfers.remove(event.getResource());
+        if (transfer != null) {
+            RepositoryStatistics statistics = transfer.statistics;
+            statistics.running.decrementAndGet();
+            statistics.permits.release();
+            if (success) {
+                statistics.transfers.incrementAndGet();
+                statistics.time.addAndGet(System.currentTimeMillis() - transfer.start);
+            }
+        }
+    }
+
+    public Map<String, Integer> getRunningTransfers() {
+        Map<String, Integer> result = new HashMap<String, Integer>();
+        for (Map.Entry<String, RepositoryStatistics> entry : repositories.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().running.get());
+        }
+        return result;
+    }
+
+    public Map<String, Integer> getWaitingTransfers() {
+        Map<String, Integer> result = new HashMap<String, Integer>();
+        for (Map.Entry<String, RepositoryStatistics> entry : repositories.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().waiting.get());
+        }
+        return result;
+    }
+
+    /**
+     * Returns the average duration in milliseconds of the successful transfers of each repository
+     */
+    public Map<String, Long> getLatencies() {
+        Map<String, Long> result = new HashMap<String, Long>();
+        for (Map.Entry<String, RepositoryStatistics> entry : repositories.entrySet()) {
+            long count = entry.getValue().transfers.get();
+            result.put(entry.getKey(), count > 0 ? entry.getValue().time.get() / count : 0L);
+        }
+        return result;
+    }
+
+    public void resetStatistics() {
+        for (RepositoryStatistics statistics : repositories.values()) {
+            statistics.transfers.set(0);
+            statistics.time.set(0);
+        }
+    }
+
+    private static class RepositoryStatistics {
+
+        private final Semaphore permits;
+        private final AtomicInteger running = new AtomicInteger();
+        private final AtomicInteger waiting = new AtomicInteger();
+        private final AtomicLong transfers = new AtomicLong();
+        private final AtomicLong time = new AtomicLong();
+
+        private RepositoryStatistics(int maxTransfers) {
+            this.permits = new Semaphore(maxTransfers, true);
+        }
+    }
+
+    private static class Transfer {
+
+        private final RepositoryStatistics statistics;
+        private final long start;
+
+        private Transfer(RepositoryStatistics statistics, long start) {
+            this.statistics = statistics;
+            this.start = start;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) FuseSource, Inc.
+ *   http://fusesource.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.fusesource.fabric.maven.impl;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+
+import static org.fusesource.fabric.maven.impl.MavenDownloadProxyServlet.isCacheable;
+import static org.fusesource.fabric.maven.impl.MavenDownloadProxyServlet.parseRange;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MavenDownloadProxyServletTest {
+
+    @Test
+    public void testParseRange() {
+        assertRange(0, 99, parseRange("bytes=0-", 100));
+        assertRange(10, 19, parseRange("bytes=10-19", 100));
+        assertRange(10, 99, parseRange("bytes=10-500", 100));
+        assertRange(80, 99, parseRange("bytes=-20", 100));
+        assertRange(0, 99, parseRange("bytes=-500", 100));
+        assertEquals(0, parseRange("bytes=100-", 100).length);
+        assertEquals(0, parseRange("bytes=-0", 100).length);
+        assertNull(parseRange("bytes=20-10", 100));
+        assertNull(parseRange("bytes=0-10,20-30", 100));
+        assertNull(parseRange("items=0-10", 100));
+        assertNull(parseRange("bytes=a-", 100));
+    }
+
+    @Test
+    public void testIsCacheable() {
+        assertTrue(isCacheable("org/fusesource/fabric/fabric-core/7.2.0/fabric-core-7.2.0.jar"));
+        assertTrue(isCacheable("org/fusesource/fabric/fabric-core/7.2.0/fabric-core-7.2.0.jar.sha1"));
+        assertFalse(isCacheable("org/fusesource/fabric/fabric-core/7.3.0-SNAPSHOT/fabric-core-7.3.0-20131014.101010-1.jar"));
+        assertFalse(isCacheable("org/fusesource/fabric/fabric-core/maven-metadata.xml"));
+        assertFalse(isCacheable(null));
+    }
+
+    @Test
+    public void testMissingArtifactIsEvicted() {
+        String path = "org/fusesource/fabric/fabric-core/7.2.0/fabric-core-7.2.0.jar";
+        MavenDownloadProxyServlet servlet = new MavenDownloadProxyServlet(null, null, false, null, null, null, null, 0, null, null, null);
+        servlet.cacheResolution(path, null);
+        assertNotNull(servlet.getCachedResolution(path));
+        servlet.evict(path);
+        assertNull(servlet.getCachedResolution(path));
+    }
+
+    @Test
+    public void testNegativeCacheCanBeDisabled() {
+        String path = "org/fusesource/fabric/fabric-core/7.2.0/fabric-core-7.2.0.jar";
+        MavenDownloadProxyServlet servlet = new MavenDownloadProxyServlet(null, null, false, null, null, null, null, 0, null, null, null);
+        servlet.setNegativeCacheTimeout(0);
+        servlet.cacheResolution(path, null);
+        assertNull(servlet.getCachedResolution(path));
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void testStoppedProxyRejectsDownloads() throws Exception {
+        MavenDownloadProxyServlet servlet = new MavenDownloadProxyServlet(null, null, false, null, null, null, null, 0, null, null, null);
+        servlet.resolve("org/fusesource/fabric/fabric-core/7.2.0/fabric-core-7.2.0.jar");
+    }
+
+    @Test
+    public void testSaturatedProxyAnswersServiceUnavailable() throws Exception {
+        BlockingDownloadProxyServlet servlet = new BlockingDownloadProxyServlet("saturated");
+        servlet.start();
+        try {
+            Thread running = get(servlet, "org/fusesource/fabric/fabric-core/7.2.0/fabric-core-7.2.0.jar", new ResponseHandler());
+            assertTrue(servlet.downloading.await(10, TimeUnit.SECONDS));
+            Thread queued = get(servlet, "org/fusesource/fabric/fabric-api/7.2.0/fabric-api-7.2.0.jar", new ResponseHandler());
+            awaitQueueDepth(servlet, 1);
+
+            ResponseHandler rejected = new ResponseHandler();
+            servlet.doGet(request("org/fusesource/fabric/fabric-zookeeper/7.2.0/fabric-zookeeper-7.2.0.jar"), rejected.response());
+            assertEquals(Integer.valueOf(HttpServletResponse.SC_SERVICE_UNAVAILABLE), rejected.status);
+            assertEquals("10", rejected.headers.get("Retry-After"));
+            assertEquals(1, servlet.getRejectedRequests());
+
+            servlet.release.countDown();
+            running.join(10000);
+            queued.join(10000);
+        } finally {
+            servlet.release.countDown();
+            servlet.stop();
+        }
+    }
+
+    @Test
+    public void testStoppedProxyAnswersServiceUnavailable() throws Exception {
+        BlockingDownloadProxyServlet servlet = new BlockingDownloadProxyServlet("stopped");
+        servlet.start();
+        Thread running = get(servlet, "org/fusesource/fabric/fabric-core/7.2.0/fabric-core-7.2.0.jar", new ResponseHandler());
+        assertTrue(servlet.downloading.await(10, TimeUnit.SECONDS));
+        ResponseHandler queued = new ResponseHandler();
+        Thread waiting = get(servlet, "org/fusesource/fabric/fabric-api/7.2.0/fabric-api-7.2.0.jar", queued);
+        awaitQueueDepth(servlet, 1);
+
+        // The request waiting for a download which never started is answered as soon as the proxy stops
+        servlet.stop();
+        waiting.join(10000);
+        assertFalse(waiting.isAlive());
+        assertEquals(Integer.valueOf(HttpServletResponse.SC_SERVICE_UNAVAILABLE), queued.status);
+        assertEquals("10", queued.headers.get("Retry-After"));
+        running.join(10000);
+
+        ResponseHandler stopped = new ResponseHandler();
+        servlet.doGet(request("org/fusesource/fabric/fabric-api/7.2.0/fabric-api-7.2.0.jar"), stopped.response());
+        assertEquals(Integer.valueOf(HttpServletResponse.SC_SERVICE_UNAVAILABLE), stopped.status);
+        assertEquals("10", stopped.headers.get("Retry-After"));
+    }
+
+    private static Thread get(final MavenDownloadProxyServlet servlet, final String path, final ResponseHandler handler) {
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    servlet.doGet(request(path), handler.response());
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static void awaitQueueDepth(MavenDownloadProxyServlet servlet, int depth) throws InterruptedException {
+        long timeout = System.currentTimeMillis() + 10000;
+        while (servlet.getQueueDepth() < depth && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertEquals(depth, servlet.getQueueDepth());
+    }
+
+    private static HttpServletRequest request(final String path) {
+        return (HttpServletRequest) Proxy.newProxyInstance(MavenDownloadProxyServletTest.class.getClassLoader(),
+                new Class[]{HttpServletRequest.class}, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return method.getName().equals("getPathInfo") ? "/" + path : null;
+            }
+        });
+    }
+
+    /**
+     * Records the status and headers set on a response
+     */
+    private static class ResponseHandler implements InvocationHandler {
+
+        private volatile Integer status;
+        private final Map<String, String> headers = new HashMap<String, String>();
+
+        HttpServletResponse response() {
+            return (HttpServletResponse) Proxy.newProxyInstance(MavenDownloadProxyServletTest.class.getClassLoader(),
+                    new Class[]{HttpServletResponse.class}, this);
+        }
+
+        public synchronized Object invoke(Object proxy, Method method, Object[] args) {
+            if (method.getName().equals("setStatus")) {
+                status = (Integer) args[0];
+            } else if (method.getName().equals("setHeader")) {
+                headers.put((String) args[0], (String) args[1]);
+            } else if (method.getName().equals("isCommitted")) {
+                return Boolean.FALSE;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A proxy with a single download slot and a single queued download, whose downloads block until released
+     */
+    private static class BlockingDownloadProxyServlet extends MavenDownloadProxyServlet {
+
+        private final CountDownLatch downloading = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        BlockingDownloadProxyServlet(String name) throws Exception {
+            super(directory(name, "local"), "file://" + directory(name, "remote"), false, null, null, null, null, 0, null, null, null);
+            tmpFolder = new File(directory(name, "tmp"));
+            setMaxDownloads(1);
+            setMaxQueuedDownloads(1);
+        }
+
+        @Override
+        public File download(String path) {
+            downloading.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }
+
+        private static String directory(String name, String folder) throws Exception {
+            String basedir = System.getProperty("basedir", ".");
+            File directory = new File(basedir + "/target/maven-proxy-" + name + "/" + folder).getCanonicalFile();
+            directory.mkdirs();
+            return directory.getPath();
+        }
+    }
+
+    private static void assertRange(long start, long end, long[] range) {
+        assertEquals(2, range.length);
+        assertEquals(start, range[0]);
+        assertEquals(end, range[1]);
+    }
+}
@@ -77,14 +77,8 @@ public final class EvenBalancingPolicy extends AbstractComponent implements Bala
     @Override
     public synchronized void rebalance(String workId, String[] items, String[] members) {
         assertValid();
-        Multimap<String, String> distribution = LinkedHashMultimap.create();
         //First pass - calculate the work distribution
-        int index = 0;
-        for (String item : items) {
-            String path = members[index];
-            distribution.put(path, item);
-            index = (index + 1) % members.length;
-        }
+        Multimap<String, String> distribution = distribute(items, members);
         //Second pass - assignment
         for (String member : members) {
             try {
@@ -104,6 +98,20 @@ public final class EvenBalancingPolicy extends AbstractComponent implements Bala
         }
     }
 
+    /**
+     * Distributes the items to the members in a round robin fashion.
+     */
+    static Multimap<String, String> distribute(String[] items, String[] members) {
+        Multimap<String, String> distribution = LinkedHashMultimap.create();
+        int index = 0;
+        for (String item : items) {
+            String path = members[index];
+            distribution.put(path, item);
+            index = (index + 1) % members.length;
+        }
+        return distribution;
+    }
+
     void bindCurator(CuratorFramework curator) {
         this.curator.bind(curator);
     }
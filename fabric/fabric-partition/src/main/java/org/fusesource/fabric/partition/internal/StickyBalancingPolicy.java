@@ -0,0 +1,413 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.fusesource.fabric.partition.internal;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.transaction.CuratorTransaction;
+import org.apache.curator.framework.api.transaction.CuratorTransactionFinal;
+import org.apache.curator.framework.api.transaction.CuratorTransactionResult;
+import org.apache.curator.framework.api.transaction.OperationType;
+import org.apache.felix.scr.annotations.Activate;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Deactivate;
+import org.apache.felix.scr.annotations.Modified;
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.Service;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.fusesource.fabric.api.jcip.GuardedBy;
+import org.fusesource.fabric.api.jcip.ThreadSafe;
+import org.fusesource.fabric.api.scr.AbstractComponent;
+import org.fusesource.fabric.api.scr.ValidatingReference;
+import org.fusesource.fabric.partition.BalancingPolicy;
+import org.fusesource.fabric.partition.WorkerNode;
+import org.fusesource.fabric.zookeeper.ZkPath;
+import org.osgi.service.component.ComponentContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A balancing policy which moves as few partitions as possible when the members or the partitions change.
+ * <p/>
+ * Each member gets a share of the partitions proportional to its weight. Members keep the partitions they
+ * already own up to their share, and only the partitions of departed members, new partitions and the excess
+ * of over-loaded members are placed again, on a consistent hash ring of the members.
+ * <p/>
+ * The assignments are written in a single ZooKeeper transaction which only writes the members whose partitions
+ * changed and checks the versions of the others. The last committed assignments are cached along with the node
+ * versions, so a rebalance usually needs no read at all, and a concurrent modification, for instance by another
+ * master after a mastership change, makes the transaction fail and the assignments to be read again.
+ * <p/>
+ * Weights are configured with properties of the form weight.&lt;container&gt;=&lt;weight&gt;; members default to
+ * the default.weight property, or 1.
+ */
+@ThreadSafe
+@Component(name = "org.fusesource.fabric.partition.balancing.sticky", description = "Fabric Partition Sticky Balancing Policy", immediate = true)
+@Service(BalancingPolicy.class)
+public final class StickyBalancingPolicy extends AbstractComponent implements BalancingPolicy {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StickyBalancingPolicy.class);
+    private static final String TYPE = "sticky";
+
+    private static final String WEIGHT_PREFIX = "weight.";
+    private static final String DEFAULT_WEIGHT = "default.weight";
+    private static final int VIRTUAL_NODES_PER_WEIGHT = 32;
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    @Reference(referenceInterface = CuratorFramework.class)
+    private final ValidatingReference<CuratorFramework> curator = new ValidatingReference<CuratorFramework>();
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final Map<String, Integer> weights = new ConcurrentHashMap<String, Integer>();
+    private volatile int defaultWeight = 1;
+
+    @GuardedBy("this") private final Map<String, WorkerNode> workers = new HashMap<String, WorkerNode>();
+    @GuardedBy("this") private final Map<String, Map<String, Assignment>> assignments = new HashMap<String, Map<String, Assignment>>();
+
+    public StickyBalancingPolicy() {
+        mapper.registerSubtypes(WorkerNode.class);
+    }
+
+    @Activate
+    void activate(ComponentContext context, Map<String, ?> properties) {
+        updated(properties);
+        activateComponent();
+    }
+
+    @Modified
+    void updated(Map<String, ?> properties) {
+        Map<String, Integer> newWeights = new HashMap<String, Integer>();
+        int newDefaultWeight = 1;
+        for (Map.Entry<String, ?> entry : properties.entrySet()) {
+            String key = entry.getKey();
+            if (key.startsWith(WEIGHT_PREFIX)) {
+                newWeights.put(key.substring(WEIGHT_PREFIX.length()), parseWeight(key, entry.getValue()));
+            } else if (key.equals(DEFAULT_WEIGHT)) {
+                newDefaultWeight = parseWeight(key, entry.getValue());
+            }
+        }
+        weights.keySet().retainAll(newWeights.keySet());
+        weights.putAll(newWeights);
+        defaultWeight = newDefaultWeight;
+    }
+
+    @Deactivate
+    void deactivate() {
+        deactivateComponent();
+        synchronized (this) {
+            workers.clear();
+            assignments.clear();
+        }
+    }
+
+    @Override
+    public String getType() {
+        assertValid();
+        return TYPE;
+    }
+
+    /*
+     * Only allow one thread to balance at a time
+     */
+    @Override
+    public synchronized void rebalance(String taskId, String[] items, String[] members) {
+        assertValid();
+        try {
+            try {
+                doRebalance(taskId, items, members);
+            } catch (KeeperException e) {
+                // someone else modified the assignments, read them again and retry once
+                LOGGER.debug("Assignments of {} changed concurrently ({}), retrying.", taskId, e.code());
+                assignments.remove(taskId);
+                doRebalance(taskId, items, members);
+            }
+        } catch (Exception ex) {
+            assignments.remove(taskId);
+            LOGGER.error("Error while assigning work", ex);
+        }
+    }
+
+    private void doRebalance(String taskId, String[] items, String[] members) throws Exception {
+        CuratorFramework curator = this.curator.get();
+
+        //Resolve the containers of the members, which are stable across sessions
+        Map<String, WorkerNode> nodes = new LinkedHashMap<String, WorkerNode>();
+        Set<String> memberPaths = new HashSet<String>(Arrays.asList(members));
+        workers.keySet().retainAll(memberPaths);
+        for (String member : members) {
+            WorkerNode node = workers.get(member);
+            if (node == null) {
+                node = mapper.readValue(curator.getData().forPath(member), WorkerNode.class);
+                workers.put(member, node);
+            }
+            if (!nodes.containsKey(node.getContainer())) {
+                nodes.put(node.getContainer(), node);
+            }
+        }
+
+        //Current assignments, read from the registry when not cached
+        Map<String, Assignment> cached = assignments.get(taskId);
+        if (cached == null) {
+            cached = new HashMap<String, Assignment>();
+            assignments.put(taskId, cached);
+        }
+        Map<String, Collection<String>> current = new HashMap<String, Collection<String>>();
+        Map<String, Integer> memberWeights = new LinkedHashMap<String, Integer>();
+        boolean usedCache = false;
+        for (String container : nodes.keySet()) {
+            Assignment assignment = cached.get(container);
+            if (assignment == null) {
+                assignment = readAssignment(curator, ZkPath.TASK_MEMBER_PARTITIONS.getPath(container, taskId));
+                cached.put(container, assignment);
+            } else {
+                usedCache = true;
+            }
+            current.put(container, assignment.partitions);
+            Integer weight = weights.get(container);
+            memberWeights.put(container, weight != null ? weight : defaultWeight);
+        }
+        cached.keySet().retainAll(nodes.keySet());
+
+        Map<String, List<String>> distribution = distribute(Arrays.asList(items), memberWeights, current);
+
+        //Write all the changed assignments at once, checking that the unchanged ones are still the cached ones since
+        //another master may have moved partitions meanwhile
+        CuratorTransaction transaction = curator.inTransaction();
+        CuratorTransactionFinal pending = null;
+        Map<String, String> changed = new HashMap<String, String>();
+        for (Map.Entry<String, List<String>> entry : distribution.entrySet()) {
+            String container = entry.getKey();
+            List<String> assigned = entry.getValue();
+            Assignment assignment = cached.get(container);
+            String targetPath = ZkPath.TASK_MEMBER_PARTITIONS.getPath(container, taskId);
+            if (assignment.version >= 0 && new HashSet<String>(assigned).equals(new HashSet<String>(assignment.partitions))) {
+                pending = transaction.check().withVersion(assignment.version).forPath(targetPath).and();
+                transaction = pending;
+                continue;
+            }
+            WorkerNode node = nodes.get(container);
+            node.setPartitions(assigned.toArray(new String[assigned.size()]));
+            byte[] data = mapper.writeValueAsBytes(node);
+            if (assignment.version >= 0) {
+                pending = transaction.setData().withVersion(assignment.version).forPath(targetPath, data).and();
+            } else {
+                pending = transaction.create().forPath(targetPath, data).and();
+            }
+            transaction = pending;
+            changed.put(targetPath, container);
+        }
+        //Nothing to write, but the checks still have to be committed when the balance was computed from the cache
+        if (!changed.isEmpty() || (pending != null && usedCache)) {
+            Collection<CuratorTransactionResult> results = pending.commit();
+            for (CuratorTransactionResult result : results) {
+                String container = changed.get(result.getForPath());
+                if (container == null) {
+                    continue;
+                }
+                int version = result.getType() == OperationType.SET_DATA ? result.getResultStat().getVersion() : 0;
+                cached.put(container, new Assignment(distribution.get(container), version));
+            }
+        }
+        if (changed.isEmpty()) {
+            LOGGER.debug("Assignments of {} are already balanced.", taskId);
+            return;
+        }
+        LOGGER.info("Rebalanced {} partitions of {} over {} members, updated {} members.", new Object[]{items.length, taskId, nodes.size(), changed.size()});
+    }
+
+    private Assignment readAssignment(CuratorFramework curator, String path) throws Exception {
+        Stat stat = new Stat();
+        byte[] data;
+        try {
+            data = curator.getData().storingStatIn(stat).forPath(path);
+        } catch (KeeperException.NoNodeException e) {
+            return new Assignment(Collections.<String>emptyList(), -1);
+        }
+        List<String> partitions = Collections.emptyList();
+        if (data != null && data.length > 0) {
+            try {
+                String[] assigned = mapper.readValue(data, WorkerNode.class).getPartitions();
+                if (assigned != null) {
+                    partitions = Arrays.asList(assigned);
+                }
+            } catch (Exception e) {
+                LOGGER.debug("Ignoring unreadable assignment at {}.", path);
+            }
+        }
+        return new Assignment(partitions, stat.getVersion());
+    }
+
+    /**
+     * Distributes the items to the members in proportion to their weights, moving as few items as possible
+     * from their current members.
+     *
+     * @param items     The items to distribute.
+     * @param weights   The weight of each member.
+     * @param current   The items currently assigned to each member.
+     * @return          The items assigned to each member.
+     */
+    static Map<String, List<String>> distribute(Collection<String> items, Map<String, Integer> weights, Map<String, ? extends Collection<String>> current) {
+        Map<String, List<String>> distribution = new LinkedHashMap<String, List<String>>();
+        List<String> members = new ArrayList<String>(weights.keySet());
+        Collections.sort(members);
+        for (String member : members) {
+            distribution.put(member, new ArrayList<String>());
+        }
+        if (members.isEmpty()) {
+            return distribution;
+        }
+
+        //Collect the items members still own, each item being owned once
+        Set<String> remaining = new LinkedHashSet<String>(items);
+        final Map<String, List<String>> owned = new HashMap<String, List<String>>();
+        for (String member : members) {
+            List<String> list = new ArrayList<String>();
+            Collection<String> assigned = current.get(member);
+            if (assigned != null) {
+                for (String item : assigned) {
+                    if (remaining.remove(item)) {
+                        list.add(item);
+                    }
+                }
+            }
+            owned.put(member, list);
+        }
+        remaining.clear();
+        remaining.addAll(items);
+
+        //Compute the share of each member, giving the remainder to the members which own the most
+        long total = 0;
+        for (String member : members) {
+            total += weights.get(member);
+        }
+        final long count = remaining.size();
+        final Map<String, Long> fractions = new HashMap<String, Long>();
+        Map<String, Integer> quotas = new HashMap<String, Integer>();
+        int left = (int) count;
+        for (String member : members) {
+            long share = count * weights.get(member);
+            quotas.put(member, (int) (share / total));
+            fractions.put(member, share % total);
+            left -= quotas.get(member);
+        }
+        List<String> byRemainder = new ArrayList<String>(members);
+        Collections.sort(byRemainder, new Comparator<String>() {
+            @Override
+            public int compare(String m1, String m2) {
+                int result = fractions.get(m2).compareTo(fractions.get(m1));
+                if (result == 0) {
+                    result = owned.get(m2).size() - owned.get(m1).size();
+                }
+                return result != 0 ? result : m1.compareTo(m2);
+            }
+        });
+        for (int i = 0; i < left; i++) {
+            String member = byRemainder.get(i);
+            quotas.put(member, quotas.get(member) + 1);
+        }
+
+        //Members keep what they own up to their share
+        for (String member : members) {
+            List<String> list = owned.get(member);
+            List<String> kept = list.subList(0, Math.min(list.size(), quotas.get(member)));
+            distribution.get(member).addAll(kept);
+            remaining.removeAll(kept);
+        }
+
+        //Place the other items on the ring, skipping the members which are full
+        TreeMap<Long, String> ring = new TreeMap<Long, String>();
+        for (String member : members) {
+            int virtualNodes = Math.max(1, weights.get(member)) * VIRTUAL_NODES_PER_WEIGHT;
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.put(hash(member + "#" + i), member);
+            }
+        }
+        for (String item : remaining) {
+            Map.Entry<Long, String> entry = ring.ceilingEntry(hash(item));
+            if (entry == null) {
+                entry = ring.firstEntry();
+            }
+            while (distribution.get(entry.getValue()).size() >= quotas.get(entry.getValue())) {
+                entry = ring.higherEntry(entry.getKey());
+                if (entry == null) {
+                    entry = ring.firstEntry();
+                }
+            }
+            distribution.get(entry.getValue()).add(item);
+        }
+        return distribution;
+    }
+
+    private static long hash(String value) {
+        return HASH.hashBytes(value.getBytes(Charsets.UTF_8)).asLong();
+    }
+
+    private static int parseWeight(String key, Object value) {
+        try {
+            int weight = Integer.parseInt(String.valueOf(value).trim());
+            if (weight > 0) {
+                return weight;
+            }
+        } catch (NumberFormatException e) {
+            // fall through
+        }
+        LOGGER.warn("Ignoring invalid weight {}={}, using 1 instead.", key, value);
+        return 1;
+    }
+
+    void bindCurator(CuratorFramework curator) {
+        this.curator.bind(curator);
+    }
+
+    void unbindCurator(CuratorFramework curator) {
+        this.curator.unbind(curator);
+    }
+
+    /**
+     * The partitions assigned to a member and the version of the node storing them, or -1 if it does not exist.
+     */
+    private static class Assignment {
+        private final List<String> partitions;
+        private final int version;
+
+        private Assignment(List<String> partitions, int version) {
+            this.partitions = partitions;
+            this.version = version;
+        }
+    }
+}
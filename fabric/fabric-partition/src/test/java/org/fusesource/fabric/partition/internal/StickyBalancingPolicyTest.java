@@ -0,0 +1,149 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.fusesource.fabric.partition.internal;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StickyBalancingPolicyTest {
+
+    @Test
+    public void testEvenDistribution() {
+        Map<String, List<String>> distribution = StickyBalancingPolicy.distribute(items(100), weights(7), new LinkedHashMap<String, List<String>>());
+        assertComplete(100, distribution);
+        for (List<String> assigned : distribution.values()) {
+            assertTrue(assigned.size() == 14 || assigned.size() == 15);
+        }
+    }
+
+    @Test
+    public void testWeightedDistribution() {
+        Map<String, Integer> weights = weights(3);
+        weights.put("container-0", 2);
+        Map<String, List<String>> distribution = StickyBalancingPolicy.distribute(items(100), weights, new LinkedHashMap<String, List<String>>());
+        assertComplete(100, distribution);
+        assertEquals(50, distribution.get("container-0").size());
+        assertEquals(25, distribution.get("container-1").size());
+        assertEquals(25, distribution.get("container-2").size());
+    }
+
+    @Test
+    public void testMemberLeaving() {
+        Map<String, List<String>> before = StickyBalancingPolicy.distribute(items(100), weights(5), new LinkedHashMap<String, List<String>>());
+        Map<String, Integer> weights = weights(5);
+        weights.remove("container-2");
+        Map<String, List<String>> after = StickyBalancingPolicy.distribute(items(100), weights, before);
+        assertComplete(100, after);
+        assertEquals(before.get("container-2").size(), moves(before, after));
+    }
+
+    @Test
+    public void testMemberJoining() {
+        Map<String, List<String>> before = StickyBalancingPolicy.distribute(items(100), weights(4), new LinkedHashMap<String, List<String>>());
+        Map<String, List<String>> after = StickyBalancingPolicy.distribute(items(100), weights(5), before);
+        assertComplete(100, after);
+        assertEquals(20, after.get("container-4").size());
+        assertEquals(20, moves(before, after));
+    }
+
+    @Test
+    public void testItemsChanging() {
+        Map<String, List<String>> before = StickyBalancingPolicy.distribute(items(100), weights(4), new LinkedHashMap<String, List<String>>());
+        Map<String, List<String>> after = StickyBalancingPolicy.distribute(items(104), weights(4), before);
+        assertComplete(104, after);
+        assertEquals(0, moves(before, after));
+
+        // only the excess of the members which lost fewer items than the others has to move
+        Set<String> remaining = new HashSet<String>(items(96));
+        int excess = 0;
+        for (List<String> assigned : after.values()) {
+            Set<String> kept = new HashSet<String>(assigned);
+            kept.retainAll(remaining);
+            excess += Math.max(0, kept.size() - 24);
+        }
+        Map<String, List<String>> removed = StickyBalancingPolicy.distribute(items(96), weights(4), after);
+        assertComplete(96, removed);
+        assertEquals(excess, moves(after, removed));
+    }
+
+    @Test
+    public void testStable() {
+        Map<String, List<String>> before = StickyBalancingPolicy.distribute(items(1000), weights(9), new LinkedHashMap<String, List<String>>());
+        Map<String, List<String>> after = StickyBalancingPolicy.distribute(items(1000), weights(9), before);
+        assertEquals(0, moves(before, after));
+    }
+
+    static List<String> items(int count) {
+        List<String> items = new ArrayList<String>();
+        for (int i = 0; i < count; i++) {
+            items.add("/fabric/partition/test/" + i);
+        }
+        return items;
+    }
+
+    static Map<String, Integer> weights(int count) {
+        Map<String, Integer> weights = new LinkedHashMap<String, Integer>();
+        for (int i = 0; i < count; i++) {
+            weights.put("container-" + i, 1);
+        }
+        return weights;
+    }
+
+    /**
+     * Counts the items which have been assigned to a different member.
+     */
+    static int moves(Map<String, ? extends Collection<String>> before, Map<String, ? extends Collection<String>> after) {
+        Map<String, String> owners = new HashMap<String, String>();
+        for (Map.Entry<String, ? extends Collection<String>> entry : before.entrySet()) {
+            for (String item : entry.getValue()) {
+                owners.put(item, entry.getKey());
+            }
+        }
+        int moves = 0;
+        for (Map.Entry<String, ? extends Collection<String>> entry : after.entrySet()) {
+            for (String item : entry.getValue()) {
+                String owner = owners.get(item);
+                if (owner != null && !owner.equals(entry.getKey())) {
+                    moves++;
+                }
+            }
+        }
+        return moves;
+    }
+
+    private static void assertComplete(int count, Map<String, List<String>> distribution) {
+        Set<String> all = new HashSet<String>();
+        int total = 0;
+        for (List<String> assigned : distribution.values()) {
+            all.addAll(assigned);
+            total += assigned.size();
+        }
+        assertEquals(count, total);
+        assertEquals(new HashSet<String>(items(count)), all);
+    }
+}
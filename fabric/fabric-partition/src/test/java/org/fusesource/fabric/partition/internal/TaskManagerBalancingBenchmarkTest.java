@@ -0,0 +1,104 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.fusesource.fabric.partition.internal;
+
+import com.google.common.collect.Multimap;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays the membership and partition changes a {@link DefaultTaskManager} goes through, over thousands of
+ * partitions and dozens of workers, and compares how many partitions the even and sticky policies move between workers.
+ */
+public class TaskManagerBalancingBenchmarkTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TaskManagerBalancingBenchmarkTest.class);
+
+    private static final int PARTITIONS = 5000;
+    private static final int WORKERS = 40;
+
+    @Test
+    public void testRebalanceEvenVsSticky() {
+        List<String> partitions = StickyBalancingPolicyTest.items(PARTITIONS);
+        List<String> workers = new ArrayList<String>(StickyBalancingPolicyTest.weights(WORKERS).keySet());
+
+        Map<String, Collection<String>> even = new HashMap<String, Collection<String>>();
+        Map<String, List<String>> sticky = new HashMap<String, List<String>>();
+        long evenMoves = 0;
+        long stickyMoves = 0;
+        long evenTime = 0;
+        long stickyTime = 0;
+        int rebalances = 0;
+
+        for (int step = 0; step < 60; step++) {
+            //A worker leaves, then comes back, and partitions are added and removed in between
+            switch (step % 4) {
+                case 0:
+                    workers.remove(step % workers.size());
+                    break;
+                case 1:
+                    workers.add("container-" + (WORKERS + step));
+                    break;
+                case 2:
+                    for (int i = 0; i < 50; i++) {
+                        partitions.add("/fabric/partition/test/" + (PARTITIONS + step * 50 + i));
+                    }
+                    break;
+                default:
+                    partitions.subList(0, 50).clear();
+            }
+            String[] items = partitions.toArray(new String[partitions.size()]);
+            String[] members = workers.toArray(new String[workers.size()]);
+
+            long start = System.nanoTime();
+            Multimap<String, String> evenDistribution = EvenBalancingPolicy.distribute(items, members);
+            evenTime += System.nanoTime() - start;
+            Map<String, Collection<String>> nextEven = new HashMap<String, Collection<String>>(evenDistribution.asMap());
+
+            Map<String, Integer> weights = new LinkedHashMap<String, Integer>();
+            for (String worker : workers) {
+                weights.put(worker, 1);
+            }
+            start = System.nanoTime();
+            Map<String, List<String>> nextSticky = StickyBalancingPolicy.distribute(partitions, weights, sticky);
+            stickyTime += System.nanoTime() - start;
+
+            if (step > 0) {
+                evenMoves += StickyBalancingPolicyTest.moves(even, nextEven);
+                stickyMoves += StickyBalancingPolicyTest.moves(sticky, nextSticky);
+                rebalances++;
+            }
+            even = nextEven;
+            sticky = nextSticky;
+        }
+
+        LOGGER.info("Partitions: {}, workers: {}, rebalances: {}", new Object[]{PARTITIONS, WORKERS, rebalances});
+        LOGGER.info(String.format("Even:   %,d partitions moved, %,.2f ms per rebalance", evenMoves, evenTime / 1000000.0 / rebalances));
+        LOGGER.info(String.format("Sticky: %,d partitions moved, %,.2f ms per rebalance", stickyMoves, stickyTime / 1000000.0 / rebalances));
+        assertTrue("Sticky policy should move fewer partitions", stickyMoves * 10 < evenMoves);
+    }
+}
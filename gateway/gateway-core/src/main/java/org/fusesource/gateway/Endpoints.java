@@ -0,0 +1,66 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.gateway;
+
+import org.fusesource.common.util.Strings;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+
+/**
+ * Helper methods for working with the host and port of service URLs
+ */
+public class Endpoints {
+
+    /**
+     * Returns the port of the given URI or the default port of its scheme if none is specified
+     */
+    public static int getPort(URI uri) {
+        int port = uri.getPort();
+        if (port < 0) {
+            String scheme = uri.getScheme();
+            if ("https".equalsIgnoreCase(scheme)) {
+                port = 443;
+            } else {
+                port = 80;
+            }
+        }
+        return port;
+    }
+
+    /**
+     * Returns the key used to identify an upstream endpoint
+     */
+    public static String toKey(String host, int port) {
+        return host + ":" + port;
+    }
+
+    /**
+     * Returns true if the given service URL text points at the given host and port
+     */
+    public static boolean matches(String urlText, String host, int port) {
+        if (Strings.notEmpty(urlText)) {
+            try {
+                URI uri = new URI(urlText);
+                return port == getPort(uri) && host.equals(uri.getHost());
+            } catch (URISyntaxException e) {
+                // ignore invalid URLs
+            }
+        }
+        return false;
+    }
+}
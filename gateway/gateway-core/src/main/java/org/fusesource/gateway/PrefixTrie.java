@@ -0,0 +1,168 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.gateway;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An immutable character trie which finds the value of the longest key which is a prefix of some text.
+ * <p/>
+ * Lookups do not lock or allocate so a trie can be shared by many threads and replaced atomically
+ * with a new trie created via a {@link Builder} whenever the keys change.
+ */
+public class PrefixTrie<V> {
+    private static final char[] NO_KEYS = new char[0];
+    private static final Node<?>[] NO_CHILDREN = new Node<?>[0];
+
+    private final Node<V> root;
+    private final int size;
+
+    private PrefixTrie(Node<V> root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    public static <V> PrefixTrie<V> empty() {
+        return new Builder<V>().build();
+    }
+
+    /**
+     * Returns the value for the longest key which is a prefix of the given text, or of the text with a
+     * trailing '/' appended, or null if there is no such key
+     */
+    public V longestPrefixMatch(String text) {
+        Node<V> node = root;
+        V answer = node.value;
+        int length = text.length();
+        for (int i = 0; i < length && node != null; i++) {
+            node = node.child(text.charAt(i));
+            if (node != null && node.value != null) {
+                answer = node.value;
+            }
+        }
+        if (node != null) {
+            // we consumed all the text so lets check if it matches a key ending with a slash
+            Node<V> slash = node.child('/');
+            if (slash != null && slash.value != null) {
+                answer = slash.value;
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Returns the value for the exact key or null if there is no such key
+     */
+    public V get(String key) {
+        Node<V> node = root;
+        int length = key.length();
+        for (int i = 0; i < length && node != null; i++) {
+            node = node.child(key.charAt(i));
+        }
+        return node != null ? node.value : null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private static class Node<V> {
+        private final char[] keys;
+        private final Node<V>[] children;
+        private final V value;
+
+        private Node(char[] keys, Node<V>[] children, V value) {
+            this.keys = keys;
+            this.children = children;
+            this.value = value;
+        }
+
+        Node<V> child(char c) {
+            int idx = Arrays.binarySearch(keys, c);
+            return idx >= 0 ? children[idx] : null;
+        }
+    }
+
+    /**
+     * Builds an immutable {@link PrefixTrie}
+     */
+    public static class Builder<V> {
+        private final BuilderNode<V> root = new BuilderNode<V>();
+        private int size;
+
+        /**
+         * Sets the value for the given key, replacing any previous value
+         */
+        public Builder<V> put(String key, V value) {
+            BuilderNode<V> node = root;
+            int length = key.length();
+            for (int i = 0; i < length; i++) {
+                char c = key.charAt(i);
+                BuilderNode<V> child = node.children.get(c);
+                if (child == null) {
+                    child = new BuilderNode<V>();
+                    node.children.put(c, child);
+                }
+                node = child;
+            }
+            if (node.value == null) {
+                size++;
+            }
+            node.value = value;
+            return this;
+        }
+
+        public PrefixTrie<V> build() {
+            return new PrefixTrie<V>(root.toNode(), size);
+        }
+    }
+
+    /**
+     * Creates an array of nodes, sharing the empty array as nodes are never modified once built
+     */
+    @SuppressWarnings("unchecked")
+    private static <V> Node<V>[] newNodes(int count) {
+        return (Node<V>[]) (count == 0 ? NO_CHILDREN : new Node<?>[count]);
+    }
+
+    private static class BuilderNode<V> {
+        private final TreeMap<Character, BuilderNode<V>> children = new TreeMap<Character, BuilderNode<V>>();
+        private V value;
+
+        Node<V> toNode() {
+            int count = children.size();
+            if (count == 0) {
+                return new Node<V>(NO_KEYS, PrefixTrie.<V>newNodes(0), value);
+            }
+            char[] keys = new char[count];
+            Node<V>[] nodes = newNodes(count);
+            int i = 0;
+            for (Map.Entry<Character, BuilderNode<V>> entry : children.entrySet()) {
+                keys[i] = entry.getKey();
+                nodes[i] = entry.getValue().toNode();
+                i++;
+            }
+            return new Node<V>(keys, nodes, value);
+        }
+    }
+}
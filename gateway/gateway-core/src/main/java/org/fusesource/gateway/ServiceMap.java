@@ -17,30 +17,50 @@
 package org.fusesource.gateway;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Maintains a mapping of services which is then use by the proxy to update in process
  * proxy handlers, or used to create new proxy handers
+ * <p/>
+ * Lookups are served from an immutable {@link Snapshot} which is rebuilt whenever a service is
+ * updated or removed, so requests never copy lists or take locks.
  */
 public class ServiceMap {
     private ConcurrentHashMap<String, Map<String, ServiceDetails>> map = new ConcurrentHashMap<String, Map<String, ServiceDetails>>();
+    private final List<ServiceMapListener> listeners = new CopyOnWriteArrayList<ServiceMapListener>();
+    private volatile Snapshot snapshot = new Snapshot();
 
     /**
-     * Returns a list of all the current services for the given path
+     * Returns an immutable list of all the current services for the given path
      */
     public List<ServiceDetails> getServices(String path) {
-        Map<String, ServiceDetails> pathMap = getPathMap(path);
-        return new ArrayList<ServiceDetails>(pathMap.values());
+        List<ServiceDetails> answer = snapshot.services.get(path);
+        if (answer == null) {
+            return Collections.emptyList();
+        }
+        return answer;
     }
 
     /**
-     * Returns a list of all the current paths for the services
+     * Returns an immutable list of all the current paths for the services
      */
     public List<String> getPaths() {
-        return new ArrayList<String>(map.keySet());
+        return snapshot.paths;
+    }
+
+    /**
+     * Returns the services for the longest path prefix matching the given URI
+     * or null if there is no matching prefix
+     */
+    public ServicePrefix findServicePrefix(String uri) {
+        return snapshot.prefixes.longestPrefixMatch(uri);
     }
 
     /**
@@ -50,6 +70,10 @@ public class ServiceMap {
         // ignore services with empty services
         if (!service.getServices().isEmpty()) {
             getPathMap(path).put(service.getId(), service);
+            rebuildSnapshot();
+            for (ServiceMapListener listener : listeners) {
+                listener.serviceUpdated(path, service);
+            }
         }
     }
 
@@ -58,8 +82,36 @@ public class ServiceMap {
      */
     public void serviceRemoved(String path, ServiceDetails service) {
         getPathMap(path).remove(service.getId());
+        rebuildSnapshot();
 
         // lets update any in progress proxy handlers using this service
+        for (ServiceMapListener listener : listeners) {
+            listener.serviceRemoved(path, service);
+        }
+    }
+
+    /**
+     * Returns true if any service on any path still exposes the given URL host and port
+     */
+    public boolean isEndpointInUse(String host, int port) {
+        for (Map<String, ServiceDetails> pathMap : map.values()) {
+            for (ServiceDetails details : pathMap.values()) {
+                for (String urlText : details.getServices()) {
+                    if (Endpoints.matches(urlText, host, port)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    public void addListener(ServiceMapListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(ServiceMapListener listener) {
+        listeners.remove(listener);
     }
 
     protected synchronized Map<String, ServiceDetails> getPathMap(String path) {
@@ -70,4 +122,59 @@ public class ServiceMap {
         }
         return answer;
     }
+
+    /**
+     * Recreates the immutable lookup snapshot from the current services
+     */
+    protected synchronized void rebuildSnapshot() {
+        snapshot = new Snapshot(map);
+    }
+
+    /**
+     * An immutable view of the paths, the services for each path and the prefix trie of the services
+     */
+    protected static class Snapshot {
+        private final List<String> paths;
+        private final Map<String, List<ServiceDetails>> services;
+        private final PrefixTrie<ServicePrefix> prefixes;
+
+        public Snapshot() {
+            this.paths = Collections.emptyList();
+            this.services = Collections.emptyMap();
+            this.prefixes = PrefixTrie.empty();
+        }
+
+        public Snapshot(Map<String, Map<String, ServiceDetails>> map) {
+            List<String> pathList = new ArrayList<String>();
+            Map<String, List<ServiceDetails>> serviceMap = new HashMap<String, List<ServiceDetails>>();
+            Map<String, List<String>> prefixPaths = new TreeMap<String, List<String>>();
+            Map<String, List<ServiceDetails>> prefixServices = new HashMap<String, List<ServiceDetails>>();
+            for (Map.Entry<String, Map<String, ServiceDetails>> entry : map.entrySet()) {
+                String path = entry.getKey();
+                List<ServiceDetails> list = Collections.unmodifiableList(new ArrayList<ServiceDetails>(entry.getValue().values()));
+                pathList.add(path);
+                serviceMap.put(path, list);
+                if (list.isEmpty()) {
+                    continue;
+                }
+                String prefix = ServicePrefix.toPrefix(path);
+                List<String> groupPaths = prefixPaths.get(prefix);
+                if (groupPaths == null) {
+                    groupPaths = new ArrayList<String>();
+                    prefixPaths.put(prefix, groupPaths);
+                    prefixServices.put(prefix, new ArrayList<ServiceDetails>());
+                }
+                groupPaths.add(path);
+                prefixServices.get(prefix).addAll(list);
+            }
+            PrefixTrie.Builder<ServicePrefix> builder = new PrefixTrie.Builder<ServicePrefix>();
+            for (Map.Entry<String, List<String>> entry : prefixPaths.entrySet()) {
+                String prefix = entry.getKey();
+                builder.put(prefix, new ServicePrefix(prefix, entry.getValue(), prefixServices.get(prefix)));
+            }
+            this.paths = Collections.unmodifiableList(pathList);
+            this.services = serviceMap;
+            this.prefixes = builder.build();
+        }
+    }
 }
@@ -0,0 +1,68 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.gateway;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable group of the services registered under paths which share the same URI prefix
+ * once the trailing container name is removed from the path
+ */
+public class ServicePrefix {
+    private final String prefix;
+    private final List<String> paths;
+    private final List<ServiceDetails> services;
+
+    public ServicePrefix(String prefix, List<String> paths, List<ServiceDetails> services) {
+        this.prefix = prefix;
+        this.paths = Collections.unmodifiableList(paths);
+        this.services = Collections.unmodifiableList(services);
+    }
+
+    /**
+     * Returns the URI prefix of the path with the container name removed
+     */
+    public static String toPrefix(String path) {
+        int idx = path.lastIndexOf('/');
+        if (idx > 0) {
+            return path.substring(0, idx + 1);
+        }
+        return path;
+    }
+
+    @Override
+    public String toString() {
+        return "ServicePrefix{" +
+                "prefix='" + prefix + '\'' +
+                ", paths=" + paths +
+                ", services=" + services +
+                '}';
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public List<String> getPaths() {
+        return paths;
+    }
+
+    public List<ServiceDetails> getServices() {
+        return services;
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.gateway.chooser;
+
+import org.fusesource.gateway.ServiceDetails;
+
+/**
+ * Factory methods for creating a {@link Chooser} from its configured name
+ */
+public class Choosers {
+    public static final String RANDOM = "random";
+    public static final String ROUND_ROBIN = "roundRobin";
+    public static final String LEAST_CONNECTIONS = "leastConnections";
+    public static final String LEAST_LATENCY = "leastLatency";
+    public static final String CONSISTENT_HASH = "consistentHash";
+
+    /**
+     * Creates the chooser for the given name, defaulting to a {@link RandomChooser} if no name is specified
+     *
+     * @throws IllegalArgumentException if the name is not a known chooser
+     */
+    public static Chooser<ServiceDetails> createChooser(String name, ServiceLoadTracker tracker, boolean powerOfTwoChoices) {
+        if (name == null || name.length() == 0 || RANDOM.equalsIgnoreCase(name)) {
+            return new RandomChooser<ServiceDetails>();
+        } else if (ROUND_ROBIN.equalsIgnoreCase(name)) {
+            return new RoundRobinChooser<ServiceDetails>();
+        } else if (LEAST_CONNECTIONS.equalsIgnoreCase(name)) {
+            return new LeastConnectionsChooser(tracker, powerOfTwoChoices);
+        } else if (LEAST_LATENCY.equalsIgnoreCase(name)) {
+            return new LeastLatencyChooser(tracker, powerOfTwoChoices);
+        } else if (CONSISTENT_HASH.equalsIgnoreCase(name)) {
+            throw new IllegalArgumentException("The " + CONSISTENT_HASH + " chooser is only supported by HTTP listeners");
+        }
+        throw new IllegalArgumentException("Unknown chooser: " + name);
+    }
+}
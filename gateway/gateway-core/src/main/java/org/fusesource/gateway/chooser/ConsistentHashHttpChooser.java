@@ -0,0 +1,174 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.gateway.chooser;
+
+import org.fusesource.gateway.ServiceDetails;
+import org.vertx.java.core.http.HttpServerRequest;
+
+import java.net.InetSocketAddress;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * An {@link HttpChooser} which keeps requests with the same key on the same service using a
+ * {@link ConsistentHashRing}. The key is taken from a cookie, a header or the client IP address.
+ * <p/>
+ * In cookie mode a request without the cookie is given a new random key which is returned to the
+ * client in a Set-Cookie header so that its following requests stick to the same service.
+ * In header mode a request without the header falls back to the client IP address.
+ */
+public class ConsistentHashHttpChooser implements HttpChooser {
+    public static final String COOKIE = "cookie";
+    public static final String HEADER = "header";
+    public static final String CLIENT_IP = "clientIp";
+
+    public static final String DEFAULT_COOKIE_NAME = "FABRIC_GATEWAY_ID";
+    public static final int DEFAULT_VIRTUAL_NODES = 160;
+
+    private static final int MAX_CACHED_RINGS = 64;
+
+    private final String keyType;
+    private final String keyName;
+    private final int virtualNodes;
+    private volatile Map<List<ServiceDetails>, ConsistentHashRing> rings = new IdentityHashMap<List<ServiceDetails>, ConsistentHashRing>();
+
+    public ConsistentHashHttpChooser() {
+        this(COOKIE, DEFAULT_COOKIE_NAME, DEFAULT_VIRTUAL_NODES);
+    }
+
+    public ConsistentHashHttpChooser(String keyType, String keyName, int virtualNodes) {
+        if (!COOKIE.equals(keyType) && !HEADER.equals(keyType) && !CLIENT_IP.equals(keyType)) {
+            throw new IllegalArgumentException("Unknown consistent hash key type: " + keyType
+                    + ". Should be one of " + COOKIE + ", " + HEADER + " or " + CLIENT_IP);
+        }
+        if (HEADER.equals(keyType) && (keyName == null || keyName.length() == 0)) {
+            throw new IllegalArgumentException("A header name is required to hash on a header");
+        }
+        if (virtualNodes <= 0) {
+            throw new IllegalArgumentException("virtualNodes must be positive but was " + virtualNodes);
+        }
+        this.keyType = keyType;
+        this.keyName = COOKIE.equals(keyType) && (keyName == null || keyName.length() == 0) ? DEFAULT_COOKIE_NAME : keyName;
+        this.virtualNodes = virtualNodes;
+    }
+
+    @Override
+    public String toString() {
+        return "ConsistentHashHttpChooser{" +
+                "keyType='" + keyType + '\'' +
+                ", keyName='" + keyName + '\'' +
+                ", virtualNodes=" + virtualNodes +
+                '}';
+    }
+
+    @Override
+    public ServiceDetails chooseService(HttpServerRequest request, List<ServiceDetails> services) {
+        int size = services.size();
+        if (size == 0) {
+            return null;
+        } else if (size == 1) {
+            return services.get(0);
+        }
+        return getRing(services).get(getKey(request));
+    }
+
+    /**
+     * Returns the key used to pick the service for the request
+     */
+    protected String getKey(HttpServerRequest request) {
+        String answer = null;
+        if (COOKIE.equals(keyType)) {
+            answer = getCookie(request.headers().get("Cookie"), keyName);
+            if (answer == null) {
+                answer = UUID.randomUUID().toString();
+                request.response().headers().add("Set-Cookie", keyName + "=" + answer + "; Path=/");
+            }
+        } else if (HEADER.equals(keyType)) {
+            answer = request.headers().get(keyName);
+        }
+        if (answer == null) {
+            InetSocketAddress address = request.remoteAddress();
+            answer = address.getAddress() != null ? address.getAddress().getHostAddress() : address.getHostName();
+        }
+        return answer;
+    }
+
+    /**
+     * Returns the ring for the list of services; the {@link org.fusesource.gateway.ServiceMap} returns the same
+     * immutable list until its services change so rings are cached by the identity of the list
+     */
+    protected ConsistentHashRing getRing(List<ServiceDetails> services) {
+        ConsistentHashRing answer = rings.get(services);
+        if (answer == null) {
+            answer = new ConsistentHashRing(services, virtualNodes);
+            Map<List<ServiceDetails>, ConsistentHashRing> newRings;
+            if (rings.size() >= MAX_CACHED_RINGS) {
+                // old lists are replaced whenever the services change so lets start again
+                newRings = new IdentityHashMap<List<ServiceDetails>, ConsistentHashRing>();
+            } else {
+                newRings = new IdentityHashMap<List<ServiceDetails>, ConsistentHashRing>(rings);
+            }
+            newRings.put(services, answer);
+            rings = newRings;
+        }
+        return answer;
+    }
+
+    /**
+     * Returns the value of the named cookie from the Cookie header or null if it is not present
+     */
+    protected static String getCookie(String header, String name) {
+        if (header == null) {
+            return null;
+        }
+        int length = header.length();
+        int start = 0;
+        while (start < length) {
+            int end = header.indexOf(';', start);
+            if (end < 0) {
+                end = length;
+            }
+            int eq = header.indexOf('=', start);
+            if (eq > 0 && eq < end) {
+                String cookieName = header.substring(start, eq).trim();
+                if (cookieName.equals(name)) {
+                    String value = header.substring(eq + 1, end).trim();
+                    if (value.length() > 1 && value.charAt(0) == '"' && value.charAt(value.length() - 1) == '"') {
+                        value = value.substring(1, value.length() - 1);
+                    }
+                    return value.length() > 0 ? value : null;
+                }
+            }
+            start = end + 1;
+        }
+        return null;
+    }
+
+    public String getKeyType() {
+        return keyType;
+    }
+
+    public String getKeyName() {
+        return keyName;
+    }
+
+    public int getVirtualNodes() {
+        return virtualNodes;
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.gateway.chooser;
+
+import org.fusesource.gateway.ServiceDetails;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An immutable consistent hash ring of services where each service is placed on the ring at a number
+ * of virtual nodes. Adding or removing one of N services only moves about 1/N of the keys.
+ */
+public class ConsistentHashRing {
+    private final List<ServiceDetails> services;
+    private final long[] hashes;
+    private final ServiceDetails[] nodes;
+
+    public ConsistentHashRing(List<ServiceDetails> services, int virtualNodes) {
+        this.services = services;
+        int size = services.size() * virtualNodes;
+        Point[] points = new Point[size];
+        int i = 0;
+        for (ServiceDetails service : services) {
+            String id = service.getId();
+            for (int v = 0; v < virtualNodes; v++) {
+                points[i++] = new Point(hash(id + "#" + v), service);
+            }
+        }
+        Arrays.sort(points);
+        hashes = new long[size];
+        nodes = new ServiceDetails[size];
+        for (i = 0; i < size; i++) {
+            hashes[i] = points[i].hash;
+            nodes[i] = points[i].service;
+        }
+    }
+
+    /**
+     * Returns the service owning the given key or null if the ring is empty
+     */
+    public ServiceDetails get(String key) {
+        if (nodes.length == 0) {
+            return null;
+        }
+        int idx = Arrays.binarySearch(hashes, hash(key));
+        if (idx < 0) {
+            idx = -idx - 1;
+            if (idx == hashes.length) {
+                idx = 0;
+            }
+        }
+        return nodes[idx];
+    }
+
+    /**
+     * Returns the list of services this ring was created from
+     */
+    public List<ServiceDetails> getServices() {
+        return services;
+    }
+
+    /**
+     * A 64 bit FNV-1a hash of the text with a final avalanche mix so that similar keys spread evenly over the ring
+     */
+    public static long hash(String text) {
+        long h = 0xcbf29ce484222325L;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            h ^= text.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static class Point implements Comparable<Point> {
+        private final long hash;
+        private final ServiceDetails service;
+
+        private Point(long hash, ServiceDetails service) {
+            this.hash = hash;
+            this.service = service;
+        }
+
+        @Override
+        public int compareTo(Point that) {
+            return hash < that.hash ? -1 : (hash == that.hash ? 0 : 1);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.gateway.chooser;
+
+/**
+ * Chooses the service with the fewest outstanding requests or connections
+ */
+public class LeastConnectionsChooser extends LoadAwareChooser {
+
+    public LeastConnectionsChooser(ServiceLoadTracker tracker) {
+        this(tracker, false);
+    }
+
+    public LeastConnectionsChooser(ServiceLoadTracker tracker, boolean powerOfTwoChoices) {
+        super(tracker, powerOfTwoChoices);
+    }
+
+    @Override
+    protected double cost(ServiceLoad load) {
+        return load.getOutstanding();
+    }
+}
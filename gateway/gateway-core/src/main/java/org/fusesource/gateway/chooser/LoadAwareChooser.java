@@ -0,0 +1,85 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.gateway.chooser;
+
+import org.fusesource.gateway.ServiceDetails;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A base class for choosers which pick the service with the lowest cost according to its {@link ServiceLoad}.
+ * <p/>
+ * By default every service is compared; when power of two choices is enabled two services are picked at random
+ * and the cheaper one is used which avoids every gateway herding onto the same least loaded service.
+ */
+public abstract class LoadAwareChooser implements Chooser<ServiceDetails> {
+    private final ServiceLoadTracker tracker;
+    private final boolean powerOfTwoChoices;
+    private final Random random = new Random();
+
+    protected LoadAwareChooser(ServiceLoadTracker tracker, boolean powerOfTwoChoices) {
+        this.tracker = tracker;
+        this.powerOfTwoChoices = powerOfTwoChoices;
+    }
+
+    @Override
+    public ServiceDetails choose(List<ServiceDetails> services) {
+        int size = services.size();
+        if (size == 0) {
+            return null;
+        } else if (size == 1) {
+            return services.get(0);
+        } else if (powerOfTwoChoices) {
+            int first = random.nextInt(size);
+            int second = random.nextInt(size - 1);
+            if (second >= first) {
+                second++;
+            }
+            ServiceDetails a = services.get(first);
+            ServiceDetails b = services.get(second);
+            return cost(tracker.getLoad(a)) <= cost(tracker.getLoad(b)) ? a : b;
+        } else {
+            // lets start at a random offset so that ties are spread across the services
+            int offset = random.nextInt(size);
+            ServiceDetails answer = null;
+            double lowest = Double.MAX_VALUE;
+            for (int i = 0; i < size; i++) {
+                ServiceDetails service = services.get((offset + i) % size);
+                double cost = cost(tracker.getLoad(service));
+                if (answer == null || cost < lowest) {
+                    answer = service;
+                    lowest = cost;
+                }
+            }
+            return answer;
+        }
+    }
+
+    /**
+     * Returns the cost of sending the next request to the service with the given load
+     */
+    protected abstract double cost(ServiceLoad load);
+
+    public ServiceLoadTracker getTracker() {
+        return tracker;
+    }
+
+    public boolean isPowerOfTwoChoices() {
+        return powerOfTwoChoices;
+    }
+}
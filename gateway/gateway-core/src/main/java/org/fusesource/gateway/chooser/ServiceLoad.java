@@ -0,0 +1,110 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.gateway.chooser;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks the number of outstanding requests or connections and an exponentially weighted
+ * moving average of the response latency of a single service
+ */
+public class ServiceLoad {
+    private final String serviceId;
+    private final long decayNanos;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicLong requestCount = new AtomicLong();
+    private double latencyEwmaNanos = -1;
+    private long lastUpdateNanos;
+
+    public ServiceLoad(String serviceId, long decayNanos) {
+        this.serviceId = serviceId;
+        this.decayNanos = decayNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "ServiceLoad{" +
+                "serviceId='" + serviceId + '\'' +
+                ", outstanding=" + outstanding +
+                ", latencyMillis=" + getLatencyMillis() +
+                '}';
+    }
+
+    /**
+     * Marks the start of a request or connection and returns the start time in nanoseconds
+     */
+    public long requestStarted() {
+        outstanding.incrementAndGet();
+        requestCount.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    /**
+     * Marks the end of a request or connection without recording its latency
+     */
+    public void requestEnded() {
+        outstanding.decrementAndGet();
+    }
+
+    /**
+     * Marks the end of a request started at the given time and records its latency
+     */
+    public void requestCompleted(long startNanos) {
+        requestEnded();
+        recordLatency(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Adds a latency sample; older samples decay exponentially by the time elapsed since the previous sample
+     * so the average reacts quickly when a service slows down after a quiet period
+     */
+    public synchronized void recordLatency(long latencyNanos) {
+        long now = System.nanoTime();
+        if (latencyEwmaNanos < 0) {
+            latencyEwmaNanos = latencyNanos;
+        } else {
+            double weight = Math.exp(-(double) (now - lastUpdateNanos) / decayNanos);
+            latencyEwmaNanos = latencyEwmaNanos * weight + latencyNanos * (1.0 - weight);
+        }
+        lastUpdateNanos = now;
+    }
+
+    public String getServiceId() {
+        return serviceId;
+    }
+
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * Returns the weighted average latency in nanoseconds or zero if no latency has been recorded yet
+     */
+    public synchronized double getLatencyEwmaNanos() {
+        return latencyEwmaNanos < 0 ? 0 : latencyEwmaNanos;
+    }
+
+    public double getLatencyMillis() {
+        return getLatencyEwmaNanos() / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.gateway.chooser;
+
+import org.fusesource.gateway.ServiceDetails;
+import org.fusesource.gateway.ServiceMap;
+import org.fusesource.gateway.ServiceMapListener;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the {@link ServiceLoad} of each service used by a gateway so that load aware
+ * choosers can pick the least loaded or fastest service
+ */
+public class ServiceLoadTracker implements ServiceMapListener {
+    public static final long DEFAULT_DECAY_MILLIS = 10000L;
+
+    private final ConcurrentHashMap<String, ServiceLoad> loads = new ConcurrentHashMap<String, ServiceLoad>();
+    private long decayNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_DECAY_MILLIS);
+
+    public void init(ServiceMap serviceMap) {
+        serviceMap.addListener(this);
+    }
+
+    public void destroy(ServiceMap serviceMap) {
+        serviceMap.removeListener(this);
+        loads.clear();
+    }
+
+    /**
+     * Returns the load for the given service, creating it if required
+     */
+    public ServiceLoad getLoad(ServiceDetails service) {
+        String id = service.getId();
+        ServiceLoad answer = loads.get(id);
+        if (answer == null) {
+            ServiceLoad newLoad = new ServiceLoad(id, decayNanos);
+            answer = loads.putIfAbsent(id, newLoad);
+            if (answer == null) {
+                answer = newLoad;
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Returns the total number of outstanding requests or connections across all the services
+     */
+    public int getOutstanding() {
+        int answer = 0;
+        for (ServiceLoad load : loads.values()) {
+            answer += load.getOutstanding();
+        }
+        return answer;
+    }
+
+    public Collection<ServiceLoad> getLoads() {
+        return Collections.unmodifiableCollection(loads.values());
+    }
+
+    @Override
+    public void serviceUpdated(String path, ServiceDetails service) {
+    }
+
+    @Override
+    public void serviceRemoved(String path, ServiceDetails service) {
+        loads.remove(service.getId());
+    }
+
+    /**
+     * Sets the time in milliseconds over which older latency samples decay
+     */
+    public void setDecayMillis(long decayMillis) {
+        this.decayNanos = TimeUnit.MILLISECONDS.toNanos(decayMillis);
+    }
+
+    public long getDecayMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(decayNanos);
+    }
+}
@@ -17,6 +17,8 @@
 package org.fusesource.gateway.handlers;
 
 import org.fusesource.gateway.ServiceMap;
+import org.fusesource.gateway.chooser.ServiceLoadTracker;
+import org.fusesource.gateway.health.HealthChecker;
 import org.vertx.java.core.Vertx;
 
 /**
@@ -38,4 +40,20 @@ public interface Gateway {
     ServiceMap getServiceMap();
 
     String getProtocol();
+
+    ServiceLoadTracker getLoadTracker();
+
+    HealthChecker getHealthChecker();
+
+    /**
+     * Stops routing new requests or connections to services while those in flight complete
+     */
+    void drain();
+
+    boolean isDraining();
+
+    /**
+     * Returns the number of requests or connections to services which are currently in flight
+     */
+    int getInflightCount();
 }
@@ -0,0 +1,321 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.gateway.handlers.http;
+
+import org.fusesource.gateway.Endpoints;
+import org.fusesource.gateway.ServiceDetails;
+import org.fusesource.gateway.ServiceMap;
+import org.fusesource.gateway.ServiceMapListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.http.HttpClient;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches a keep alive {@link HttpClient} for each upstream host and port so that proxied requests
+ * reuse pooled connections rather than creating a new client and connection per request.
+ * <p/>
+ * Clients which have not been used for the idle timeout are closed by a periodic timer and clients
+ * are also closed when the last service using their endpoint is removed from the {@link ServiceMap}
+ */
+public class HttpClientCache implements ServiceMapListener {
+    private static final transient Logger LOG = LoggerFactory.getLogger(HttpClientCache.class);
+
+    public static final int DEFAULT_MAX_POOL_SIZE = 20;
+    public static final long DEFAULT_IDLE_TIMEOUT = 60000L;
+
+    private final Vertx vertx;
+    private final ServiceMap serviceMap;
+    private final ConcurrentHashMap<String, CachedClient> clients = new ConcurrentHashMap<String, CachedClient>();
+    private volatile boolean keepAlive = true;
+    private volatile int maxPoolSize = DEFAULT_MAX_POOL_SIZE;
+    private volatile long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+    private long idleTimerId = -1;
+    private boolean started;
+
+    public HttpClientCache(Vertx vertx, ServiceMap serviceMap) {
+        this.vertx = vertx;
+        this.serviceMap = serviceMap;
+    }
+
+    @Override
+    public String toString() {
+        return "HttpClientCache{" +
+                "keepAlive=" + keepAlive +
+                ", maxPoolSize=" + maxPoolSize +
+                ", idleTimeout=" + idleTimeout +
+                ", clients=" + clients.keySet() +
+                '}';
+    }
+
+    public synchronized void init() {
+        serviceMap.addListener(this);
+        started = true;
+        startIdleTimer();
+    }
+
+    public synchronized void destroy() {
+        serviceMap.removeListener(this);
+        started = false;
+        stopIdleTimer();
+        closeClients(false);
+    }
+
+    /**
+     * Changes the client settings of a running cache. The clients created with the old keep alive or pool size
+     * are removed so that new requests use new clients, and are closed once their requests in flight complete.
+     */
+    public synchronized void reconfigure(boolean keepAlive, int maxPoolSize, long idleTimeout) {
+        boolean clientsChanged = keepAlive != this.keepAlive || maxPoolSize != this.maxPoolSize;
+        boolean timerChanged = idleTimeout != this.idleTimeout;
+        this.keepAlive = keepAlive;
+        this.maxPoolSize = maxPoolSize;
+        this.idleTimeout = idleTimeout;
+        if (clientsChanged) {
+            closeClients(true);
+        }
+        if (timerChanged && started) {
+            stopIdleTimer();
+            startIdleTimer();
+        }
+    }
+
+    protected void startIdleTimer() {
+        if (idleTimeout > 0) {
+            long period = Math.max(idleTimeout / 2, 1000L);
+            idleTimerId = vertx.setPeriodic(period, new Handler<Long>() {
+                @Override
+                public void handle(Long timerId) {
+                    evictIdleClients();
+                }
+            });
+        }
+    }
+
+    protected void stopIdleTimer() {
+        if (idleTimerId >= 0) {
+            vertx.cancelTimer(idleTimerId);
+            idleTimerId = -1;
+        }
+    }
+
+    protected void closeClients(boolean whenReleased) {
+        for (Map.Entry<String, CachedClient> entry : clients.entrySet()) {
+            if (clients.remove(entry.getKey(), entry.getValue())) {
+                if (whenReleased) {
+                    entry.getValue().closeWhenReleased();
+                } else {
+                    entry.getValue().close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a cached client for the host and port of the given URL which must be
+     * {@link CachedClient#release()}d when the proxied request completes
+     */
+    public CachedClient acquire(URL url) {
+        String host = url.getHost();
+        int port = url.getPort() >= 0 ? url.getPort() : url.getDefaultPort();
+        String key = Endpoints.toKey(host, port);
+        while (true) {
+            CachedClient answer = clients.get(key);
+            if (answer == null) {
+                CachedClient newClient = new CachedClient(key, createClient(host, port));
+                answer = clients.putIfAbsent(key, newClient);
+                if (answer == null) {
+                    answer = newClient;
+                    LOG.debug("Created HTTP client for " + key);
+                } else {
+                    newClient.close();
+                }
+            }
+            if (answer.acquire()) {
+                return answer;
+            }
+            // the client was closed concurrently so lets try again
+            clients.remove(key, answer);
+        }
+    }
+
+    protected HttpClient createClient(String host, int port) {
+        HttpClient client = vertx.createHttpClient();
+        client.setHost(host);
+        client.setPort(port);
+        client.setKeepAlive(keepAlive);
+        client.setMaxPoolSize(maxPoolSize);
+        return client;
+    }
+
+    /**
+     * Closes any clients which have no requests in progress and have not been used within the idle timeout
+     */
+    public void evictIdleClients() {
+        long expiry = System.currentTimeMillis() - idleTimeout;
+        for (Map.Entry<String, CachedClient> entry : clients.entrySet()) {
+            CachedClient client = entry.getValue();
+            if (client.closeIfIdleSince(expiry)) {
+                clients.remove(entry.getKey(), client);
+                LOG.debug("Closed idle HTTP client for " + entry.getKey());
+            }
+        }
+    }
+
+    @Override
+    public void serviceUpdated(String path, ServiceDetails service) {
+    }
+
+    @Override
+    public void serviceRemoved(String path, ServiceDetails service) {
+        for (String urlText : service.getServices()) {
+            try {
+                URI uri = new URI(urlText);
+                String host = uri.getHost();
+                int port = Endpoints.getPort(uri);
+                if (host != null && !serviceMap.isEndpointInUse(host, port)) {
+                    CachedClient client = clients.remove(Endpoints.toKey(host, port));
+                    if (client != null) {
+                        LOG.debug("Closing HTTP client for removed service " + urlText);
+                        client.closeWhenReleased();
+                    }
+                }
+            } catch (URISyntaxException e) {
+                LOG.debug("Ignoring invalid URI " + urlText + ". " + e);
+            }
+        }
+    }
+
+    public int getCachedClientCount() {
+        return clients.size();
+    }
+
+    // Properties
+    //-------------------------------------------------------------------------
+
+    public boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    public void setKeepAlive(boolean keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    public int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    public void setMaxPoolSize(int maxPoolSize) {
+        this.maxPoolSize = maxPoolSize;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Sets the number of milliseconds after which an unused client is closed; zero or less disables idle eviction
+     */
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * A cached client with a count of the requests currently using it
+     */
+    public static class CachedClient {
+        private final String key;
+        private final HttpClient client;
+        private int inflight;
+        private long lastUsed = System.currentTimeMillis();
+        private boolean closed;
+        private boolean closeWhenReleased;
+
+        public CachedClient(String key, HttpClient client) {
+            this.key = key;
+            this.client = client;
+        }
+
+        @Override
+        public String toString() {
+            return "CachedClient(" + key + ")";
+        }
+
+        public HttpClient getClient() {
+            return client;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * Marks the end of a request using this client
+         */
+        public synchronized void release() {
+            if (inflight > 0) {
+                inflight--;
+            }
+            lastUsed = System.currentTimeMillis();
+            if (inflight == 0 && closeWhenReleased) {
+                close();
+            }
+        }
+
+        protected synchronized boolean acquire() {
+            if (closed || closeWhenReleased) {
+                return false;
+            }
+            inflight++;
+            lastUsed = System.currentTimeMillis();
+            return true;
+        }
+
+        protected synchronized boolean closeIfIdleSince(long time) {
+            if (inflight == 0 && lastUsed < time) {
+                close();
+                return true;
+            }
+            return false;
+        }
+
+        protected synchronized void closeWhenReleased() {
+            closeWhenReleased = true;
+            if (inflight == 0) {
+                close();
+            }
+        }
+
+        protected synchronized void close() {
+            if (!closed) {
+                closed = true;
+                try {
+                    client.close();
+                } catch (Exception e) {
+                    LOG.debug("Failed to close HTTP client " + key + ". " + e);
+                }
+            }
+        }
+    }
+}
@@ -17,6 +17,10 @@
 package org.fusesource.gateway.handlers.http;
 
 import org.fusesource.gateway.ServiceMap;
+import org.fusesource.gateway.chooser.HttpChooser;
+import org.fusesource.gateway.chooser.ServiceLoadTracker;
+import org.fusesource.gateway.health.HealthChecker;
+import org.fusesource.gateway.health.HttpHealthProbe;
 import org.fusesource.gateway.handlers.Gateway;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,14 +36,24 @@ public class HttpGateway implements Gateway {
     private final ServiceMap serviceMap;
     private final int port;
     private final String protocol = "http";
+    private final ServiceLoadTracker loadTracker = new ServiceLoadTracker();
+    private final HealthChecker healthChecker;
     private String host;
     private HttpServer server;
-    private HttpGatewayHandler handler;
+    private volatile HttpGatewayHandler handler;
+    private volatile HttpClientCache clientCache;
+    private volatile HttpChooser chooser;
+    private volatile boolean draining;
+    private volatile boolean keepAlive = true;
+    private volatile int maxPoolSize = HttpClientCache.DEFAULT_MAX_POOL_SIZE;
+    private volatile long idleTimeout = HttpClientCache.DEFAULT_IDLE_TIMEOUT;
 
     public HttpGateway(Vertx vertx, ServiceMap serviceMap, int port) {
         this.vertx = vertx;
         this.serviceMap = serviceMap;
         this.port = port;
+        this.healthChecker = new HealthChecker(vertx, serviceMap, new HttpHealthProbe(vertx));
+        this.healthChecker.setObjectName(protocol, port);
     }
 
     @Override
@@ -53,8 +67,20 @@ public class HttpGateway implements Gateway {
 
     @Override
     public void init() {
+        if (clientCache == null) {
+            clientCache = new HttpClientCache(vertx, serviceMap);
+            clientCache.setKeepAlive(keepAlive);
+            clientCache.setMaxPoolSize(maxPoolSize);
+            clientCache.setIdleTimeout(idleTimeout);
+            clientCache.init();
+        }
+        loadTracker.init(serviceMap);
+        healthChecker.init();
         if (handler == null) {
-            handler = new HttpGatewayHandler(vertx, serviceMap);
+            handler = new HttpGatewayHandler(vertx, serviceMap, clientCache, loadTracker, healthChecker);
+            if (chooser != null) {
+                handler.setChooser(chooser);
+            }
         }
         server = vertx.createHttpServer().requestHandler(handler);
         if (host != null) {
@@ -66,9 +92,35 @@ public class HttpGateway implements Gateway {
         }
     }
 
+    @Override
+    public void drain() {
+        draining = true;
+        HttpGatewayHandler current = handler;
+        if (current != null) {
+            current.setDraining(true);
+        }
+    }
+
+    @Override
+    public boolean isDraining() {
+        return draining;
+    }
+
+    @Override
+    public int getInflightCount() {
+        return loadTracker.getOutstanding();
+    }
+
     @Override
     public void destroy() {
         server.close();
+        if (clientCache != null) {
+            clientCache.destroy();
+            clientCache = null;
+        }
+        loadTracker.destroy(serviceMap);
+        healthChecker.destroy();
+        handler = null;
     }
 
     public int getPort() {
@@ -95,5 +147,67 @@ public class HttpGateway implements Gateway {
     public String getProtocol() {
         return protocol;
     }
+
+    @Override
+    public ServiceLoadTracker getLoadTracker() {
+        return loadTracker;
+    }
+
+    @Override
+    public HealthChecker getHealthChecker() {
+        return healthChecker;
+    }
+
+    public HttpChooser getChooser() {
+        return chooser;
+    }
+
+    /**
+     * Sets the chooser used to pick a service for each request
+     */
+    public void setChooser(HttpChooser chooser) {
+        this.chooser = chooser;
+        HttpGatewayHandler current = handler;
+        if (current != null && chooser != null) {
+            current.setChooser(chooser);
+        }
+    }
+
+    /**
+     * Applies the client settings to the running client cache, if any
+     */
+    protected void updateClientCache() {
+        HttpClientCache current = clientCache;
+        if (current != null) {
+            current.reconfigure(keepAlive, maxPoolSize, idleTimeout);
+        }
+    }
+
+    public boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    public void setKeepAlive(boolean keepAlive) {
+        this.keepAlive = keepAlive;
+        updateClientCache();
+    }
+
+    public int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    public void setMaxPoolSize(int maxPoolSize) {
+        this.maxPoolSize = maxPoolSize;
+        updateClientCache();
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+        updateClientCache();
+    }
 }
 
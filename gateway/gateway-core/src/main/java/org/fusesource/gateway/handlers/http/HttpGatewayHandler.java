@@ -19,15 +19,20 @@ package org.fusesource.gateway.handlers.http;
 import org.fusesource.common.util.Strings;
 import org.fusesource.gateway.ServiceDetails;
 import org.fusesource.gateway.ServiceMap;
+import org.fusesource.gateway.ServicePrefix;
 import org.fusesource.gateway.chooser.DefaultHttpChooser;
 import org.fusesource.gateway.chooser.HttpChooser;
+import org.fusesource.gateway.chooser.ServiceLoad;
+import org.fusesource.gateway.chooser.ServiceLoadTracker;
+import org.fusesource.gateway.health.HealthChecker;
+import org.fusesource.gateway.health.HttpHealthProbe;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.vertx.java.core.Handler;
+import org.vertx.java.core.MultiMap;
 import org.vertx.java.core.Vertx;
 import org.vertx.java.core.VoidHandler;
 import org.vertx.java.core.buffer.Buffer;
-import org.vertx.java.core.http.HttpClient;
 import org.vertx.java.core.http.HttpClientRequest;
 import org.vertx.java.core.http.HttpClientResponse;
 import org.vertx.java.core.http.HttpServerRequest;
@@ -37,6 +42,7 @@ import java.io.StringWriter;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.List;
+import java.util.Map;
 
 /**
  */
@@ -45,11 +51,45 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
 
     private final Vertx vertx;
     private final ServiceMap serviceMap;
-    private HttpChooser chooser = new DefaultHttpChooser();
+    private final HttpClientCache clientCache;
+    private final ServiceLoadTracker loadTracker;
+    private final HealthChecker healthChecker;
+    private volatile HttpChooser chooser = new DefaultHttpChooser();
+    private volatile boolean draining;
 
     public HttpGatewayHandler(Vertx vertx, ServiceMap serviceMap) {
+        this(vertx, serviceMap, createClientCache(vertx, serviceMap), createLoadTracker(serviceMap),
+                createHealthChecker(vertx, serviceMap));
+    }
+
+    public HttpGatewayHandler(Vertx vertx, ServiceMap serviceMap, HttpClientCache clientCache,
+                              ServiceLoadTracker loadTracker, HealthChecker healthChecker) {
         this.vertx = vertx;
         this.serviceMap = serviceMap;
+        this.clientCache = clientCache;
+        this.loadTracker = loadTracker;
+        this.healthChecker = healthChecker;
+    }
+
+    private static HttpClientCache createClientCache(Vertx vertx, ServiceMap serviceMap) {
+        HttpClientCache clientCache = new HttpClientCache(vertx, serviceMap);
+        // lets evict idle clients and close the clients of removed services
+        clientCache.init();
+        return clientCache;
+    }
+
+    private static ServiceLoadTracker createLoadTracker(ServiceMap serviceMap) {
+        ServiceLoadTracker loadTracker = new ServiceLoadTracker();
+        // lets forget the load of removed services
+        loadTracker.init(serviceMap);
+        return loadTracker;
+    }
+
+    private static HealthChecker createHealthChecker(Vertx vertx, ServiceMap serviceMap) {
+        HealthChecker healthChecker = new HealthChecker(vertx, serviceMap, new HttpHealthProbe(vertx));
+        // lets start probing the services and forget the health of removed services
+        healthChecker.init();
+        return healthChecker;
     }
 
     @Override
@@ -58,48 +98,47 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
         if (LOG.isDebugEnabled()) {
             LOG.debug("Proxying request: " + uri);
         }
+        if (draining) {
+            // lets ask the client to reconnect as the listener is being stopped or rebound
+            request.response().setStatusCode(503);
+            request.response().putHeader("Connection", "close");
+            request.response().end();
+            return;
+        }
 
         // lets map the request URI to map to the service URI and then the renaming URI
         // using mapping rules...
-        HttpClient client = null;
+        HttpClientCache.CachedClient client = null;
+        ServiceDetails serviceDetails = null;
 
         String remaining = null;
         String prefix = null;
 
         try {
-            List<String> paths = serviceMap.getPaths();
-            for (String path : paths) {
-                // lets remove the container name
-                int idx = path.lastIndexOf('/');
-                String pathPrefix = path;
-                if (idx > 0) {
-                    pathPrefix = pathPrefix.substring(0, idx + 1);
+            // lets find the services for the longest matching path prefix
+            ServicePrefix servicePrefix = serviceMap.findServicePrefix(uri);
+            if (servicePrefix != null) {
+                int pathPrefixLength = servicePrefix.getPrefix().length();
+                if (pathPrefixLength < uri.length()) {
+                    remaining = uri.substring(pathPrefixLength);
                 }
-                if (uri.startsWith(pathPrefix) || (uri + "/").startsWith(pathPrefix)) {
-                    int pathPrefixLength = pathPrefix.length();
-                    if (pathPrefixLength < uri.length()) {
-                        remaining = uri.substring(pathPrefixLength);
-                    }
 
-                    // now lets pick a service for this path
-                    List<ServiceDetails> services = serviceMap.getServices(path);
-                    if (!services.isEmpty()) {
-                        ServiceDetails serviceDetails = chooser.chooseService(request, services);
-                        if (serviceDetails != null) {
-                            List<String> urlStrings = serviceDetails.getServices();
-                            if (urlStrings.size() > 0) {
-                                String urlText = urlStrings.get(0);
-                                if (Strings.notEmpty(urlText)) {
-                                    // lets create a client for this request...
-                                    try {
-                                        URL url = new URL(urlText);
-                                        client = createClient(url);
-                                        prefix = url.getPath();
-                                        break;
-                                    } catch (MalformedURLException e) {
-                                        LOG.warn("Failed to parse URL: " + urlText + ". " + e, e);
-                                    }
-                                }
+                // now lets pick a service for this path
+                // lets only choose from the healthy services
+                List<ServiceDetails> services = healthChecker.filter(servicePrefix.getServices());
+                serviceDetails = chooser.chooseService(request, services);
+                if (serviceDetails != null) {
+                    List<String> urlStrings = serviceDetails.getServices();
+                    if (urlStrings.size() > 0) {
+                        String urlText = urlStrings.get(0);
+                        if (Strings.notEmpty(urlText)) {
+                            // lets create a client for this request...
+                            try {
+                                URL url = new URL(urlText);
+                                client = acquireClient(url);
+                                prefix = url.getPath();
+                            } catch (MalformedURLException e) {
+                                LOG.warn("Failed to parse URL: " + urlText + ". " + e, e);
                             }
                         }
                     }
@@ -114,13 +153,20 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
                     }
                     actualUrl += remaining;
                 }
-                final HttpClientRequest clientRequest = client.request(request.method(), actualUrl, new Handler<HttpClientResponse>() {
+                final ServiceDetails chosenService = serviceDetails;
+                final HttpClientHandle clientHandle = new HttpClientHandle(client, loadTracker.getLoad(serviceDetails));
+                final HttpClientRequest clientRequest = client.getClient().request(request.method(), actualUrl, new Handler<HttpClientResponse>() {
                     public void handle(HttpClientResponse clientResponse) {
+                        healthChecker.recordSuccess(chosenService);
                         if (LOG.isDebugEnabled()) {
                             LOG.debug("Proxying response: " + clientResponse.statusCode());
                         }
                         request.response().setStatusCode(clientResponse.statusCode());
-                        request.response().headers().set(clientResponse.headers());
+                        // lets add rather than replace the headers to keep any headers added by the chooser
+                        MultiMap headers = request.response().headers();
+                        for (Map.Entry<String, String> entry : clientResponse.headers()) {
+                            headers.add(entry.getKey(), entry.getValue());
+                        }
                         request.response().setChunked(true);
                         clientResponse.dataHandler(new Handler<Buffer>() {
                             public void handle(Buffer data) {
@@ -132,9 +178,26 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
                         });
                         clientResponse.endHandler(new VoidHandler() {
                             public void handle() {
+                                clientHandle.release();
                                 request.response().end();
                             }
                         });
+                        clientResponse.exceptionHandler(new Handler<Throwable>() {
+                            public void handle(Throwable e) {
+                                LOG.warn("Failed to proxy response from " + clientHandle + ". " + e);
+                                clientHandle.failed();
+                                request.response().close();
+                            }
+                        });
+                    }
+                });
+                clientRequest.exceptionHandler(new Handler<Throwable>() {
+                    public void handle(Throwable e) {
+                        LOG.warn("Failed to proxy request to " + clientHandle + ". " + e);
+                        clientHandle.failed();
+                        healthChecker.recordFailure(chosenService, e.toString());
+                        request.response().setStatusCode(502);
+                        request.response().close();
                     }
                 });
                 clientRequest.headers().set(request.headers());
@@ -158,7 +221,7 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
 
             } else {
                 //  lets return a 404
-                LOG.info("Could not find matching proxy path for " + uri + " from paths: " + paths);
+                LOG.info("Could not find matching proxy path for " + uri + " from paths: " + serviceMap.getPaths());
                 request.response().setStatusCode(404);
                 request.response().close();
             }
@@ -172,13 +235,76 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
         }
     }
 
-    protected HttpClient createClient(URL url) throws MalformedURLException {
-        // lets create a client
-        HttpClient client = vertx.createHttpClient();
-        client.setHost(url.getHost());
-        client.setPort(url.getPort());
-        return client;
+    /**
+     * Returns a pooled client for the given URL from the {@link HttpClientCache}
+     */
+    protected HttpClientCache.CachedClient acquireClient(URL url) throws MalformedURLException {
+        return clientCache.acquire(url);
+    }
+
+    public HttpChooser getChooser() {
+        return chooser;
+    }
 
+    /**
+     * Sets the chooser; requests already being routed keep using the previous one
+     */
+    public void setChooser(HttpChooser chooser) {
+        this.chooser = chooser;
     }
 
+    public boolean isDraining() {
+        return draining;
+    }
+
+    /**
+     * Sets whether new requests are rejected with a 503 while the requests in flight complete
+     */
+    public void setDraining(boolean draining) {
+        this.draining = draining;
+    }
+
+    /**
+     * Ensures the cached client and the service load used by a single proxied request are only
+     * released once whether the request completes or fails
+     */
+    protected static class HttpClientHandle {
+        private final HttpClientCache.CachedClient client;
+        private final ServiceLoad load;
+        private final long startNanos;
+        private boolean released;
+
+        public HttpClientHandle(HttpClientCache.CachedClient client, ServiceLoad load) {
+            this.client = client;
+            this.load = load;
+            this.startNanos = load.requestStarted();
+        }
+
+        @Override
+        public String toString() {
+            return client.getKey();
+        }
+
+        /**
+         * Releases the client once the response has completed, recording its latency
+         */
+        public void release() {
+            if (!released) {
+                released = true;
+                client.release();
+                load.requestCompleted(startNanos);
+            }
+        }
+
+        /**
+         * Releases the client after a failure without recording the latency
+         */
+        public void failed() {
+            if (!released) {
+                released = true;
+                client.release();
+                load.requestEnded();
+            }
+        }
+    }
 }
@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.gateway.handlers.tcp;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the bytes relayed and the active connections for either a whole gateway or one upstream endpoint.
+ * Bytes in are read from clients and written to services; bytes out are read from services and written to clients.
+ */
+public class ConnectionStats {
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+    private final AtomicLong activeConnections = new AtomicLong();
+    private final AtomicLong totalConnections = new AtomicLong();
+    private final DurationHistogram durations = new DurationHistogram();
+
+    public void connectionOpened() {
+        activeConnections.incrementAndGet();
+        totalConnections.incrementAndGet();
+    }
+
+    public void connectionClosed(long durationMillis) {
+        activeConnections.decrementAndGet();
+        durations.record(durationMillis);
+    }
+
+    public void addBytesIn(int count) {
+        bytesIn.addAndGet(count);
+    }
+
+    public void addBytesOut(int count) {
+        bytesOut.addAndGet(count);
+    }
+
+    public long getBytesIn() {
+        return bytesIn.get();
+    }
+
+    public long getBytesOut() {
+        return bytesOut.get();
+    }
+
+    public long getActiveConnections() {
+        return activeConnections.get();
+    }
+
+    public long getTotalConnections() {
+        return totalConnections.get();
+    }
+
+    public DurationHistogram getDurations() {
+        return durations;
+    }
+}
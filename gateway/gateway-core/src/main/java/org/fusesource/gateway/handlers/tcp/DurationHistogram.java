@@ -0,0 +1,59 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.gateway.handlers.tcp;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of connection durations using fixed buckets from 100 milliseconds up to an hour
+ */
+public class DurationHistogram {
+    private static final long[] BUCKET_MILLIS = {100, 1000, 10 * 1000, 60 * 1000, 10 * 60 * 1000, 60 * 60 * 1000};
+    private static final String[] BUCKET_NAMES = {"<=100ms", "<=1s", "<=10s", "<=1m", "<=10m", "<=1h", ">1h"};
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_NAMES.length);
+
+    @Override
+    public String toString() {
+        return "DurationHistogram" + toMap();
+    }
+
+    public void record(long durationMillis) {
+        int i = 0;
+        while (i < BUCKET_MILLIS.length && durationMillis > BUCKET_MILLIS[i]) {
+            i++;
+        }
+        counts.incrementAndGet(i);
+    }
+
+    public long getCount(int bucket) {
+        return counts.get(bucket);
+    }
+
+    /**
+     * Returns the count of each bucket keyed by the bucket name in ascending order of duration
+     */
+    public Map<String, Long> toMap() {
+        Map<String, Long> answer = new LinkedHashMap<String, Long>();
+        for (int i = 0; i < BUCKET_NAMES.length; i++) {
+            answer.put(BUCKET_NAMES[i], counts.get(i));
+        }
+        return answer;
+    }
+}
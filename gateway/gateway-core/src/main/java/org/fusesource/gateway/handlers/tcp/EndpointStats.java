@@ -0,0 +1,97 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.gateway.handlers.tcp;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the connects, connect failures, connect latency and relayed connections to a single upstream host and port
+ */
+public class EndpointStats extends ConnectionStats {
+    private final String endpoint;
+    private final AtomicLong connects = new AtomicLong();
+    private final AtomicLong connectFailures = new AtomicLong();
+    private final AtomicLong totalConnectNanos = new AtomicLong();
+    private final AtomicLong maxConnectNanos = new AtomicLong();
+
+    public EndpointStats(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    @Override
+    public String toString() {
+        return "EndpointStats{" +
+                "endpoint='" + endpoint + '\'' +
+                ", connects=" + connects +
+                ", connectFailures=" + connectFailures +
+                ", averageConnectMillis=" + getAverageConnectMillis() +
+                ", activeConnections=" + getActiveConnections() +
+                '}';
+    }
+
+    public void connected(long latencyNanos) {
+        connects.incrementAndGet();
+        totalConnectNanos.addAndGet(latencyNanos);
+        long max = maxConnectNanos.get();
+        while (latencyNanos > max && !maxConnectNanos.compareAndSet(max, latencyNanos)) {
+            max = maxConnectNanos.get();
+        }
+    }
+
+    public void connectFailed() {
+        connectFailures.incrementAndGet();
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public long getConnects() {
+        return connects.get();
+    }
+
+    public long getConnectFailures() {
+        return connectFailures.get();
+    }
+
+    public double getAverageConnectMillis() {
+        long count = connects.get();
+        if (count == 0) {
+            return 0;
+        }
+        return (double) totalConnectNanos.get() / count / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public double getMaxConnectMillis() {
+        return (double) maxConnectNanos.get() / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public EndpointStatsDTO toDTO() {
+        EndpointStatsDTO answer = new EndpointStatsDTO();
+        answer.setEndpoint(endpoint);
+        answer.setConnects(getConnects());
+        answer.setConnectFailures(getConnectFailures());
+        answer.setAverageConnectMillis(getAverageConnectMillis());
+        answer.setMaxConnectMillis(getMaxConnectMillis());
+        answer.setActiveConnections(getActiveConnections());
+        answer.setBytesIn(getBytesIn());
+        answer.setBytesOut(getBytesOut());
+        answer.setConnectionDurations(getDurations().toMap());
+        return answer;
+    }
+}
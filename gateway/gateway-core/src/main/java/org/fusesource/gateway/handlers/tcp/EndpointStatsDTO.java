@@ -0,0 +1,116 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.gateway.handlers.tcp;
+
+import java.util.Map;
+
+/**
+ * The statistics of an upstream endpoint of a TCP gateway as exposed over JMX
+ */
+public class EndpointStatsDTO {
+    private String endpoint;
+    private long connects;
+    private long connectFailures;
+    private double averageConnectMillis;
+    private double maxConnectMillis;
+    private long activeConnections;
+    private long bytesIn;
+    private long bytesOut;
+    private Map<String, Long> connectionDurations;
+
+    @Override
+    public String toString() {
+        return "EndpointStatsDTO{" +
+                "endpoint='" + endpoint + '\'' +
+                ", activeConnections=" + activeConnections +
+                ", bytesIn=" + bytesIn +
+                ", bytesOut=" + bytesOut +
+                '}';
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public void setEndpoint(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public long getConnects() {
+        return connects;
+    }
+
+    public void setConnects(long connects) {
+        this.connects = connects;
+    }
+
+    public long getConnectFailures() {
+        return connectFailures;
+    }
+
+    public void setConnectFailures(long connectFailures) {
+        this.connectFailures = connectFailures;
+    }
+
+    public double getAverageConnectMillis() {
+        return averageConnectMillis;
+    }
+
+    public void setAverageConnectMillis(double averageConnectMillis) {
+        this.averageConnectMillis = averageConnectMillis;
+    }
+
+    public double getMaxConnectMillis() {
+        return maxConnectMillis;
+    }
+
+    public void setMaxConnectMillis(double maxConnectMillis) {
+        this.maxConnectMillis = maxConnectMillis;
+    }
+
+    public long getActiveConnections() {
+        return activeConnections;
+    }
+
+    public void setActiveConnections(long activeConnections) {
+        this.activeConnections = activeConnections;
+    }
+
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    public void setBytesIn(long bytesIn) {
+        this.bytesIn = bytesIn;
+    }
+
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    public void setBytesOut(long bytesOut) {
+        this.bytesOut = bytesOut;
+    }
+
+    public Map<String, Long> getConnectionDurations() {
+        return connectionDurations;
+    }
+
+    public void setConnectionDurations(Map<String, Long> connectionDurations) {
+        this.connectionDurations = connectionDurations;
+    }
+}
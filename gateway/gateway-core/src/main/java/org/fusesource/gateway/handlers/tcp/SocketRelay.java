@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.gateway.handlers.tcp;
+
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.VoidHandler;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.net.NetSocket;
+
+/**
+ * Relays the data read from one socket to another, counting the bytes as they go.
+ * <p/>
+ * Each buffer read is written as is, so its underlying (possibly pooled and direct) memory is handed
+ * straight to the destination without being copied. Once the write queue of the destination reaches the
+ * high water mark the source is paused until the queue drains below half of it.
+ */
+public class SocketRelay implements Handler<Buffer> {
+    private final NetSocket source;
+    private final NetSocket destination;
+    private final ConnectionStats[] stats;
+    private final boolean inbound;
+    private final Handler<Void> drainHandler = new VoidHandler() {
+        public void handle() {
+            source.resume();
+        }
+    };
+
+    /**
+     * Creates a relay from source to destination
+     *
+     * @param highWaterMark the number of bytes which can be queued for the destination before reading is paused
+     * @param inbound       true if the source is the client so the bytes are counted as bytes in
+     * @param stats         the statistics to update
+     */
+    public SocketRelay(NetSocket source, NetSocket destination, int highWaterMark, boolean inbound, ConnectionStats... stats) {
+        this.source = source;
+        this.destination = destination;
+        this.inbound = inbound;
+        this.stats = stats;
+        destination.setWriteQueueMaxSize(highWaterMark);
+    }
+
+    public SocketRelay start() {
+        source.dataHandler(this);
+        return this;
+    }
+
+    @Override
+    public void handle(Buffer buffer) {
+        int length = buffer.length();
+        for (ConnectionStats stat : stats) {
+            if (inbound) {
+                stat.addBytesIn(length);
+            } else {
+                stat.addBytesOut(length);
+            }
+        }
+        destination.write(buffer);
+        if (destination.writeQueueFull()) {
+            source.pause();
+            destination.drainHandler(drainHandler);
+        }
+    }
+}
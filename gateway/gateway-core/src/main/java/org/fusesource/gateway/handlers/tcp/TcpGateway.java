@@ -17,6 +17,10 @@
 package org.fusesource.gateway.handlers.tcp;
 
 import org.fusesource.gateway.ServiceMap;
+import org.fusesource.gateway.chooser.NetChooser;
+import org.fusesource.gateway.chooser.ServiceLoadTracker;
+import org.fusesource.gateway.health.HealthChecker;
+import org.fusesource.gateway.health.TcpHealthProbe;
 import org.fusesource.gateway.handlers.Gateway;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,24 +29,42 @@ import org.vertx.java.core.Vertx;
 import org.vertx.java.core.net.NetServer;
 import org.vertx.java.core.net.NetSocket;
 
+import java.net.URI;
+
 /**
  */
 public class TcpGateway implements Gateway {
     private static final transient Logger LOG = LoggerFactory.getLogger(TcpGateway.class);
 
+    public static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+    public static final int DEFAULT_CONNECT_RETRIES = 2;
+    public static final int DEFAULT_WRITE_QUEUE_MAX_SIZE = 64 * 1024;
+
     private final Vertx vertx;
     private final ServiceMap serviceMap;
     private final int port;
     private final String protocol;
+    private final ServiceLoadTracker loadTracker = new ServiceLoadTracker();
+    private final HealthChecker healthChecker;
+    private final TcpGatewayMetrics metrics;
     private String host;
     private NetServer server;
-    private Handler<NetSocket> handler;
+    private volatile Handler<NetSocket> handler;
+    private volatile NetChooser chooser;
+    private volatile boolean draining;
+    private volatile int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+    private volatile int connectRetries = DEFAULT_CONNECT_RETRIES;
+    private volatile int writeQueueMaxSize = DEFAULT_WRITE_QUEUE_MAX_SIZE;
+    private volatile boolean usePooledBuffers = true;
 
     public TcpGateway(Vertx vertx, ServiceMap serviceMap, int port, String protocol) {
         this.vertx = vertx;
         this.serviceMap = serviceMap;
         this.port = port;
         this.protocol = protocol;
+        this.healthChecker = new HealthChecker(vertx, serviceMap, new TcpHealthProbe(vertx, protocol));
+        this.healthChecker.setObjectName(protocol, port);
+        this.metrics = new TcpGatewayMetrics(protocol, port);
     }
 
     @Override
@@ -56,10 +78,13 @@ public class TcpGateway implements Gateway {
 
     @Override
     public void init() {
+        loadTracker.init(serviceMap);
+        healthChecker.init();
         if (handler == null) {
             handler = new TcpGatewayHandler(this);
         }
         server = vertx.createNetServer().connectHandler(handler);
+        server.setUsePooledBuffers(usePooledBuffers);
         if (host != null) {
             LOG.info("Listening on port " + port + " and host " + host);
             server = server.listen(port, host);
@@ -70,9 +95,29 @@ public class TcpGateway implements Gateway {
 
     }
 
+    @Override
+    public void drain() {
+        draining = true;
+    }
+
+    @Override
+    public boolean isDraining() {
+        return draining;
+    }
+
+    @Override
+    public int getInflightCount() {
+        return loadTracker.getOutstanding();
+    }
+
     @Override
     public void destroy() {
         server.close();
+        if (handler instanceof TcpGatewayHandler) {
+            ((TcpGatewayHandler) handler).close();
+        }
+        loadTracker.destroy(serviceMap);
+        healthChecker.destroy();
     }
 
     @Override
@@ -104,4 +149,99 @@ public class TcpGateway implements Gateway {
     public String getProtocol() {
         return protocol;
     }
+
+    @Override
+    public ServiceLoadTracker getLoadTracker() {
+        return loadTracker;
+    }
+
+    @Override
+    public HealthChecker getHealthChecker() {
+        return healthChecker;
+    }
+
+    public NetChooser getChooser() {
+        return chooser;
+    }
+
+    /**
+     * Sets the chooser used to pick a service for each connection; connections already being routed keep
+     * using the previous one
+     */
+    public void setChooser(NetChooser chooser) {
+        this.chooser = chooser;
+    }
+
+    /**
+     * Returns the statistics for the host and port of the given service URI
+     */
+    public EndpointStats getEndpointStats(URI uri) {
+        return metrics.getEndpointStats(uri);
+    }
+
+    public TcpGatewayMetrics getMetrics() {
+        return metrics;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * Sets the number of milliseconds to wait for a connect to a service before trying the next one
+     */
+    public void setConnectTimeout(int connectTimeout) {
+        if (this.connectTimeout != connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            resetClient();
+        }
+    }
+
+    public int getConnectRetries() {
+        return connectRetries;
+    }
+
+    /**
+     * Sets how many other service URLs are tried if the connect to the chosen service fails
+     */
+    public void setConnectRetries(int connectRetries) {
+        this.connectRetries = connectRetries;
+    }
+
+    public int getWriteQueueMaxSize() {
+        return writeQueueMaxSize;
+    }
+
+    /**
+     * Sets the number of bytes which can be queued for writing to either socket before reading
+     * from the other socket is paused
+     */
+    public void setWriteQueueMaxSize(int writeQueueMaxSize) {
+        this.writeQueueMaxSize = writeQueueMaxSize;
+    }
+
+    public boolean isUsePooledBuffers() {
+        return usePooledBuffers;
+    }
+
+    /**
+     * Sets whether sockets read into pooled direct buffers rather than allocating a new heap buffer for each read
+     */
+    public void setUsePooledBuffers(boolean usePooledBuffers) {
+        if (this.usePooledBuffers != usePooledBuffers) {
+            this.usePooledBuffers = usePooledBuffers;
+            resetClient();
+        }
+    }
+
+    /**
+     * Makes new connections to the services use a client with the current settings; the server keeps
+     * its buffer setting until it is bound again
+     */
+    protected void resetClient() {
+        Handler<NetSocket> current = handler;
+        if (current instanceof TcpGatewayHandler) {
+            ((TcpGatewayHandler) current).resetClient();
+        }
+    }
 }
@@ -24,92 +24,351 @@ import org.fusesource.gateway.chooser.Chooser;
 import org.fusesource.gateway.chooser.DefaultNetChooser;
 import org.fusesource.gateway.chooser.NetChooser;
 import org.fusesource.gateway.chooser.RandomChooser;
+import org.fusesource.gateway.chooser.ServiceLoad;
+import org.fusesource.gateway.chooser.ServiceLoadTracker;
+import org.fusesource.gateway.health.HealthChecker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.vertx.java.core.AsyncResult;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.Vertx;
+import org.vertx.java.core.VoidHandler;
 import org.vertx.java.core.net.NetClient;
 import org.vertx.java.core.net.NetSocket;
-import org.vertx.java.core.streams.Pump;
 
-import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
+ * Proxies each incoming connection to a service for the protocol. If a connect fails or times out the next
+ * URL of the service, and then the other services for the path, are tried up to the configured number of retries.
  */
 public class TcpGatewayHandler implements Handler<NetSocket> {
     private static final transient Logger LOG = LoggerFactory.getLogger(TcpGatewayHandler.class);
 
+    private final TcpGateway gateway;
     private final Vertx vertx;
     private final ServiceMap serviceMap;
     private final String protocol;
+    private final ServiceLoadTracker loadTracker;
+    private final HealthChecker healthChecker;
     private Chooser<String> pathChooser = new RandomChooser<String>();
-    private NetChooser serviceChooser = new DefaultNetChooser();
+    private final NetChooser defaultServiceChooser = new DefaultNetChooser();
+    private SharedClient client;
 
     public TcpGatewayHandler(TcpGateway gateway) {
+        this.gateway = gateway;
         this.vertx = gateway.getVertx();
         this.serviceMap = gateway.getServiceMap();
         this.protocol = gateway.getProtocol();
+        this.loadTracker = gateway.getLoadTracker();
+        this.healthChecker = gateway.getHealthChecker();
     }
 
     @Override
     public void handle(final NetSocket socket) {
-        NetClient client = null;
+        if (gateway.isDraining()) {
+            socket.close();
+            return;
+        }
+        // lets read the chooser once so that it can be swapped while connections are being routed
+        NetChooser serviceChooser = gateway.getChooser();
+        if (serviceChooser == null) {
+            serviceChooser = defaultServiceChooser;
+        }
         List<String> paths = serviceMap.getPaths();
         String path = pathChooser.choose(paths);
+        List<Target> targets = null;
         if (path != null) {
-            List<ServiceDetails> services = serviceMap.getServices(path);
+            List<ServiceDetails> services = healthChecker.filter(serviceMap.getServices(path));
             if (!services.isEmpty()) {
                 ServiceDetails serviceDetails = serviceChooser.chooseService(socket, services);
                 if (serviceDetails != null) {
-                    List<String> urlStrings = serviceDetails.getServices();
-                    for (String urlString : urlStrings) {
-                        if (Strings.notEmpty(urlString)) {
-                            // lets create a client for this request...
-                            try {
-                                URI uri = new URI(urlString);
-                                //URL url = new URL(urlString);
-                                String urlProtocol = uri.getScheme();
-                                if (Objects.equal(protocol, urlProtocol)) {
-                                    Handler<AsyncResult<NetSocket>> handler = new Handler<AsyncResult<NetSocket>>() {
-                                        public void handle(final AsyncResult<NetSocket> asyncSocket) {
-                                            NetSocket clientSocket = asyncSocket.result();
-                                            Pump.createPump(clientSocket, socket).start();
-                                            Pump.createPump(socket, clientSocket).start();
-                                        }
-                                    };
-                                    client = createClient(socket, uri, handler);
-                                    break;
-                                }
-                            } catch (MalformedURLException e) {
-                                LOG.warn("Failed to parse URL: " + urlString + ". " + e, e);
-                            } catch (URISyntaxException e) {
-                                LOG.warn("Failed to parse URI: " + urlString + ". " + e, e);
-                            }
-                        }
-                    }
+                    targets = createTargets(serviceDetails, services);
                 }
             }
         }
-        if (client == null) {
+        if (targets == null || targets.isEmpty()) {
             // fail to route
             LOG.info("No service available for protocol " + protocol + " for paths " + paths);
             socket.close();
+            return;
+        }
+        // lets not read from the client until we are connected to a service
+        socket.pause();
+        new Connector(socket, targets).connectNext();
+    }
+
+    /**
+     * Closes the client used to connect to the services
+     */
+    public synchronized void close() {
+        if (client != null) {
+            client.close();
+            client = null;
         }
     }
 
     /**
-     * Creates a new client for the given URL and handler
+     * Makes new connections use a new client created with the current settings of the gateway.
+     * The previous client is closed once the connections it created are closed.
      */
-    protected NetClient createClient(NetSocket socket, URI url, Handler<AsyncResult<NetSocket>> handler) throws MalformedURLException {
-        NetClient client = vertx.createNetClient();
+    public synchronized void resetClient() {
+        SharedClient old = client;
+        client = null;
+        if (old != null) {
+            old.retire();
+        }
+    }
+
+    /**
+     * Returns the URLs to try in order; those of the chosen service first then those of the other services
+     * in random order, limited to one more than the number of connect retries
+     */
+    protected List<Target> createTargets(ServiceDetails chosen, List<ServiceDetails> services) {
+        List<Target> answer = new ArrayList<Target>();
+        addTargets(answer, chosen);
+        if (services.size() > 1) {
+            List<ServiceDetails> others = new ArrayList<ServiceDetails>(services);
+            others.remove(chosen);
+            Collections.shuffle(others);
+            for (ServiceDetails service : others) {
+                addTargets(answer, service);
+            }
+        }
+        int maxAttempts = Math.max(gateway.getConnectRetries(), 0) + 1;
+        if (answer.size() > maxAttempts) {
+            answer = new ArrayList<Target>(answer.subList(0, maxAttempts));
+        }
+        return answer;
+    }
+
+    protected void addTargets(List<Target> targets, ServiceDetails service) {
+        for (String urlString : service.getServices()) {
+            if (Strings.notEmpty(urlString)) {
+                try {
+                    URI uri = new URI(urlString);
+                    if (Objects.equal(protocol, uri.getScheme())) {
+                        targets.add(new Target(service, uri));
+                    }
+                } catch (URISyntaxException e) {
+                    LOG.warn("Failed to parse URI: " + urlString + ". " + e, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Connects to the given URL using the shared client
+     */
+    protected void createClient(NetSocket socket, SharedClient client, URI url, Handler<AsyncResult<NetSocket>> handler) {
         int port = url.getPort();
         String host = url.getHost();
         LOG.info("Connecting " + socket.remoteAddress() + " to host " + host + " port " + port);
-        return client.connect(port, host, handler);
+        client.getClient().connect(port, host, handler);
+    }
+
+    /**
+     * Returns the shared client for a new connection which must be {@link SharedClient#release()}d when
+     * the connect fails or the connection is closed
+     */
+    protected synchronized SharedClient acquireClient() {
+        if (client == null) {
+            NetClient netClient = vertx.createNetClient();
+            netClient.setConnectTimeout(gateway.getConnectTimeout());
+            netClient.setUsePooledBuffers(gateway.isUsePooledBuffers());
+            client = new SharedClient(netClient);
+        }
+        client.acquire();
+        return client;
+    }
+
+    /**
+     * Relays data in both directions between the incoming socket and the service socket;
+     * each relay pauses its source whenever the write queue of its destination is full
+     */
+    protected void relay(final NetSocket socket, final NetSocket clientSocket, final SharedClient client, final ServiceLoad load, final EndpointStats stats) {
+        final ConnectionStats totals = gateway.getMetrics().getTotals();
+        final long startMillis = System.currentTimeMillis();
+        totals.connectionOpened();
+        stats.connectionOpened();
+        clientSocket.closeHandler(new VoidHandler() {
+            public void handle() {
+                long duration = System.currentTimeMillis() - startMillis;
+                totals.connectionClosed(duration);
+                stats.connectionClosed(duration);
+                load.requestEnded();
+                client.release();
+                socket.close();
+            }
+        });
+        socket.closeHandler(new VoidHandler() {
+            public void handle() {
+                clientSocket.close();
+            }
+        });
+        Handler<Throwable> exceptionHandler = new Handler<Throwable>() {
+            public void handle(Throwable e) {
+                LOG.debug("Closing connection from " + socket.remoteAddress() + ". " + e);
+                socket.close();
+                clientSocket.close();
+            }
+        };
+        socket.exceptionHandler(exceptionHandler);
+        clientSocket.exceptionHandler(exceptionHandler);
+        int writeQueueMaxSize = gateway.getWriteQueueMaxSize();
+        new SocketRelay(socket, clientSocket, writeQueueMaxSize, true, totals, stats).start();
+        new SocketRelay(clientSocket, socket, writeQueueMaxSize, false, totals, stats).start();
+        socket.resume();
+    }
+
+    /**
+     * A client shared by the connections to the services, which is closed once it has been replaced
+     * and its last connection has been closed
+     */
+    protected static class SharedClient {
+        private final NetClient client;
+        private int users;
+        private boolean retired;
+        private boolean closed;
+
+        public SharedClient(NetClient client) {
+            this.client = client;
+        }
+
+        public NetClient getClient() {
+            return client;
+        }
+
+        protected synchronized void acquire() {
+            users++;
+        }
+
+        public synchronized void release() {
+            users--;
+            if (retired && users <= 0) {
+                close();
+            }
+        }
+
+        protected synchronized void retire() {
+            retired = true;
+            if (users <= 0) {
+                close();
+            }
+        }
+
+        protected synchronized void close() {
+            if (!closed) {
+                closed = true;
+                client.close();
+            }
+        }
+    }
+
+    /**
+     * A URL of a service to try to connect to
+     */
+    protected static class Target {
+        private final ServiceDetails service;
+        private final URI uri;
+
+        public Target(ServiceDetails service, URI uri) {
+            this.service = service;
+            this.uri = uri;
+        }
+
+        @Override
+        public String toString() {
+            return uri.toString();
+        }
+
+        public ServiceDetails getService() {
+            return service;
+        }
+
+        public URI getUri() {
+            return uri;
+        }
+    }
+
+    /**
+     * Tries each of the targets in turn until a connect succeeds
+     */
+    protected class Connector implements Handler<AsyncResult<NetSocket>> {
+        private final NetSocket socket;
+        private final List<Target> targets;
+        private int index = -1;
+        private Target target;
+        private ServiceLoad load;
+        private EndpointStats stats;
+        private long startNanos;
+        private SharedClient client;
+        private boolean socketClosed;
+
+        public Connector(NetSocket socket, List<Target> targets) {
+            this.socket = socket;
+            this.targets = targets;
+            socket.closeHandler(new VoidHandler() {
+                public void handle() {
+                    socketClosed = true;
+                }
+            });
+        }
+
+        public void connectNext() {
+            index++;
+            if (index >= targets.size()) {
+                LOG.warn("Failed to connect " + socket.remoteAddress() + " to any of " + targets);
+                socket.close();
+                return;
+            }
+            target = targets.get(index);
+            load = loadTracker.getLoad(target.getService());
+            stats = gateway.getEndpointStats(target.getUri());
+            startNanos = load.requestStarted();
+            client = acquireClient();
+            try {
+                createClient(socket, client, target.getUri(), this);
+            } catch (Exception e) {
+                failed(e.toString());
+            }
+        }
+
+        @Override
+        public void handle(AsyncResult<NetSocket> result) {
+            if (result.failed()) {
+                failed(String.valueOf(result.cause()));
+                return;
+            }
+            long latency = System.nanoTime() - startNanos;
+            load.recordLatency(latency);
+            stats.connected(latency);
+            healthChecker.recordSuccess(target.getService());
+            NetSocket clientSocket = result.result();
+            if (socketClosed) {
+                load.requestEnded();
+                clientSocket.close();
+                client.release();
+            } else {
+                relay(socket, clientSocket, client, load, stats);
+            }
+        }
+
+        protected void failed(String error) {
+            load.requestEnded();
+            client.release();
+            stats.connectFailed();
+            healthChecker.recordFailure(target.getService(), error);
+            if (socketClosed) {
+                return;
+            }
+            LOG.warn("Failed to connect " + socket.remoteAddress() + " to " + target + ". " + error
+                    + (index + 1 < targets.size() ? ". Trying " + targets.get(index + 1) : ""));
+            connectNext();
+        }
     }
 }
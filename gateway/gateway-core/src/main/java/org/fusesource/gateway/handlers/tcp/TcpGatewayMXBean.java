@@ -0,0 +1,42 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.gateway.handlers.tcp;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JMX MXBean API for the connections relayed by a TCP gateway
+ */
+public interface TcpGatewayMXBean {
+
+    List<EndpointStatsDTO> endpointStatsList();
+
+    String getProtocol();
+
+    int getPort();
+
+    long getActiveConnections();
+
+    long getTotalConnections();
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    Map<String, Long> getConnectionDurations();
+}
@@ -0,0 +1,166 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.gateway.handlers.tcp;
+
+import org.fusesource.gateway.Endpoints;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The connection statistics of a TCP gateway in total and for each upstream endpoint
+ */
+public class TcpGatewayMetrics implements TcpGatewayMXBean {
+    private static final transient Logger LOG = LoggerFactory.getLogger(TcpGatewayMetrics.class);
+
+    private final String protocol;
+    private final int port;
+    private final ConnectionStats totals = new ConnectionStats();
+    private final ConcurrentMap<String, EndpointStats> endpointStats = new ConcurrentHashMap<String, EndpointStats>();
+    private ObjectName objectName;
+
+    public TcpGatewayMetrics(String protocol, int port) {
+        this.protocol = protocol;
+        this.port = port;
+        try {
+            this.objectName = new ObjectName("org.fusesource.gateway:type=Connections,protocol=" + protocol + ",port=" + port);
+        } catch (MalformedObjectNameException e) {
+            LOG.warn("Invalid object name for protocol " + protocol + " port " + port + ". " + e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TcpGatewayMetrics{" +
+                "protocol='" + protocol + '\'' +
+                ", port=" + port +
+                ", activeConnections=" + getActiveConnections() +
+                '}';
+    }
+
+    public void registerMBeanServer(MBeanServer mbeanServer) {
+        try {
+            ObjectName name = getObjectName();
+            if (name != null && !mbeanServer.isRegistered(name)) {
+                mbeanServer.registerMBean(this, name);
+            }
+        } catch (Exception e) {
+            LOG.warn("An error occured during mbean server registration: " + e, e);
+        }
+    }
+
+    public void unregisterMBeanServer(MBeanServer mbeanServer) {
+        if (mbeanServer != null) {
+            try {
+                ObjectName name = getObjectName();
+                if (name != null && mbeanServer.isRegistered(name)) {
+                    mbeanServer.unregisterMBean(name);
+                }
+            } catch (Exception e) {
+                LOG.warn("An error occured during mbean server unregistration: " + e, e);
+            }
+        }
+    }
+
+    /**
+     * Returns the statistics for the host and port of the given service URI
+     */
+    public EndpointStats getEndpointStats(URI uri) {
+        String key = Endpoints.toKey(uri.getHost(), Endpoints.getPort(uri));
+        EndpointStats answer = endpointStats.get(key);
+        if (answer == null) {
+            answer = new EndpointStats(key);
+            EndpointStats old = endpointStats.putIfAbsent(key, answer);
+            if (old != null) {
+                answer = old;
+            }
+        }
+        return answer;
+    }
+
+    public List<EndpointStats> getEndpointStats() {
+        return new ArrayList<EndpointStats>(endpointStats.values());
+    }
+
+    public ConnectionStats getTotals() {
+        return totals;
+    }
+
+    @Override
+    public List<EndpointStatsDTO> endpointStatsList() {
+        List<EndpointStatsDTO> answer = new ArrayList<EndpointStatsDTO>();
+        for (EndpointStats stats : endpointStats.values()) {
+            answer.add(stats.toDTO());
+        }
+        return answer;
+    }
+
+    // Properties
+    //-------------------------------------------------------------------------
+
+    @Override
+    public String getProtocol() {
+        return protocol;
+    }
+
+    @Override
+    public int getPort() {
+        return port;
+    }
+
+    @Override
+    public long getActiveConnections() {
+        return totals.getActiveConnections();
+    }
+
+    @Override
+    public long getTotalConnections() {
+        return totals.getTotalConnections();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return totals.getBytesIn();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return totals.getBytesOut();
+    }
+
+    @Override
+    public Map<String, Long> getConnectionDurations() {
+        return totals.getDurations().toMap();
+    }
+
+    public ObjectName getObjectName() {
+        return objectName;
+    }
+
+    public void setObjectName(ObjectName objectName) {
+        this.objectName = objectName;
+    }
+}
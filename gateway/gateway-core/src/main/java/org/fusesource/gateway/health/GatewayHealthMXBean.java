@@ -0,0 +1,35 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.gateway.health;
+
+import java.util.List;
+
+/**
+ * JMX MXBean API for the health of the services used by a gateway
+ */
+public interface GatewayHealthMXBean {
+
+    List<ServiceHealthDTO> healthList();
+
+    int getUnavailableCount();
+
+    long getInterval();
+
+    int getFailureThreshold();
+
+    long getEjectionTime();
+}
@@ -0,0 +1,382 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.gateway.health;
+
+import org.fusesource.gateway.ServiceDetails;
+import org.fusesource.gateway.ServiceMap;
+import org.fusesource.gateway.ServiceMapListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks the health of the services used by a gateway and removes unhealthy services from selection.
+ * <p/>
+ * Services are marked as failed passively by the gateway handlers when connects or requests fail and,
+ * if an interval is configured, actively by periodically probing every service with a {@link HealthProbe}.
+ * A service which fails too many times in a row is ejected for a backoff window; if every service
+ * is ejected they are all used rather than failing every request.
+ */
+public class HealthChecker implements ServiceMapListener, GatewayHealthMXBean {
+    private static final transient Logger LOG = LoggerFactory.getLogger(HealthChecker.class);
+
+    public static final int DEFAULT_FAILURE_THRESHOLD = 3;
+    public static final long DEFAULT_EJECTION_TIME = 5000L;
+    public static final long DEFAULT_MAX_EJECTION_TIME = 60000L;
+    public static final int DEFAULT_TIMEOUT = 2000;
+
+    private static final int MAX_CACHED_LISTS = 64;
+
+    private final Vertx vertx;
+    private final ServiceMap serviceMap;
+    private final HealthProbe probe;
+    private final ConcurrentHashMap<String, ServiceHealth> healths = new ConcurrentHashMap<String, ServiceHealth>();
+    private final AtomicLong version = new AtomicLong();
+    private volatile Map<List<ServiceDetails>, FilteredServices> filteredCache = new IdentityHashMap<List<ServiceDetails>, FilteredServices>();
+    private long interval;
+    private int timeout = DEFAULT_TIMEOUT;
+    private int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+    private long ejectionTime = DEFAULT_EJECTION_TIME;
+    private long maxEjectionTime = DEFAULT_MAX_EJECTION_TIME;
+    private long timerId = -1;
+    private boolean started;
+    private ObjectName objectName;
+
+    public HealthChecker(Vertx vertx, ServiceMap serviceMap, HealthProbe probe) {
+        this.vertx = vertx;
+        this.serviceMap = serviceMap;
+        this.probe = probe;
+    }
+
+    public synchronized void init() {
+        serviceMap.addListener(this);
+        started = true;
+        startTimer();
+    }
+
+    public synchronized void destroy() {
+        serviceMap.removeListener(this);
+        started = false;
+        stopTimer();
+        probe.close();
+        healths.clear();
+        version.incrementAndGet();
+    }
+
+    public void registerMBeanServer(MBeanServer mbeanServer) {
+        try {
+            ObjectName name = getObjectName();
+            if (name != null && !mbeanServer.isRegistered(name)) {
+                mbeanServer.registerMBean(this, name);
+            }
+        } catch (Exception e) {
+            LOG.warn("An error occured during mbean server registration: " + e, e);
+        }
+    }
+
+    public void unregisterMBeanServer(MBeanServer mbeanServer) {
+        if (mbeanServer != null) {
+            try {
+                ObjectName name = getObjectName();
+                if (name != null && mbeanServer.isRegistered(name)) {
+                    mbeanServer.unregisterMBean(name);
+                }
+            } catch (Exception e) {
+                LOG.warn("An error occured during mbean server unregistration: " + e, e);
+            }
+        }
+    }
+
+    private void startTimer() {
+        if (interval > 0) {
+            timerId = vertx.setPeriodic(interval, new Handler<Long>() {
+                @Override
+                public void handle(Long event) {
+                    probeServices();
+                }
+            });
+        }
+    }
+
+    private void stopTimer() {
+        if (timerId >= 0) {
+            vertx.cancelTimer(timerId);
+            timerId = -1;
+        }
+    }
+
+    /**
+     * Returns the available services from the given list; the same list is returned while all of its
+     * services are available, or if none of them are
+     */
+    public List<ServiceDetails> filter(List<ServiceDetails> services) {
+        if (healths.isEmpty()) {
+            return services;
+        }
+        long now = System.currentTimeMillis();
+        long currentVersion = version.get();
+        FilteredServices cached = filteredCache.get(services);
+        if (cached != null && cached.version == currentVersion && now < cached.validUntil) {
+            return cached.services;
+        }
+        List<ServiceDetails> available = new ArrayList<ServiceDetails>(services.size());
+        long validUntil = Long.MAX_VALUE;
+        for (ServiceDetails service : services) {
+            ServiceHealth health = healths.get(service.getId());
+            if (health == null || health.isAvailable(now)) {
+                available.add(service);
+            } else {
+                validUntil = Math.min(validUntil, health.getEjectedUntil());
+            }
+        }
+        List<ServiceDetails> answer;
+        if (available.size() == services.size() || available.isEmpty()) {
+            answer = services;
+        } else {
+            answer = Collections.unmodifiableList(available);
+        }
+        Map<List<ServiceDetails>, FilteredServices> newCache;
+        if (filteredCache.size() >= MAX_CACHED_LISTS) {
+            newCache = new IdentityHashMap<List<ServiceDetails>, FilteredServices>();
+        } else {
+            newCache = new IdentityHashMap<List<ServiceDetails>, FilteredServices>(filteredCache);
+        }
+        newCache.put(services, new FilteredServices(answer, currentVersion, validUntil));
+        filteredCache = newCache;
+        return answer;
+    }
+
+    public boolean isAvailable(ServiceDetails service) {
+        ServiceHealth health = healths.get(service.getId());
+        return health == null || health.isAvailable(System.currentTimeMillis());
+    }
+
+    /**
+     * Records a successful connect, request or probe of the service
+     */
+    public void recordSuccess(ServiceDetails service) {
+        ServiceHealth health = healths.get(service.getId());
+        if (health != null && health.recordSuccess(System.currentTimeMillis())) {
+            LOG.info("Service " + service.getId() + " is available again");
+            version.incrementAndGet();
+        }
+    }
+
+    /**
+     * Records a failed connect, request or probe of the service
+     */
+    public void recordFailure(ServiceDetails service, String error) {
+        ServiceHealth health = getHealth(service);
+        if (health.recordFailure(System.currentTimeMillis(), error, failureThreshold, ejectionTime, maxEjectionTime)) {
+            LOG.warn("Ejecting service " + service.getId() + " after " + health.getConsecutiveFailures()
+                    + " consecutive failures. Last error: " + error);
+            version.incrementAndGet();
+        }
+    }
+
+    /**
+     * Probes all of the current services
+     */
+    public void probeServices() {
+        Map<String, ServiceDetails> services = new LinkedHashMap<String, ServiceDetails>();
+        for (String path : serviceMap.getPaths()) {
+            for (ServiceDetails service : serviceMap.getServices(path)) {
+                services.put(service.getId(), service);
+            }
+        }
+        for (final ServiceDetails service : services.values()) {
+            final ServiceHealth health = getHealth(service);
+            if (health.startProbe()) {
+                try {
+                    probe.probe(service, timeout, new Handler<String>() {
+                        @Override
+                        public void handle(String error) {
+                            health.endProbe();
+                            if (error == null) {
+                                recordSuccess(service);
+                            } else {
+                                LOG.debug("Health probe of " + service.getId() + " failed: " + error);
+                                recordFailure(service, error);
+                            }
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    health.endProbe();
+                    recordFailure(service, e.toString());
+                }
+            }
+        }
+    }
+
+    protected ServiceHealth getHealth(ServiceDetails service) {
+        String id = service.getId();
+        ServiceHealth answer = healths.get(id);
+        if (answer == null) {
+            ServiceHealth newHealth = new ServiceHealth(id);
+            answer = healths.putIfAbsent(id, newHealth);
+            if (answer == null) {
+                answer = newHealth;
+            }
+        }
+        return answer;
+    }
+
+    @Override
+    public void serviceUpdated(String path, ServiceDetails service) {
+    }
+
+    @Override
+    public void serviceRemoved(String path, ServiceDetails service) {
+        if (healths.remove(service.getId()) != null) {
+            version.incrementAndGet();
+        }
+    }
+
+    @Override
+    public List<ServiceHealthDTO> healthList() {
+        long now = System.currentTimeMillis();
+        List<ServiceHealthDTO> answer = new ArrayList<ServiceHealthDTO>();
+        for (ServiceHealth health : healths.values()) {
+            answer.add(health.toDTO(now));
+        }
+        return answer;
+    }
+
+    @Override
+    public int getUnavailableCount() {
+        long now = System.currentTimeMillis();
+        int answer = 0;
+        for (ServiceHealth health : healths.values()) {
+            if (!health.isAvailable(now)) {
+                answer++;
+            }
+        }
+        return answer;
+    }
+
+    // Properties
+    //-------------------------------------------------------------------------
+
+    public ObjectName getObjectName() {
+        return objectName;
+    }
+
+    public void setObjectName(ObjectName objectName) {
+        this.objectName = objectName;
+    }
+
+    /**
+     * Sets the object name used to register the MBean from the protocol and port of the gateway
+     */
+    public void setObjectName(String protocol, int port) {
+        try {
+            this.objectName = new ObjectName("org.fusesource.gateway:type=Health,protocol=" + protocol + ",port=" + port);
+        } catch (MalformedObjectNameException e) {
+            LOG.warn("Invalid object name for protocol " + protocol + " port " + port + ". " + e);
+        }
+    }
+
+    @Override
+    public long getInterval() {
+        return interval;
+    }
+
+    /**
+     * Sets the number of milliseconds between active health probes; zero or less disables probing
+     */
+    public synchronized void setInterval(long interval) {
+        if (this.interval != interval) {
+            this.interval = interval;
+            if (started) {
+                // lets restart the probe timer with the new interval
+                stopTimer();
+                startTimer();
+            }
+        }
+    }
+
+    public int getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Sets the connect and request timeout of a health probe in milliseconds
+     */
+    public void setTimeout(int timeout) {
+        this.timeout = timeout;
+    }
+
+    @Override
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    /**
+     * Sets the number of consecutive failures after which a service is ejected
+     */
+    public void setFailureThreshold(int failureThreshold) {
+        this.failureThreshold = failureThreshold;
+    }
+
+    @Override
+    public long getEjectionTime() {
+        return ejectionTime;
+    }
+
+    /**
+     * Sets the number of milliseconds a service is first ejected for
+     */
+    public void setEjectionTime(long ejectionTime) {
+        this.ejectionTime = ejectionTime;
+    }
+
+    public long getMaxEjectionTime() {
+        return maxEjectionTime;
+    }
+
+    /**
+     * Sets the maximum number of milliseconds a service is ejected for as the backoff grows
+     */
+    public void setMaxEjectionTime(long maxEjectionTime) {
+        this.maxEjectionTime = maxEjectionTime;
+    }
+
+    private static class FilteredServices {
+        private final List<ServiceDetails> services;
+        private final long version;
+        private final long validUntil;
+
+        private FilteredServices(List<ServiceDetails> services, long version, long validUntil) {
+            this.services = services;
+            this.version = version;
+            this.validUntil = validUntil;
+        }
+    }
+}
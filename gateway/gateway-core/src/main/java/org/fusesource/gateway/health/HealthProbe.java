@@ -0,0 +1,36 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.gateway.health;
+
+import org.fusesource.gateway.ServiceDetails;
+import org.vertx.java.core.Handler;
+
+/**
+ * Actively checks whether a service is healthy
+ */
+public interface HealthProbe {
+
+    /**
+     * Probes the service invoking the handler with null if it is healthy or the reason it is not healthy
+     */
+    void probe(ServiceDetails service, int timeout, Handler<String> resultHandler);
+
+    /**
+     * Releases any resources used by the probe
+     */
+    void close();
+}
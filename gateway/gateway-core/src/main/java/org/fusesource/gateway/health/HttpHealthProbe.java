@@ -0,0 +1,115 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.gateway.health;
+
+import org.fusesource.common.util.Strings;
+import org.fusesource.gateway.ServiceDetails;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.VoidHandler;
+import org.vertx.java.core.http.HttpClient;
+import org.vertx.java.core.http.HttpClientRequest;
+import org.vertx.java.core.http.HttpClientResponse;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.List;
+
+/**
+ * Probes a service with an HTTP GET of the first URL of the service; any response other than
+ * a server error means the service is healthy
+ */
+public class HttpHealthProbe implements HealthProbe {
+    private final Vertx vertx;
+
+    public HttpHealthProbe(Vertx vertx) {
+        this.vertx = vertx;
+    }
+
+    @Override
+    public void probe(ServiceDetails service, int timeout, final Handler<String> resultHandler) {
+        List<String> urls = service.getServices();
+        String urlText = urls.isEmpty() ? null : urls.get(0);
+        if (!Strings.notEmpty(urlText)) {
+            resultHandler.handle("No URL for service " + service.getId());
+            return;
+        }
+        final URL url;
+        try {
+            url = new URL(urlText);
+        } catch (MalformedURLException e) {
+            resultHandler.handle("Invalid URL " + urlText + ". " + e);
+            return;
+        }
+        final HttpClient client = vertx.createHttpClient();
+        client.setHost(url.getHost());
+        client.setPort(url.getPort() >= 0 ? url.getPort() : url.getDefaultPort());
+        client.setConnectTimeout(timeout);
+        client.setKeepAlive(false);
+        final ResultOnce result = new ResultOnce(client, resultHandler);
+        String path = Strings.isNotBlank(url.getPath()) ? url.getPath() : "/";
+        HttpClientRequest request = client.get(path, new Handler<HttpClientResponse>() {
+            @Override
+            public void handle(final HttpClientResponse response) {
+                final int status = response.statusCode();
+                response.endHandler(new VoidHandler() {
+                    public void handle() {
+                        if (status >= 500) {
+                            result.done("HTTP status " + status + " from " + url);
+                        } else {
+                            result.done(null);
+                        }
+                    }
+                });
+            }
+        });
+        request.exceptionHandler(new Handler<Throwable>() {
+            @Override
+            public void handle(Throwable e) {
+                result.done("Failed to GET " + url + ". " + e);
+            }
+        });
+        request.setTimeout(timeout);
+        request.end();
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Closes the client and invokes the result handler only once
+     */
+    private static class ResultOnce {
+        private final HttpClient client;
+        private final Handler<String> resultHandler;
+        private boolean done;
+
+        private ResultOnce(HttpClient client, Handler<String> resultHandler) {
+            this.client = client;
+            this.resultHandler = resultHandler;
+        }
+
+        public void done(String error) {
+            if (!done) {
+                done = true;
+                client.close();
+                resultHandler.handle(error);
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.gateway.health;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The health of a single service which counts consecutive failures and ejects the service from
+ * selection for a backoff window once too many failures occur in a row.
+ * <p/>
+ * The backoff doubles each time the service is ejected again without a success in between,
+ * up to the maximum ejection time.
+ */
+public class ServiceHealth {
+    private final String serviceId;
+    private final AtomicBoolean probing = new AtomicBoolean();
+    private int consecutiveFailures;
+    private int ejections;
+    private long ejectedUntil;
+    private long successCount;
+    private long failureCount;
+    private long lastCheck;
+    private String lastError;
+
+    public ServiceHealth(String serviceId) {
+        this.serviceId = serviceId;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ServiceHealth{" +
+                "serviceId='" + serviceId + '\'' +
+                ", consecutiveFailures=" + consecutiveFailures +
+                ", ejectedUntil=" + ejectedUntil +
+                '}';
+    }
+
+    /**
+     * Records a success returning true if the service was ejected and is now available again
+     */
+    public synchronized boolean recordSuccess(long now) {
+        boolean wasEjected = now < ejectedUntil;
+        consecutiveFailures = 0;
+        ejections = 0;
+        ejectedUntil = 0;
+        successCount++;
+        lastCheck = now;
+        return wasEjected;
+    }
+
+    /**
+     * Records a failure returning true if the service has just been ejected
+     */
+    public synchronized boolean recordFailure(long now, String error, int failureThreshold, long ejectionTime, long maxEjectionTime) {
+        consecutiveFailures++;
+        failureCount++;
+        lastCheck = now;
+        lastError = error;
+        if (consecutiveFailures >= failureThreshold && now >= ejectedUntil) {
+            long backoff = ejectionTime;
+            for (int i = 0; i < ejections && backoff < maxEjectionTime; i++) {
+                backoff *= 2;
+            }
+            ejections++;
+            ejectedUntil = now + Math.min(backoff, maxEjectionTime);
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized boolean isAvailable(long now) {
+        return now >= ejectedUntil;
+    }
+
+    /**
+     * Marks the start of a probe returning false if a probe is already in progress
+     */
+    boolean startProbe() {
+        return probing.compareAndSet(false, true);
+    }
+
+    void endProbe() {
+        probing.set(false);
+    }
+
+    public String getServiceId() {
+        return serviceId;
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    public synchronized long getEjectedUntil() {
+        return ejectedUntil;
+    }
+
+    public synchronized ServiceHealthDTO toDTO(long now) {
+        ServiceHealthDTO answer = new ServiceHealthDTO();
+        answer.setServiceId(serviceId);
+        answer.setAvailable(isAvailable(now));
+        answer.setConsecutiveFailures(consecutiveFailures);
+        answer.setEjections(ejections);
+        answer.setEjectedUntil(ejectedUntil);
+        answer.setSuccessCount(successCount);
+        answer.setFailureCount(failureCount);
+        answer.setLastCheck(lastCheck);
+        answer.setLastError(lastError);
+        return answer;
+    }
+}
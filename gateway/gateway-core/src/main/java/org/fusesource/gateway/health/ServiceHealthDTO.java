@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.gateway.health;
+
+/**
+ * The health of a service as exposed over JMX
+ */
+public class ServiceHealthDTO {
+    private String serviceId;
+    private boolean available;
+    private int consecutiveFailures;
+    private int ejections;
+    private long ejectedUntil;
+    private long successCount;
+    private long failureCount;
+    private long lastCheck;
+    private String lastError;
+
+    @Override
+    public String toString() {
+        return "ServiceHealthDTO{" +
+                "serviceId='" + serviceId + '\'' +
+                ", available=" + available +
+                ", consecutiveFailures=" + consecutiveFailures +
+                ", lastError='" + lastError + '\'' +
+                '}';
+    }
+
+    public String getServiceId() {
+        return serviceId;
+    }
+
+    public void setServiceId(String serviceId) {
+        this.serviceId = serviceId;
+    }
+
+    public boolean isAvailable() {
+        return available;
+    }
+
+    public void setAvailable(boolean available) {
+        this.available = available;
+    }
+
+    public int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    public void setConsecutiveFailures(int consecutiveFailures) {
+        this.consecutiveFailures = consecutiveFailures;
+    }
+
+    public int getEjections() {
+        return ejections;
+    }
+
+    public void setEjections(int ejections) {
+        this.ejections = ejections;
+    }
+
+    public long getEjectedUntil() {
+        return ejectedUntil;
+    }
+
+    public void setEjectedUntil(long ejectedUntil) {
+        this.ejectedUntil = ejectedUntil;
+    }
+
+    public long getSuccessCount() {
+        return successCount;
+    }
+
+    public void setSuccessCount(long successCount) {
+        this.successCount = successCount;
+    }
+
+    public long getFailureCount() {
+        return failureCount;
+    }
+
+    public void setFailureCount(long failureCount) {
+        this.failureCount = failureCount;
+    }
+
+    public long getLastCheck() {
+        return lastCheck;
+    }
+
+    public void setLastCheck(long lastCheck) {
+        this.lastCheck = lastCheck;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+}
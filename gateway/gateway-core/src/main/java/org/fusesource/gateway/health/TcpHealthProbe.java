@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.gateway.health;
+
+import org.fusesource.common.util.Objects;
+import org.fusesource.common.util.Strings;
+import org.fusesource.gateway.ServiceDetails;
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.net.NetClient;
+import org.vertx.java.core.net.NetSocket;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+
+/**
+ * Probes a service by opening and closing a TCP connection to the first of its URLs using the protocol
+ */
+public class TcpHealthProbe implements HealthProbe {
+    private final Vertx vertx;
+    private final String protocol;
+    private NetClient client;
+
+    public TcpHealthProbe(Vertx vertx, String protocol) {
+        this.vertx = vertx;
+        this.protocol = protocol;
+    }
+
+    @Override
+    public void probe(ServiceDetails service, int timeout, final Handler<String> resultHandler) {
+        URI uri = findURI(service);
+        if (uri == null) {
+            resultHandler.handle("No " + protocol + " URL for service " + service.getId());
+            return;
+        }
+        final String address = uri.getHost() + ":" + uri.getPort();
+        getClient(timeout).connect(uri.getPort(), uri.getHost(), new Handler<AsyncResult<NetSocket>>() {
+            @Override
+            public void handle(AsyncResult<NetSocket> result) {
+                if (result.succeeded()) {
+                    result.result().close();
+                    resultHandler.handle(null);
+                } else {
+                    resultHandler.handle("Failed to connect to " + address + ". " + result.cause());
+                }
+            }
+        });
+    }
+
+    @Override
+    public synchronized void close() {
+        if (client != null) {
+            client.close();
+            client = null;
+        }
+    }
+
+    protected synchronized NetClient getClient(int timeout) {
+        if (client == null) {
+            client = vertx.createNetClient();
+        }
+        client.setConnectTimeout(timeout);
+        return client;
+    }
+
+    protected URI findURI(ServiceDetails service) {
+        for (String urlText : service.getServices()) {
+            if (Strings.notEmpty(urlText)) {
+                try {
+                    URI uri = new URI(urlText);
+                    if (protocol == null || Objects.equal(protocol, uri.getScheme())) {
+                        return uri;
+                    }
+                } catch (URISyntaxException e) {
+                    // ignore invalid URLs
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.gateway;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ */
+public class ServiceMapTest {
+
+    protected ServiceMap serviceMap = new ServiceMap();
+
+    @Test
+    public void testLongestPrefixMatch() throws Exception {
+        serviceMap.serviceUpdated("/cxf/foo/container1", createService("a", "http://host1:8181/cxf/foo"));
+        serviceMap.serviceUpdated("/cxf/foo/container2", createService("b", "http://host2:8181/cxf/foo"));
+        serviceMap.serviceUpdated("/cxf/container1", createService("c", "http://host1:8181/cxf"));
+
+        assertPrefix("/cxf/foo/bar", "/cxf/foo/", 2);
+        assertPrefix("/cxf/foo", "/cxf/foo/", 2);
+        assertPrefix("/cxf/other", "/cxf/", 1);
+        assertNull("Should not match /unknown", serviceMap.findServicePrefix("/unknown"));
+    }
+
+    @Test
+    public void testServiceRemoved() throws Exception {
+        ServiceDetails service = createService("a", "http://host1:8181/cxf/foo");
+        serviceMap.serviceUpdated("/cxf/foo/container1", service);
+        serviceMap.serviceUpdated("/cxf/foo/container2", createService("b", "http://host2:8181/cxf/foo"));
+        assertPrefix("/cxf/foo/bar", "/cxf/foo/", 2);
+
+        serviceMap.serviceRemoved("/cxf/foo/container1", service);
+        assertPrefix("/cxf/foo/bar", "/cxf/foo/", 1);
+        assertEquals("isEndpointInUse(host1)", false, serviceMap.isEndpointInUse("host1", 8181));
+        assertEquals("isEndpointInUse(host2)", true, serviceMap.isEndpointInUse("host2", 8181));
+    }
+
+    @Test
+    public void testPrefixTrie() throws Exception {
+        PrefixTrie<String> trie = new PrefixTrie.Builder<String>().put("/a/", "a").put("/a/b/", "b").put("/c", "c").build();
+        assertEquals("size", 3, trie.size());
+        assertEquals("/a/x", "a", trie.longestPrefixMatch("/a/x"));
+        assertEquals("/a/b/x", "b", trie.longestPrefixMatch("/a/b/x"));
+        assertEquals("/a/b", "b", trie.longestPrefixMatch("/a/b"));
+        assertEquals("/cheese", "c", trie.longestPrefixMatch("/cheese"));
+        assertEquals("get(/a/)", "a", trie.get("/a/"));
+        assertNull("/b", trie.longestPrefixMatch("/b"));
+        assertNull("get(/a)", trie.get("/a"));
+    }
+
+    protected void assertPrefix(String uri, String expectedPrefix, int expectedServiceCount) {
+        ServicePrefix answer = serviceMap.findServicePrefix(uri);
+        assertNotNull("Should have found a prefix for " + uri, answer);
+        assertEquals("prefix for " + uri, expectedPrefix, answer.getPrefix());
+        assertEquals("services for " + uri, expectedServiceCount, answer.getServices().size());
+    }
+
+    protected static ServiceDetails createService(final String id, final String... urls) {
+        return new ServiceDetails() {
+            @Override
+            public String getId() {
+                return id;
+            }
+
+            @Override
+            public List<String> getServices() {
+                return Arrays.asList(urls);
+            }
+        };
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.gateway.chooser;
+
+import org.fusesource.gateway.ServiceDetails;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ */
+public class ConsistentHashRingTest {
+    protected static final int KEY_COUNT = 10000;
+
+    @Test
+    public void testAddingServiceOnlyMovesItsShareOfKeys() throws Exception {
+        List<ServiceDetails> services = new ArrayList<ServiceDetails>();
+        for (int i = 0; i < 4; i++) {
+            services.add(LoadAwareChooserTest.createService("container" + i));
+        }
+        ConsistentHashRing before = new ConsistentHashRing(services, ConsistentHashHttpChooser.DEFAULT_VIRTUAL_NODES);
+        List<ServiceDetails> moreServices = new ArrayList<ServiceDetails>(services);
+        moreServices.add(LoadAwareChooserTest.createService("container4"));
+        ConsistentHashRing after = new ConsistentHashRing(moreServices, ConsistentHashHttpChooser.DEFAULT_VIRTUAL_NODES);
+
+        int moved = 0;
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (int i = 0; i < KEY_COUNT; i++) {
+            String key = "session-" + i;
+            ServiceDetails oldService = before.get(key);
+            ServiceDetails newService = after.get(key);
+            assertNotNull("Should find a service for " + key, newService);
+            if (oldService != newService) {
+                moved++;
+                assertEquals("keys should only move to the new service", "container4", newService.getId());
+            }
+            Integer count = counts.get(newService.getId());
+            counts.put(newService.getId(), count == null ? 1 : count + 1);
+        }
+        // about 1/5 of the keys should move
+        assertTrue("moved " + moved + " keys", moved > KEY_COUNT / 10 && moved < KEY_COUNT * 3 / 10);
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            assertTrue("uneven distribution " + counts, entry.getValue() > KEY_COUNT / 10);
+        }
+    }
+
+    @Test
+    public void testSameKeySameService() throws Exception {
+        List<ServiceDetails> services = new ArrayList<ServiceDetails>();
+        for (int i = 0; i < 3; i++) {
+            services.add(LoadAwareChooserTest.createService("container" + i));
+        }
+        ConsistentHashRing ring = new ConsistentHashRing(services, 10);
+        assertEquals("same key", ring.get("abc"), ring.get("abc"));
+        assertNull("empty ring", new ConsistentHashRing(new ArrayList<ServiceDetails>(), 10).get("abc"));
+    }
+
+    @Test
+    public void testGetCookie() throws Exception {
+        assertEquals("b", ConsistentHashHttpChooser.getCookie("a=1; FOO=b; c=3", "FOO"));
+        assertEquals("1", ConsistentHashHttpChooser.getCookie("a=1; FOO=b; c=3", "a"));
+        assertEquals("x", ConsistentHashHttpChooser.getCookie("a=1;FOO=\"x\"", "FOO"));
+        assertNull(ConsistentHashHttpChooser.getCookie("a=1; FOO=b", "BAR"));
+        assertNull(ConsistentHashHttpChooser.getCookie(null, "BAR"));
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.gateway.chooser;
+
+import org.fusesource.gateway.ServiceDetails;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ */
+public class LoadAwareChooserTest {
+
+    protected ServiceLoadTracker tracker = new ServiceLoadTracker();
+    protected ServiceDetails a = createService("a");
+    protected ServiceDetails b = createService("b");
+    protected ServiceDetails c = createService("c");
+    protected List<ServiceDetails> services = Arrays.asList(a, b, c);
+
+    @Test
+    public void testLeastConnections() throws Exception {
+        tracker.getLoad(a).requestStarted();
+        tracker.getLoad(a).requestStarted();
+        tracker.getLoad(c).requestStarted();
+
+        Chooser<ServiceDetails> chooser = new LeastConnectionsChooser(tracker);
+        for (int i = 0; i < 10; i++) {
+            assertSame("chosen", b, chooser.choose(services));
+        }
+    }
+
+    @Test
+    public void testLeastLatency() throws Exception {
+        tracker.getLoad(a).recordLatency(TimeUnit.MILLISECONDS.toNanos(200));
+        tracker.getLoad(b).recordLatency(TimeUnit.MILLISECONDS.toNanos(5));
+        tracker.getLoad(c).recordLatency(TimeUnit.MILLISECONDS.toNanos(50));
+
+        Chooser<ServiceDetails> chooser = new LeastLatencyChooser(tracker);
+        for (int i = 0; i < 10; i++) {
+            assertSame("chosen", b, chooser.choose(services));
+        }
+    }
+
+    @Test
+    public void testPowerOfTwoChoicesNeverPicksMostLoaded() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            tracker.getLoad(a).requestStarted();
+        }
+        tracker.getLoad(b).requestStarted();
+
+        Chooser<ServiceDetails> chooser = new LeastConnectionsChooser(tracker, true);
+        for (int i = 0; i < 50; i++) {
+            ServiceDetails chosen = chooser.choose(services);
+            assertEquals("should not pick the most loaded service", false, chosen == a);
+        }
+    }
+
+    @Test
+    public void testRequestCompleted() throws Exception {
+        ServiceLoad load = tracker.getLoad(a);
+        long start = load.requestStarted();
+        assertEquals("outstanding", 1, load.getOutstanding());
+        load.requestCompleted(start);
+        assertEquals("outstanding", 0, load.getOutstanding());
+        assertEquals("requestCount", 1, load.getRequestCount());
+    }
+
+    protected static ServiceDetails createService(final String id) {
+        return new ServiceDetails() {
+            @Override
+            public String getId() {
+                return id;
+            }
+
+            @Override
+            public List<String> getServices() {
+                return Collections.singletonList("tcp://localhost:61616");
+            }
+        };
+    }
+}
@@ -0,0 +1,206 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.gateway.handlers.tcp;
+
+import org.fusesource.gateway.ServiceDetails;
+import org.fusesource.gateway.ServiceMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.VertxFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ */
+public class TcpGatewayHandlerTest {
+
+    protected Vertx vertx;
+    protected ServiceMap serviceMap = new ServiceMap();
+    protected TcpGateway gateway;
+    protected ServerSocket echoServer;
+    protected List<Socket> sockets = new ArrayList<Socket>();
+
+    @Before
+    public void init() throws Exception {
+        vertx = VertxFactory.newVertx();
+        echoServer = new ServerSocket(0);
+        Thread thread = new Thread("echo server") {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        final Socket socket = echoServer.accept();
+                        new Thread("echo") {
+                            @Override
+                            public void run() {
+                                echo(socket);
+                            }
+                        }.start();
+                    }
+                } catch (IOException e) {
+                    // the server is closed
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @After
+    public void destroy() throws Exception {
+        if (gateway != null) {
+            gateway.destroy();
+        }
+        echoServer.close();
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+        vertx.stop();
+    }
+
+    @Test
+    public void testFailsOverToTheNextEndpoint() throws Exception {
+        String refused = "tcp://localhost:" + getFreePort();
+        startGateway(refused, "tcp://localhost:" + echoServer.getLocalPort());
+
+        assertEquals("hello", sendThroughGateway("hello"));
+        assertEquals("connect failures of " + refused, 1, gateway.getEndpointStats(new URI(refused)).getConnectFailures());
+    }
+
+    @Test
+    public void testFailsOverWhenTheConnectTimesOut() throws Exception {
+        // a server which never accepts and whose backlog is full doesn't answer new connects
+        ServerSocket stalled = new ServerSocket(0, 1);
+        try {
+            for (int i = 0; i < 4; i++) {
+                Socket socket = new Socket();
+                sockets.add(socket);
+                try {
+                    socket.connect(new InetSocketAddress("localhost", stalled.getLocalPort()), 200);
+                } catch (IOException e) {
+                    // the backlog is full
+                }
+            }
+            String timingOut = "tcp://localhost:" + stalled.getLocalPort();
+            gateway = new TcpGateway(vertx, serviceMap, getFreePort(), "tcp");
+            gateway.setConnectTimeout(500);
+            startGateway(timingOut, "tcp://localhost:" + echoServer.getLocalPort());
+
+            assertEquals("hello", sendThroughGateway("hello"));
+            assertEquals("connect failures of " + timingOut, 1, gateway.getEndpointStats(new URI(timingOut)).getConnectFailures());
+        } finally {
+            stalled.close();
+        }
+    }
+
+    protected void startGateway(final String... urls) throws Exception {
+        serviceMap.serviceUpdated("/service", new ServiceDetails() {
+            @Override
+            public String getId() {
+                return "service";
+            }
+
+            @Override
+            public List<String> getServices() {
+                return Arrays.asList(urls);
+            }
+        });
+        if (gateway == null) {
+            gateway = new TcpGateway(vertx, serviceMap, getFreePort(), "tcp");
+        }
+        gateway.init();
+    }
+
+    protected String sendThroughGateway(String message) throws Exception {
+        Socket socket = connectToGateway();
+        socket.setSoTimeout(10000);
+        OutputStream out = socket.getOutputStream();
+        out.write(message.getBytes());
+        out.flush();
+        byte[] buffer = new byte[message.length()];
+        InputStream in = socket.getInputStream();
+        int count = 0;
+        while (count < buffer.length) {
+            int read = in.read(buffer, count, buffer.length - count);
+            if (read < 0) {
+                break;
+            }
+            count += read;
+        }
+        return new String(buffer, 0, count);
+    }
+
+    protected Socket connectToGateway() throws Exception {
+        // the gateway listens asynchronously
+        for (int i = 0; ; i++) {
+            Socket socket = new Socket();
+            sockets.add(socket);
+            try {
+                socket.connect(new InetSocketAddress("localhost", gateway.getPort()), 1000);
+                return socket;
+            } catch (IOException e) {
+                if (i >= 50) {
+                    throw e;
+                }
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    protected static int getFreePort() throws IOException {
+        ServerSocket socket = new ServerSocket(0);
+        try {
+            return socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+    }
+
+    protected static void echo(Socket socket) {
+        try {
+            InputStream in = socket.getInputStream();
+            OutputStream out = socket.getOutputStream();
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+                out.flush();
+            }
+        } catch (IOException e) {
+            // the connection is closed
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+}
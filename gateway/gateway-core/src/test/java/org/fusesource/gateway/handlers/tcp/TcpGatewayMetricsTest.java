@@ -0,0 +1,70 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.gateway.handlers.tcp;
+
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ */
+public class TcpGatewayMetricsTest {
+
+    @Test
+    public void testDurationHistogramBuckets() throws Exception {
+        DurationHistogram histogram = new DurationHistogram();
+        histogram.record(0);
+        histogram.record(100);
+        histogram.record(101);
+        histogram.record(5 * 60 * 1000);
+        histogram.record(2 * 60 * 60 * 1000);
+
+        Map<String, Long> map = histogram.toMap();
+        assertEquals("map.size()", 7, map.size());
+        assertEquals("<=100ms", 2L, map.get("<=100ms").longValue());
+        assertEquals("<=1s", 1L, map.get("<=1s").longValue());
+        assertEquals("<=10m", 1L, map.get("<=10m").longValue());
+        assertEquals(">1h", 1L, map.get(">1h").longValue());
+    }
+
+    @Test
+    public void testEndpointStatsAreSharedPerHostAndPort() throws Exception {
+        TcpGatewayMetrics metrics = new TcpGatewayMetrics("tcp", 61000);
+        EndpointStats stats = metrics.getEndpointStats(new URI("tcp://localhost:61616"));
+        assertSame("stats", stats, metrics.getEndpointStats(new URI("tcp://localhost:61616?foo=bar")));
+
+        stats.connected(2000000);
+        stats.connectionOpened();
+        stats.addBytesIn(10);
+        stats.addBytesOut(20);
+        assertEquals("getActiveConnections()", 1, stats.getActiveConnections());
+        stats.connectionClosed(50);
+
+        EndpointStatsDTO dto = metrics.endpointStatsList().get(0);
+        assertEquals("getEndpoint()", "localhost:61616", dto.getEndpoint());
+        assertEquals("getConnects()", 1, dto.getConnects());
+        assertEquals("getAverageConnectMillis()", 2.0, dto.getAverageConnectMillis(), 0.001);
+        assertEquals("getActiveConnections()", 0, dto.getActiveConnections());
+        assertEquals("getBytesIn()", 10, dto.getBytesIn());
+        assertEquals("getBytesOut()", 20, dto.getBytesOut());
+        assertEquals("<=100ms", 1L, dto.getConnectionDurations().get("<=100ms").longValue());
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.gateway.health;
+
+import org.fusesource.gateway.ServiceDetails;
+import org.fusesource.gateway.ServiceMap;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ */
+public class HealthCheckerTest {
+
+    protected ServiceMap serviceMap = new ServiceMap();
+    protected ServiceDetails a = createService("a");
+    protected ServiceDetails b = createService("b");
+    protected List<ServiceDetails> services = Arrays.asList(a, b);
+    protected HealthChecker healthChecker;
+
+    @Before
+    public void init() {
+        healthChecker = new HealthChecker(null, serviceMap, null);
+        healthChecker.setFailureThreshold(2);
+        healthChecker.setEjectionTime(60000L);
+    }
+
+    @Test
+    public void testEjectsAfterConsecutiveFailures() throws Exception {
+        assertSame("all services should be returned", services, healthChecker.filter(services));
+
+        healthChecker.recordFailure(a, "Connection refused");
+        assertSame("one failure should not eject", services, healthChecker.filter(services));
+
+        healthChecker.recordFailure(a, "Connection refused");
+        assertEquals("a should be ejected", Arrays.asList(b), healthChecker.filter(services));
+        assertEquals("unavailable count", 1, healthChecker.getUnavailableCount());
+
+        healthChecker.recordSuccess(a);
+        assertSame("a should be available again", services, healthChecker.filter(services));
+    }
+
+    @Test
+    public void testAllServicesReturnedWhenAllEjected() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            healthChecker.recordFailure(a, "Connection refused");
+            healthChecker.recordFailure(b, "Connection refused");
+        }
+        assertEquals("unavailable count", 2, healthChecker.getUnavailableCount());
+        assertSame("should fail open", services, healthChecker.filter(services));
+    }
+
+    @Test
+    public void testBackoffDoubles() throws Exception {
+        ServiceHealth health = new ServiceHealth("a");
+        long now = 1000L;
+        health.recordFailure(now, "error", 1, 100L, 1000L);
+        assertEquals("ejectedUntil", now + 100L, health.getEjectedUntil());
+
+        now = health.getEjectedUntil();
+        health.recordFailure(now, "error", 1, 100L, 1000L);
+        assertEquals("ejectedUntil", now + 200L, health.getEjectedUntil());
+
+        now = health.getEjectedUntil();
+        health.recordSuccess(now);
+        health.recordFailure(now, "error", 1, 100L, 1000L);
+        assertEquals("ejectedUntil after success", now + 100L, health.getEjectedUntil());
+    }
+
+    protected static ServiceDetails createService(final String id) {
+        return new ServiceDetails() {
+            @Override
+            public String getId() {
+                return id;
+            }
+
+            @Override
+            public List<String> getServices() {
+                return Collections.singletonList("tcp://localhost:61616");
+            }
+        };
+    }
+}
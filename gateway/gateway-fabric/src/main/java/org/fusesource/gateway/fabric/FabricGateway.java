@@ -39,10 +39,13 @@ import org.slf4j.LoggerFactory;
 import org.vertx.java.core.Vertx;
 import org.vertx.java.core.VertxFactory;
 
+import javax.management.MBeanServer;
 import java.io.IOException;
 import java.net.URL;
-import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
 
 /**
@@ -58,21 +61,25 @@ public class FabricGateway extends AbstractComponent {
     @Reference
     private CuratorFramework curator;
 
-    private List<GatewayListener> listeners = new ArrayList<GatewayListener>();
+    @Reference(referenceInterface = MBeanServer.class)
+    private MBeanServer mbeanServer;
+
+    private final Map<String, GatewayListener> listeners = new LinkedHashMap<String, GatewayListener>();
     private Vertx vertx;
+    private ClassLoader classLoader;
     private final ConfigParser configParser = new ConfigParser();
 
     public FabricGateway() {
     }
 
     @Activate
-    public void activate(ComponentContext context) throws Exception {
+    public synchronized void activate(ComponentContext context) throws Exception {
         LOG.info("Activating the gateway " + this);
 
         // TODO support injecting of the ClassLoader without depending on OSGi APIs
         // see https://github.com/jboss-fuse/fuse/issues/104
         Bundle bundle = context.getBundleContext().getBundle();
-        final ClassLoader classLoader = AriesFrameworkUtil.getClassLoader(bundle);
+        classLoader = AriesFrameworkUtil.getClassLoader(bundle);
 
         // lets set the thread context class loader for vertx to be able to find services
         ClassLoaders.withContextClassLoader(classLoader, new Callable<Object>() {
@@ -92,15 +99,26 @@ public class FabricGateway extends AbstractComponent {
     }
 
     @Modified
-    public void updated() throws Exception {
-        // lets reload the configuration and find all the groups to create if they are not already created
+    public synchronized void updated() throws Exception {
+        // lets reload the configuration and only start, stop or change the listeners which differ
+        ClassLoaders.withContextClassLoader(classLoader, new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                GatewaysConfig config = loadConfig();
+                if (config != null) {
+                    updateListeners(config);
+                }
+                return null;
+            }
+        });
     }
 
     @Deactivate
-    public void deactivate() {
-        for (GatewayListener listener : listeners) {
+    public synchronized void deactivate() {
+        for (GatewayListener listener : listeners.values()) {
             listener.destroy();
         }
+        listeners.clear();
     }
 
     public Vertx getVertx() {
@@ -111,6 +129,10 @@ public class FabricGateway extends AbstractComponent {
         return curator;
     }
 
+    public MBeanServer getMBeanServer() {
+        return mbeanServer;
+    }
+
     protected void createListeners(GatewaysConfig config) {
         List<GatewayConfig> listeners = config.getGateways();
         for (GatewayConfig gatewayConfig : listeners) {
@@ -124,13 +146,40 @@ public class FabricGateway extends AbstractComponent {
             if (listener != null) {
                 listener.init();
                 LOG.info("Started " + listener + " from " + config);
-                listeners.add(listener);
+                listeners.put(listener.getZkPath(), listener);
             }
         } catch (Exception e) {
             LOG.info("Failed to create listener " + config + ". Reason: " + e);
         }
     }
 
+    /**
+     * Compares the new configuration with the running listeners by ZooKeeper path; new paths get a new listener,
+     * the listeners of removed paths are drained and stopped and the others update their gateways in place
+     */
+    protected void updateListeners(GatewaysConfig config) {
+        long drainTimeout = config.getDrainTimeout();
+        Map<String, GatewayListener> oldListeners = new HashMap<String, GatewayListener>(listeners);
+        for (GatewayConfig gatewayConfig : config.getGateways()) {
+            GatewayListener listener = oldListeners.remove(gatewayConfig.getZooKeeperPath());
+            if (listener == null) {
+                createListener(gatewayConfig);
+            } else if (!gatewayConfig.equals(listener.getConfig())) {
+                try {
+                    gatewayConfig.updateListener(this, listener, drainTimeout);
+                    LOG.info("Updated " + listener + " from " + gatewayConfig);
+                } catch (Exception e) {
+                    LOG.warn("Failed to update listener " + listener + " from " + gatewayConfig + ". Reason: " + e, e);
+                }
+            }
+        }
+        for (GatewayListener listener : oldListeners.values()) {
+            LOG.info("Stopping " + listener + " as it is no longer configured");
+            listeners.remove(listener.getZkPath());
+            listener.destroy(drainTimeout);
+        }
+    }
+
     protected GatewaysConfig loadConfig() throws IOException {
         try {
             return configParser.load(configurationUrl);
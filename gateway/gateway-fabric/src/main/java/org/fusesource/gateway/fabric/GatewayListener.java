@@ -27,15 +27,24 @@ import org.fusesource.fabric.api.jcip.GuardedBy;
 import org.fusesource.fabric.api.scr.InvalidComponentException;
 import org.fusesource.fabric.zookeeper.utils.ZooKeeperUtils;
 import org.fusesource.gateway.ServiceMap;
+import org.fusesource.gateway.fabric.config.GatewayConfig;
 import org.fusesource.gateway.handlers.Gateway;
+import org.fusesource.gateway.handlers.tcp.TcpGateway;
 import org.jledit.utils.Closeables;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
 
+import javax.management.MBeanServer;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -45,11 +54,15 @@ import java.util.concurrent.atomic.AtomicBoolean;
  */
 public class GatewayListener {
     private static final transient Logger LOG = LoggerFactory.getLogger(GatewayListener.class);
+    private static final long DRAIN_CHECK_PERIOD = 100L;
 
     private final CuratorFramework curator;
     private final String zkPath;
     private final ServiceMap serviceMap;
     private final List<Gateway> gateways;
+    private final Set<Gateway> started = new CopyOnWriteArraySet<Gateway>();
+    private final MBeanServer mbeanServer;
+    private volatile GatewayConfig config;
 
     private final ExecutorService treeCacheExecutor = Executors.newSingleThreadExecutor();
     private final AtomicBoolean active = new AtomicBoolean(false);
@@ -67,10 +80,15 @@ public class GatewayListener {
 
 
     public GatewayListener(CuratorFramework curator, String zkPath, ServiceMap serviceMap, List<Gateway> gateways) {
+        this(curator, zkPath, serviceMap, gateways, null);
+    }
+
+    public GatewayListener(CuratorFramework curator, String zkPath, ServiceMap serviceMap, List<Gateway> gateways, MBeanServer mbeanServer) {
         this.curator = curator;
         this.zkPath = zkPath;
         this.serviceMap = serviceMap;
-        this.gateways = gateways;
+        this.gateways = new CopyOnWriteArrayList<Gateway>(gateways);
+        this.mbeanServer = mbeanServer;
         mapper.configure(DeserializationConfig.Feature.FAIL_ON_UNKNOWN_PROPERTIES, false);
     }
 
@@ -93,9 +111,86 @@ public class GatewayListener {
             treeCache.getListenable().addListener(treeListener);
             LOG.info("Started a group listener for " + zkPath);
             for (Gateway gateway : gateways) {
-                gateway.init();
+                startGateway(gateway);
+            }
+        }
+    }
+
+    /**
+     * Adds a new gateway for the services of this listener, starting it if this listener is active
+     */
+    public void addGateway(Gateway gateway) {
+        gateways.add(gateway);
+        if (active.get()) {
+            startGateway(gateway);
+        }
+    }
+
+    /**
+     * Removes a gateway once the requests or connections in flight have completed or the drain timeout has passed
+     */
+    public void removeGateway(Gateway gateway, long drainTimeout) {
+        if (gateways.remove(gateway)) {
+            stopWhenDrained(gateway, drainTimeout, null);
+        }
+    }
+
+    /**
+     * Replaces a gateway by a new one bound to the same port; the new gateway is started once the old one
+     * has drained and closed its server
+     */
+    public void replaceGateway(Gateway gateway, final Gateway newGateway, long drainTimeout) {
+        if (gateways.remove(gateway)) {
+            gateways.add(newGateway);
+            stopWhenDrained(gateway, drainTimeout, new Runnable() {
+                @Override
+                public void run() {
+                    if (active.get() && gateways.contains(newGateway)) {
+                        startGateway(newGateway);
+                    }
+                }
+            });
+        } else {
+            addGateway(newGateway);
+        }
+    }
+
+    protected void stopWhenDrained(final Gateway gateway, long drainTimeout, final Runnable then) {
+        drain(Collections.singletonList(gateway), drainTimeout, new Runnable() {
+            @Override
+            public void run() {
+                stopGateway(gateway);
+                if (then != null) {
+                    then.run();
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the gateway listening on the given port or null if there is none
+     */
+    public Gateway getGateway(int port) {
+        for (Gateway gateway : gateways) {
+            if (gateway.getPort() == port) {
+                return gateway;
             }
         }
+        return null;
+    }
+
+    /**
+     * Stops all the gateways once the requests or connections in flight have completed or the drain timeout has passed
+     */
+    public void destroy(long drainTimeout) {
+        if (active.get()) {
+            drain(new ArrayList<Gateway>(gateways), drainTimeout, new Runnable() {
+                @Override
+                public void run() {
+                    destroy();
+                }
+            });
+        }
     }
 
     public void destroy() {
@@ -106,11 +201,101 @@ public class GatewayListener {
             treeCacheExecutor.shutdownNow();
 
             for (Gateway gateway : gateways) {
-                gateway.destroy();
+                stopGateway(gateway);
             }
         }
     }
 
+    protected void startGateway(Gateway gateway) {
+        if (!started.add(gateway)) {
+            return;
+        }
+        gateway.init();
+        if (mbeanServer != null) {
+            gateway.getHealthChecker().registerMBeanServer(mbeanServer);
+            if (gateway instanceof TcpGateway) {
+                ((TcpGateway) gateway).getMetrics().registerMBeanServer(mbeanServer);
+            }
+        }
+    }
+
+    protected void stopGateway(Gateway gateway) {
+        // a replacing gateway may not have been started yet
+        if (!started.remove(gateway)) {
+            return;
+        }
+        gateway.getHealthChecker().unregisterMBeanServer(mbeanServer);
+        if (gateway instanceof TcpGateway) {
+            ((TcpGateway) gateway).getMetrics().unregisterMBeanServer(mbeanServer);
+        }
+        gateway.destroy();
+    }
+
+    /**
+     * Stops the gateways routing anything new then runs the given task on a vertx timer once those in flight
+     * have completed or the timeout has passed, so that the caller is not blocked while draining
+     */
+    protected void drain(final List<Gateway> list, long drainTimeout, final Runnable then) {
+        for (Gateway gateway : list) {
+            gateway.drain();
+        }
+        if (list.isEmpty() || drainTimeout <= 0 || getInflightCount(list) == 0) {
+            then.run();
+            return;
+        }
+        final long end = System.currentTimeMillis() + drainTimeout;
+        final Vertx vertx = list.get(0).getVertx();
+        vertx.setPeriodic(DRAIN_CHECK_PERIOD, new Handler<Long>() {
+            @Override
+            public void handle(Long timerId) {
+                int inflight = getInflightCount(list);
+                if (inflight > 0 && System.currentTimeMillis() < end) {
+                    return;
+                }
+                vertx.cancelTimer(timerId);
+                if (inflight > 0) {
+                    LOG.warn("Closing " + list + " with " + inflight + " requests or connections still in flight");
+                }
+                try {
+                    then.run();
+                } catch (Exception e) {
+                    LOG.warn("Failed to stop drained gateways " + list + ". Reason: " + e, e);
+                }
+            }
+        });
+    }
+
+    protected static int getInflightCount(List<Gateway> list) {
+        int answer = 0;
+        for (Gateway gateway : list) {
+            answer += gateway.getInflightCount();
+        }
+        return answer;
+    }
+
+    public String getZkPath() {
+        return zkPath;
+    }
+
+    public ServiceMap getServiceMap() {
+        return serviceMap;
+    }
+
+    public List<Gateway> getGateways() {
+        return gateways;
+    }
+
+    /**
+     * Returns the configuration this listener was created or last updated from
+     */
+    public GatewayConfig getConfig() {
+        return config;
+    }
+
+    public void setConfig(GatewayConfig config) {
+        this.config = config;
+    }
+
     protected void treeCacheEvent(PathChildrenCacheEvent event) {
         ChildData childData = event.getData();
         if (childData == null) {
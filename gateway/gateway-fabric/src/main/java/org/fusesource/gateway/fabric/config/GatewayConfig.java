@@ -25,7 +25,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * The Gateway configuration
@@ -84,7 +86,59 @@ public class GatewayConfig {
             return null;
         }
         CuratorFramework curator = owner.getCurator();
-        return new GatewayListener(curator, zkPath, serviceMap, gateways);
+        GatewayListener answer = new GatewayListener(curator, zkPath, serviceMap, gateways, owner.getMBeanServer());
+        answer.setConfig(this);
+        return answer;
+    }
+
+    /**
+     * Updates a running listener to this configuration, keeping its services. Gateways for unchanged listen
+     * configurations are left alone, those whose chooser or other settings changed are reconfigured in place
+     * and the rest are started, or drained and stopped, as required.
+     */
+    public void updateListener(FabricGateway owner, GatewayListener listener, long drainTimeout) {
+        Map<Integer, ListenConfig> oldConfigs = new HashMap<Integer, ListenConfig>();
+        GatewayConfig oldConfig = listener.getConfig();
+        if (oldConfig != null) {
+            for (ListenConfig listenConfig : oldConfig.getListeners()) {
+                oldConfigs.put(listenConfig.getPort(), listenConfig);
+            }
+        }
+        for (ListenConfig listenConfig : getListeners()) {
+            ListenConfig old = oldConfigs.remove(listenConfig.getPort());
+            Gateway gateway = listener.getGateway(listenConfig.getPort());
+            if (old != null && gateway != null) {
+                if (listenConfig.equals(old)) {
+                    continue;
+                }
+                if (listenConfig.canReconfigure(old)) {
+                    LOG.info("Reconfiguring " + gateway + " from " + listenConfig);
+                    listenConfig.reconfigure(gateway);
+                    continue;
+                }
+                // the port stays the same so the old gateway has to close before the new one can bind
+                LOG.info("Rebinding " + gateway + " from " + listenConfig);
+                Gateway newGateway = listenConfig.createGateway(owner, listener.getServiceMap());
+                if (newGateway != null) {
+                    listener.replaceGateway(gateway, newGateway, drainTimeout);
+                } else {
+                    listener.removeGateway(gateway, drainTimeout);
+                }
+                continue;
+            }
+            Gateway newGateway = listenConfig.createGateway(owner, listener.getServiceMap());
+            if (newGateway != null) {
+                listener.addGateway(newGateway);
+            }
+        }
+        for (ListenConfig old : oldConfigs.values()) {
+            Gateway gateway = listener.getGateway(old.getPort());
+            if (gateway != null) {
+                LOG.info("Removing " + gateway);
+                listener.removeGateway(gateway, drainTimeout);
+            }
+        }
+        listener.setConfig(this);
     }
 
     protected void addGateways(List<Gateway> gateways, FabricGateway owner, ServiceMap serviceMap) {
@@ -23,12 +23,16 @@ import java.util.List;
  * The Gateway configuration
  */
 public class GatewaysConfig {
+    public static final long DEFAULT_DRAIN_TIMEOUT = 30000L;
+
     private List<GatewayConfig> gateways = new ArrayList<GatewayConfig>();
+    private long drainTimeout = DEFAULT_DRAIN_TIMEOUT;
 
     @Override
     public String toString() {
         return "GatewaysConfig{" +
                 "gateways=" + gateways +
+                ", drainTimeout=" + drainTimeout +
                 '}';
     }
 
@@ -39,4 +43,16 @@ public class GatewaysConfig {
     public void setGateways(List<GatewayConfig> gateways) {
         this.gateways = gateways;
     }
+
+    public long getDrainTimeout() {
+        return drainTimeout;
+    }
+
+    /**
+     * Sets the maximum number of milliseconds to wait for the requests or connections in flight to complete
+     * before a removed or rebound listener is closed
+     */
+    public void setDrainTimeout(long drainTimeout) {
+        this.drainTimeout = drainTimeout;
+    }
 }
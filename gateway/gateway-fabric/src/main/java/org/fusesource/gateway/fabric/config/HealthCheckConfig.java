@@ -0,0 +1,124 @@
+/**
+ * Copyright (C) FuseSource, Inc.
+ * http://fusesource.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fusesource.gateway.fabric.config;
+
+import org.fusesource.gateway.health.HealthChecker;
+
+/**
+ * Represents the health checking of the services used by a listener
+ */
+public class HealthCheckConfig {
+    private long interval;
+    private int timeout = HealthChecker.DEFAULT_TIMEOUT;
+    private int failureThreshold = HealthChecker.DEFAULT_FAILURE_THRESHOLD;
+    private long ejectionTime = HealthChecker.DEFAULT_EJECTION_TIME;
+    private long maxEjectionTime = HealthChecker.DEFAULT_MAX_EJECTION_TIME;
+
+    @Override
+    public String toString() {
+        return "HealthCheckConfig{" +
+                "interval=" + interval +
+                ", timeout=" + timeout +
+                ", failureThreshold=" + failureThreshold +
+                ", ejectionTime=" + ejectionTime +
+                ", maxEjectionTime=" + maxEjectionTime +
+                '}';
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        HealthCheckConfig that = (HealthCheckConfig) o;
+
+        if (interval != that.interval) return false;
+        if (timeout != that.timeout) return false;
+        if (failureThreshold != that.failureThreshold) return false;
+        if (ejectionTime != that.ejectionTime) return false;
+        if (maxEjectionTime != that.maxEjectionTime) return false;
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (interval ^ (interval >>> 32));
+        result = 31 * result + timeout;
+        result = 31 * result + failureThreshold;
+        result = 31 * result + (int) (ejectionTime ^ (ejectionTime >>> 32));
+        result = 31 * result + (int) (maxEjectionTime ^ (maxEjectionTime >>> 32));
+        return result;
+    }
+
+    /**
+     * Applies this configuration to the health checker of a gateway
+     */
+    public void configure(HealthChecker healthChecker) {
+        healthChecker.setInterval(interval);
+        healthChecker.setTimeout(timeout);
+        healthChecker.setFailureThreshold(failureThreshold);
+        healthChecker.setEjectionTime(ejectionTime);
+        healthChecker.setMaxEjectionTime(maxEjectionTime);
+    }
+
+    // Properties
+    //-------------------------------------------------------------------------
+
+    public long getInterval() {
+        return interval;
+    }
+
+    /**
+     * Sets the number of milliseconds between active probes of each service; zero disables probing
+     */
+    public void setInterval(long interval) {
+        this.interval = interval;
+    }
+
+    public int getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(int timeout) {
+        this.timeout = timeout;
+    }
+
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    public void setFailureThreshold(int failureThreshold) {
+        this.failureThreshold = failureThreshold;
+    }
+
+    public long getEjectionTime() {
+        return ejectionTime;
+    }
+
+    public void setEjectionTime(long ejectionTime) {
+        this.ejectionTime = ejectionTime;
+    }
+
+    public long getMaxEjectionTime() {
+        return maxEjectionTime;
+    }
+
+    public void setMaxEjectionTime(long maxEjectionTime) {
+        this.maxEjectionTime = maxEjectionTime;
+    }
+}
@@ -19,10 +19,18 @@ package org.fusesource.gateway.fabric.config;
 import org.apache.curator.framework.CuratorFramework;
 import org.fusesource.common.util.Strings;
 import org.fusesource.fabric.zookeeper.ZkPath;
+import org.fusesource.gateway.ServiceDetails;
 import org.fusesource.gateway.ServiceMap;
+import org.fusesource.gateway.chooser.Chooser;
+import org.fusesource.gateway.chooser.Choosers;
+import org.fusesource.gateway.chooser.ConsistentHashHttpChooser;
+import org.fusesource.gateway.chooser.DefaultHttpChooser;
+import org.fusesource.gateway.chooser.DefaultNetChooser;
+import org.fusesource.gateway.chooser.HttpChooser;
 import org.fusesource.gateway.fabric.FabricGateway;
 import org.fusesource.gateway.fabric.GatewayListener;
 import org.fusesource.gateway.handlers.Gateway;
+import org.fusesource.gateway.handlers.http.HttpClientCache;
 import org.fusesource.gateway.handlers.http.HttpGateway;
 import org.fusesource.gateway.handlers.tcp.TcpGateway;
 import org.slf4j.Logger;
@@ -42,6 +50,19 @@ public class ListenConfig {
     private String host;
     private String protocol;
     private List<RuleConfig> rules = new ArrayList<RuleConfig>();
+    private boolean keepAlive = true;
+    private int maxPoolSize = HttpClientCache.DEFAULT_MAX_POOL_SIZE;
+    private long idleTimeout = HttpClientCache.DEFAULT_IDLE_TIMEOUT;
+    private String chooser;
+    private boolean powerOfTwoChoices;
+    private String hashKey = ConsistentHashHttpChooser.COOKIE;
+    private String hashKeyName;
+    private int virtualNodes = ConsistentHashHttpChooser.DEFAULT_VIRTUAL_NODES;
+    private HealthCheckConfig healthCheck;
+    private int connectTimeout = TcpGateway.DEFAULT_CONNECT_TIMEOUT;
+    private int connectRetries = TcpGateway.DEFAULT_CONNECT_RETRIES;
+    private int writeQueueMaxSize = TcpGateway.DEFAULT_WRITE_QUEUE_MAX_SIZE;
+    private boolean usePooledBuffers = true;
 
     @Override
     public String toString() {
@@ -50,6 +71,19 @@ public class ListenConfig {
                 ", port=" + port +
                 ", host='" + host + '\'' +
                 ", rules=" + rules +
+                ", keepAlive=" + keepAlive +
+                ", maxPoolSize=" + maxPoolSize +
+                ", idleTimeout=" + idleTimeout +
+                ", chooser='" + chooser + '\'' +
+                ", powerOfTwoChoices=" + powerOfTwoChoices +
+                ", hashKey='" + hashKey + '\'' +
+                ", hashKeyName='" + hashKeyName + '\'' +
+                ", virtualNodes=" + virtualNodes +
+                ", healthCheck=" + healthCheck +
+                ", connectTimeout=" + connectTimeout +
+                ", connectRetries=" + connectRetries +
+                ", writeQueueMaxSize=" + writeQueueMaxSize +
+                ", usePooledBuffers=" + usePooledBuffers +
                 '}';
     }
 
@@ -61,6 +95,19 @@ public class ListenConfig {
         ListenConfig that = (ListenConfig) o;
 
         if (port != that.port) return false;
+        if (keepAlive != that.keepAlive) return false;
+        if (maxPoolSize != that.maxPoolSize) return false;
+        if (idleTimeout != that.idleTimeout) return false;
+        if (powerOfTwoChoices != that.powerOfTwoChoices) return false;
+        if (virtualNodes != that.virtualNodes) return false;
+        if (connectTimeout != that.connectTimeout) return false;
+        if (connectRetries != that.connectRetries) return false;
+        if (writeQueueMaxSize != that.writeQueueMaxSize) return false;
+        if (usePooledBuffers != that.usePooledBuffers) return false;
+        if (chooser != null ? !chooser.equals(that.chooser) : that.chooser != null) return false;
+        if (hashKey != null ? !hashKey.equals(that.hashKey) : that.hashKey != null) return false;
+        if (hashKeyName != null ? !hashKeyName.equals(that.hashKeyName) : that.hashKeyName != null) return false;
+        if (healthCheck != null ? !healthCheck.equals(that.healthCheck) : that.healthCheck != null) return false;
         if (host != null ? !host.equals(that.host) : that.host != null) return false;
         if (protocol != null ? !protocol.equals(that.protocol) : that.protocol != null) return false;
         if (rules != null ? !rules.equals(that.rules) : that.rules != null) return false;
@@ -74,6 +121,19 @@ public class ListenConfig {
         result = 31 * result + (host != null ? host.hashCode() : 0);
         result = 31 * result + (protocol != null ? protocol.hashCode() : 0);
         result = 31 * result + (rules != null ? rules.hashCode() : 0);
+        result = 31 * result + (keepAlive ? 1 : 0);
+        result = 31 * result + maxPoolSize;
+        result = 31 * result + (int) (idleTimeout ^ (idleTimeout >>> 32));
+        result = 31 * result + (chooser != null ? chooser.hashCode() : 0);
+        result = 31 * result + (powerOfTwoChoices ? 1 : 0);
+        result = 31 * result + (hashKey != null ? hashKey.hashCode() : 0);
+        result = 31 * result + (hashKeyName != null ? hashKeyName.hashCode() : 0);
+        result = 31 * result + virtualNodes;
+        result = 31 * result + (healthCheck != null ? healthCheck.hashCode() : 0);
+        result = 31 * result + connectTimeout;
+        result = 31 * result + connectRetries;
+        result = 31 * result + writeQueueMaxSize;
+        result = 31 * result + (usePooledBuffers ? 1 : 0);
         return result;
     }
 
@@ -96,9 +156,59 @@ public class ListenConfig {
         if (Strings.isNotBlank(host)) {
             answer.setHost(host);
         }
+        reconfigure(answer);
         return answer;
     }
 
+    /**
+     * Returns true if a gateway created from the old configuration can be changed to this configuration
+     * by {@link #reconfigure(Gateway)}; otherwise a new gateway has to be bound in its place
+     */
+    public boolean canReconfigure(ListenConfig old) {
+        if (port != old.port) return false;
+        if (host != null ? !host.equals(old.host) : old.host != null) return false;
+        if (protocol != null ? !protocol.equals(old.protocol) : old.protocol != null) return false;
+        return true;
+    }
+
+    /**
+     * Applies the chooser, health check, client and relay settings to a new or running gateway.
+     * The chooser is replaced in a single write so each request or connection uses either the old or the new one;
+     * client settings apply to the clients created for new requests or connections.
+     */
+    public void reconfigure(Gateway gateway) {
+        if (gateway instanceof HttpGateway) {
+            HttpGateway httpGateway = (HttpGateway) gateway;
+            httpGateway.setKeepAlive(keepAlive);
+            httpGateway.setMaxPoolSize(maxPoolSize);
+            httpGateway.setIdleTimeout(idleTimeout);
+            httpGateway.setChooser(createHttpChooser(httpGateway));
+        } else if (gateway instanceof TcpGateway) {
+            TcpGateway tcpGateway = (TcpGateway) gateway;
+            tcpGateway.setConnectTimeout(connectTimeout);
+            tcpGateway.setUsePooledBuffers(usePooledBuffers);
+            tcpGateway.setConnectRetries(connectRetries);
+            tcpGateway.setWriteQueueMaxSize(writeQueueMaxSize);
+            tcpGateway.setChooser(new DefaultNetChooser(createServiceChooser(tcpGateway)));
+        }
+        HealthCheckConfig config = healthCheck;
+        if (config == null) {
+            config = new HealthCheckConfig();
+        }
+        config.configure(gateway.getHealthChecker());
+    }
+
+    protected HttpChooser createHttpChooser(HttpGateway gateway) {
+        if (Choosers.CONSISTENT_HASH.equalsIgnoreCase(chooser)) {
+            return new ConsistentHashHttpChooser(hashKey, hashKeyName, virtualNodes);
+        }
+        return new DefaultHttpChooser(createServiceChooser(gateway));
+    }
+
+    protected Chooser<ServiceDetails> createServiceChooser(Gateway gateway) {
+        return Choosers.createChooser(chooser, gateway.getLoadTracker(), powerOfTwoChoices);
+    }
+
     // Properties
     //-------------------------------------------------------------------------
 
@@ -133,4 +243,145 @@ public class ListenConfig {
     public void setRules(List<RuleConfig> rules) {
         this.rules = rules;
     }
+
+    public boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    /**
+     * Sets whether connections to the upstream HTTP services are kept alive and reused
+     */
+    public void setKeepAlive(boolean keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    public int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    /**
+     * Sets the maximum number of pooled connections to each upstream HTTP host and port
+     */
+    public void setMaxPoolSize(int maxPoolSize) {
+        this.maxPoolSize = maxPoolSize;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Sets the number of milliseconds after which an unused upstream HTTP client is closed
+     */
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public String getChooser() {
+        return chooser;
+    }
+
+    /**
+     * Sets the name of the algorithm used to choose a service; one of random, roundRobin,
+     * leastConnections, leastLatency or consistentHash for HTTP listeners
+     */
+    public void setChooser(String chooser) {
+        this.chooser = chooser;
+    }
+
+    public boolean isPowerOfTwoChoices() {
+        return powerOfTwoChoices;
+    }
+
+    /**
+     * Sets whether the load aware choosers compare two random services rather than all services
+     */
+    public void setPowerOfTwoChoices(boolean powerOfTwoChoices) {
+        this.powerOfTwoChoices = powerOfTwoChoices;
+    }
+
+    public String getHashKey() {
+        return hashKey;
+    }
+
+    /**
+     * Sets what the consistentHash chooser hashes on; one of cookie, header or clientIp
+     */
+    public void setHashKey(String hashKey) {
+        this.hashKey = hashKey;
+    }
+
+    public String getHashKeyName() {
+        return hashKeyName;
+    }
+
+    /**
+     * Sets the name of the cookie or header used by the consistentHash chooser
+     */
+    public void setHashKeyName(String hashKeyName) {
+        this.hashKeyName = hashKeyName;
+    }
+
+    public HealthCheckConfig getHealthCheck() {
+        return healthCheck;
+    }
+
+    public void setHealthCheck(HealthCheckConfig healthCheck) {
+        this.healthCheck = healthCheck;
+    }
+
+    public int getVirtualNodes() {
+        return virtualNodes;
+    }
+
+    /**
+     * Sets the number of points each service has on the consistent hash ring
+     */
+    public void setVirtualNodes(int virtualNodes) {
+        this.virtualNodes = virtualNodes;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * Sets the number of milliseconds a TCP listener waits for a connect to a service
+     */
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public int getConnectRetries() {
+        return connectRetries;
+    }
+
+    /**
+     * Sets how many other service URLs a TCP listener tries when a connect fails
+     */
+    public void setConnectRetries(int connectRetries) {
+        this.connectRetries = connectRetries;
+    }
+
+    public int getWriteQueueMaxSize() {
+        return writeQueueMaxSize;
+    }
+
+    /**
+     * Sets the number of bytes a TCP listener queues for a socket before it stops reading from the other socket
+     */
+    public void setWriteQueueMaxSize(int writeQueueMaxSize) {
+        this.writeQueueMaxSize = writeQueueMaxSize;
+    }
+
+    public boolean isUsePooledBuffers() {
+        return usePooledBuffers;
+    }
+
+    /**
+     * Sets whether a TCP listener reads into pooled direct buffers
+     */
+    public void setUsePooledBuffers(boolean usePooledBuffers) {
+        this.usePooledBuffers = usePooledBuffers;
+    }
 }
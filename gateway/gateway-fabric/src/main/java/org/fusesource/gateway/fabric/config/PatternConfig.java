@@ -23,6 +23,34 @@ public class PatternConfig {
     private String regex;
     private String prefix;
 
+    @Override
+    public String toString() {
+        return "PatternConfig{" +
+                "regex='" + regex + '\'' +
+                ", prefix='" + prefix + '\'' +
+                '}';
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        PatternConfig that = (PatternConfig) o;
+
+        if (prefix != null ? !prefix.equals(that.prefix) : that.prefix != null) return false;
+        if (regex != null ? !regex.equals(that.regex) : that.regex != null) return false;
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = regex != null ? regex.hashCode() : 0;
+        result = 31 * result + (prefix != null ? prefix.hashCode() : 0);
+        return result;
+    }
+
     public String getRegex() {
         return regex;
     }
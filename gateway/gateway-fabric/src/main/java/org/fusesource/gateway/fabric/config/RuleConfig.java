@@ -28,6 +28,33 @@ public class RuleConfig {
     private PatternConfig from;
     private PatternConfig to;
 
+    @Override
+    public String toString() {
+        return "RuleConfig{" +
+                "from=" + from +
+                ", to=" + to +
+                '}';
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        RuleConfig that = (RuleConfig) o;
+
+        if (from != null ? !from.equals(that.from) : that.from != null) return false;
+        if (to != null ? !to.equals(that.to) : that.to != null) return false;
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = from != null ? from.hashCode() : 0;
+        result = 31 * result + (to != null ? to.hashCode() : 0);
+        return result;
+    }
 
     // Properties
     //-------------------------------------------------------------------------
@@ -21,6 +21,8 @@ import org.junit.Test;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 /**
  */
@@ -42,6 +44,9 @@ public class ConfigTest {
         ListenConfig listener = gateway1.getListeners().get(0);
         assertEquals("listener.getPort()", 9000, listener.getPort());
         assertEquals("listener.getProtocol()", "http", listener.getProtocol());
+        assertEquals("listener.getMaxPoolSize()", 50, listener.getMaxPoolSize());
+        assertEquals("listener.getIdleTimeout()", 30000, listener.getIdleTimeout());
+        assertEquals("listener.isKeepAlive()", true, listener.isKeepAlive());
         List<RuleConfig> rules = listener.getRules();
         assertEquals("rules.size()", 2, rules.size());
 
@@ -53,7 +58,41 @@ public class ConfigTest {
         assertEquals("rule2.getFrom().getPrefix()", "/", rule2.getFrom().getPrefix());
         assertEquals("rule2.getTo().getPrefix()", "/hawto/$latest/", rule2.getTo().getPrefix());
 
+        ListenConfig tcpListener = gateways.get(1).getListeners().get(0);
+        assertEquals("tcpListener.getChooser()", "leastConnections", tcpListener.getChooser());
+        assertEquals("tcpListener.isPowerOfTwoChoices()", true, tcpListener.isPowerOfTwoChoices());
+        HealthCheckConfig healthCheck = tcpListener.getHealthCheck();
+        assertEquals("healthCheck.getInterval()", 10000, healthCheck.getInterval());
+        assertEquals("healthCheck.getFailureThreshold()", 5, healthCheck.getFailureThreshold());
+        assertEquals("tcpListener.getConnectRetries()", 2, tcpListener.getConnectRetries());
+
+        ListenConfig amqpListener = gateways.get(1).getListeners().get(1);
+        assertEquals("amqpListener.getConnectTimeout()", 2000, amqpListener.getConnectTimeout());
+        assertEquals("amqpListener.getConnectRetries()", 1, amqpListener.getConnectRetries());
+
 
     }
 
+    @Test
+    public void testConfigChanges() throws Exception {
+        ConfigParser parser = new ConfigParser();
+        GatewaysConfig config1 = parser.load(getBaseDirUrl() + "/src/test/resources/config.json");
+        GatewaysConfig config2 = parser.load(getBaseDirUrl() + "/src/test/resources/config.json");
+        assertEquals("config.getDrainTimeout()", GatewaysConfig.DEFAULT_DRAIN_TIMEOUT, config1.getDrainTimeout());
+        assertEquals("gateways", config1.getGateways(), config2.getGateways());
+
+        ListenConfig listener1 = config1.getGateways().get(0).getListeners().get(0);
+        ListenConfig listener2 = config2.getGateways().get(0).getListeners().get(0);
+        listener2.getRules().get(0).getTo().setRegex("/hawtio/$1");
+        listener2.setChooser("leastLatency");
+        assertFalse("equals", listener1.equals(listener2));
+        assertTrue("canReconfigure", listener2.canReconfigure(listener1));
+
+        listener2.setMaxPoolSize(10);
+        listener2.setConnectTimeout(1000);
+        assertTrue("canReconfigure", listener2.canReconfigure(listener1));
+
+        listener2.setPort(listener1.getPort() + 1);
+        assertFalse("canReconfigure", listener2.canReconfigure(listener1));
+    }
 }